@@ -7,6 +7,8 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.remote.DebugPrintStream;
+import com.google.dart.server.internal.remote.RecordingDebugPrintStream;
+import com.google.dart.server.internal.remote.ProtocolMetrics;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
 import com.google.dart.server.internal.remote.StdioServerSocket;
 import com.google.dart.server.utilities.logging.Logging;
@@ -79,9 +81,14 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class DartAnalysisServerService implements Disposable {
 
@@ -110,6 +117,10 @@ public class DartAnalysisServerService implements Disposable {
   private static final long ANALYSIS_IN_TESTS_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
   private static final long TESTS_TIMEOUT_COEFF = 10;
 
+  // 0 means that protocol metrics are not written to the log
+  private static final String PROTOCOL_METRICS_LOG_INTERVAL_KEY = "dart.server.protocol.metrics.log.interval.minutes";
+  private static final int PROTOCOL_METRICS_SHOWN_ENTRIES = 15;
+
   private static final Logger LOG = Logger.getInstance("#com.jetbrains.lang.dart.analyzer.DartAnalysisServerService");
   private static final String STACK_TRACE_MARKER = "#0";
   private static final long MIN_DISRUPTION_TIME = 5000L; // 5 seconds minimum between error report balloons
@@ -118,6 +129,9 @@ public class DartAnalysisServerService implements Disposable {
   private static final int DEBUG_LOG_CAPACITY = 30;
   private static final int MAX_DEBUG_LOG_LINE_LENGTH = 200; // Saw one line while testing that was > 50k
 
+  // directory to record the full client-server traffic to (a file per server start), to be replayed by ReplaySessionSocket
+  private static final String RECORD_SESSION_DIR_PROPERTY = "dart.server.record.session.dir";
+
   private static boolean ourIntentionsRegistered = false;
 
   @NotNull private final Project myProject;
@@ -134,6 +148,13 @@ public class DartAnalysisServerService implements Disposable {
 
   private final DartServerRootsHandler myRootsHandler;
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
+  private final DartContentOverlayJournal myContentOverlayJournal = new DartContentOverlayJournal();
+  private final DartRequestCoalescer myRequestCoalescer = new DartRequestCoalescer();
+  private final DartResponseCache myResponseCache = new DartResponseCache();
+  // changes of the server's view of files: content sent, results flushed or errors changed; see getModificationCountOfOtherFiles()
+  private final Object myModificationCountLock = new Object();
+  private int myModificationCount;
+  private final TObjectIntHashMap<String> myFileModificationCounts = new TObjectIntHashMap<>(); // system-independent path -> count
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
   private final Alarm myUpdateFilesAlarm;
@@ -146,6 +167,8 @@ public class DartAnalysisServerService implements Disposable {
   private volatile boolean myAnalysisInProgress;
   private volatile boolean myPubListInProgress;
   @NotNull private final Alarm myShowServerProgressAlarm;
+  @NotNull private final Alarm myLogProtocolMetricsAlarm;
+  @Nullable private RecordingDebugPrintStream mySessionRecorder;
   @Nullable private ProgressIndicator myProgressIndicator;
   private final Object myProgressLock = new Object();
 
@@ -177,7 +200,11 @@ public class DartAnalysisServerService implements Disposable {
   private static final String ENABLE_ANALYZED_FILES_SUBSCRIPTION_KEY =
     "com.jetbrains.lang.dart.analyzer.DartAnalysisServerService.enableAnalyzedFilesSubscription";
 
-  private final AnalysisServerListener myAnalysisServerListener = new AnalysisServerListenerAdapter() {
+  private abstract static class HighlightArraysListenerAdapter extends AnalysisServerListenerAdapter
+    implements HighlightRegionArraysListener {
+  }
+
+  private final AnalysisServerListener myAnalysisServerListener = new HighlightArraysListenerAdapter() {
 
     @Override
     public void computedAnalyzedFiles(List<String> filePaths) {
@@ -228,6 +255,14 @@ public class DartAnalysisServerService implements Disposable {
       myServerData.computedHighlights(FileUtil.toSystemIndependentName(filePath), regions);
     }
 
+    @Override
+    public void computedHighlights(@NotNull final String filePath,
+                                   @NotNull final int[] offsets,
+                                   @NotNull final int[] lengths,
+                                   @NotNull final String[] types) {
+      myServerData.computedHighlights(FileUtil.toSystemIndependentName(filePath), offsets, lengths, types);
+    }
+
     @Override
     public void computedClosingLabels(@NotNull final String filePath, List<ClosingLabel> labels) {
       myServerData.computedClosingLabels(FileUtil.toSystemIndependentName(filePath), labels);
@@ -264,6 +299,10 @@ public class DartAnalysisServerService implements Disposable {
 
       myServerData.onFlushedResults(filePaths);
 
+      for (String filePath : filePaths) {
+        myResponseCache.invalidate(filePath);
+      }
+
       for (String filePath : filePaths) {
         onErrorsUpdated(filePath, AnalysisError.EMPTY_LIST, false, 0);
       }
@@ -289,6 +328,14 @@ public class DartAnalysisServerService implements Disposable {
       }
     }
 
+    @Override
+    public void requestError(RequestError requestError) {
+      if (RequestErrorCode.INVALID_OVERLAY_CHANGE.equals(requestError.getCode())) {
+        LOG.info("Failed to apply ChangeContentOverlay, sending full content: " + requestError.getMessage());
+        onContentOverlayMismatch();
+      }
+    }
+
     @Override
     public void serverConnected(@Nullable String version) {
       myServerVersion = version != null ? version : "";
@@ -315,6 +362,7 @@ public class DartAnalysisServerService implements Disposable {
 
       if (analysisStatus != null) myAnalysisInProgress = analysisStatus.isAnalyzing();
       if (pubStatus != null) myPubListInProgress = pubStatus.isListingPackageDirs();
+      if (pubStatus != null && pubStatus.isListingPackageDirs()) incModificationCount(null);
 
       if (!wasBusy && (myAnalysisInProgress || myPubListInProgress)) {
         final Runnable delayedRunnable = () -> {
@@ -428,33 +476,53 @@ public class DartAnalysisServerService implements Disposable {
     return StringUtil.compareVersionNumbers(sdk.getVersion(), MIN_SDK_VERSION) >= 0;
   }
 
-  public void addCompletions(@NotNull final VirtualFile file,
-                             @NotNull final String completionId,
-                             @NotNull final CompletionSuggestionConsumer consumer) {
+  /**
+   * Passes suggestions of the given completion request to the consumer. In incremental mode (the default, see the
+   * {@code dart.server.completion.incremental} registry key) suggestions are passed as soon as the server reports them instead of waiting
+   * for the last {@code completion.results} notification; suggestions repeated in later notifications are skipped.
+   *
+   * @return {@code true} if all suggestions have been passed to the consumer
+   */
+  public boolean addCompletions(@NotNull final VirtualFile file,
+                                @NotNull final String completionId,
+                                @NotNull final CompletionSuggestionConsumer consumer) {
+    final boolean incremental = Registry.is("dart.server.completion.incremental", true);
+    // not null if some suggestions have been passed to the consumer before the last notification
+    Set<CompletionSuggestion> consumedSuggestions = null;
+
     while (true) {
       ProgressManager.checkCanceled();
 
+      CompletionInfo completionInfo;
       synchronized (myCompletionInfos) {
-        CompletionInfo completionInfo;
         while ((completionInfo = myCompletionInfos.poll()) != null) {
-          if (!completionInfo.myCompletionId.equals(completionId)) continue;
-          if (!completionInfo.isLast) continue;
+          if (completionInfo.myCompletionId.equals(completionId) && (completionInfo.isLast || incremental)) break;
+        }
 
-          for (final CompletionSuggestion completion : completionInfo.myCompletions) {
-            final int convertedReplacementOffset = getConvertedOffset(file, completionInfo.myOriginalReplacementOffset);
-            final int convertedReplacementLength = getConvertedOffset(file, completionInfo.myOriginalReplacementLength);
-            consumer.consumeCompletionSuggestion(convertedReplacementOffset, convertedReplacementLength, completion);
+        if (completionInfo == null) {
+          try {
+            myCompletionInfos.wait(CHECK_CANCELLED_PERIOD);
           }
-          return;
+          catch (InterruptedException e) {
+            return false;
+          }
+          continue;
         }
+      }
 
-        try {
-          myCompletionInfos.wait(CHECK_CANCELLED_PERIOD);
-        }
-        catch (InterruptedException e) {
-          return;
-        }
+      // suggestions are consumed outside of the lock, so that building lookup elements doesn't block the thread reading server responses
+      if (!completionInfo.isLast && consumedSuggestions == null) {
+        consumedSuggestions = new THashSet<>();
       }
+
+      final int convertedReplacementOffset = getConvertedOffset(file, completionInfo.myOriginalReplacementOffset);
+      final int convertedReplacementLength = getConvertedOffset(file, completionInfo.myOriginalReplacementLength);
+      for (final CompletionSuggestion completion : completionInfo.myCompletions) {
+        if (consumedSuggestions != null && !consumedSuggestions.add(completion)) continue;
+        consumer.consumeCompletionSuggestion(convertedReplacementOffset, convertedReplacementLength, completion);
+      }
+
+      if (completionInfo.isLast) return true;
     }
   }
 
@@ -533,6 +601,7 @@ public class DartAnalysisServerService implements Disposable {
     myServerData = new DartServerData(this);
     myUpdateFilesAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     myShowServerProgressAlarm = new Alarm(project);
+    myLogProtocolMetricsAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
 
     DartClosingLabelManager.getInstance().addListener(this::handleClosingLabelPreferenceChanged, this);
   }
@@ -664,6 +733,20 @@ public class DartAnalysisServerService implements Disposable {
         myUpdateFilesAlarm.cancelAllRequests();
         myUpdateFilesAlarm.addRequest(DartAnalysisServerService.this::updateFilesContent, UPDATE_FILES_TIMEOUT);
       }
+
+      @Override
+      public void documentChanged(@NotNull DocumentEvent e) {
+        if (myServer == null) return;
+
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+        if (file == null) return;
+
+        synchronized (myLock) {
+          if (myFilePathWithOverlaidContentToTimestamp.containsKey(file.getPath())) {
+            myContentOverlayJournal.documentChanged(file.getPath(), e);
+          }
+        }
+      }
     };
 
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentListener, myProject);
@@ -702,6 +785,21 @@ public class DartAnalysisServerService implements Disposable {
     return myServerData.getErrors(scope);
   }
 
+  /**
+   * @return errors in all files in the given directory and its subdirectories
+   */
+  @NotNull
+  public List<DartServerData.DartError> getErrorsInDirectory(@NotNull final VirtualFile dir) {
+    return myServerData.getErrorsInDirectory(dir.getPath());
+  }
+
+  /**
+   * @param severity one of {@link AnalysisErrorSeverity} constants
+   */
+  public int getErrorCountInDirectory(@NotNull final VirtualFile dir, @NotNull final String severity) {
+    return myServerData.getErrorCountInDirectory(dir.getPath(), severity);
+  }
+
   @NotNull
   public List<DartServerData.DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
     return myServerData.getHighlight(file);
@@ -788,8 +886,6 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
-
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -817,7 +913,10 @@ public class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            final Object overlay = myContentOverlayJournal.createOverlay(file.getPath(), document);
+            myResponseCache.invalidate(file.getPath());
+            incModificationCount(file.getPath());
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), overlay);
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
           }
         }
@@ -827,6 +926,9 @@ public class DartAnalysisServerService implements Disposable {
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
+        myContentOverlayJournal.remove(oldPath);
+        myResponseCache.invalidate(oldPath);
+        incModificationCount(oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
       }
 
@@ -850,6 +952,134 @@ public class DartAnalysisServerService implements Disposable {
     }
   }
 
+  /**
+   * @param filePath system-independent path of the changed file, or {@code null} if the server's view of the whole project might change
+   */
+  private void incModificationCount(@Nullable final String filePath) {
+    synchronized (myModificationCountLock) {
+      myModificationCount++;
+      if (filePath != null) {
+        myFileModificationCounts.adjustOrPutValue(filePath, 1, 1);
+      }
+    }
+  }
+
+  /**
+   * Results computed by the server for the {@code file} (e.g. completion suggestions) might be affected by other files. They stay valid
+   * while this count doesn't change and the {@code file} itself doesn't change, which the caller checks on its own.
+   *
+   * @return number of changes of the server's view of files other than the {@code file}
+   */
+  public int getModificationCountOfOtherFiles(@NotNull final VirtualFile file) {
+    synchronized (myModificationCountLock) {
+      return myModificationCount - myFileModificationCounts.get(file.getPath());
+    }
+  }
+
+  private int getModificationCount() {
+    synchronized (myModificationCountLock) {
+      return myModificationCount;
+    }
+  }
+
+  private void onContentOverlayMismatch() {
+    synchronized (myLock) {
+      myContentOverlayJournal.invalidateAll();
+      // make sure that the whole content is sent again for all overlaid files
+      for (Map.Entry<String, Long> entry : myFilePathWithOverlaidContentToTimestamp.entrySet()) {
+        entry.setValue(-1L);
+      }
+    }
+
+    myUpdateFilesAlarm.cancelAllRequests();
+    myUpdateFilesAlarm.addRequest(this::updateFilesContent, 0);
+  }
+
+  /**
+   * Statistics of the content overlays sent to the server, see {@link DartContentOverlayJournal}.
+   */
+  @NotNull
+  public String getContentOverlayStatistics() {
+    final DartContentOverlayJournal journal = myContentOverlayJournal;
+    final long fullTextBytes = journal.getFullTextBytes();
+    final long sentBytes = journal.getSentBytes();
+    return "content updates: " + journal.getUpdateCount() +
+           " (full: " + journal.getFullOverlayCount() + ", incremental: " + journal.getChangeOverlayCount() + ")" +
+           ", bytes sent: " + sentBytes +
+           ", saved: " + (fullTextBytes - sentBytes);
+  }
+
+  /**
+   * Statistics of the requests made via async API, see {@link DartRequestCoalescer}.
+   */
+  @NotNull
+  public String getRequestStatistics() {
+    final DartRequestCoalescer coalescer = myRequestCoalescer;
+    return "requests sent: " + coalescer.getSentCount() +
+           ", coalesced: " + coalescer.getCoalescedCount() +
+           ", answered by late results: " + coalescer.getLateResultHitCount();
+  }
+
+  /**
+   * Statistics of {@link DartResponseCache} that keeps responses to hover, navigation, assists and fixes requests.
+   */
+  @NotNull
+  public String getResponseCacheStatistics() {
+    final long hits = myResponseCache.getHitCount();
+    final long misses = myResponseCache.getMissCount();
+    final long total = hits + misses;
+    return "response cache hits: " + hits +
+           ", misses: " + misses +
+           (total == 0 ? "" : " (" + (hits * 100 / total) + "% hit rate)");
+  }
+
+  /**
+   * Statistics collected on the IDE side, shown together with the server diagnostics page.
+   */
+  @NotNull
+  public List<String> getClientStatistics() {
+    final List<String> result = new ArrayList<>();
+    result.add(getContentOverlayStatistics());
+    result.add(getRequestStatistics());
+    result.add(getResponseCacheStatistics());
+    result.addAll(getProtocolMetrics(PROTOCOL_METRICS_SHOWN_ENTRIES));
+    return result;
+  }
+
+  /**
+   * Protocol-level statistics of the current server connection: queue depths and, for the most expensive request methods and
+   * notification types, latency histogram, payload bytes, decoding and processing time. See {@link ProtocolMetrics}.
+   *
+   * @param maxEntries maximum number of methods and notification types to include, {@code -1} for all
+   */
+  @NotNull
+  public List<String> getProtocolMetrics(final int maxEntries) {
+    final AnalysisServer server = myServer;
+    if (!(server instanceof RemoteAnalysisServerImpl)) return Collections.emptyList();
+
+    final RemoteAnalysisServerImpl remoteServer = (RemoteAnalysisServerImpl)server;
+    final List<String> result = new ArrayList<>();
+    result.add("queue depths: " + remoteServer.getQueueDepths());
+    for (ProtocolMetrics.Stats stats : remoteServer.getMetrics().getStats(maxEntries)) {
+      result.add(stats.toString());
+    }
+    return result;
+  }
+
+  private void scheduleProtocolMetricsLogging() {
+    final int intervalMinutes = Registry.intValue(PROTOCOL_METRICS_LOG_INTERVAL_KEY, 0);
+    if (intervalMinutes <= 0) return;
+
+    myLogProtocolMetricsAlarm.cancelAllRequests();
+    myLogProtocolMetricsAlarm.addRequest(() -> {
+      final List<String> metrics = getProtocolMetrics(-1);
+      if (!metrics.isEmpty()) {
+        LOG.info("Dart Analysis Server protocol metrics:\n" + StringUtil.join(metrics, "\n"));
+        scheduleProtocolMetricsLogging();
+      }
+    }, TimeUnit.MINUTES.toMillis(intervalMinutes));
+  }
+
   public boolean updateRoots(@NotNull final List<String> includedRoots, @NotNull final List<String> excludedRoots) {
     AnalysisServer server = myServer;
     if (server == null) {
@@ -869,6 +1099,7 @@ public class DartAnalysisServerService implements Disposable {
                                @NotNull final List<AnalysisError> errors,
                                final boolean hasSevereProblems,
                                final int errorsHash) {
+    incModificationCount(filePath);
     updateFilesWithErrorsSet(filePath, hasSevereProblems, errorsHash);
     DartProblemsView.getInstance(myProject).updateErrorsForFile(filePath, errors);
   }
@@ -922,51 +1153,79 @@ public class DartAnalysisServerService implements Disposable {
 
   @NotNull
   public List<HoverInformation> analysis_getHover(@NotNull final VirtualFile file, final int _offset) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return HoverInformation.EMPTY_LIST;
+    }
+
+    final List<HoverInformation> result =
+      awaitForFutureCheckingCanceled(server, analysis_getHoverAsync(file, _offset), GET_HOVER_TIMEOUT);
+    return result != null ? new ArrayList<>(result) : HoverInformation.EMPTY_LIST;
+  }
+
+  @NotNull
+  public CompletableFuture<List<HoverInformation>> analysis_getHoverAsync(@NotNull final VirtualFile file, final int _offset) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final List<HoverInformation> result = Lists.newArrayList();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return HoverInformation.EMPTY_LIST;
+      return CompletableFuture.completedFuture(HoverInformation.EMPTY_LIST);
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
+    final DartRequestCoalescer.Key key = createRequestKey("analysis_getHover", file, offset);
+    return submitCached(key, future -> server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
       @Override
       public void computedHovers(HoverInformation[] hovers) {
-        Collections.addAll(result, hovers);
-        latch.countDown();
+        future.complete(Arrays.asList(hovers));
       }
 
       @Override
       public void onError(RequestError error) {
         logError("analysis_getHover()", filePath, error);
-        latch.countDown();
+        future.complete(HoverInformation.EMPTY_LIST);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
-    return result;
+    }));
   }
 
   @Nullable
   public List<DartServerData.DartNavigationRegion> analysis_getNavigation(@NotNull final VirtualFile file,
                                                                           final int _offset,
                                                                           final int length) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return null;
+    }
+
+    final CompletableFuture<List<DartServerData.DartNavigationRegion>> future = analysis_getNavigationAsync(file, _offset, length);
+    final List<DartServerData.DartNavigationRegion> result = awaitForFutureCheckingCanceled(server, future, GET_NAVIGATION_TIMEOUT);
+
+    if (!future.isDone() || future.isCancelled()) {
+      LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + file.getPath());
+    }
+
+    return result;
+  }
+
+  /**
+   * The future is completed with {@code null} if the server failed to compute navigation.
+   */
+  @NotNull
+  public CompletableFuture<List<DartServerData.DartNavigationRegion>> analysis_getNavigationAsync(@NotNull final VirtualFile file,
+                                                                                                  final int _offset,
+                                                                                                  final int length) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final Ref<List<DartServerData.DartNavigationRegion>> resultRef = Ref.create();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return null;
+      return CompletableFuture.completedFuture(null);
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     LOG.debug("analysis_getNavigation(" + filePath + ")");
 
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
+    final DartRequestCoalescer.Key key = createRequestKey("analysis_getNavigation", file, offset, length);
+    return submitCached(key, future -> server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
       @Override
       public void computedNavigation(final List<NavigationRegion> regions) {
         final List<DartServerData.DartNavigationRegion> dartRegions = new ArrayList<>(regions.size());
@@ -976,8 +1235,7 @@ public class DartAnalysisServerService implements Disposable {
           }
         }
 
-        resultRef.set(dartRegions);
-        latch.countDown();
+        future.complete(dartRegions);
       }
 
       @Override
@@ -989,48 +1247,47 @@ public class DartAnalysisServerService implements Disposable {
           logError("analysis_getNavigation()", filePath, error);
         }
 
-        latch.countDown();
+        future.complete(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    }));
+  }
 
-    if (latch.getCount() > 0) {
-      LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
+  @NotNull
+  public List<SourceChange> edit_getAssists(@NotNull final VirtualFile file, final int _offset, final int _length) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return Lists.newArrayList();
     }
 
-    return resultRef.get();
+    final List<SourceChange> results =
+      awaitForFutureCheckingCanceled(server, edit_getAssistsAsync(file, _offset, _length), GET_ASSISTS_TIMEOUT);
+    return results != null ? new ArrayList<>(results) : Lists.newArrayList();
   }
 
   @NotNull
-  public List<SourceChange> edit_getAssists(@NotNull final VirtualFile file, final int _offset, final int _length) {
+  public CompletableFuture<List<SourceChange>> edit_getAssistsAsync(@NotNull final VirtualFile file, final int _offset, final int _length) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final List<SourceChange> results = Lists.newArrayList();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return results;
+      return CompletableFuture.completedFuture(Collections.emptyList());
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
     final int length = getOriginalOffset(file, _offset + _length) - offset;
-    server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
+    final DartRequestCoalescer.Key key = createRequestKey("edit_getAssists", file, offset, length);
+    return submitCached(key, future -> server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
       @Override
       public void computedSourceChanges(List<SourceChange> sourceChanges) {
-        results.addAll(sourceChanges);
-        latch.countDown();
+        future.complete(sourceChanges);
       }
 
       @Override
       public void onError(final RequestError error) {
         logError("edit_getAssists()", filePath, error);
-        latch.countDown();
+        future.complete(Collections.emptyList());
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
-    return results;
+    }));
   }
 
   public boolean edit_isPostfixCompletionApplicable(VirtualFile file, int _offset, String key) {
@@ -1159,34 +1416,48 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   /**
-   * If server responds in less than {@code GET_FIXES_TIMEOUT} then this method can be considered synchronous: when exiting this method
-   * {@code consumer} is already notified. Otherwise this method is async.
+   * If server responds in less than {@code GET_FIXES_TIMEOUT} then {@code consumer} is notified before exiting this method. Otherwise
+   * it's not notified at all, and the fixes received later are returned to the next identical request without asking the server again.
    */
   public void askForFixesAndWaitABitIfReceivedQuickly(@NotNull final VirtualFile file,
                                                       final int _offset,
                                                       @NotNull final Consumer<List<AnalysisErrorFixes>> consumer) {
+    final AnalysisServer server = myServer;
+    if (server == null) return;
+
+    // the future returned by DartRequestCoalescer is cancelled on timeout, so that it keeps the late fixes
+    final List<AnalysisErrorFixes> fixes = awaitForFutureCheckingCanceled(server, edit_getFixesAsync(file, _offset), GET_FIXES_TIMEOUT);
+    if (fixes != null) {
+      consumer.consume(fixes);
+    }
+  }
+
+  /**
+   * The future is completed with {@code null} if the server failed to compute fixes.
+   */
+  @NotNull
+  public CompletableFuture<List<AnalysisErrorFixes>> edit_getFixesAsync(@NotNull final VirtualFile file, final int _offset) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
 
     final AnalysisServer server = myServer;
-    if (server == null) return;
+    if (server == null) {
+      return CompletableFuture.completedFuture(null);
+    }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.edit_getFixes(filePath, offset, new GetFixesConsumer() {
+    final DartRequestCoalescer.Key key = createRequestKey("edit_getFixes", file, offset);
+    return submitCached(key, future -> server.edit_getFixes(filePath, offset, new GetFixesConsumer() {
       @Override
       public void computedFixes(final List<AnalysisErrorFixes> fixes) {
-        consumer.consume(fixes);
-        latch.countDown();
+        future.complete(fixes);
       }
 
       @Override
       public void onError(final RequestError error) {
         logError("edit_getFixes()", filePath, error);
-        latch.countDown();
+        future.complete(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT);
+    }));
   }
 
   public void search_findElementReferences(@NotNull final VirtualFile file,
@@ -1251,62 +1522,81 @@ public class DartAnalysisServerService implements Disposable {
 
   @NotNull
   public List<TypeHierarchyItem> search_getTypeHierarchy(@NotNull final VirtualFile file, final int _offset, final boolean superOnly) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return Lists.newArrayList();
+    }
+
+    final List<TypeHierarchyItem> results =
+      awaitForFutureCheckingCanceled(server, search_getTypeHierarchyAsync(file, _offset, superOnly), GET_TYPE_HIERARCHY_TIMEOUT);
+    return results != null ? new ArrayList<>(results) : Lists.newArrayList();
+  }
+
+  @NotNull
+  public CompletableFuture<List<TypeHierarchyItem>> search_getTypeHierarchyAsync(@NotNull final VirtualFile file,
+                                                                                  final int _offset,
+                                                                                  final boolean superOnly) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final List<TypeHierarchyItem> results = Lists.newArrayList();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return results;
+      return CompletableFuture.completedFuture(Collections.emptyList());
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.search_getTypeHierarchy(filePath, offset, superOnly, new GetTypeHierarchyConsumer() {
-      @Override
-      public void computedHierarchy(List<TypeHierarchyItem> hierarchyItems) {
-        results.addAll(hierarchyItems);
-        latch.countDown();
-      }
+    final DartRequestCoalescer.Key key = createRequestKey("search_getTypeHierarchy", file, offset, superOnly);
+    return myRequestCoalescer.submit(key, future -> {
+      server.search_getTypeHierarchy(filePath, offset, superOnly, new GetTypeHierarchyConsumer() {
+        @Override
+        public void computedHierarchy(List<TypeHierarchyItem> hierarchyItems) {
+          future.complete(hierarchyItems);
+        }
 
-      @Override
-      public void onError(RequestError error) {
-        logError("search_getTypeHierarchy()", filePath, error);
-        latch.countDown();
-      }
+        @Override
+        public void onError(RequestError error) {
+          logError("search_getTypeHierarchy()", filePath, error);
+          future.complete(Collections.emptyList());
+        }
+      });
     });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT);
-    return results;
   }
 
   @Nullable
   public String completion_getSuggestions(@NotNull final VirtualFile file, final int _offset) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return null;
+    }
+
+    return awaitForFutureCheckingCanceled(server, completion_getSuggestionsAsync(file, _offset), GET_SUGGESTIONS_TIMEOUT);
+  }
+
+  /**
+   * The future is completed with the completion id, or with {@code null} if the server failed to start completion.
+   * Completion requests are never coalesced: results are sent in notifications that are bound to a single completion id.
+   */
+  @NotNull
+  public CompletableFuture<String> completion_getSuggestionsAsync(@NotNull final VirtualFile file, final int _offset) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final Ref<String> resultRef = new Ref<>();
 
     final AnalysisServer server = myServer;
     if (server == null) {
-      return null;
+      return CompletableFuture.completedFuture(null);
     }
 
-    final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.completion_getSuggestions(filePath, offset, new GetSuggestionsConsumer() {
+    return myRequestCoalescer.submit(null, future -> server.completion_getSuggestions(filePath, offset, new GetSuggestionsConsumer() {
       @Override
       public void computedCompletionId(@NotNull final String completionId) {
-        resultRef.set(completionId);
-        latch.countDown();
+        future.complete(completionId);
       }
 
       @Override
       public void onError(@NotNull final RequestError error) {
         // Not a problem. Happens if a file is outside of the project, or server is just not ready yet.
-        latch.countDown();
+        future.complete(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
-    return resultRef.get();
+    }));
   }
 
   @Nullable
@@ -1314,42 +1604,57 @@ public class DartAnalysisServerService implements Disposable {
                                   final int _selectionOffset,
                                   final int _selectionLength,
                                   final int lineLength) {
-    final String filePath = FileUtil.toSystemDependentName(file.getPath());
-    final Ref<FormatResult> resultRef = new Ref<>();
-
     final AnalysisServer server = myServer;
     if (server == null) return null;
 
-    final CountDownLatch latch = new CountDownLatch(1);
-    final int selectionOffset = getOriginalOffset(file, _selectionOffset);
-    final int selectionLength = getOriginalOffset(file, _selectionOffset + _selectionLength) - selectionOffset;
-    server.edit_format(filePath, selectionOffset, selectionLength, lineLength, new FormatConsumer() {
-      @Override
-      public void computedFormat(final List<SourceEdit> edits, final int selectionOffset, final int selectionLength) {
-        resultRef.set(new FormatResult(edits, selectionOffset, selectionLength));
-        latch.countDown();
-      }
+    final CompletableFuture<FormatResult> future = edit_formatAsync(file, _selectionOffset, _selectionLength, lineLength);
+    final FormatResult result = awaitForFutureCheckingCanceled(server, future, EDIT_FORMAT_TIMEOUT);
 
-      @Override
-      public void onError(final RequestError error) {
-        if (RequestErrorCode.FORMAT_WITH_ERRORS.equals(error.getCode()) || RequestErrorCode.FORMAT_INVALID_FILE.equals(error.getCode())) {
-          LOG.info(getShortErrorMessage("edit_format()", filePath, error));
-        }
-        else {
-          logError("edit_format()", filePath, error);
-        }
+    if (!future.isDone() || future.isCancelled()) {
+      LOG.info("edit_format() took too long for file " + file.getPath());
+    }
 
-        latch.countDown();
-      }
-    });
+    return result;
+  }
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT);
+  /**
+   * The future is completed with {@code null} if the server failed to format the file.
+   */
+  @NotNull
+  public CompletableFuture<FormatResult> edit_formatAsync(@NotNull final VirtualFile file,
+                                                          final int _selectionOffset,
+                                                          final int _selectionLength,
+                                                          final int lineLength) {
+    final String filePath = FileUtil.toSystemDependentName(file.getPath());
 
-    if (latch.getCount() > 0) {
-      LOG.info("edit_format() took too long for file " + filePath);
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return CompletableFuture.completedFuture(null);
     }
 
-    return resultRef.get();
+    final int selectionOffset = getOriginalOffset(file, _selectionOffset);
+    final int selectionLength = getOriginalOffset(file, _selectionOffset + _selectionLength) - selectionOffset;
+    final DartRequestCoalescer.Key key = createRequestKey("edit_format", file, selectionOffset, selectionLength, lineLength);
+    return myRequestCoalescer.submit(key, future -> {
+      server.edit_format(filePath, selectionOffset, selectionLength, lineLength, new FormatConsumer() {
+        @Override
+        public void computedFormat(final List<SourceEdit> edits, final int selectionOffset, final int selectionLength) {
+          future.complete(new FormatResult(edits, selectionOffset, selectionLength));
+        }
+
+        @Override
+        public void onError(final RequestError error) {
+          if (RequestErrorCode.FORMAT_WITH_ERRORS.equals(error.getCode()) || RequestErrorCode.FORMAT_INVALID_FILE.equals(error.getCode())) {
+            LOG.info(getShortErrorMessage("edit_format()", filePath, error));
+          }
+          else {
+            logError("edit_format()", filePath, error);
+          }
+
+          future.complete(null);
+        }
+      });
+    });
   }
 
   @Nullable
@@ -1650,53 +1955,61 @@ public class DartAnalysisServerService implements Disposable {
 
   @Nullable
   public String execution_mapUri(@NotNull final String _id, @Nullable final String _filePath, @Nullable final String _uri) {
+    final AnalysisServer server = myServer;
+    if (server == null) return null;
+
+    final CompletableFuture<String> future = execution_mapUriAsync(_id, _filePath, _uri);
+    final String result = awaitForFutureCheckingCanceled(server, future, EXECUTION_MAP_URI_TIMEOUT);
+
+    if (future.isCancelled()) {
+      LOG.info("execution_mapUri() took too long for contextID " + _id + " and file or uri " + (_filePath != null ? _filePath : _uri));
+    }
+
+    return result;
+  }
+
+  /**
+   * Doesn't wait for the server response, so that many URIs can be mapped concurrently.
+   * The future is completed with the system-independent path if {@code _uri} is given, with the URI if {@code _filePath} is given,
+   * or with {@code null} if the server failed to map it.
+   */
+  @NotNull
+  public CompletableFuture<String> execution_mapUriAsync(@NotNull final String _id,
+                                                         @Nullable final String _filePath,
+                                                         @Nullable final String _uri) {
     // From the Dart Analysis Server Spec:
     // Exactly one of the file and uri fields must be provided. If both fields are provided, then an error of type INVALID_PARAMETER will
     // be generated. Similarly, if neither field is provided, then an error of type INVALID_PARAMETER will be generated.
     if ((_filePath == null && _uri == null) || (_filePath != null && _uri != null)) {
       LOG.error("One of _filePath and _uri must be non-null.");
-      return null;
+      return CompletableFuture.completedFuture(null);
     }
 
     final String filePath = _filePath != null ? FileUtil.toSystemDependentName(_filePath) : null;
-    final Ref<String> resultRef = new Ref<>();
 
     final AnalysisServer server = myServer;
-    if (server == null) return null;
+    if (server == null) {
+      return CompletableFuture.completedFuture(null);
+    }
 
-    final CountDownLatch latch = new CountDownLatch(1);
-    server.execution_mapUri(_id, filePath, _uri, new MapUriConsumer() {
+    return myRequestCoalescer.submit(null, future -> server.execution_mapUri(_id, filePath, _uri, new MapUriConsumer() {
       @Override
       public void computedFileOrUri(final String file, final String uri) {
         if (uri != null) {
-          resultRef.set(uri);
+          future.complete(uri);
         }
         else {
-          resultRef.set(file);
+          future.complete(_uri != null && file != null ? FileUtil.toSystemIndependentName(file) : file);
         }
-        latch.countDown();
       }
 
       @Override
       public void onError(final RequestError error) {
         LOG.warn(
           "execution_mapUri(" + _id + ", " + filePath + ", " + _uri + ") returned error " + error.getCode() + ": " + error.getMessage());
-        latch.countDown();
+        future.complete(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT);
-
-    if (latch.getCount() > 0) {
-      LOG.info("execution_mapUri() took too long for contextID " + _id + " and file or uri " + (filePath != null ? filePath : _uri));
-      return null;
-    }
-
-    if (_uri != null && !resultRef.isNull()) {
-      return FileUtil.toSystemIndependentName(resultRef.get());
-    }
-
-    return resultRef.get();
+    }));
   }
 
   private void startServer(@NotNull final DartSdk sdk) {
@@ -1731,12 +2044,14 @@ public class DartAnalysisServerService implements Disposable {
         return;
       }
 
-      final DebugPrintStream debugStream = str -> {
+      final DebugPrintStream debugLogStream = str -> {
         str = str.substring(0, Math.min(str.length(), MAX_DEBUG_LOG_LINE_LENGTH));
         synchronized (myDebugLog) {
           myDebugLog.add(str);
         }
       };
+      mySessionRecorder = createSessionRecorder(debugLogStream);
+      final DebugPrintStream debugStream = mySessionRecorder != null ? mySessionRecorder : debugLogStream;
 
       String vmArgsRaw;
       try {
@@ -1827,6 +2142,8 @@ public class DartAnalysisServerService implements Disposable {
         // This must be done after myServer is set, and should be done each time the server starts.
         registerPostfixCompletionTemplates();
 
+        scheduleProtocolMetricsLogging();
+
         if (!ourIntentionsRegistered) {
           ourIntentionsRegistered = true;
           registerQuickAssistIntentions();
@@ -1872,6 +2189,24 @@ public class DartAnalysisServerService implements Disposable {
     serverReadyForRequest(myProject);
   }
 
+  @Nullable
+  private static RecordingDebugPrintStream createSessionRecorder(@NotNull final DebugPrintStream delegate) {
+    final String dirPath = System.getProperty(RECORD_SESSION_DIR_PROPERTY);
+    if (StringUtil.isEmptyOrSpaces(dirPath)) return null;
+
+    final File file = new File(dirPath, "analysis-server-session-" + System.currentTimeMillis() + ".log");
+    try {
+      FileUtil.createParentDirs(file);
+      final RecordingDebugPrintStream recorder = new RecordingDebugPrintStream(file, delegate);
+      LOG.info("Recording Dart Analysis Server session to " + file.getPath());
+      return recorder;
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to record Dart Analysis Server session to " + file.getPath(), e);
+      return null;
+    }
+  }
+
   void stopServer() {
     synchronized (myLock) {
       if (myServer != null) {
@@ -1898,11 +2233,21 @@ public class DartAnalysisServerService implements Disposable {
 
       stopShowingServerProgress();
       myUpdateFilesAlarm.cancelAllRequests();
+      myLogProtocolMetricsAlarm.cancelAllRequests();
+
+      if (mySessionRecorder != null) {
+        mySessionRecorder.close();
+        mySessionRecorder = null;
+      }
 
       myServerSocket = null;
       myServer = null;
       mySdkHome = null;
       myFilePathWithOverlaidContentToTimestamp.clear();
+      myContentOverlayJournal.clear();
+      myRequestCoalescer.clear();
+      myResponseCache.clear();
+      incModificationCount(null);
       myVisibleFiles.clear();
       myChangedDocuments.clear();
       myServerData.clearData();
@@ -1991,6 +2336,77 @@ public class DartAnalysisServerService implements Disposable {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  /**
+   * Like {@link DartRequestCoalescer#submit} but first looks for the response in {@link DartResponseCache}, and caches the response
+   * when it is received.
+   */
+  @NotNull
+  private <T> CompletableFuture<T> submitCached(@NotNull final DartRequestCoalescer.Key key,
+                                                @NotNull final Consumer<CompletableFuture<T>> sender) {
+    final T cached = myResponseCache.get(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    final int generation = myResponseCache.getGeneration(key);
+    final CompletableFuture<T> future = myRequestCoalescer.submit(key, sender);
+    future.thenAccept(response -> {
+      if (response != null) {
+        myResponseCache.put(key, generation, response);
+      }
+    });
+    return future;
+  }
+
+  @NotNull
+  private DartRequestCoalescer.Key createRequestKey(@NotNull final String method,
+                                                    @NotNull final VirtualFile file,
+                                                    @NotNull final Object... args) {
+    final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    final long stamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+    // any content change or errors update may affect the response, e.g. fixes depend on the errors of the file itself
+    return new DartRequestCoalescer.Key(method, file.getPath(), stamp, getModificationCount(), args);
+  }
+
+  /**
+   * Waits for the future in the same way as {@link #awaitForLatchCheckingCanceled} waits for a latch. If the result is not available
+   * in time then the future is cancelled, the late result will be kept for the next identical request (see {@link DartRequestCoalescer}).
+   *
+   * @return the result or {@code null} if it is not available
+   */
+  @Nullable
+  private static <T> T awaitForFutureCheckingCanceled(@NotNull final AnalysisServer server,
+                                                      @NotNull final CompletableFuture<T> future,
+                                                      long timeoutInMillis) {
+    if (ApplicationManager.getApplication().isUnitTestMode()) {
+      timeoutInMillis *= TESTS_TIMEOUT_COEFF;
+    }
+
+    try {
+      long startTime = System.currentTimeMillis();
+      while (true) {
+        ProgressManager.checkCanceled();
+        if (!server.isSocketOpen()) {
+          return null;
+        }
+        if (timeoutInMillis != -1 && System.currentTimeMillis() > startTime + timeoutInMillis) {
+          return null;
+        }
+        try {
+          return Uninterruptibles.getUninterruptibly(future, CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ignored) {
+        }
+        catch (ExecutionException | CancellationException e) {
+          return null;
+        }
+      }
+    }
+    finally {
+      future.cancel(false);
+    }
+  }
+
   private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
                                                        @NotNull final CountDownLatch latch,
                                                        long timeoutInMillis) {
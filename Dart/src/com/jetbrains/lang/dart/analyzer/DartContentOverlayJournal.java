@@ -0,0 +1,173 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.registry.Registry;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AddContentOverlay;
+import org.dartlang.analysis.server.protocol.ChangeContentOverlay;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects document edits made after the overlaid content of a file has been sent to the Analysis Server,
+ * so that the next update can be sent as a {@link ChangeContentOverlay} instead of the whole document text.
+ * Full {@link AddContentOverlay} is sent if there's no valid journal for the file (the file has just become overlaid,
+ * some document change was missed, the server rejected a change) or if the number of collected edits is too big.
+ * <p/>
+ * All methods must be called under {@link DartAnalysisServerService} lock.
+ */
+class DartContentOverlayJournal {
+
+  private static final Logger LOG = Logger.getInstance(DartContentOverlayJournal.class.getName());
+
+  private static final String INCREMENTAL_OVERLAYS_KEY = "dart.server.incremental.overlays";
+  private static final String MAX_EDITS_KEY = "dart.server.incremental.overlays.max.edits";
+  private static final int DEFAULT_MAX_EDITS = 100;
+
+  // system-independent file path -> edits made since the last content sent to the server
+  private final Map<String, FileJournal> myJournals = new THashMap<>();
+
+  private final AtomicLong myUpdateCount = new AtomicLong();
+  private final AtomicLong myFullOverlayCount = new AtomicLong();
+  private final AtomicLong myChangeOverlayCount = new AtomicLong();
+  private final AtomicLong mySentBytes = new AtomicLong();
+  private final AtomicLong myFullTextBytes = new AtomicLong();
+
+  private static class FileJournal {
+    // modification stamp of the document state that the server is (or will be) aware of after all myEdits are applied
+    private long myExpectedStamp;
+    @NotNull private final List<SourceEdit> myEdits = new ArrayList<>();
+    private int myEditsLength;
+    private boolean myValid = true;
+
+    private FileJournal(final long stamp) {
+      myExpectedStamp = stamp;
+    }
+  }
+
+  static boolean isEnabled() {
+    return Registry.is(INCREMENTAL_OVERLAYS_KEY, true);
+  }
+
+  private static int getMaxEdits() {
+    return Registry.intValue(MAX_EDITS_KEY, DEFAULT_MAX_EDITS);
+  }
+
+  /**
+   * Must be called from {@link com.intellij.openapi.editor.event.DocumentListener#documentChanged(DocumentEvent)}
+   * for each document that has overlaid content on the server side.
+   */
+  void documentChanged(@NotNull final String filePath, @NotNull final DocumentEvent e) {
+    final FileJournal journal = myJournals.get(filePath);
+    if (journal == null || !journal.myValid) return;
+
+    if (journal.myExpectedStamp != e.getOldTimeStamp() || journal.myEdits.size() >= getMaxEdits()) {
+      // some change was missed, or there are so many changes that it's cheaper to send the whole text
+      journal.myValid = false;
+      journal.myEdits.clear();
+      return;
+    }
+
+    journal.myExpectedStamp = e.getDocument().getModificationStamp();
+
+    final String newText = e.getNewFragment().toString();
+    final int lastIndex = journal.myEdits.size() - 1;
+    final SourceEdit last = lastIndex >= 0 ? journal.myEdits.get(lastIndex) : null;
+    if (last != null && e.getOldLength() == 0 && last.getOffset() + last.getReplacement().length() == e.getOffset()) {
+      // typing: merge consequent insertions into one edit
+      journal.myEdits.set(lastIndex, new SourceEdit(last.getOffset(), last.getLength(), last.getReplacement() + newText, null));
+    }
+    else {
+      journal.myEdits.add(new SourceEdit(e.getOffset(), e.getOldLength(), newText, null));
+    }
+    journal.myEditsLength += newText.length();
+  }
+
+  /**
+   * Returns either {@link ChangeContentOverlay} with the edits collected since the previous call,
+   * or {@link AddContentOverlay} with the whole document text. In both cases the journal is restarted from the current document state.
+   */
+  @NotNull
+  Object createOverlay(@NotNull final String filePath, @NotNull final Document document) {
+    final FileJournal journal = myJournals.get(filePath);
+    final long stamp = document.getModificationStamp();
+    myJournals.put(filePath, new FileJournal(stamp));
+
+    final int textLength = document.getTextLength();
+    myUpdateCount.incrementAndGet();
+    myFullTextBytes.addAndGet(textLength);
+
+    if (isEnabled() && journal != null && journal.myValid && journal.myExpectedStamp == stamp && !journal.myEdits.isEmpty()) {
+      // offset, length and JSON syntax of each edit are not free as well
+      final int bytes = journal.myEditsLength + journal.myEdits.size() * 40;
+      if (bytes < textLength) {
+        myChangeOverlayCount.incrementAndGet();
+        mySentBytes.addAndGet(bytes);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("ChangeContentOverlay for " + filePath + ": " + journal.myEdits.size() + " edit(s), ~" + bytes + " bytes");
+        }
+        return new ChangeContentOverlay(new ArrayList<>(journal.myEdits));
+      }
+    }
+
+    myFullOverlayCount.incrementAndGet();
+    mySentBytes.addAndGet(textLength);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("AddContentOverlay for " + filePath + ": ~" + textLength + " bytes");
+    }
+    return new AddContentOverlay(document.getText());
+  }
+
+  void remove(@NotNull final String filePath) {
+    myJournals.remove(filePath);
+  }
+
+  /**
+   * Forces full {@link AddContentOverlay} for all files on the next update. Called when the server reports that it failed to apply some
+   * {@link ChangeContentOverlay}, because it is not known which file was the culprit.
+   */
+  void invalidateAll() {
+    for (FileJournal journal : myJournals.values()) {
+      journal.myValid = false;
+      journal.myEdits.clear();
+    }
+  }
+
+  void clear() {
+    myJournals.clear();
+  }
+
+  long getUpdateCount() {
+    return myUpdateCount.get();
+  }
+
+  long getFullOverlayCount() {
+    return myFullOverlayCount.get();
+  }
+
+  long getChangeOverlayCount() {
+    return myChangeOverlayCount.get();
+  }
+
+  /**
+   * Approximate number of bytes sent in overlays, counted as the number of characters of the sent text.
+   */
+  long getSentBytes() {
+    return mySentBytes.get();
+  }
+
+  /**
+   * Approximate number of bytes that would have been sent if each update was a full {@link AddContentOverlay}.
+   */
+  long getFullTextBytes() {
+    return myFullTextBytes.get();
+  }
+}
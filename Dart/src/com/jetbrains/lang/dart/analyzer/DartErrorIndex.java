@@ -0,0 +1,244 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.SearchScope;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of files that have errors, warnings or hints, organized as a tree of directories. Each directory node keeps the number
+ * of problems of each severity in its subtree, so scope and directory queries visit only the directories that contain problems,
+ * not all analyzed files. {@link VirtualFile} of each indexed file is cached, so that it is not looked up on each query.
+ * <p/>
+ * Counts reflect the last {@code analysis.errors} notification for each file. Errors deleted by typing
+ * ({@link DartServerData#onDocumentChanged}) are not taken into account until the server sends updated errors.
+ */
+class DartErrorIndex {
+
+  private static final int ERROR = 0;
+  private static final int WARNING = 1;
+  private static final int INFO = 2;
+
+  private static class Node {
+    @Nullable private final Node myParent;
+    @NotNull private final String myName;
+    @NotNull private final int[] myCounts = new int[3];
+    @Nullable private Map<String, Node> myChildren;
+    @Nullable private Map<String, FileEntry> myFiles;
+
+    private Node(@Nullable final Node parent, @NotNull final String name) {
+      myParent = parent;
+      myName = name;
+    }
+
+    private boolean isEmpty() {
+      return myCounts[ERROR] == 0 && myCounts[WARNING] == 0 && myCounts[INFO] == 0;
+    }
+  }
+
+  private static class FileEntry {
+    @NotNull private final String myPath;
+    @NotNull private final int[] myCounts;
+    @Nullable private VirtualFile myFile;
+
+    private FileEntry(@NotNull final String path, @NotNull final int[] counts) {
+      myPath = path;
+      myCounts = counts;
+    }
+  }
+
+  @NotNull private final Node myRoot = new Node(null, "");
+
+  static int getSeverityIndex(@NotNull final String severity) {
+    if (AnalysisErrorSeverity.ERROR.equals(severity)) return ERROR;
+    if (AnalysisErrorSeverity.WARNING.equals(severity)) return WARNING;
+    return INFO;
+  }
+
+  /**
+   * @param filePath system-independent path
+   * @param counts   number of problems in the file by severity, indexed by {@link #getSeverityIndex(String)}
+   */
+  synchronized void setCounts(@NotNull final String filePath, @NotNull final int[] counts) {
+    final boolean empty = counts[ERROR] == 0 && counts[WARNING] == 0 && counts[INFO] == 0;
+    final int slash = filePath.lastIndexOf('/');
+    final String fileName = filePath.substring(slash + 1);
+
+    final Node dir = empty ? findDirectory(filePath, slash) : getOrCreateDirectory(filePath, slash);
+    if (dir == null) return;
+
+    final FileEntry oldEntry = dir.myFiles == null ? null : dir.myFiles.get(fileName);
+    if (oldEntry != null) {
+      addCounts(dir, oldEntry.myCounts, -1);
+    }
+
+    if (empty) {
+      if (oldEntry != null) {
+        //noinspection ConstantConditions
+        dir.myFiles.remove(fileName);
+        removeEmptyDirectories(dir);
+      }
+      return;
+    }
+
+    final FileEntry newEntry = new FileEntry(filePath, counts.clone());
+    if (oldEntry != null) {
+      newEntry.myFile = oldEntry.myFile;
+    }
+    if (dir.myFiles == null) {
+      dir.myFiles = new THashMap<>();
+    }
+    dir.myFiles.put(fileName, newEntry);
+    addCounts(dir, counts, 1);
+  }
+
+  synchronized void remove(@NotNull final String filePath) {
+    setCounts(filePath, new int[3]);
+  }
+
+  synchronized void clear() {
+    myRoot.myChildren = null;
+    myRoot.myFiles = null;
+    myRoot.myCounts[ERROR] = myRoot.myCounts[WARNING] = myRoot.myCounts[INFO] = 0;
+  }
+
+  /**
+   * @return system-independent paths of the files with problems that are contained in the {@code scope}
+   */
+  @NotNull
+  synchronized List<String> getFilePaths(@NotNull final SearchScope scope) {
+    final List<String> result = new ArrayList<>();
+    collectFilePaths(myRoot, scope, result);
+    return result;
+  }
+
+  /**
+   * @return system-independent paths of the files with problems in the directory and its subdirectories
+   */
+  @NotNull
+  synchronized List<String> getFilePaths(@NotNull final String dirPath) {
+    final List<String> result = new ArrayList<>();
+    final Node dir = findDirectory(StringUtil.trimEnd(dirPath, "/"));
+    if (dir != null) {
+      collectFilePaths(dir, null, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return number of problems of the given severity in the directory and its subdirectories
+   */
+  synchronized int getCount(@NotNull final String dirPath, @NotNull final String severity) {
+    final Node dir = findDirectory(StringUtil.trimEnd(dirPath, "/"));
+    return dir == null ? 0 : dir.myCounts[getSeverityIndex(severity)];
+  }
+
+  private static void collectFilePaths(@NotNull final Node node, @Nullable final SearchScope scope, @NotNull final List<String> result) {
+    if (node.myFiles != null) {
+      for (FileEntry entry : node.myFiles.values()) {
+        if (scope == null) {
+          result.add(entry.myPath);
+          continue;
+        }
+
+        final VirtualFile file = getFile(entry);
+        if (file != null && scope.contains(file)) {
+          result.add(entry.myPath);
+        }
+      }
+    }
+
+    if (node.myChildren != null) {
+      for (Node child : node.myChildren.values()) {
+        if (!child.isEmpty()) {
+          collectFilePaths(child, scope, result);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private static VirtualFile getFile(@NotNull final FileEntry entry) {
+    VirtualFile file = entry.myFile;
+    // a file might have been deleted or renamed since it was cached
+    if (file == null || !file.isValid() || !entry.myPath.equals(file.getPath())) {
+      file = LocalFileSystem.getInstance().findFileByPath(entry.myPath);
+      entry.myFile = file;
+    }
+    return file;
+  }
+
+  private static void addCounts(@NotNull Node node, @NotNull final int[] counts, final int sign) {
+    for (Node n = node; n != null; n = n.myParent) {
+      n.myCounts[ERROR] += sign * counts[ERROR];
+      n.myCounts[WARNING] += sign * counts[WARNING];
+      n.myCounts[INFO] += sign * counts[INFO];
+    }
+  }
+
+  private static void removeEmptyDirectories(@NotNull final Node node) {
+    Node n = node;
+    while (n.myParent != null && n.isEmpty() &&
+           (n.myFiles == null || n.myFiles.isEmpty()) &&
+           (n.myChildren == null || n.myChildren.isEmpty())) {
+      //noinspection ConstantConditions
+      n.myParent.myChildren.remove(n.myName);
+      n = n.myParent;
+    }
+  }
+
+  @Nullable
+  private Node findDirectory(@NotNull final String dirPath) {
+    return findDirectory(dirPath, dirPath.length());
+  }
+
+  @Nullable
+  private Node findDirectory(@NotNull final String path, final int end) {
+    Node node = myRoot;
+    int start = 0;
+    while (start < end) {
+      int slash = path.indexOf('/', start);
+      if (slash < 0 || slash > end) slash = end;
+      if (slash > start) {
+        if (node.myChildren == null) return null;
+        node = node.myChildren.get(path.substring(start, slash));
+        if (node == null) return null;
+      }
+      start = slash + 1;
+    }
+    return node;
+  }
+
+  @NotNull
+  private Node getOrCreateDirectory(@NotNull final String path, final int end) {
+    Node node = myRoot;
+    int start = 0;
+    while (start < end) {
+      int slash = path.indexOf('/', start);
+      if (slash < 0 || slash > end) slash = end;
+      if (slash > start) {
+        final String name = path.substring(start, slash);
+        if (node.myChildren == null) {
+          node.myChildren = new THashMap<>();
+        }
+        Node child = node.myChildren.get(name);
+        if (child == null) {
+          child = new Node(node, name);
+          node.myChildren.put(name, child);
+        }
+        node = child;
+      }
+      start = slash + 1;
+    }
+    return node;
+  }
+}
@@ -0,0 +1,186 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.Outline;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Compares an {@code analysis.outline} tree with the previous outline of the same file. Nodes are matched by element kind and name; nodes
+ * with the same kind and name are matched in the order of their positions.
+ * <p/>
+ * Neither tree is modified: the previous outline may still be read by the UI, so the new outline replaces it as a whole, and the diff only
+ * tells which subtrees of the new outline differ from the previous one by more than offsets.
+ */
+final class DartOutlineDiff {
+  @NotNull private final List<Outline> myChangedOutlines = new SmartList<>();
+  private int myNodeCount;
+  private int myChangedNodeCount;
+
+  private DartOutlineDiff() {
+  }
+
+  @NotNull
+  static DartOutlineDiff compare(@Nullable final Outline oldOutline, @NotNull final Outline newOutline) {
+    final DartOutlineDiff diff = new DartOutlineDiff();
+    if (oldOutline != null && isSameNode(oldOutline, newOutline)) {
+      diff.compareNode(oldOutline, newOutline, false);
+    }
+    else {
+      diff.myChangedOutlines.add(newOutline);
+      diff.myNodeCount = countNodes(newOutline);
+      diff.myChangedNodeCount = diff.myNodeCount + (oldOutline != null ? countNodes(oldOutline) : 0);
+    }
+    return diff;
+  }
+
+  /**
+   * @return roots of the subtrees of the new outline that were added or whose presentation or children changed. Nested changed subtrees
+   * are not listed. Empty list means that only offsets changed.
+   */
+  @NotNull
+  List<Outline> getChangedOutlines() {
+    return myChangedOutlines;
+  }
+
+  /**
+   * @return number of nodes in the new outline
+   */
+  int getNodeCount() {
+    return myNodeCount;
+  }
+
+  /**
+   * @return number of added, removed and changed nodes; nodes whose offsets changed only are not counted
+   */
+  int getChangedNodeCount() {
+    return myChangedNodeCount;
+  }
+
+  private void compareNode(@NotNull final Outline oldNode, @NotNull final Outline newNode, final boolean insideChangedSubtree) {
+    myNodeCount++;
+    boolean changed = false;
+
+    if (!isSamePresentation(oldNode.getElement(), newNode.getElement())) {
+      changed = true;
+      myChangedNodeCount++;
+    }
+
+    final List<Outline> oldChildren = ContainerUtil.notNullize(oldNode.getChildren());
+    final List<Outline> newChildren = ContainerUtil.notNullize(newNode.getChildren());
+    final Outline[] matchedOldChildren = matchChildren(oldChildren, newChildren);
+
+    boolean childrenChanged = oldChildren.size() != newChildren.size();
+    final Set<Outline> keptChildren = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < newChildren.size(); i++) {
+      final Outline oldChild = matchedOldChildren[i];
+      if (oldChild == null) {
+        childrenChanged = true;
+        final int addedNodeCount = countNodes(newChildren.get(i));
+        myNodeCount += addedNodeCount;
+        myChangedNodeCount += addedNodeCount;
+      }
+      else {
+        keptChildren.add(oldChild);
+        if (i >= oldChildren.size() || oldChild != oldChildren.get(i)) {
+          childrenChanged = true;
+        }
+      }
+    }
+
+    for (Outline oldChild : oldChildren) {
+      if (!keptChildren.contains(oldChild)) {
+        childrenChanged = true;
+        myChangedNodeCount += countNodes(oldChild);
+      }
+    }
+
+    if (childrenChanged) {
+      changed = true;
+    }
+
+    if (changed && !insideChangedSubtree) {
+      myChangedOutlines.add(newNode);
+    }
+
+    for (int i = 0; i < newChildren.size(); i++) {
+      if (matchedOldChildren[i] != null) {
+        compareNode(matchedOldChildren[i], newChildren.get(i), changed || insideChangedSubtree);
+      }
+    }
+  }
+
+  /**
+   * @return array of the same size as {@code newChildren}, with matching old child or {@code null} for each new child
+   */
+  @NotNull
+  private static Outline[] matchChildren(@NotNull final List<Outline> oldChildren, @NotNull final List<Outline> newChildren) {
+    final Outline[] result = new Outline[newChildren.size()];
+
+    // the most common case: children are the same, only offsets changed
+    if (oldChildren.size() == newChildren.size()) {
+      boolean allMatch = true;
+      for (int i = 0; i < newChildren.size(); i++) {
+        if (!isSameNode(oldChildren.get(i), newChildren.get(i))) {
+          allMatch = false;
+          break;
+        }
+      }
+      if (allMatch) {
+        return oldChildren.toArray(result);
+      }
+    }
+
+    final Map<String, Deque<Outline>> keyToOldChildren = new THashMap<>();
+    for (Outline oldChild : oldChildren) {
+      keyToOldChildren.computeIfAbsent(getKey(oldChild), key -> new ArrayDeque<>()).add(oldChild);
+    }
+
+    for (int i = 0; i < newChildren.size(); i++) {
+      final Deque<Outline> candidates = keyToOldChildren.get(getKey(newChildren.get(i)));
+      result[i] = candidates != null ? candidates.poll() : null;
+    }
+
+    return result;
+  }
+
+  private static int countNodes(@NotNull final Outline outline) {
+    int count = 1;
+    final List<Outline> children = outline.getChildren();
+    if (children != null) {
+      for (Outline child : children) {
+        count += countNodes(child);
+      }
+    }
+    return count;
+  }
+
+  private static boolean isSameNode(@NotNull final Outline outline1, @NotNull final Outline outline2) {
+    final Element element1 = outline1.getElement();
+    final Element element2 = outline2.getElement();
+    return Objects.equals(element1.getKind(), element2.getKind()) && Objects.equals(element1.getName(), element2.getName());
+  }
+
+  @NotNull
+  private static String getKey(@NotNull final Outline outline) {
+    return outline.getElement().getKind() + ":" + outline.getElement().getName();
+  }
+
+  /**
+   * Location of the element is not compared, it changes whenever text is typed above the element.
+   */
+  private static boolean isSamePresentation(@NotNull final Element element1, @NotNull final Element element2) {
+    return Objects.equals(element1.getKind(), element2.getKind()) &&
+           Objects.equals(element1.getName(), element2.getName()) &&
+           element1.getFlags() == element2.getFlags() &&
+           Objects.equals(element1.getParameters(), element2.getParameters()) &&
+           Objects.equals(element1.getTypeParameters(), element2.getTypeParameters()) &&
+           Objects.equals(element1.getReturnType(), element2.getReturnType());
+  }
+}
@@ -0,0 +1,341 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact storage of the regions of one file received from the Analysis Server: parallel arrays of offsets, lengths and kinds (and optional
+ * payload objects), sorted by offset. Document changes are applied lazily: shifting of all regions after the edit point is a single update
+ * of a Fenwick tree of offset deltas, so an edit costs O(log n) plus the number of regions that actually contain the edit point.
+ * <p/>
+ * Regions touched by an edit are either deleted (marked as such, arrays are compacted when the view is built) or resized, see
+ * {@link #deleteTouched} and {@link #updateTouched}. Offsets of the deleted regions are kept monotonic so that binary search by offset
+ * works for all indices.
+ * <p/>
+ * Region objects returned by {@link #getView} are never changed: the view is an unmodifiable snapshot that is cached until the next change,
+ * and objects of the regions that haven't been moved or resized by the change are reused in the next view.
+ */
+class DartRegionTable {
+
+  interface RegionFactory<T> {
+    @NotNull
+    T createRegion(@NotNull DartRegionTable table, int index);
+  }
+
+  private int mySize;
+  @NotNull private final int[] myOffsets;
+  @NotNull private final int[] myLengths;
+  @Nullable private final int[] myKinds;
+  @Nullable private final Object[] myPayloads;
+
+  // Fenwick tree, prefix sum of myShifts at index i is the offset delta of the i-th region
+  @NotNull private final int[] myShifts;
+  @NotNull private final BitSet myDeleted = new BitSet();
+  private int myDeletedCount;
+  private int myMaxLength;
+
+  // region objects created by the factory, null for the regions that have been changed since the last view
+  @Nullable private Object[] myRegions;
+  // snapshot of myRegions, built on demand and cached until the next change
+  @Nullable private List<?> myView;
+
+  /**
+   * Arrays are owned by the table after this call. {@code kinds} and {@code payloads} are optional.
+   */
+  DartRegionTable(@NotNull final int[] offsets,
+                  @NotNull final int[] lengths,
+                  @Nullable final int[] kinds,
+                  @Nullable final Object[] payloads) {
+    final int size = offsets.length;
+    mySize = size;
+    final long[] sortKeys = new long[size];
+    boolean sorted = true;
+    for (int i = 0; i < size; i++) {
+      sortKeys[i] = ((long)offsets[i] << 32) | i;
+      if (i > 0 && offsets[i] < offsets[i - 1]) sorted = false;
+      myMaxLength = Math.max(myMaxLength, lengths[i]);
+    }
+
+    if (sorted) {
+      myOffsets = offsets;
+      myLengths = lengths;
+      myKinds = kinds;
+      myPayloads = payloads;
+    }
+    else {
+      Arrays.sort(sortKeys);
+      myOffsets = new int[size];
+      myLengths = new int[size];
+      myKinds = kinds == null ? null : new int[size];
+      myPayloads = payloads == null ? null : new Object[size];
+      for (int i = 0; i < size; i++) {
+        final int index = (int)sortKeys[i];
+        myOffsets[i] = offsets[index];
+        myLengths[i] = lengths[index];
+        if (myKinds != null) myKinds[i] = kinds[index];
+        if (myPayloads != null) myPayloads[i] = payloads[index];
+      }
+    }
+
+    myShifts = new int[size + 1];
+  }
+
+  /**
+   * Number of regions including deleted ones that haven't been compacted yet; valid indices are {@code 0 <= i < size()}.
+   */
+  synchronized int size() {
+    return mySize;
+  }
+
+  synchronized int getLiveCount() {
+    return mySize - myDeletedCount;
+  }
+
+  synchronized boolean isDeleted(final int index) {
+    return myDeleted.get(index);
+  }
+
+  synchronized int getOffset(final int index) {
+    return myOffsets[index] + getShift(index);
+  }
+
+  synchronized int getLength(final int index) {
+    return myLengths[index];
+  }
+
+  synchronized int getKind(final int index) {
+    return myKinds == null ? 0 : myKinds[index];
+  }
+
+  @Nullable
+  synchronized Object getPayload(final int index) {
+    return myPayloads == null ? null : myPayloads[index];
+  }
+
+  /**
+   * Returns not deleted regions sorted by offset. The list is cached until the table is changed, the factory is called only for the regions
+   * that are new or have been moved or resized since the previous call. The same factory must be used for all calls.
+   */
+  @NotNull
+  synchronized <T> List<T> getView(@NotNull final RegionFactory<T> factory) {
+    if (myView == null) {
+      compact();
+      if (mySize == 0) {
+        myView = Collections.emptyList();
+      }
+      else {
+        if (myRegions == null) {
+          myRegions = new Object[mySize];
+        }
+        for (int i = 0; i < mySize; i++) {
+          if (myRegions[i] == null) {
+            myRegions[i] = factory.createRegion(this, i);
+          }
+        }
+        myView = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(myRegions, mySize)));
+      }
+    }
+
+    //noinspection unchecked
+    return (List<T>)myView;
+  }
+
+  /**
+   * Shifts all regions that start at or after {@code offset}. If {@code delta} is negative, regions that start inside the deleted text are
+   * moved to its start. Lengths are not changed.
+   */
+  synchronized void shift(final int offset, final int delta) {
+    if (delta == 0 || mySize == 0) return;
+    myView = null;
+
+    if (delta > 0) {
+      addShift(findFirstIndexAtOrAfter(offset), delta);
+    }
+    else {
+      final int rightOffset = offset - delta;
+      final int firstShifted = findFirstIndexAtOrAfter(rightOffset);
+      for (int i = findFirstIndexAtOrAfter(offset); i < firstShifted; i++) {
+        collapse(i, getOffset(i), offset);
+      }
+      addShift(firstShifted, delta);
+    }
+  }
+
+  /**
+   * Applies a document change: shifts untouched regions and deletes touched ones.
+   *
+   * @return {@code true} if at least one region has been deleted
+   */
+  synchronized boolean deleteTouched(final int eventOffset, final int oldLength, final int newLength) {
+    return applyChange(eventOffset, newLength - oldLength, true);
+  }
+
+  /**
+   * Applies a document change: shifts untouched regions, extends or shrinks touched ones if possible, deletes the rest of touched regions.
+   */
+  synchronized void updateTouched(final int eventOffset, final int oldLength, final int newLength) {
+    applyChange(eventOffset, newLength - oldLength, false);
+  }
+
+  private boolean applyChange(final int eventOffset, final int deltaLength, final boolean deleteTouched) {
+    if (deltaLength == 0 || mySize == 0) return false;
+
+    myView = null;
+
+    boolean regionDeleted = false;
+
+    if (deltaLength > 0) {
+      // Something was typed. Shift untouched regions, delete or update touched.
+      final int firstShifted = findFirstIndexAtOrAfter(eventOffset);
+      addShift(firstShifted, deltaLength);
+
+      for (int i = firstShifted - 1; i >= 0; i--) {
+        final int regionOffset = getOffset(i);
+        if (regionOffset + myMaxLength <= eventOffset) break; // this and all previous regions end before eventOffset
+        if (myDeleted.get(i)) continue;
+
+        if (regionOffset < eventOffset && eventOffset < regionOffset + myLengths[i]) {
+          if (deleteTouched) {
+            delete(i);
+            regionDeleted = true;
+          }
+          else {
+            resize(i, deltaLength);
+            myMaxLength = Math.max(myMaxLength, myLengths[i]);
+          }
+        }
+      }
+    }
+    else {
+      // Some text was deleted. Shift untouched regions, delete or update touched.
+      final int eventRightOffset = eventOffset - deltaLength;
+      final int firstShifted = findFirstIndexAtOrAfter(eventRightOffset);
+      addShift(firstShifted, deltaLength);
+
+      for (int i = firstShifted - 1; i >= 0; i--) {
+        final int regionOffset = getOffset(i);
+        if (regionOffset + myMaxLength <= eventOffset) break;
+        if (myDeleted.get(i)) {
+          collapse(i, regionOffset, eventOffset);
+          continue;
+        }
+
+        final int regionRightOffset = regionOffset + myLengths[i];
+        if (!deleteTouched &&
+            regionOffset <= eventOffset &&
+            eventRightOffset <= regionRightOffset &&
+            myLengths[i] != -deltaLength) {
+          resize(i, deltaLength);
+        }
+        else if (eventOffset < regionRightOffset) {
+          delete(i);
+          regionDeleted = true;
+          collapse(i, regionOffset, eventOffset);
+        }
+      }
+    }
+
+    return regionDeleted;
+  }
+
+  private void resize(final int index, final int delta) {
+    myLengths[index] += delta;
+    if (myRegions != null) {
+      myRegions[index] = null;
+    }
+  }
+
+  private void delete(final int index) {
+    myDeleted.set(index);
+    myDeletedCount++;
+  }
+
+  /**
+   * Applies the pending shifts to the offsets and removes deleted regions, so that indices of the regions match their indices in the view.
+   * Cached objects of the shifted regions are dropped.
+   */
+  private void compact() {
+    // turn the Fenwick tree back into the deltas passed to addShift(), in the reverse order of its construction
+    for (int i = myShifts.length - 1; i > 0; i--) {
+      final int parent = i + (i & -i);
+      if (parent < myShifts.length) {
+        myShifts[parent] -= myShifts[i];
+      }
+    }
+
+    int shift = 0;
+    int j = 0;
+    for (int i = 0; i < mySize; i++) {
+      shift += myShifts[i + 1];
+      if (myDeleted.get(i)) continue;
+
+      myOffsets[j] = myOffsets[i] + shift;
+      myLengths[j] = myLengths[i];
+      if (myKinds != null) myKinds[j] = myKinds[i];
+      if (myPayloads != null) myPayloads[j] = myPayloads[i];
+      if (myRegions != null) myRegions[j] = shift == 0 ? myRegions[i] : null;
+      j++;
+    }
+
+    for (int i = j; i < mySize; i++) {
+      if (myPayloads != null) myPayloads[i] = null;
+      if (myRegions != null) myRegions[i] = null;
+    }
+
+    Arrays.fill(myShifts, 0);
+    myDeleted.clear();
+    myDeletedCount = 0;
+    mySize = j;
+  }
+
+  /**
+   * Moves the start of a region that is inside the deleted text to the start of the deleted text, so that offsets stay sorted.
+   */
+  private void collapse(final int index, final int regionOffset, final int eventOffset) {
+    if (regionOffset > eventOffset) {
+      addShift(index, eventOffset - regionOffset);
+      addShift(index + 1, regionOffset - eventOffset);
+    }
+  }
+
+  /**
+   * @return the index of the first region with the offset that is greater or equal to {@code offset}, or {@code mySize} if there's none
+   */
+  private int findFirstIndexAtOrAfter(final int offset) {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (getOffset(mid) < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Adds {@code delta} to the offsets of all regions starting from {@code fromIndex}.
+   */
+  private void addShift(final int fromIndex, final int delta) {
+    for (int i = fromIndex + 1; i < myShifts.length; i += i & -i) {
+      myShifts[i] += delta;
+    }
+  }
+
+  private int getShift(final int index) {
+    int result = 0;
+    for (int i = index + 1; i > 0; i -= i & -i) {
+      result += myShifts[i];
+    }
+    return result;
+  }
+}
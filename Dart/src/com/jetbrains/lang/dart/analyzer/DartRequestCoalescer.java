@@ -0,0 +1,219 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.Consumer;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of Analysis Server requests that are in flight, so that an identical request (same method, file, modification stamp,
+ * arguments and server modification count) made before the response arrives is not sent once again but waits for the same response.
+ * <p/>
+ * Each caller gets its own {@link CompletableFuture}, cancelling it doesn't affect other callers. If a caller cancelled its future
+ * (for example because it didn't want to wait any longer) then the response is kept when it arrives, and the next identical request
+ * is answered from it without asking the server.
+ */
+class DartRequestCoalescer {
+
+  private static final int MAX_LATE_RESULTS = 32;
+
+  // the server might never answer some request, don't let it block identical requests forever
+  private static final long MAX_IN_FLIGHT_TIME = TimeUnit.SECONDS.toMillis(30);
+
+  static final class Key {
+    @NotNull private final String myMethod;
+    @NotNull private final String myFilePath;
+    private final long myModificationStamp;
+    private final int myServerModificationCount;
+    @NotNull private final Object[] myArgs;
+
+    /**
+     * @param serverModificationCount changes of the server's view of any file (content sent, errors changed, etc.), responses computed
+     *                                before such a change might depend on the old state of the other files
+     */
+    Key(@NotNull final String method,
+        @NotNull final String filePath,
+        final long modificationStamp,
+        final int serverModificationCount,
+        @NotNull final Object... args) {
+      myMethod = method;
+      myFilePath = filePath;
+      myModificationStamp = modificationStamp;
+      myServerModificationCount = serverModificationCount;
+      myArgs = args;
+    }
+
+    /**
+     * @return system-independent path
+     */
+    @NotNull
+    String getFilePath() {
+      return myFilePath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key key = (Key)o;
+      return myModificationStamp == key.myModificationStamp &&
+             myServerModificationCount == key.myServerModificationCount &&
+             myMethod.equals(key.myMethod) &&
+             myFilePath.equals(key.myFilePath) &&
+             Arrays.equals(myArgs, key.myArgs);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myMethod.hashCode();
+      result = 31 * result + myFilePath.hashCode();
+      result = 31 * result + (int)(myModificationStamp ^ (myModificationStamp >>> 32));
+      result = 31 * result + myServerModificationCount;
+      result = 31 * result + Arrays.hashCode(myArgs);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return myMethod + "(" + myFilePath + "@" + myModificationStamp + "#" + myServerModificationCount + ", " + Arrays.toString(myArgs) + ")";
+    }
+  }
+
+  private static class SharedRequest<T> {
+    @NotNull private final CompletableFuture<T> myFuture = new CompletableFuture<>();
+    private final long myStartTime = System.currentTimeMillis();
+    private boolean myAbandoned; // guarded by DartRequestCoalescer.myLock
+  }
+
+  private final Object myLock = new Object();
+  private final Map<Key, SharedRequest<?>> myInFlight = new THashMap<>();
+  private final Map<Key, Object> myLateResults = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+      return size() > MAX_LATE_RESULTS;
+    }
+  };
+
+  private final AtomicLong mySentCount = new AtomicLong();
+  private final AtomicLong myCoalescedCount = new AtomicLong();
+  private final AtomicLong myLateResultHitCount = new AtomicLong();
+
+  /**
+   * @param key    {@code null} means that the request must not be coalesced with other ones
+   * @param sender sends the request to the server and arranges for the given future to be completed when the response arrives
+   */
+  @NotNull
+  <T> CompletableFuture<T> submit(@Nullable final Key key, @NotNull final Consumer<CompletableFuture<T>> sender) {
+    final SharedRequest<T> request;
+    boolean send = false;
+
+    synchronized (myLock) {
+      if (key != null && myLateResults.containsKey(key)) {
+        myLateResultHitCount.incrementAndGet();
+        //noinspection unchecked
+        return CompletableFuture.completedFuture((T)myLateResults.remove(key));
+      }
+
+      //noinspection unchecked
+      SharedRequest<T> inFlight = key == null ? null : (SharedRequest<T>)myInFlight.get(key);
+      if (inFlight != null && System.currentTimeMillis() - inFlight.myStartTime > MAX_IN_FLIGHT_TIME) {
+        inFlight = null;
+      }
+
+      if (inFlight == null) {
+        request = new SharedRequest<>();
+        if (key != null) {
+          myInFlight.put(key, request);
+        }
+        send = true;
+      }
+      else {
+        request = inFlight;
+        myCoalescedCount.incrementAndGet();
+      }
+    }
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    request.myFuture.whenComplete((value, error) -> {
+      if (error != null) {
+        result.completeExceptionally(error);
+      }
+      else {
+        result.complete(value);
+      }
+    });
+    result.whenComplete((value, error) -> {
+      if (error instanceof CancellationException && !request.myFuture.isDone()) {
+        synchronized (myLock) {
+          request.myAbandoned = true;
+        }
+      }
+    });
+
+    if (send) {
+      mySentCount.incrementAndGet();
+      request.myFuture.whenComplete((value, error) -> onDone(key, request, value, error));
+      try {
+        sender.consume(request.myFuture);
+      }
+      catch (RuntimeException e) {
+        request.myFuture.completeExceptionally(e);
+      }
+    }
+
+    return result;
+  }
+
+  private <T> void onDone(@Nullable final Key key,
+                          @NotNull final SharedRequest<T> request,
+                          @Nullable final T value,
+                          @Nullable final Throwable error) {
+    if (key == null) return;
+
+    synchronized (myLock) {
+      if (myInFlight.get(key) == request) {
+        myInFlight.remove(key);
+      }
+      if (error == null && value != null && request.myAbandoned) {
+        myLateResults.put(key, value);
+      }
+    }
+  }
+
+  /**
+   * Cancels all requests in flight and forgets all kept responses. Called when the server is stopped.
+   */
+  void clear() {
+    final SharedRequest<?>[] requests;
+    synchronized (myLock) {
+      requests = myInFlight.values().toArray(new SharedRequest[0]);
+      myInFlight.clear();
+      myLateResults.clear();
+    }
+
+    for (SharedRequest<?> request : requests) {
+      request.myFuture.cancel(false);
+    }
+  }
+
+  long getSentCount() {
+    return mySentCount.get();
+  }
+
+  long getCoalescedCount() {
+    return myCoalescedCount.get();
+  }
+
+  long getLateResultHitCount() {
+    return myLateResultHitCount.get();
+  }
+}
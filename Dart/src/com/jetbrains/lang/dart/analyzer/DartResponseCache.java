@@ -0,0 +1,111 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.registry.Registry;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of Analysis Server responses to the requests that depend only on file content and position
+ * (hover, navigation, assists, fixes). Keys include the document modification stamp and the count of changes of the server's view of
+ * all files, so responses for older content of the file, of its dependencies or for outdated errors are never returned.
+ * Responses for a file are also dropped when the server flushes its results for the file or when new content overlay for it is sent.
+ */
+class DartResponseCache {
+
+  private static final String CACHE_SIZE_KEY = "dart.server.response.cache.size";
+  private static final int DEFAULT_CACHE_SIZE = 200;
+
+  private final Object myLock = new Object();
+  private final Map<DartRequestCoalescer.Key, Object> myResponses = new LinkedHashMap<DartRequestCoalescer.Key, Object>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<DartRequestCoalescer.Key, Object> eldest) {
+      return size() > getMaxSize();
+    }
+  };
+
+  // a response is cached only if there was no invalidation while it was computed
+  private final TObjectIntHashMap<String> myFileGenerations = new TObjectIntHashMap<>(); // system-independent path -> invalidation count
+  private int myClearCount;
+
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+
+  private static int getMaxSize() {
+    return Registry.intValue(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE);
+  }
+
+  @Nullable
+  <T> T get(@NotNull final DartRequestCoalescer.Key key) {
+    final Object response;
+    synchronized (myLock) {
+      response = myResponses.get(key);
+    }
+
+    if (response != null) {
+      myHitCount.incrementAndGet();
+    }
+    else {
+      myMissCount.incrementAndGet();
+    }
+
+    //noinspection unchecked
+    return (T)response;
+  }
+
+  /**
+   * @return value to pass to {@link #put} when the response is received
+   */
+  int getGeneration(@NotNull final DartRequestCoalescer.Key key) {
+    synchronized (myLock) {
+      return myClearCount + myFileGenerations.get(key.getFilePath());
+    }
+  }
+
+  void put(@NotNull final DartRequestCoalescer.Key key, final int generation, @NotNull final Object response) {
+    synchronized (myLock) {
+      if (myClearCount + myFileGenerations.get(key.getFilePath()) == generation) {
+        myResponses.put(key, response);
+      }
+    }
+  }
+
+  /**
+   * @param filePath system-independent path
+   */
+  void invalidate(@NotNull final String filePath) {
+    synchronized (myLock) {
+      if (!myFileGenerations.increment(filePath)) {
+        myFileGenerations.put(filePath, 1);
+      }
+
+      final Iterator<DartRequestCoalescer.Key> iterator = myResponses.keySet().iterator();
+      while (iterator.hasNext()) {
+        if (filePath.equals(iterator.next().getFilePath())) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  void clear() {
+    synchronized (myLock) {
+      myResponses.clear();
+      myClearCount++;
+    }
+  }
+
+  long getHitCount() {
+    return myHitCount.get();
+  }
+
+  long getMissCount() {
+    return myMissCount.get();
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
@@ -15,6 +16,7 @@ import com.intellij.psi.search.SearchScope;
 import com.intellij.util.EventDispatcher;
 import com.intellij.util.SmartList;
 import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,20 +27,58 @@ public class DartServerData {
 
   public interface OutlineListener extends EventListener {
     void outlineUpdated(@NotNull final String filePath);
+
+    /**
+     * @param changedOutlines roots of the subtrees of the new outline that differ from the previous outline by more than offsets, empty if
+     *                        only offsets of the outline nodes changed
+     */
+    default void outlineUpdated(@NotNull final String filePath, @NotNull final List<Outline> changedOutlines) {
+      outlineUpdated(filePath);
+    }
   }
 
+  private static final Logger LOG = Logger.getInstance(DartServerData.class.getName());
+
   private final DartAnalysisServerService myService;
 
   private final EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
-  private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myErrorData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myHighlightData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myNavigationData = Collections.synchronizedMap(new THashMap<>());
+  // navigation targets that point to the same file as their regions, they are shifted when the file is edited
+  private final Map<String, DartRegionTable> myNavigationTargetData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myOverrideData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
+  private final Map<String, DartRegionTable> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
   private final Map<String, Outline> myOutlineData = Collections.synchronizedMap(new THashMap<>());
 
+  // files from myErrorData that have at least one error, grouped by directory
+  private final DartErrorIndex myErrorIndex = new DartErrorIndex();
+
+  // highlight types are stored in DartRegionTable as indices in this list
+  private static final List<String> ourHighlightTypes = new ArrayList<>();
+  private static final TObjectIntHashMap<String> ourHighlightTypeToKind = new TObjectIntHashMap<>();
+
+  private static final DartRegionTable.RegionFactory<DartHighlightRegion> HIGHLIGHT_FACTORY =
+    (table, index) -> new DartHighlightRegion(table.getOffset(index), table.getLength(index), getHighlightType(table.getKind(index)));
+
+  // regions stored as payloads are returned as is until they are moved or resized by editing, then copies are returned
+  private static final DartRegionTable.RegionFactory<DartRegion> PAYLOAD_FACTORY = (table, index) -> {
+    final DartRegion region = (DartRegion)table.getPayload(index);
+    assert region != null;
+    final int offset = table.getOffset(index);
+    final int length = table.getLength(index);
+    return region.myOffset == offset && region.myLength == length ? region : region.withRange(offset, length);
+  };
+
+  private static final DartRegionTable.RegionFactory<DartNavigationTarget> TARGET_FACTORY = (table, index) -> {
+    final DartNavigationTarget target = (DartNavigationTarget)table.getPayload(index);
+    assert target != null;
+    target.myConvertedOffset = table.getOffset(index);
+    return target;
+  };
+
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
 
   // keeps track of files in which error regions have been deleted by DocumentListener (typing inside an error region)
@@ -59,17 +99,20 @@ public class DartServerData {
   boolean computedErrors(@NotNull final String filePath, @NotNull final List<AnalysisError> errors, final boolean restartHighlighting) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return false;
 
-    final List<DartError> newErrors = new ArrayList<>(errors.size());
+    final List<DartRegion> newErrors = new ArrayList<>(errors.size());
+    final int[] severityCounts = new int[3];
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
     for (AnalysisError error : errors) {
       final int offset = myService.getConvertedOffset(file, error.getLocation().getOffset());
       final int length = myService.getConvertedOffset(file, error.getLocation().getOffset() + error.getLocation().getLength()) - offset;
       newErrors.add(new DartError(error, offset, length));
+      severityCounts[DartErrorIndex.getSeverityIndex(error.getSeverity())]++;
     }
 
     myFilePathsWithLostErrorInfo.remove(filePath);
-    myErrorData.put(filePath, newErrors);
+    myErrorData.put(filePath, createPayloadTable(newErrors));
+    myErrorIndex.setCounts(filePath, severityCounts);
 
     if (restartHighlighting) {
       forceFileAnnotation(file, false);
@@ -87,21 +130,87 @@ public class DartServerData {
   void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartHighlightRegion> newRegions = new ArrayList<>(regions.size());
+    final int size = regions.size();
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    final String[] types = new String[size];
+    for (int i = 0; i < size; i++) {
+      final HighlightRegion region = regions.get(i);
+      offsets[i] = region.getOffset();
+      lengths[i] = region.getLength();
+      types[i] = region.getType();
+    }
+
+    computedHighlights(filePath, offsets, lengths, types);
+  }
+
+  void computedHighlights(@NotNull final String filePath,
+                          @NotNull final int[] offsets,
+                          @NotNull final int[] lengths,
+                          @NotNull final String[] types) {
+    if (myFilePathsWithUnsentChanges.contains(filePath)) return;
+
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
-    for (HighlightRegion region : regions) {
-      if (region.getLength() > 0) {
-        final int offset = myService.getConvertedOffset(file, region.getOffset());
-        final int length = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offset;
-        newRegions.add(new DartHighlightRegion(offset, length, region.getType()));
+    int count = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      if (lengths[i] > 0) {
+        count++;
       }
     }
 
-    myHighlightData.put(filePath, newRegions);
+    final int[] newOffsets = new int[count];
+    final int[] newLengths = new int[count];
+    final int[] newKinds = new int[count];
+    int j = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      if (lengths[i] > 0) {
+        final int offset = myService.getConvertedOffset(file, offsets[i]);
+        newOffsets[j] = offset;
+        newLengths[j] = myService.getConvertedOffset(file, offsets[i] + lengths[i]) - offset;
+        newKinds[j] = getHighlightKind(types[i]);
+        j++;
+      }
+    }
+
+    myHighlightData.put(filePath, new DartRegionTable(newOffsets, newLengths, newKinds, null));
     forceFileAnnotation(file, false);
   }
 
+  private static int getHighlightKind(@NotNull final String type) {
+    synchronized (ourHighlightTypes) {
+      if (ourHighlightTypeToKind.containsKey(type)) {
+        return ourHighlightTypeToKind.get(type);
+      }
+      final int kind = ourHighlightTypes.size();
+      ourHighlightTypes.add(type.intern());
+      ourHighlightTypeToKind.put(type, kind);
+      return kind;
+    }
+  }
+
+  @NotNull
+  private static String getHighlightType(final int kind) {
+    synchronized (ourHighlightTypes) {
+      return ourHighlightTypes.get(kind);
+    }
+  }
+
+  @NotNull
+  private static DartRegionTable createPayloadTable(@NotNull final List<? extends DartRegion> regions) {
+    final int size = regions.size();
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    final Object[] payloads = new Object[size];
+    for (int i = 0; i < size; i++) {
+      final DartRegion region = regions.get(i);
+      offsets[i] = region.myOffset;
+      lengths[i] = region.myLength;
+      payloads[i] = region;
+    }
+    return new DartRegionTable(offsets, lengths, null, payloads);
+  }
+
   void computedNavigation(@NotNull final String filePath, @NotNull final List<NavigationRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
@@ -115,15 +224,45 @@ public class DartServerData {
       }
     }
 
-    myNavigationData.put(filePath, newRegions);
+    // targets are shared between regions, each one must be shifted only once
+    final Set<DartNavigationTarget> sameFileTargets = new LinkedHashSet<>();
+    for (DartNavigationRegion region : newRegions) {
+      for (DartNavigationTarget target : region.getTargets()) {
+        if (target.myFile.equals(filePath)) {
+          sameFileTargets.add(target);
+        }
+      }
+    }
+
+    final int targetCount = sameFileTargets.size();
+    final int[] targetOffsets = new int[targetCount];
+    final Object[] targets = new Object[targetCount];
+    int i = 0;
+    for (DartNavigationTarget target : sameFileTargets) {
+      targetOffsets[i] = target.getOffset(myService.getProject(), file);
+      targets[i] = target;
+      i++;
+    }
+
+    myNavigationTargetData.put(filePath, new DartRegionTable(targetOffsets, new int[targetCount], null, targets));
+    myNavigationData.put(filePath, createPayloadTable(newRegions));
     forceFileAnnotation(file, true);
   }
 
   void computedOutline(@NotNull final String filePath, @NotNull final Outline outline) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
+    // the new outline is never modified after it's stored, the diff lets the structure view skip updates if only offsets changed
+    final DartOutlineDiff diff = DartOutlineDiff.compare(myOutlineData.get(filePath), outline);
     myOutlineData.put(filePath, outline);
-    ApplicationManager.getApplication().invokeLater(() -> myEventDispatcher.getMulticaster().outlineUpdated(filePath),
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Outline of " + filePath + " updated: " + diff.getChangedNodeCount() + " nodes changed, " +
+                diff.getNodeCount() + " nodes total");
+    }
+
+    final List<Outline> changedOutlines = diff.getChangedOutlines();
+    ApplicationManager.getApplication().invokeLater(() -> myEventDispatcher.getMulticaster().outlineUpdated(filePath, changedOutlines),
                                                     ModalityState.NON_MODAL,
                                                     myService.getProject().getDisposed());
   }
@@ -155,7 +294,7 @@ public class DartServerData {
       }
     }
 
-    myOverrideData.put(filePath, newOverrides);
+    myOverrideData.put(filePath, createPayloadTable(newOverrides));
     forceFileAnnotation(file, false);
   }
 
@@ -181,16 +320,16 @@ public class DartServerData {
     }
 
     boolean hasChanges = false;
-    final List<DartRegion> oldClasses = myImplementedClassData.get(filePath);
-    if (oldClasses == null || !oldClasses.equals(newImplementedClasses)) {
+    final DartRegionTable oldClasses = myImplementedClassData.get(filePath);
+    if (oldClasses == null || !oldClasses.getView(PAYLOAD_FACTORY).equals(newImplementedClasses)) {
       hasChanges = true;
-      myImplementedClassData.put(filePath, newImplementedClasses);
+      myImplementedClassData.put(filePath, createPayloadTable(newImplementedClasses));
     }
 
-    final List<DartRegion> oldMembers = myImplementedMemberData.get(filePath);
-    if (oldMembers == null || !oldMembers.equals(newImplementedMembers)) {
+    final DartRegionTable oldMembers = myImplementedMemberData.get(filePath);
+    if (oldMembers == null || !oldMembers.getView(PAYLOAD_FACTORY).equals(newImplementedMembers)) {
       hasChanges = true;
-      myImplementedMemberData.put(filePath, newImplementedMembers);
+      myImplementedMemberData.put(filePath, createPayloadTable(newImplementedMembers));
     }
 
     if (hasChanges) {
@@ -200,54 +339,77 @@ public class DartServerData {
 
   @NotNull
   List<DartError> getErrors(@NotNull final SearchScope scope) {
-    final List<DartError> errors = new ArrayList<>();
+    return getErrors(myErrorIndex.getFilePaths(scope));
+  }
 
-    synchronized (myErrorData) {
-      for (Map.Entry<String, List<DartError>> entry : myErrorData.entrySet()) {
-        final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
-        if (file != null && scope.contains(file)) {
-          errors.addAll(entry.getValue());
-        }
-      }
-    }
+  /**
+   * @param dirPath system-independent path of a directory
+   * @return errors in all files in the directory and its subdirectories
+   */
+  @NotNull
+  List<DartError> getErrorsInDirectory(@NotNull final String dirPath) {
+    return getErrors(myErrorIndex.getFilePaths(dirPath));
+  }
+
+  /**
+   * @param dirPath  system-independent path of a directory
+   * @param severity one of {@link AnalysisErrorSeverity} constants
+   * @return number of errors of the given severity in all files in the directory and its subdirectories
+   */
+  int getErrorCountInDirectory(@NotNull final String dirPath, @NotNull final String severity) {
+    return myErrorIndex.getCount(dirPath, severity);
+  }
 
+  @NotNull
+  private List<DartError> getErrors(@NotNull final List<String> filePaths) {
+    final List<DartError> errors = new ArrayList<>();
+    for (String filePath : filePaths) {
+      errors.addAll(getPayloadView(myErrorData.get(filePath)));
+    }
     return errors;
   }
 
   @NotNull
   List<DartError> getErrors(@NotNull final VirtualFile file) {
-    final List<DartError> errors = myErrorData.get(file.getPath());
-    return errors != null ? errors : Collections.emptyList();
+    return getPayloadView(myErrorData.get(file.getPath()));
   }
 
   @NotNull
   List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionTable table = myHighlightData.get(file.getPath());
+    return table != null ? table.getView(HIGHLIGHT_FACTORY) : Collections.emptyList();
   }
 
   @NotNull
   List<DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
-    final List<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionTable targetTable = myNavigationTargetData.get(file.getPath());
+    if (targetTable != null) {
+      // updates offsets of the targets
+      targetTable.getView(TARGET_FACTORY);
+    }
+    return getPayloadView(myNavigationData.get(file.getPath()));
   }
 
   @NotNull
   List<DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file) {
-    final List<DartOverrideMember> regions = myOverrideData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    return getPayloadView(myOverrideData.get(file.getPath()));
   }
 
   @NotNull
   List<DartRegion> getImplementedClasses(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedClassData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    return getPayloadView(myImplementedClassData.get(file.getPath()));
   }
 
   @NotNull
   List<DartRegion> getImplementedMembers(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedMemberData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    return getPayloadView(myImplementedMemberData.get(file.getPath()));
+  }
+
+  @NotNull
+  private static <T extends DartRegion> List<T> getPayloadView(@Nullable final DartRegionTable table) {
+    if (table == null) return Collections.emptyList();
+    //noinspection unchecked
+    return (List<T>)table.getView(PAYLOAD_FACTORY);
   }
 
   @Nullable
@@ -288,6 +450,7 @@ public class DartServerData {
     // do not remove from myErrorData, this map is always kept up-to-date for all files, not only for visible
     myHighlightData.remove(file.getPath());
     myNavigationData.remove(file.getPath());
+    myNavigationTargetData.remove(file.getPath());
     myOverrideData.remove(file.getPath());
     myImplementedClassData.remove(file.getPath());
     myImplementedMemberData.remove(file.getPath());
@@ -298,6 +461,7 @@ public class DartServerData {
     if (!myErrorData.isEmpty()) {
       for (String path : filePaths) {
         myErrorData.remove(path);
+        myErrorIndex.remove(path);
       }
     }
     if (!myHighlightData.isEmpty()) {
@@ -308,6 +472,7 @@ public class DartServerData {
     if (!myNavigationData.isEmpty()) {
       for (String path : filePaths) {
         myNavigationData.remove(path);
+        myNavigationTargetData.remove(path);
       }
     }
     if (!myOverrideData.isEmpty()) {
@@ -334,8 +499,10 @@ public class DartServerData {
 
   void clearData() {
     myErrorData.clear();
+    myErrorIndex.clear();
     myHighlightData.clear();
     myNavigationData.clear();
+    myNavigationTargetData.clear();
     myOverrideData.clear();
     myImplementedClassData.clear();
     myImplementedMemberData.clear();
@@ -349,119 +516,56 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    boolean someRegionDeleted = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
-    if (someRegionDeleted) {
+    final int offset = e.getOffset();
+    final int oldLength = e.getOldLength();
+    final int newLength = e.getNewLength();
+
+    final DartRegionTable errors = myErrorData.get(filePath);
+    if (errors != null && errors.deleteTouched(offset, oldLength, newLength)) {
       myFilePathsWithLostErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
-    // A bit outdated outline data is not a big problem, updated data will come shortly
-  }
-
-  /**
-   * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
-   */
-  private static boolean updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                      @Nullable final List<? extends DartRegion> regions,
-                                                      @NotNull final DocumentEvent e) {
-    if (regions == null) return false;
-
-    boolean regionDeleted = false;
-
-    // delete touched regions, shift untouched
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myConvertedOffset >= eventOffset) {
-            target.myConvertedOffset += deltaLength;
-          }
-        }
-      }
 
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, delete touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete touched.
-        final int eventRightOffset = eventOffset - deltaLength;
+    final DartRegionTable highlights = myHighlightData.get(filePath);
+    if (highlights != null) {
+      highlights.updateTouched(offset, oldLength, newLength);
+    }
 
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
+    final DartRegionTable targets = myNavigationTargetData.get(filePath);
+    if (targets != null) {
+      // may be we'd better delete target touched by editing? For now targets inside deleted text are moved to its start
+      targets.shift(offset, newLength - oldLength);
     }
 
-    return regionDeleted;
+    deleteTouched(myNavigationData.get(filePath), e);
+    deleteTouched(myOverrideData.get(filePath), e);
+    deleteTouched(myImplementedClassData.get(filePath), e);
+    deleteTouched(myImplementedMemberData.get(filePath), e);
+    // A bit outdated outline data is not a big problem, updated data will come shortly
   }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
+  private static void deleteTouched(@Nullable final DartRegionTable regions, @NotNull final DocumentEvent e) {
+    if (regions != null) {
+      regions.deleteTouched(e.getOffset(), e.getOldLength(), e.getNewLength());
     }
   }
 
   public static class DartRegion {
-    protected int myOffset;
-    protected int myLength;
+    protected final int myOffset;
+    protected final int myLength;
 
     DartRegion(final int offset, final int length) {
       myOffset = offset;
       myLength = length;
     }
 
+    /**
+     * @return a copy of this region with another range
+     */
+    @NotNull
+    DartRegion withRange(final int offset, final int length) {
+      return new DartRegion(offset, length);
+    }
+
     public final int getOffset() {
       return myOffset;
     }
@@ -489,6 +593,12 @@ public class DartServerData {
       this.type = type.intern();
     }
 
+    @NotNull
+    @Override
+    DartHighlightRegion withRange(final int offset, final int length) {
+      return new DartHighlightRegion(offset, length, type);
+    }
+
     public String getType() {
       return type;
     }
@@ -508,6 +618,20 @@ public class DartServerData {
       myMessage = error.getMessage();
     }
 
+    private DartError(@NotNull final DartError error, final int offset, final int length) {
+      super(offset, length);
+      myAnalysisErrorFileSD = error.myAnalysisErrorFileSD;
+      mySeverity = error.mySeverity;
+      myCode = error.myCode;
+      myMessage = error.myMessage;
+    }
+
+    @NotNull
+    @Override
+    DartError withRange(final int offset, final int length) {
+      return new DartError(this, offset, length);
+    }
+
     public String getAnalysisErrorFileSD() {
       return myAnalysisErrorFileSD;
     }
@@ -538,6 +662,12 @@ public class DartServerData {
       myTargets = targets;
     }
 
+    @NotNull
+    @Override
+    DartNavigationRegion withRange(final int offset, final int length) {
+      return new DartNavigationRegion(offset, length, myTargets);
+    }
+
     @Override
     public String toString() {
       return "DartNavigationRegion(" + myOffset + ", " + myLength + ")";
@@ -553,7 +683,7 @@ public class DartServerData {
     private final int myOriginalOffset;
     private final String myKind;
 
-    private int myConvertedOffset = -1;
+    int myConvertedOffset = -1;
 
     private DartNavigationTarget(@NotNull final NavigationTarget target) {
       myFile = FileUtil.toSystemIndependentName(target.getFile().trim()).intern();
@@ -590,6 +720,12 @@ public class DartServerData {
       myInterfaceMembers = interfaceMembers;
     }
 
+    @NotNull
+    @Override
+    DartOverrideMember withRange(final int offset, final int length) {
+      return new DartOverrideMember(offset, length, mySuperclassMember, myInterfaceMembers);
+    }
+
     @Nullable
     public OverriddenMember getSuperclassMember() {
       return mySuperclassMember;
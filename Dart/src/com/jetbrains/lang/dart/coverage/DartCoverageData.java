@@ -15,82 +15,160 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.intellij.util.containers.hash.HashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.progress.ProgressManager;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+/**
+ * Coverage data collected by the Dart VM, merged by source URI. The JSON is read in a streaming way: hits are added straight to
+ * per-source arrays indexed by line number, without building an object per coverage entry or per hit.
+ */
 public class DartCoverageData {
-  @Nullable private List<DartFileCoverageData> coverage;
 
-  @Nullable
-  public List<DartFileCoverageData> getCoverage() {
-    return coverage;
-  }
+  /**
+   * Hit counts of a single source, indexed by line number.
+   */
+  public static class LineHits {
+    private static final int NO_DATA = -1;
+
+    @NotNull private int[] myHits = new int[0];
+    private int myMaxLine = -1;
+
+    private void add(final int line, final int count) {
+      if (line < 0) return;
+
+      if (line >= myHits.length) {
+        final int oldLength = myHits.length;
+        myHits = Arrays.copyOf(myHits, Math.max(line + 1, oldLength * 2));
+        Arrays.fill(myHits, oldLength, myHits.length, NO_DATA);
+      }
+
+      myHits[line] = myHits[line] == NO_DATA ? count : myHits[line] + count;
+      myMaxLine = Math.max(myMaxLine, line);
+    }
+
+    /**
+     * @return the greatest line number with coverage information, or {@code -1} if there's none
+     */
+    public int getMaxLine() {
+      return myMaxLine;
+    }
 
-  public void setCoverage(@Nullable List<DartFileCoverageData> coverage) {
-    this.coverage = coverage;
+    /**
+     * @return {@code false} if the line is not executable, i.e. there's no coverage information for it
+     */
+    public boolean hasData(final int line) {
+      return line <= myMaxLine && myHits[line] != NO_DATA;
+    }
+
+    public int getHits(final int line) {
+      return hasData(line) ? myHits[line] : 0;
+    }
   }
 
+  @NotNull private final Map<String, LineHits> myFileHits = new LinkedHashMap<>();
+
+  /**
+   * @return source URI -> merged hits of all coverage entries for this source
+   */
   @NotNull
-  public Map<String, SortedMap<Integer, Integer>> getMergedDartFileCoverageData() {
-    Map<String, SortedMap<Integer, Integer>> mergedCoverageData = new HashMap<>();
-    List<DartFileCoverageData> coverageData = getCoverage();
-    if (coverageData != null) {
-      for (DartFileCoverageData item : coverageData) {
-        String source = item.getSource();
-        if (source == null) {
-          continue;
-        }
-        if (!mergedCoverageData.containsKey(source)) {
-          mergedCoverageData.put(source, new TreeMap<>());
-        }
+  public Map<String, LineHits> getMergedDartFileCoverageData() {
+    return myFileHits;
+  }
 
-        SortedMap<Integer, Integer> fileData = mergedCoverageData.get(source);
-        List<Integer> hits = item.getHits();
-        if (hits == null) {
-          continue;
-        }
-        for (int i = 0; i < hits.size(); i += 2) {
-          Integer lineNumber = hits.get(i);
-          Integer hitCount = hits.get(i + 1);
-          if (!fileData.containsKey(lineNumber)) {
-            fileData.put(lineNumber, 0);
-          }
+  /**
+   * Reads the {@code {"coverage": [{"source": "...", "hits": [line, count, line, count, ...]}, ...]}} JSON.
+   * Checks for cancellation after each coverage entry.
+   *
+   * @throws IOException           if reading fails or the JSON is malformed
+   * @throws IllegalStateException if the JSON structure is unexpected
+   */
+  @NotNull
+  public static DartCoverageData read(@NotNull final Reader reader) throws IOException {
+    final DartCoverageData data = new DartCoverageData();
+    final JsonReader jsonReader = new JsonReader(reader);
+    final TIntArrayList hitsBuffer = new TIntArrayList();
 
-          fileData.put(lineNumber, fileData.get(lineNumber) + hitCount);
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      if ("coverage".equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          ProgressManager.checkCanceled();
+          data.readFileCoverage(jsonReader, hitsBuffer);
         }
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
       }
     }
+    jsonReader.endObject();
 
-    return mergedCoverageData;
+    return data;
   }
-}
 
+  private void readFileCoverage(@NotNull final JsonReader reader, @NotNull final TIntArrayList hitsBuffer) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return;
+    }
 
-class DartFileCoverageData {
-  @Nullable private String source;
-  @Nullable private List<Integer> hits;
-
-  @Nullable
-  public String getSource() {
-    return source;
-  }
+    // "source" usually goes before "hits", otherwise hits are buffered until the source is known
+    LineHits lineHits = null;
+    boolean hitsBuffered = false;
+    hitsBuffer.resetQuick();
 
-  public void setSource(@Nullable String source) {
-    this.source = source;
-  }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("source".equals(name) && reader.peek() == JsonToken.STRING) {
+        lineHits = getOrCreateLineHits(reader.nextString());
+      }
+      else if ("hits".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          final int line = reader.nextInt();
+          final int count = reader.nextInt();
+          if (lineHits != null) {
+            lineHits.add(line, count);
+          }
+          else {
+            hitsBuffer.add(line);
+            hitsBuffer.add(count);
+            hitsBuffered = true;
+          }
+        }
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
 
-  @Nullable
-  public List<Integer> getHits() {
-    return hits;
+    if (hitsBuffered && lineHits != null) {
+      for (int i = 0; i < hitsBuffer.size(); i += 2) {
+        lineHits.add(hitsBuffer.getQuick(i), hitsBuffer.getQuick(i + 1));
+      }
+    }
   }
 
-  public void setHits(@Nullable List<Integer> hits) {
-    this.hits = hits;
+  @NotNull
+  private LineHits getOrCreateLineHits(@NotNull final String source) {
+    LineHits lineHits = myFileHits.get(source);
+    if (lineHits == null) {
+      lineHits = new LineHits();
+      myFileHits.put(source, lineHits);
+    }
+    return lineHits;
   }
-}
\ No newline at end of file
+}
@@ -15,35 +15,73 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.intellij.coverage.CoverageEngine;
 import com.intellij.coverage.CoverageRunner;
 import com.intellij.coverage.CoverageSuite;
 import com.intellij.execution.process.ProcessHandler;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.rt.coverage.data.ClassData;
 import com.intellij.rt.coverage.data.LineData;
 import com.intellij.rt.coverage.data.ProjectData;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.util.DotPackagesFileUtil;
+import com.jetbrains.lang.dart.util.PubspecYamlUtil;
+import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.Map;
-import java.util.SortedMap;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class DartCoverageRunner extends CoverageRunner {
   private static final String ID = "DartCoverageRunner";
   private static final Logger LOG = Logger.getInstance(DartCoverageRunner.class.getName());
 
+  // execution.mapUri requests are sent without waiting for previous responses, but not too many at once
+  private static final int MAX_MAP_URI_REQUESTS_IN_FLIGHT = 64;
+  private static final long MAP_URI_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+  private static final long CHECK_CANCELED_PERIOD = 10;
+
+  // context file path -> cache; mapping is the same for all coverage sessions of a context until its .packages file changes
+  private static final Key<Map<String, UriToPathCache>> URI_TO_PATH_CACHE_KEY = Key.create("DART_COVERAGE_URI_TO_PATH_CACHE");
+
+  private static class UriToPathCache {
+    private final long myDotPackagesStamp;
+    // source URI -> system-independent file path
+    private final Map<String, String> myUriToPath = new ConcurrentHashMap<>();
+
+    private UriToPathCache(final long dotPackagesStamp) {
+      myDotPackagesStamp = dotPackagesStamp;
+    }
+  }
+
+  private static class MapUriRequest {
+    @NotNull private final String myUri;
+    @NotNull private final CompletableFuture<String> myFuture;
+    private final long myStartTime = System.currentTimeMillis();
+
+    private MapUriRequest(@NotNull final String uri, @NotNull final CompletableFuture<String> future) {
+      myUri = uri;
+      myFuture = future;
+    }
+  }
+
   @Nullable
   @Override
   public ProjectData loadCoverageData(@NotNull final File sessionDataFile, @Nullable CoverageSuite baseCoverageSuite) {
@@ -90,46 +128,57 @@ public class DartCoverageRunner extends CoverageRunner {
       return null;
     }
 
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    if (indicator != null) {
+      indicator.setIndeterminate(true);
+      indicator.setText2("Reading " + sessionDataFile.getName());
+    }
+
+    final ProjectData projectData = new ProjectData();
+
+    final DartCoverageData data;
+    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sessionDataFile), StandardCharsets.UTF_8))) {
+      data = DartCoverageData.read(reader);
+    }
+    catch (IOException | IllegalStateException | NumberFormatException e) {
+      LOG.warn("Coverage file does not contain valid data: " + sessionDataFile.getPath(), e);
+      return projectData;
+    }
+
     final String contextId = DartAnalysisServerService.getInstance(project).execution_createContext(contextFilePath);
     if (contextId == null) {
       return null;
     }
 
-    final ProjectData projectData = new ProjectData();
-
     try {
-      DartCoverageData data = new Gson().fromJson(new BufferedReader(new FileReader(sessionDataFile)), DartCoverageData.class);
-      if (data == null) {
-        LOG.warn("Coverage file does not contain valid data.");
-        return null;
-      }
+      final Map<String, DartCoverageData.LineHits> fileHits = data.getMergedDartFileCoverageData();
+      final Map<String, String> uriToPath = mapUris(project, contextFilePath, contextId, fileHits.keySet(), indicator);
 
-      for (Map.Entry<String, SortedMap<Integer, Integer>> entry : data.getMergedDartFileCoverageData().entrySet()) {
+      for (Map.Entry<String, DartCoverageData.LineHits> entry : fileHits.entrySet()) {
         ProgressManager.checkCanceled();
 
-        String filePath = getFileForUri(project, contextId, entry.getKey());
+        String filePath = uriToPath.get(entry.getKey());
         if (filePath == null) {
           // File is not found.
           continue;
         }
-        SortedMap<Integer, Integer> lineHits = entry.getValue();
+        DartCoverageData.LineHits lineHits = entry.getValue();
         ClassData classData = projectData.getOrCreateClassData(filePath);
-        if (lineHits.size() == 0) {
+        if (lineHits.getMaxLine() < 0) {
           classData.setLines(new LineData[1]);
           continue;
         }
-        LineData[] lines = new LineData[lineHits.lastKey() + 1];
-        for (Map.Entry<Integer, Integer> hit : lineHits.entrySet()) {
-          LineData lineData = new LineData(hit.getKey(), null);
-          lineData.setHits(hit.getValue());
-          lines[hit.getKey()] = lineData;
+        LineData[] lines = new LineData[lineHits.getMaxLine() + 1];
+        for (int line = 0; line < lines.length; line++) {
+          if (lineHits.hasData(line)) {
+            LineData lineData = new LineData(line, null);
+            lineData.setHits(lineHits.getHits(line));
+            lines[line] = lineData;
+          }
         }
         classData.setLines(lines);
       }
     }
-    catch (FileNotFoundException | JsonSyntaxException e) {
-      LOG.warn(e);
-    }
     finally {
       DartAnalysisServerService.getInstance(project).execution_deleteContext(contextId);
     }
@@ -137,14 +186,136 @@ public class DartCoverageRunner extends CoverageRunner {
     return projectData;
   }
 
+  /**
+   * Maps source URIs to files. Cached paths are reused, other URIs are mapped by the Analysis Server with many requests in flight,
+   * instead of waiting for each response before sending the next request.
+   *
+   * @return source URI -> system-independent file path, URIs that are not mapped to files are absent
+   */
+  @NotNull
+  private static Map<String, String> mapUris(@NotNull final Project project,
+                                             @NotNull final String contextFilePath,
+                                             @NotNull final String contextId,
+                                             @NotNull final Collection<String> uris,
+                                             @Nullable final ProgressIndicator indicator) {
+    final Map<String, String> cache = getUriToPathCache(project, contextFilePath);
+    final Map<String, String> result = new THashMap<>();
+    final List<String> urisToMap = new ArrayList<>();
+
+    for (String uri : uris) {
+      if (isIgnoredUri(uri)) continue;
+
+      final String cachedPath = cache.get(uri);
+      if (cachedPath != null && LocalFileSystem.getInstance().findFileByPath(cachedPath) != null) {
+        result.put(uri, cachedPath);
+      }
+      else {
+        urisToMap.add(uri);
+      }
+    }
+
+    if (indicator != null) {
+      indicator.setIndeterminate(false);
+    }
+
+    final DartAnalysisServerService service = DartAnalysisServerService.getInstance(project);
+    final Deque<MapUriRequest> inFlight = new ArrayDeque<>();
+    final Iterator<String> iterator = urisToMap.iterator();
+    int mappedCount = 0;
+
+    try {
+      while (iterator.hasNext() || !inFlight.isEmpty()) {
+        while (inFlight.size() < MAX_MAP_URI_REQUESTS_IN_FLIGHT && iterator.hasNext()) {
+          final String uri = iterator.next();
+          inFlight.addLast(new MapUriRequest(uri, service.execution_mapUriAsync(contextId, null, uri)));
+        }
+
+        final MapUriRequest request = inFlight.removeFirst();
+        final String filePath = awaitCheckingCanceled(request);
+        if (filePath != null) {
+          result.put(request.myUri, filePath);
+          cache.put(request.myUri, filePath);
+        }
+
+        mappedCount++;
+        if (indicator != null) {
+          indicator.setFraction((double)mappedCount / urisToMap.size());
+          indicator.setText2(request.myUri);
+        }
+      }
+    }
+    finally {
+      for (MapUriRequest request : inFlight) {
+        request.myFuture.cancel(false);
+      }
+    }
+
+    return result;
+  }
+
   @Nullable
-  private static String getFileForUri(@NotNull final Project project, @NotNull final String contextId, @NotNull final String uri) {
-    if (uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/")) {
-      // dart:_builtin or dart:core-patch/core_patch.dart
-      return null;
+  private static String awaitCheckingCanceled(@NotNull final MapUriRequest request) {
+    while (true) {
+      ProgressManager.checkCanceled();
+      try {
+        return request.myFuture.get(CHECK_CANCELED_PERIOD, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e) {
+        if (System.currentTimeMillis() - request.myStartTime > MAP_URI_TIMEOUT) {
+          LOG.info("execution_mapUri() took too long for uri " + request.myUri);
+          request.myFuture.cancel(false);
+          return null;
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      catch (ExecutionException | CancellationException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Package URIs are mapped according to the .packages file of the context, so the cache is dropped when this file changes.
+   */
+  @NotNull
+  private static Map<String, String> getUriToPathCache(@NotNull final Project project, @NotNull final String contextFilePath) {
+    final long dotPackagesStamp = getDotPackagesStamp(project, contextFilePath);
+
+    synchronized (URI_TO_PATH_CACHE_KEY) {
+      Map<String, UriToPathCache> contextToCache = project.getUserData(URI_TO_PATH_CACHE_KEY);
+      if (contextToCache == null) {
+        contextToCache = new THashMap<>();
+        project.putUserData(URI_TO_PATH_CACHE_KEY, contextToCache);
+      }
+
+      UriToPathCache cache = contextToCache.get(contextFilePath);
+      if (cache == null || cache.myDotPackagesStamp != dotPackagesStamp) {
+        cache = new UriToPathCache(dotPackagesStamp);
+        contextToCache.put(contextFilePath, cache);
+      }
+      return cache.myUriToPath;
     }
+  }
+
+  /**
+   * @return modification stamp of the .packages file next to the pubspec.yaml of the context file, or -1 if there's no such file
+   */
+  private static long getDotPackagesStamp(@NotNull final Project project, @NotNull final String contextFilePath) {
+    return ReadAction.compute(() -> {
+      final VirtualFile contextFile = LocalFileSystem.getInstance().findFileByPath(contextFilePath);
+      final VirtualFile pubspecYamlFile = contextFile == null ? null : PubspecYamlUtil.findPubspecYamlFile(project, contextFile);
+      final VirtualFile dotPackagesFile =
+        pubspecYamlFile == null ? null : pubspecYamlFile.getParent().findChild(DotPackagesFileUtil.DOT_PACKAGES);
+      return dotPackagesFile == null ? -1L : dotPackagesFile.getModificationStamp();
+    });
+  }
 
-    return DartAnalysisServerService.getInstance(project).execution_mapUri(contextId, null, uri);
+  private static boolean isIgnoredUri(@NotNull final String uri) {
+    // dart:_builtin or dart:core-patch/core_patch.dart
+    return uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/");
   }
 
   @NotNull
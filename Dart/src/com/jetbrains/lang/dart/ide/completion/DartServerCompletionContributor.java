@@ -22,6 +22,7 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.registry.Registry;
@@ -41,12 +42,14 @@ import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.sdk.DartSdk;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
 import com.jetbrains.lang.dart.util.PubspecYamlUtil;
+import gnu.trove.TIntArrayList;
 import org.apache.commons.lang3.StringUtils;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -55,6 +58,81 @@ import static com.intellij.patterns.PlatformPatterns.psiFile;
 import static com.intellij.patterns.StandardPatterns.or;
 
 public class DartServerCompletionContributor extends CompletionContributor {
+  private static final Key<CachedResults> CACHED_RESULTS_KEY = Key.create("DART_COMPLETION_CACHED_RESULTS");
+
+  /**
+   * Lookup elements built for the last completion request in the project. The server reports all suggestions available at the completion
+   * offset, even those that don't match the prefix, so while the user keeps typing the same identifier these elements are filtered by the
+   * new prefix instead of asking the server again. Suggestions also depend on other files, so the elements are dropped as soon as the
+   * server's view of any other file changes, see {@link DartAnalysisServerService#getModificationCountOfOtherFiles(VirtualFile)}.
+   */
+  private static final class CachedResults {
+    @NotNull private final VirtualFile myFile;
+    @NotNull private final CharSequence myText;
+    private final int myOffset;
+    private final int myModificationCountOfOtherFiles;
+    @NotNull private final List<LookupElement> myElements = new ArrayList<>();
+    @NotNull private final TIntArrayList myReplacementOffsets = new TIntArrayList();
+
+    private CachedResults(@NotNull final VirtualFile file,
+                          @NotNull final CharSequence text,
+                          final int offset,
+                          final int modificationCountOfOtherFiles) {
+      myFile = file;
+      myText = text;
+      myOffset = offset;
+      myModificationCountOfOtherFiles = modificationCountOfOtherFiles;
+    }
+
+    /**
+     * @return cached results if the only change in the file since they had been computed is that identifier characters were typed at
+     * the completion offset, and other files haven't changed
+     */
+    @Nullable
+    private static CachedResults getReusable(@NotNull final Project project,
+                                             @NotNull final VirtualFile file,
+                                             @NotNull final CharSequence text,
+                                             final int offset,
+                                             final int modificationCountOfOtherFiles) {
+      final CachedResults results = project.getUserData(CACHED_RESULTS_KEY);
+      if (results == null) return null;
+
+      if (results.myFile.equals(file) &&
+          results.myModificationCountOfOtherFiles == modificationCountOfOtherFiles &&
+          results.isOnlyIdentifierTyped(text, offset)) {
+        return results;
+      }
+
+      project.putUserData(CACHED_RESULTS_KEY, null);
+      return null;
+    }
+
+    private boolean isOnlyIdentifierTyped(@NotNull final CharSequence text, final int offset) {
+      if (text == myText) return offset == myOffset;
+
+      final int typedLength = offset - myOffset;
+      if (typedLength < 0 || text.length() - myText.length() != typedLength) return false;
+
+      for (int i = myOffset; i < offset; i++) {
+        if (!Character.isJavaIdentifierPart(text.charAt(i))) return false;
+      }
+
+      return regionMatches(text, 0, myText, 0, myOffset) &&
+             regionMatches(text, offset, myText, myOffset, myText.length() - myOffset);
+    }
+
+    private static boolean regionMatches(@NotNull final CharSequence s1,
+                                         final int start1,
+                                         @NotNull final CharSequence s2,
+                                         final int start2,
+                                         final int length) {
+      for (int i = 0; i < length; i++) {
+        if (s1.charAt(start1 + i) != s2.charAt(start2 + i)) return false;
+      }
+      return true;
+    }
+  }
+
   public DartServerCompletionContributor() {
     extend(CompletionType.BASIC,
            or(psiElement().withLanguage(DartLanguage.INSTANCE),
@@ -101,28 +179,32 @@ public class DartServerCompletionContributor extends CompletionContributor {
                final DartSdk sdk = DartSdk.getDartSdk(project);
                if (sdk == null || !DartAnalysisServerService.isDartSdkVersionSufficient(sdk)) return;
 
+               final int offset = InjectedLanguageManager.getInstance(project).injectedToHost(originalFile, parameters.getOffset());
+               final Document document = FileDocumentManager.getInstance().getDocument(file);
+               final CharSequence text = document != null && Registry.is("dart.server.completion.incremental", true)
+                                         ? document.getImmutableCharSequence()
+                                         : null;
+
                final DartAnalysisServerService das = DartAnalysisServerService.getInstance(project);
+               // content of other edited files is sent first, so that cached results are dropped if any of them changed
                das.updateFilesContent();
 
-               final int offset = InjectedLanguageManager.getInstance(project).injectedToHost(originalFile, parameters.getOffset());
+               final int modificationCountOfOtherFiles = das.getModificationCountOfOtherFiles(file);
+               final CachedResults cachedResults =
+                 text != null ? CachedResults.getReusable(project, file, text, offset, modificationCountOfOtherFiles) : null;
+               if (cachedResults != null) {
+                 // the user keeps typing the same identifier, result set's prefix matcher filters the elements built earlier
+                 for (int i = 0; i < cachedResults.myElements.size(); i++) {
+                   addElement(parameters, resultSet, uriPrefix, cachedResults.myReplacementOffsets.get(i), cachedResults.myElements.get(i));
+                 }
+                 return;
+               }
+
                final String completionId = das.completion_getSuggestions(file, offset);
                if (completionId == null) return;
 
-               das.addCompletions(file, completionId, (replacementOffset, replacementLength, suggestion) -> {
-                 final CompletionResultSet updatedResultSet;
-                 if (uriPrefix != null) {
-                   updatedResultSet = resultSet;
-                 }
-                 else {
-                   final String specialPrefix = getPrefixForSpecialCases(parameters, replacementOffset);
-                   if (specialPrefix != null) {
-                     updatedResultSet = resultSet.withPrefixMatcher(specialPrefix);
-                   }
-                   else {
-                     updatedResultSet = resultSet;
-                   }
-                 }
-
+               final CachedResults results = text != null ? new CachedResults(file, text, offset, modificationCountOfOtherFiles) : null;
+               final boolean complete = das.addCompletions(file, completionId, (replacementOffset, replacementLength, suggestion) -> {
                  LookupElementBuilder lookupElement = null;
 
                  for (DartCompletionExtension extension : DartCompletionExtension.getExtensions()) {
@@ -134,12 +216,43 @@ public class DartServerCompletionContributor extends CompletionContributor {
                    lookupElement = createLookupElement(project, suggestion);
                  }
 
-                 updatedResultSet.addElement(lookupElement);
+                 if (results != null) {
+                   results.myElements.add(lookupElement);
+                   results.myReplacementOffsets.add(replacementOffset);
+                 }
+
+                 addElement(parameters, resultSet, uriPrefix, replacementOffset, lookupElement);
                });
+
+               if (results != null && complete) {
+                 project.putUserData(CACHED_RESULTS_KEY, results);
+               }
              }
            });
   }
 
+  private static void addElement(@NotNull final CompletionParameters parameters,
+                                 @NotNull final CompletionResultSet resultSet,
+                                 @Nullable final String uriPrefix,
+                                 final int replacementOffset,
+                                 @NotNull final LookupElement lookupElement) {
+    final CompletionResultSet updatedResultSet;
+    if (uriPrefix != null) {
+      updatedResultSet = resultSet;
+    }
+    else {
+      final String specialPrefix = getPrefixForSpecialCases(parameters, replacementOffset);
+      if (specialPrefix != null) {
+        updatedResultSet = resultSet.withPrefixMatcher(specialPrefix);
+      }
+      else {
+        updatedResultSet = resultSet;
+      }
+    }
+
+    updatedResultSet.addElement(lookupElement);
+  }
+
   private static boolean isRightAfterBadIdentifier(@NotNull CharSequence text, int offset) {
     if (offset == 0) return false;
 
@@ -4,12 +4,15 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ui.ColumnInfo;
 import com.intellij.util.ui.ListTableModel;
 import com.jetbrains.lang.dart.ide.annotator.DartAnnotator;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
 import icons.DartIcons;
 import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
@@ -25,6 +28,14 @@ import java.util.List;
 
 class DartProblemsTableModel extends ListTableModel<DartProblem> {
 
+  // if more files than this are updated at once (for example, on initial analysis) then the table is refreshed as a whole,
+  // otherwise rows of each updated file are replaced in place
+  private static final int MAX_FILES_TO_UPDATE_INCREMENTALLY = 20;
+
+  private static final int ERROR_INDEX = 0;
+  private static final int WARNING_INDEX = 1;
+  private static final int HINT_INDEX = 2;
+
   private static final TableCellRenderer MESSAGE_RENDERER = new DefaultTableCellRenderer() {
     @Override
     public JLabel getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -69,6 +80,10 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   // Having it in hand we can do bulk rows removal with a single fireTableRowsDeleted() call afterwards
   private final List<DartProblem> myItems;
 
+  // Problems of each file are stored continuously in myItems, groups are in the same order as their rows
+  private final Map<String, FileGroup> myPathToFileGroup = new THashMap<>();
+  private final List<FileGroup> myFileGroups = new ArrayList<>();
+
   private RowSorter.SortKey mySortKey = new RowSorter.SortKey(1, SortOrder.ASCENDING);
 
   private int myErrorCount = 0;
@@ -157,19 +172,38 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     return false;
   }
 
-  public void removeRows(final int firstRow, final int lastRow) {
-    assert lastRow >= firstRow;
-
-    for (int i = lastRow; i >= firstRow; i--) {
-      final DartProblem removed = myItems.remove(i);
+  /**
+   * Problems of a single file. All problems of a file have the same presentation helper filtering result for the same severity,
+   * so the first problem of each severity represents others when filter-aware counts are recalculated.
+   */
+  private static class FileGroup {
+    @NotNull private final List<DartProblem> myProblems;
+    private int myStartRow;
+    private final int[] mySeverityCounts = new int[3];
+    private final DartProblem[] mySeverityRepresentatives = new DartProblem[3];
+
+    private FileGroup(@NotNull final List<DartProblem> problems) {
+      myProblems = problems;
+      for (DartProblem problem : problems) {
+        final int index = getSeverityIndex(problem);
+        if (index < 0) continue;
+        if (mySeverityCounts[index]++ == 0) {
+          mySeverityRepresentatives[index] = problem;
+        }
+      }
+    }
 
-      if (AnalysisErrorSeverity.ERROR.equals(removed.getSeverity())) myErrorCount--;
-      if (AnalysisErrorSeverity.WARNING.equals(removed.getSeverity())) myWarningCount--;
-      if (AnalysisErrorSeverity.INFO.equals(removed.getSeverity())) myHintCount--;
-      updateProblemsCountAfterFilter(removed, false);
+    private int getEndRow() {
+      return myStartRow + myProblems.size();
     }
+  }
 
-    fireTableRowsDeleted(firstRow, lastRow);
+  private static int getSeverityIndex(@NotNull final DartProblem problem) {
+    final String severity = problem.getSeverity();
+    if (AnalysisErrorSeverity.ERROR.equals(severity)) return ERROR_INDEX;
+    if (AnalysisErrorSeverity.WARNING.equals(severity)) return WARNING_INDEX;
+    if (AnalysisErrorSeverity.INFO.equals(severity)) return HINT_INDEX;
+    return -1;
   }
 
   public void removeAll() {
@@ -179,6 +213,9 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
       fireTableRowsDeleted(0, rowCount - 1);
     }
 
+    myPathToFileGroup.clear();
+    myFileGroups.clear();
+
     myErrorCount = 0;
     myWarningCount = 0;
     myHintCount = 0;
@@ -189,124 +226,202 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
 
   /**
    * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
-   * so that the caller could update selected row in the table
+   * so that the caller could update selected row in the table. If the table has been refreshed as a whole then the selection is lost,
+   * in this case {@code selectedProblem} itself is returned if it is still in the table.
    */
   @Nullable
   public DartProblem setErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
                                                                @Nullable final DartProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToErrors.keySet(), selectedProblem);
-    return addErrorsAndReturnReplacementForSelection(filePathToErrors, selectedProblemRemoved ? selectedProblem : null);
-  }
+    final boolean selectedProblemReplaced =
+      selectedProblem != null && filePathToErrors.containsKey(selectedProblem.getSystemIndependentPath());
+    DartProblem newSelectedProblem = null;
 
-  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
+    final List<FileGroup> groupsToRemove = new ArrayList<>();
+    final List<Pair<FileGroup, FileGroup>> groupsToReplace = new ArrayList<>();
+    final List<FileGroup> groupsToAdd = new ArrayList<>();
 
-    boolean selectedProblemRemoved = false;
+    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
+      final String filePath = entry.getKey();
+      final List<DartProblem> problems = createProblems(filePath, entry.getValue());
 
-    int matchedFilesCount = 0;
+      if (selectedProblemReplaced && filePath.equals(selectedProblem.getSystemIndependentPath())) {
+        newSelectedProblem = findReplacementForSelection(problems, selectedProblem);
+      }
 
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final DartProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
+      final FileGroup oldGroup = myPathToFileGroup.get(filePath);
+      final FileGroup newGroup = problems.isEmpty() ? null : new FileGroup(problems);
 
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
-        }
+      if (oldGroup != null) {
+        updateCounts(oldGroup, false);
+      }
+      if (newGroup != null) {
+        updateCounts(newGroup, true);
+        myPathToFileGroup.put(filePath, newGroup);
+      }
+      else {
+        myPathToFileGroup.remove(filePath);
+      }
 
-        DartProblem lastProblemForCurrentFile = problem;
+      if (oldGroup == null && newGroup != null) {
+        groupsToAdd.add(newGroup);
+      }
+      else if (oldGroup != null && newGroup == null) {
+        groupsToRemove.add(oldGroup);
+      }
+      else if (oldGroup != null) {
+        groupsToReplace.add(Pair.create(oldGroup, newGroup));
+      }
+    }
 
-        int j = i - 1;
-        while (j >= 0) {
-          final DartProblem previousProblem = getItem(j);
+    if (groupsToRemove.size() + groupsToReplace.size() > MAX_FILES_TO_UPDATE_INCREMENTALLY) {
+      rebuildRows(groupsToRemove, groupsToReplace, groupsToAdd);
+      return newSelectedProblem != null || selectedProblemReplaced ? newSelectedProblem : selectedProblem;
+    }
 
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
+    updateRowsInPlace(groupsToRemove, groupsToReplace);
+    appendRows(groupsToAdd);
+    return newSelectedProblem;
+  }
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+  @NotNull
+  private List<DartProblem> createProblems(@NotNull final String filePath, @NotNull final List<AnalysisError> analysisErrors) {
+    final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
+    final List<AnalysisError> errors = vFile != null && ProjectFileIndex.getInstance(myProject).isInContent(vFile)
+                                       ? analysisErrors
+                                       : AnalysisError.EMPTY_LIST;
+
+    final List<DartProblem> problems = new ArrayList<>(errors.size());
+    for (AnalysisError analysisError : errors) {
+      if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
+        continue;
+      }
+      problems.add(new DartProblem(myProject, analysisError));
+    }
+    return problems;
+  }
 
-            continue;
-          }
+  @Nullable
+  private static DartProblem findReplacementForSelection(@NotNull final List<DartProblem> problems,
+                                                         @NotNull final DartProblem oldSelectedProblem) {
+    DartProblem newSelectedProblem = null;
+    for (DartProblem problem : problems) {
+      if (lookSimilar(problem, oldSelectedProblem) &&
+          (newSelectedProblem == null ||
+           // check if current problem is closer to oldSelectedProblem
+           (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
+            Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
+        newSelectedProblem = problem;
+      }
+    }
+    return newSelectedProblem;
+  }
 
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
+  /**
+   * Replaces rows of each group with a pair of table events, going from the bottom of the table so that row indices
+   * of groups that are not processed yet stay valid.
+   */
+  private void updateRowsInPlace(@NotNull final List<FileGroup> groupsToRemove,
+                                 @NotNull final List<Pair<FileGroup, FileGroup>> groupsToReplace) {
+    if (groupsToRemove.isEmpty() && groupsToReplace.isEmpty()) return;
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+    final Map<FileGroup, FileGroup> oldToNewGroup = new THashMap<>();
+    for (FileGroup group : groupsToRemove) {
+      oldToNewGroup.put(group, null);
+    }
+    for (Pair<FileGroup, FileGroup> pair : groupsToReplace) {
+      oldToNewGroup.put(pair.first, pair.second);
+    }
 
-            continue;
-          }
+    final List<FileGroup> oldGroups = new ArrayList<>(oldToNewGroup.keySet());
+    oldGroups.sort((group1, group2) -> group2.myStartRow - group1.myStartRow);
 
-          break;
-        }
+    for (FileGroup oldGroup : oldGroups) {
+      final int startRow = oldGroup.myStartRow;
+      myItems.subList(startRow, oldGroup.getEndRow()).clear();
+      fireTableRowsDeleted(startRow, oldGroup.getEndRow() - 1);
 
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
+      final FileGroup newGroup = oldToNewGroup.get(oldGroup);
+      if (newGroup != null) {
+        myItems.addAll(startRow, newGroup.myProblems);
+        fireTableRowsInserted(startRow, startRow + newGroup.myProblems.size() - 1);
+      }
+    }
 
-        if (matchedFilesCount == filePaths.size()) {
-          break;
-        }
+    final List<FileGroup> groups = new ArrayList<>(myFileGroups.size());
+    int row = 0;
+    for (FileGroup group : myFileGroups) {
+      final FileGroup newGroup = oldToNewGroup.containsKey(group) ? oldToNewGroup.get(group) : group;
+      if (newGroup == null) continue;
 
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
-      }
+      newGroup.myStartRow = row;
+      row += newGroup.myProblems.size();
+      groups.add(newGroup);
     }
 
-    return selectedProblemRemoved;
+    myFileGroups.clear();
+    myFileGroups.addAll(groups);
   }
 
-  @Nullable
-  private DartProblem addErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                                @Nullable final DartProblem oldSelectedProblem) {
-    DartProblem newSelectedProblem = null;
+  private void appendRows(@NotNull final List<FileGroup> groupsToAdd) {
+    if (groupsToAdd.isEmpty()) return;
 
-    final List<DartProblem> problemsToAdd = new ArrayList<>();
-    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-      final List<AnalysisError> errors = vFile != null && ProjectFileIndex.getInstance(myProject).isInContent(vFile)
-                                         ? entry.getValue()
-                                         : AnalysisError.EMPTY_LIST;
-
-      for (AnalysisError analysisError : errors) {
-        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
-          continue;
-        }
-
-        final DartProblem problem = new DartProblem(myProject, analysisError);
-        problemsToAdd.add(problem);
+    final int firstRow = myItems.size();
+    for (FileGroup group : groupsToAdd) {
+      group.myStartRow = myItems.size();
+      myItems.addAll(group.myProblems);
+      myFileGroups.add(group);
+    }
+    fireTableRowsInserted(firstRow, myItems.size() - 1);
+  }
 
-        if (oldSelectedProblem != null &&
-            lookSimilar(problem, oldSelectedProblem) &&
-            (newSelectedProblem == null ||
-             // check if current problem is closer to oldSelectedProblem
-             (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
-              Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
-          newSelectedProblem = problem;
-        }
+  private void rebuildRows(@NotNull final List<FileGroup> groupsToRemove,
+                           @NotNull final List<Pair<FileGroup, FileGroup>> groupsToReplace,
+                           @NotNull final List<FileGroup> groupsToAdd) {
+    final Set<FileGroup> removedGroups = new THashSet<>(groupsToRemove);
+    final Map<FileGroup, FileGroup> oldToNewGroup = new THashMap<>();
+    for (Pair<FileGroup, FileGroup> pair : groupsToReplace) {
+      oldToNewGroup.put(pair.first, pair.second);
+    }
 
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount++;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount++;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount++;
-        updateProblemsCountAfterFilter(problem, true);
-      }
+    final List<FileGroup> groups = new ArrayList<>(myFileGroups.size() + groupsToAdd.size());
+    for (FileGroup group : myFileGroups) {
+      if (removedGroups.contains(group)) continue;
+      final FileGroup newGroup = oldToNewGroup.get(group);
+      groups.add(newGroup != null ? newGroup : group);
     }
+    groups.addAll(groupsToAdd);
 
-    if (!problemsToAdd.isEmpty()) {
-      addRows(problemsToAdd);
+    final List<DartProblem> items = new ArrayList<>(myItems.size());
+    for (FileGroup group : groups) {
+      group.myStartRow = items.size();
+      items.addAll(group.myProblems);
     }
 
-    return newSelectedProblem;
+    myFileGroups.clear();
+    myFileGroups.addAll(groups);
+    myItems.clear();
+    myItems.addAll(items);
+    fireTableDataChanged();
+  }
+
+  private void updateCounts(@NotNull final FileGroup group, final boolean incrementNotDecrement) {
+    final int sign = incrementNotDecrement ? 1 : -1;
+    myErrorCount += sign * group.mySeverityCounts[ERROR_INDEX];
+    myWarningCount += sign * group.mySeverityCounts[WARNING_INDEX];
+    myHintCount += sign * group.mySeverityCounts[HINT_INDEX];
+    updateCountsAfterFilter(group, incrementNotDecrement);
+  }
+
+  private void updateCountsAfterFilter(@NotNull final FileGroup group, final boolean incrementNotDecrement) {
+    final int sign = incrementNotDecrement ? 1 : -1;
+    myErrorCountAfterFilter += sign * getCountAfterFilter(group, ERROR_INDEX);
+    myWarningCountAfterFilter += sign * getCountAfterFilter(group, WARNING_INDEX);
+    myHintCountAfterFilter += sign * getCountAfterFilter(group, HINT_INDEX);
+  }
+
+  private int getCountAfterFilter(@NotNull final FileGroup group, final int severityIndex) {
+    final DartProblem representative = group.mySeverityRepresentatives[severityIndex];
+    return representative != null && myPresentationHelper.shouldShowProblem(representative) ? group.mySeverityCounts[severityIndex] : 0;
   }
 
   private static boolean lookSimilar(@NotNull final DartProblem problem1, @NotNull final DartProblem problem2) {
@@ -315,21 +430,6 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
            problem1.getSystemIndependentPath().equals(problem2.getSystemIndependentPath());
   }
 
-  private void updateProblemsCountAfterFilter(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
-    if (myPresentationHelper.shouldShowProblem(problem)) {
-      if (incrementNotDecrement) {
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCountAfterFilter++;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCountAfterFilter++;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCountAfterFilter++;
-      }
-      else {
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCountAfterFilter--;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCountAfterFilter--;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCountAfterFilter--;
-      }
-    }
-  }
-
   public void setSortKey(@NotNull final RowSorter.SortKey sortKey) {
     mySortKey = sortKey;
   }
@@ -340,8 +440,8 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
       myErrorCountAfterFilter = 0;
       myWarningCountAfterFilter = 0;
       myHintCountAfterFilter = 0;
-      for (DartProblem problem : myItems) {
-        updateProblemsCountAfterFilter(problem, true);
+      for (FileGroup group : myFileGroups) {
+        updateCountsAfterFilter(group, true);
       }
     }
     else {
@@ -1,27 +1,52 @@
 package com.jetbrains.lang.dart.ide.index;
 
+import com.intellij.lang.*;
 import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.CharTableImpl;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.indexing.FileContent;
-import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.*;
+import com.jetbrains.lang.dart.lexer.DartLexer;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.util.DartControlFlowUtil;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
 import java.util.Set;
 
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
 import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
 
+/**
+ * Computes the data of all Dart indices ({@link DartClassIndex}, {@link DartComponentIndex}, {@link DartSymbolIndex},
+ * {@link DartLibraryIndex}, {@link DartImportAndExportIndex}, {@link DartPartUriIndex}) in a single pass per file. The result is kept
+ * in the {@link FileContent} user data, so the file is parsed only once even though all these indices need it.
+ * <p/>
+ * Dart files are parsed to a {@link LighterAST} only, without building PSI. Function bodies are parsed lazily, so they are never
+ * parsed at all. PSI is used for Dart code embedded in HTML files and for the rare {@code part of 'uri';} directive, because
+ * the library name of such a part is taken from the library file.
+ */
 public class DartIndexUtil {
   // inc when change parser
-  public static final int INDEX_VERSION = 23;
+  public static final int INDEX_VERSION = 24;
 
   private static final Key<DartFileIndexData> ourDartCachesData = Key.create("dart.caches.index.data");
 
+  private static final TokenSet TOP_LEVEL_CLASSES = TokenSet.create(CLASS_DEFINITION, MIXIN_DECLARATION, ENUM_DEFINITION);
+  private static final TokenSet TOP_LEVEL_FUNCTIONS =
+    TokenSet.create(FUNCTION_DECLARATION_WITH_BODY_OR_NATIVE, FUNCTION_DECLARATION_WITH_BODY, GETTER_DECLARATION, SETTER_DECLARATION);
+  private static final TokenSet VARIABLES = TokenSet.create(VAR_ACCESS_DECLARATION, VAR_DECLARATION_LIST_PART);
+  private static final TokenSet CLASS_MEMBER_COMPONENTS = TokenSet.create(FACTORY_CONSTRUCTOR_DECLARATION, NAMED_CONSTRUCTOR_DECLARATION,
+                                                                          GETTER_DECLARATION, SETTER_DECLARATION, METHOD_DECLARATION);
+
   public static DartFileIndexData indexFile(FileContent content) {
     DartFileIndexData indexData = content.getUserData(ourDartCachesData);
     if (indexData != null) return indexData;
@@ -29,13 +54,20 @@ public class DartIndexUtil {
     synchronized (content) {
       indexData = content.getUserData(ourDartCachesData);
       if (indexData != null) return indexData;
-      indexData = indexFileRoots(content.getPsiFile());
+
+      if (content.getFileType() == DartFileType.INSTANCE) {
+        indexData = indexFileText(content.getContentAsText(), content.getFileName());
+      }
+      if (indexData == null) {
+        indexData = indexFileRoots(content.getPsiFile());
+      }
+      content.putUserData(ourDartCachesData, indexData);
     }
 
     return indexData;
   }
 
-  private static DartFileIndexData indexFileRoots(PsiFile psiFile) {
+  static DartFileIndexData indexFileRoots(PsiFile psiFile) {
     DartFileIndexData result = new DartFileIndexData();
 
     result.setLibraryName(DartResolveUtil.getLibraryName(psiFile));
@@ -85,6 +117,223 @@ public class DartIndexUtil {
     return result;
   }
 
+  /**
+   * @return {@code null} if the file can't be indexed without PSI
+   */
+  @Nullable
+  static DartFileIndexData indexFileText(@NotNull final CharSequence text, @NotNull final String fileName) {
+    final ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(DartLanguage.INSTANCE);
+    final PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(parserDefinition, new DartLexer(), text);
+    new DartParser().parseLight(DartTokenTypesSets.DART_FILE, builder);
+    final LighterAST tree = new FCTSBackedLighterAST(new CharTableImpl(), builder.getLightTree());
+    return indexLighterAST(tree, text, fileName);
+  }
+
+  @Nullable
+  private static DartFileIndexData indexLighterAST(@NotNull final LighterAST tree,
+                                                   @NotNull final CharSequence text,
+                                                   @NotNull final String fileName) {
+    final List<LighterASTNode> children = tree.getChildren(tree.getRoot());
+
+    final String libraryName = getLibraryName(tree, text, children, fileName);
+    if (libraryName == null) return null;
+
+    final DartFileIndexData result = new DartFileIndexData();
+    result.setLibraryName(libraryName);
+    result.setIsPart(findChild(children, PART_OF_STATEMENT) != null);
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : tree.getChildren(child)) {
+          if (VARIABLES.contains(variable.getTokenType())) {
+            addTopLevelComponent(result, getComponentName(tree, text, variable), DartComponentType.VARIABLE);
+          }
+        }
+      }
+      else if (TOP_LEVEL_FUNCTIONS.contains(type)) {
+        addTopLevelComponent(result, getComponentName(tree, text, child), DartComponentType.FUNCTION);
+      }
+      else if (type == FUNCTION_TYPE_ALIAS) {
+        addTopLevelComponent(result, getComponentName(tree, text, child), DartComponentType.TYPEDEF);
+      }
+      else if (TOP_LEVEL_CLASSES.contains(type)) {
+        final String name = getComponentName(tree, text, child);
+        if (name == null) continue;
+
+        addTopLevelComponent(result, name, DartComponentType.CLASS);
+        result.addClassName(name);
+        addClassMemberSymbols(result, tree, text, child);
+      }
+    }
+
+    // import prefixes must override top-level components with the same name, like in indexFileRoots()
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == IMPORT_STATEMENT || type == EXPORT_STATEMENT) {
+        processImportOrExportStatement(result, tree, text, child);
+      }
+      else if (type == PART_STATEMENT) {
+        result.addPartUri(getUriString(tree, text, child));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Mimics {@link DartResolveUtil#getLibraryName(PsiFile)}.
+   *
+   * @return {@code null} if the library name can't be found without PSI
+   */
+  @Nullable
+  private static String getLibraryName(@NotNull final LighterAST tree,
+                                       @NotNull final CharSequence text,
+                                       @NotNull final List<LighterASTNode> children,
+                                       @NotNull final String fileName) {
+    final LighterASTNode libraryStatement = findChild(children, LIBRARY_STATEMENT);
+    if (libraryStatement != null) {
+      final LighterASTNode nameElement = LightTreeUtil.firstChildOfType(tree, libraryStatement, LIBRARY_NAME_ELEMENT);
+      final StringBuilder name = new StringBuilder();
+      if (nameElement != null) {
+        for (LighterASTNode id : LightTreeUtil.getChildrenOfType(tree, nameElement, ID)) {
+          if (name.length() > 0) {
+            name.append('.');
+          }
+          name.append(getText(text, id));
+        }
+      }
+      return name.toString();
+    }
+
+    final LighterASTNode partOfStatement = findChild(children, PART_OF_STATEMENT);
+    if (partOfStatement != null) {
+      final LighterASTNode libraryId = LightTreeUtil.firstChildOfType(tree, partOfStatement, LIBRARY_ID);
+      return libraryId != null ? getText(text, libraryId) : null;
+    }
+
+    return fileName;
+  }
+
+  /**
+   * Mimics {@link DartResolveUtil#getNamedSubComponents(DartClass)}.
+   */
+  private static void addClassMemberSymbols(@NotNull final DartFileIndexData result,
+                                            @NotNull final LighterAST tree,
+                                            @NotNull final CharSequence text,
+                                            @NotNull final LighterASTNode dartClass) {
+    if (dartClass.getTokenType() == ENUM_DEFINITION) {
+      for (LighterASTNode enumConstant : LightTreeUtil.getChildrenOfType(tree, dartClass, ENUM_CONSTANT_DECLARATION)) {
+        result.addSymbol(getComponentName(tree, text, enumConstant));
+      }
+      return;
+    }
+
+    if (dartClass.getTokenType() != CLASS_DEFINITION) return;
+
+    final LighterASTNode body = LightTreeUtil.firstChildOfType(tree, dartClass, CLASS_BODY);
+    final LighterASTNode members = body == null ? null : LightTreeUtil.firstChildOfType(tree, body, CLASS_MEMBERS);
+    if (members == null) return;
+
+    final List<LighterASTNode> memberNodes = tree.getChildren(members);
+    for (LighterASTNode member : memberNodes) {
+      if (CLASS_MEMBER_COMPONENTS.contains(member.getTokenType())) {
+        result.addSymbol(getComponentName(tree, text, member));
+      }
+    }
+    for (LighterASTNode member : memberNodes) {
+      if (member.getTokenType() == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : tree.getChildren(member)) {
+          if (VARIABLES.contains(variable.getTokenType())) {
+            result.addSymbol(getComponentName(tree, text, variable));
+          }
+        }
+      }
+    }
+  }
+
+  private static void addTopLevelComponent(@NotNull final DartFileIndexData result,
+                                           @Nullable final String name,
+                                           @NotNull final DartComponentType type) {
+    if (name == null) return;
+
+    result.addSymbol(name);
+    result.addComponentInfo(name, new DartComponentInfo(type, result.getLibraryName()));
+  }
+
+  private static void processImportOrExportStatement(@NotNull final DartFileIndexData result,
+                                                     @NotNull final LighterAST tree,
+                                                     @NotNull final CharSequence text,
+                                                     @NotNull final LighterASTNode statement) {
+    final Set<String> showComponentNames = new THashSet<>();
+    final Set<String> hideComponentNames = new THashSet<>();
+    for (LighterASTNode child : tree.getChildren(statement)) {
+      final IElementType type = child.getTokenType();
+      if (type == SHOW_COMBINATOR || type == HIDE_COMBINATOR) {
+        final LighterASTNode referenceList = LightTreeUtil.firstChildOfType(tree, child, LIBRARY_REFERENCE_LIST);
+        if (referenceList != null) {
+          for (LighterASTNode reference : LightTreeUtil.getChildrenOfType(tree, referenceList, LIBRARY_COMPONENT_REFERENCE_EXPRESSION)) {
+            (type == SHOW_COMBINATOR ? showComponentNames : hideComponentNames).add(getText(text, reference));
+          }
+        }
+      }
+    }
+
+    final boolean isImport = statement.getTokenType() == IMPORT_STATEMENT;
+    final LighterASTNode importPrefixComponent = isImport ? LightTreeUtil.firstChildOfType(tree, statement, COMPONENT_NAME) : null;
+    final String importPrefix = importPrefixComponent != null ? getText(text, importPrefixComponent) : null;
+
+    final Kind kind = isImport ? Kind.Import : Kind.Export;
+    result.addImportInfo(new DartImportOrExportInfo(kind, getUriString(tree, text, statement), importPrefix, showComponentNames,
+                                                    hideComponentNames));
+    result.addComponentInfo(importPrefix, new DartComponentInfo(DartComponentType.LABEL, null));
+  }
+
+  /**
+   * Mimics {@link DartPsiImplUtil#getUriString(DartUriBasedDirective)}.
+   */
+  @NotNull
+  private static String getUriString(@NotNull final LighterAST tree,
+                                     @NotNull final CharSequence text,
+                                     @NotNull final LighterASTNode directive) {
+    final LighterASTNode uriElement = LightTreeUtil.firstChildOfType(tree, directive, URI_ELEMENT);
+    return uriElement == null ? "" : DartPsiImplUtil.getUnquotedDartStringAndItsRange(getText(text, uriElement)).first;
+  }
+
+  /**
+   * Mimics {@link DartComponent#getName()}: the first component name child, or the second one for named constructors and factories.
+   */
+  @Nullable
+  private static String getComponentName(@NotNull final LighterAST tree,
+                                         @NotNull final CharSequence text,
+                                         @NotNull final LighterASTNode component) {
+    final List<LighterASTNode> names = LightTreeUtil.getChildrenOfType(tree, component, COMPONENT_NAME);
+    final LighterASTNode name;
+    if (component.getTokenType() == NAMED_CONSTRUCTOR_DECLARATION) {
+      name = names.size() == 2 ? names.get(1) : null;
+    }
+    else if (component.getTokenType() == FACTORY_CONSTRUCTOR_DECLARATION) {
+      name = names.size() == 2 ? names.get(1) : names.size() == 1 ? names.get(0) : null;
+    }
+    else {
+      name = names.isEmpty() ? null : names.get(0);
+    }
+    return name == null ? null : getText(text, name);
+  }
+
+  @Nullable
+  private static LighterASTNode findChild(@NotNull final List<LighterASTNode> children, @NotNull final IElementType type) {
+    for (LighterASTNode child : children) {
+      if (child.getTokenType() == type) return child;
+    }
+    return null;
+  }
+
+  @NotNull
+  private static String getText(@NotNull final CharSequence text, @NotNull final LighterASTNode node) {
+    return text.subSequence(node.getStartOffset(), node.getEndOffset()).toString();
+  }
+
   private static void processImportOrExportStatement(final @NotNull DartFileIndexData result,
                                                      final @NotNull DartImportOrExportStatement importOrExportStatement) {
     final String uri = importOrExportStatement.getUriString();
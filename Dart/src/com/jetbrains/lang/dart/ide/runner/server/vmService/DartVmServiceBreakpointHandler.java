@@ -20,6 +20,8 @@ import com.jetbrains.lang.dart.ide.runner.DartLineBreakpointType;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import org.dartlang.vm.service.element.Breakpoint;
+import org.dartlang.vm.service.element.ScriptRef;
+import org.dartlang.vm.service.element.SourceLocation;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
@@ -68,7 +70,7 @@ public class DartVmServiceBreakpointHandler extends XBreakpointHandler<XLineBrea
     info.vmBreakpointAdded(xBreakpoint, vmBreakpoint);
 
     if (vmBreakpoint.getResolved()) {
-      breakpointResolved(vmBreakpoint);
+      breakpointResolved(isolateId, vmBreakpoint);
     }
   }
 
@@ -96,13 +98,20 @@ public class DartVmServiceBreakpointHandler extends XBreakpointHandler<XLineBrea
     return info;
   }
 
-  public void breakpointResolved(@NotNull final Breakpoint vmBreakpoint) {
+  public void breakpointResolved(@NotNull final String isolateId, @NotNull final Breakpoint vmBreakpoint) {
     final XLineBreakpoint<XBreakpointProperties> xBreakpoint = myVmBreakpointIdToXBreakpointMap.get(vmBreakpoint.getId());
 
     // This can be null when the breakpoint has been set by another debugger client.
     if (xBreakpoint != null) {
       myDebugProcess.getSession().setBreakpointVerified(xBreakpoint);
     }
+
+    // the isolate is likely to pause in this script soon
+    final Object location = vmBreakpoint.getLocation();
+    final ScriptRef scriptRef = location instanceof SourceLocation ? ((SourceLocation)location).getScript() : null;
+    if (scriptRef != null) {
+      myDebugProcess.prefetchScript(isolateId, scriptRef);
+    }
   }
 
   public void breakpointFailed(@NotNull final XLineBreakpoint<XBreakpointProperties> xBreakpoint) {
@@ -13,7 +13,6 @@ import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -24,6 +23,7 @@ import com.intellij.psi.search.GlobalSearchScopesCore;
 import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.util.PathUtil;
 import com.intellij.util.TimeoutUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xdebugger.*;
 import com.intellij.xdebugger.breakpoints.XBreakpointHandler;
 import com.intellij.xdebugger.evaluation.XDebuggerEditorsProvider;
@@ -42,10 +42,9 @@ import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceSt
 import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceSuspendContext;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
-import gnu.trove.THashMap;
 import gnu.trove.THashSet;
-import gnu.trove.TIntObjectHashMap;
 import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
 import org.dartlang.vm.service.element.*;
 import org.dartlang.vm.service.logging.Logging;
 import org.jetbrains.annotations.NotNull;
@@ -72,9 +71,9 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
   @NotNull private final Set<String> mySuspendedIsolateIds = Collections.synchronizedSet(new THashSet<String>());
   private String myLatestCurrentIsolateId;
 
-  private final Map<String, LightVirtualFile> myScriptIdToContentMap = new THashMap<>();
-  private final Map<String, TIntObjectHashMap<Pair<Integer, Integer>>> myScriptIdToLinesAndColumnsMap =
-    new THashMap<>();
+  private final Map<String, LightVirtualFile> myScriptIdToContentMap = ContainerUtil.newConcurrentMap();
+  private final Map<String, TokenPosTable> myScriptIdToTokenPosTableMap = ContainerUtil.newConcurrentMap();
+  private final Set<String> myPrefetchedScriptIds = ContainerUtil.newConcurrentSet();
 
   @Nullable private final String myDASExecutionContextId;
   private final boolean myRemoteDebug;
@@ -414,11 +413,13 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
 
   public void isolateResumed(@NotNull final IsolateRef isolateRef) {
     mySuspendedIsolateIds.remove(isolateRef.getId());
+    myVmServiceWrapper.isolateResumed(isolateRef.getId());
   }
 
   public void isolateExit(@NotNull final IsolateRef isolateRef) {
     myIsolatesInfo.deleteIsolate(isolateRef);
     mySuspendedIsolateIds.remove(isolateRef.getId());
+    myVmServiceWrapper.isolateResumed(isolateRef.getId());
 
     if (isolateRef.getId().equals(myLatestCurrentIsolateId)) {
       resume(getSession().getSuspendContext()); // otherwise no way no resume them from UI
@@ -532,12 +533,10 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
       file = myScriptIdToContentMap.get(scriptRef.getId());
     }
 
-    TIntObjectHashMap<Pair<Integer, Integer>> tokenPosToLineAndColumn = myScriptIdToLinesAndColumnsMap.get(scriptRef.getId());
+    TokenPosTable tokenPosTable = myScriptIdToTokenPosTableMap.get(scriptRef.getId());
 
-    if (file != null && tokenPosToLineAndColumn != null) {
-      final Pair<Integer, Integer> lineAndColumn = tokenPosToLineAndColumn.get(tokenPos);
-      if (lineAndColumn == null) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
-      return XDebuggerUtil.getInstance().createPosition(file, lineAndColumn.first, lineAndColumn.second);
+    if (file != null && tokenPosTable != null) {
+      return createPosition(file, tokenPosTable, tokenPos);
     }
 
     final Script script = myVmServiceWrapper.getScriptSync(isolateId, scriptRef.getId());
@@ -552,38 +551,58 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
       myScriptIdToContentMap.put(scriptRef.getId(), (LightVirtualFile)file);
     }
 
-    if (tokenPosToLineAndColumn == null) {
-      tokenPosToLineAndColumn = createTokenPosToLineAndColumnMap(script.getTokenPosTable());
-      myScriptIdToLinesAndColumnsMap.put(scriptRef.getId(), tokenPosToLineAndColumn);
+    if (tokenPosTable == null) {
+      tokenPosTable = TokenPosTable.create(script.getTokenPosTable());
+      myScriptIdToTokenPosTableMap.put(scriptRef.getId(), tokenPosTable);
     }
 
-    final Pair<Integer, Integer> lineAndColumn = tokenPosToLineAndColumn.get(tokenPos);
-    if (lineAndColumn == null) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
-    return XDebuggerUtil.getInstance().createPosition(file, lineAndColumn.first, lineAndColumn.second);
+    return createPosition(file, tokenPosTable, tokenPos);
   }
 
-  private static boolean isDartPatchUri(@NotNull final String uri) {
-    // dart:_builtin or dart:core-patch/core_patch.dart
-    return uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/");
-  }
+  @Nullable
+  private static XSourcePosition createPosition(@NotNull final VirtualFile file, @NotNull final TokenPosTable tokenPosTable, int tokenPos) {
+    final long lineAndColumn = tokenPosTable.getLineAndColumn(tokenPos);
+    if (lineAndColumn == -1) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
+    return XDebuggerUtil.getInstance()
+      .createPosition(file, TokenPosTable.getLine(lineAndColumn), TokenPosTable.getColumn(lineAndColumn));
+  }
+
+  /**
+   * Loads the token position table of the script in background, so that the first pause in this script doesn't wait for it.
+   * Called for scripts with resolved breakpoints.
+   */
+  public void prefetchScript(@NotNull final String isolateId, @NotNull final ScriptRef scriptRef) {
+    final String scriptId = scriptRef.getId();
+    if (myScriptIdToTokenPosTableMap.containsKey(scriptId) || !myPrefetchedScriptIds.add(scriptId)) return;
+
+    myVmServiceWrapper.getObject(isolateId, scriptId, new GetObjectConsumer() {
+      @Override
+      public void received(Obj obj) {
+        if (!(obj instanceof Script)) return;
+        // don't block the VM service receiver thread, token tables of big scripts take a while to build
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+          final List<List<Integer>> tokenPosTable = ((Script)obj).getTokenPosTable();
+          if (tokenPosTable != null && !myScriptIdToTokenPosTableMap.containsKey(scriptId)) {
+            myScriptIdToTokenPosTableMap.putIfAbsent(scriptId, TokenPosTable.create(tokenPosTable));
+          }
+        });
+      }
 
-  @NotNull
-  private static TIntObjectHashMap<Pair<Integer, Integer>> createTokenPosToLineAndColumnMap(@NotNull final List<List<Integer>> tokenPosTable) {
-    // Each subarray consists of a line number followed by (tokenPos, columnNumber) pairs
-    // see https://github.com/dart-lang/vm_service_drivers/blob/master/dart/tool/service.md#script
-    final TIntObjectHashMap<Pair<Integer, Integer>> result = new TIntObjectHashMap<>();
-
-    for (List<Integer> lineAndPairs : tokenPosTable) {
-      final Iterator<Integer> iterator = lineAndPairs.iterator();
-      int line = Math.max(0, iterator.next() - 1);
-      while (iterator.hasNext()) {
-        final int tokenPos = iterator.next();
-        final int column = Math.max(0, iterator.next() - 1);
-        result.put(tokenPos, Pair.create(line, column));
+      @Override
+      public void received(Sentinel response) {
+        myPrefetchedScriptIds.remove(scriptId);
       }
-    }
 
-    return result;
+      @Override
+      public void onError(RPCError error) {
+        myPrefetchedScriptIds.remove(scriptId);
+      }
+    });
+  }
+
+  private static boolean isDartPatchUri(@NotNull final String uri) {
+    // dart:_builtin or dart:core-patch/core_patch.dart
+    return uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/");
   }
 
   @Nullable
@@ -50,7 +50,7 @@ public class DartVmServiceListener implements VmServiceListener {
       case BreakpointRemoved:
         break;
       case BreakpointResolved:
-        myBreakpointHandler.breakpointResolved(event.getBreakpoint());
+        myBreakpointHandler.breakpointResolved(event.getIsolate().getId(), event.getBreakpoint());
         break;
       case Extension:
         break;
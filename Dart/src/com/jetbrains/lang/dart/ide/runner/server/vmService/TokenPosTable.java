@@ -0,0 +1,111 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps token positions of a script to 0-based lines and columns. Scripts of big applications have millions of tokens, so the table is
+ * kept as a sorted array of token positions and a parallel array of packed (line, column) pairs, looked up with binary search.
+ */
+final class TokenPosTable {
+  private final int[] myTokenPositions;
+  private final long[] myLinesAndColumns;
+
+  private TokenPosTable(@NotNull final int[] tokenPositions, @NotNull final long[] linesAndColumns) {
+    myTokenPositions = tokenPositions;
+    myLinesAndColumns = linesAndColumns;
+  }
+
+  /**
+   * @param tokenPosTable see {@link org.dartlang.vm.service.element.Script#getTokenPosTable()}
+   */
+  @NotNull
+  static TokenPosTable create(@NotNull final List<List<Integer>> tokenPosTable) {
+    // Each subarray consists of a line number followed by (tokenPos, columnNumber) pairs
+    // see https://github.com/dart-lang/vm_service_drivers/blob/master/dart/tool/service.md#script
+    int size = 0;
+    for (List<Integer> lineAndPairs : tokenPosTable) {
+      size += Math.max(0, lineAndPairs.size() - 1) / 2;
+    }
+
+    int[] tokenPositions = new int[size];
+    long[] linesAndColumns = new long[size];
+    boolean sorted = true;
+    int index = 0;
+
+    for (List<Integer> lineAndPairs : tokenPosTable) {
+      if (lineAndPairs.isEmpty()) continue;
+
+      final int pairsEnd = lineAndPairs.size() - (lineAndPairs.size() - 1) % 2;
+      final int line = Math.max(0, lineAndPairs.get(0) - 1);
+      for (int i = 1; i < pairsEnd; i += 2) {
+        final int tokenPos = lineAndPairs.get(i);
+        final int column = Math.max(0, lineAndPairs.get(i + 1) - 1);
+        if (index > 0 && tokenPositions[index - 1] >= tokenPos) {
+          sorted = false;
+        }
+        tokenPositions[index] = tokenPos;
+        linesAndColumns[index] = pack(line, column);
+        index++;
+      }
+    }
+
+    if (!sorted) {
+      // the VM lists tokens line by line, so the table is normally sorted already
+      final long[] order = new long[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = (long)tokenPositions[i] << 32 | i;
+      }
+      Arrays.sort(order);
+
+      final int[] sortedTokenPositions = new int[size];
+      final long[] sortedLinesAndColumns = new long[size];
+      int sortedSize = 0;
+      for (long entry : order) {
+        final int tokenPos = (int)(entry >> 32);
+        final int originalIndex = (int)entry;
+        // the last occurrence of a duplicate token position wins, it goes last as its original index is the biggest
+        if (sortedSize > 0 && sortedTokenPositions[sortedSize - 1] == tokenPos) {
+          sortedSize--;
+        }
+        sortedTokenPositions[sortedSize] = tokenPos;
+        sortedLinesAndColumns[sortedSize] = linesAndColumns[originalIndex];
+        sortedSize++;
+      }
+
+      tokenPositions = Arrays.copyOf(sortedTokenPositions, sortedSize);
+      linesAndColumns = Arrays.copyOf(sortedLinesAndColumns, sortedSize);
+    }
+
+    return new TokenPosTable(tokenPositions, linesAndColumns);
+  }
+
+  private static long pack(final int line, final int column) {
+    return (long)line << 32 | column & 0xFFFFFFFFL;
+  }
+
+  /**
+   * @return packed line and column of the token, or -1 if there's no such token position in the table
+   * @see #getLine(long)
+   * @see #getColumn(long)
+   */
+  long getLineAndColumn(final int tokenPos) {
+    final int index = Arrays.binarySearch(myTokenPositions, tokenPos);
+    return index < 0 ? -1 : myLinesAndColumns[index];
+  }
+
+  static int getLine(final long lineAndColumn) {
+    return (int)(lineAndColumn >>> 32);
+  }
+
+  static int getColumn(final long lineAndColumn) {
+    return (int)lineAndColumn;
+  }
+
+  int size() {
+    return myTokenPositions.length;
+  }
+}
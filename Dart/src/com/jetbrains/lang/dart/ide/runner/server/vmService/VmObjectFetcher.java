@@ -0,0 +1,250 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.Consumer;
+import gnu.trove.THashMap;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Sends {@code getObject} requests to the VM keeping up to {@link #MAX_IN_FLIGHT_REQUESTS} of them outstanding at once, so that expanding
+ * a big collection or a deep object graph in the Variables view doesn't flood the VM service connection, and the requests that don't
+ * fit into the window are sent as soon as earlier responses arrive.
+ * <p/>
+ * While an isolate is paused its objects don't change, so responses are cached until the isolate resumes, see {@link #invalidate(String)}.
+ * Identical requests made while the first one is in flight wait for the same response. Evaluations in the paused isolate don't invalidate
+ * the cache: the Variables view isn't refreshed after them either.
+ */
+final class VmObjectFetcher {
+  private static final Logger LOG = Logger.getInstance(VmObjectFetcher.class.getName());
+
+  static final int MAX_IN_FLIGHT_REQUESTS = 32;
+  private static final int MAX_CACHED_OBJECTS = 5000;
+
+  private static final class Key {
+    @NotNull private final String myIsolateId;
+    @NotNull private final String myObjectId;
+    @Nullable private final Integer myOffset;
+    @Nullable private final Integer myCount;
+
+    private Key(@NotNull final String isolateId,
+                @NotNull final String objectId,
+                @Nullable final Integer offset,
+                @Nullable final Integer count) {
+      myIsolateId = isolateId;
+      myObjectId = objectId;
+      myOffset = offset;
+      myCount = count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key key = (Key)o;
+      return myIsolateId.equals(key.myIsolateId) &&
+             myObjectId.equals(key.myObjectId) &&
+             Objects.equals(myOffset, key.myOffset) &&
+             Objects.equals(myCount, key.myCount);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myIsolateId.hashCode();
+      result = 31 * result + myObjectId.hashCode();
+      result = 31 * result + Objects.hashCode(myOffset);
+      result = 31 * result + Objects.hashCode(myCount);
+      return result;
+    }
+  }
+
+  private static final class Request {
+    @NotNull private final Key myKey;
+    private final boolean myCacheable;
+    private final int myGeneration;
+    @NotNull private final List<GetObjectConsumer> myConsumers = new ArrayList<>(1); // guarded by VmObjectFetcher.myLock
+
+    private Request(@NotNull final Key key, final boolean cacheable, final int generation, @NotNull final GetObjectConsumer consumer) {
+      myKey = key;
+      myCacheable = cacheable;
+      myGeneration = generation;
+      myConsumers.add(consumer);
+    }
+  }
+
+  @NotNull private final VmService myVmService;
+  @NotNull private final Consumer<Runnable> myRequestScheduler;
+
+  private final Object myLock = new Object();
+  private int myInFlightCount;
+  private final Queue<Request> myPendingRequests = new ArrayDeque<>();
+  private final Map<Key, Request> myCacheableRequests = new THashMap<>();
+  private final Map<String, Integer> myIsolateIdToGeneration = new THashMap<>();
+  private final Map<Key, Obj> myCache = new LinkedHashMap<Key, Obj>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Obj> eldest) {
+      return size() > MAX_CACHED_OBJECTS;
+    }
+  };
+
+  private long mySentCount;
+  private long myCacheHitCount;
+
+  /**
+   * @param requestScheduler runs the given runnable that sends a request to the VM
+   */
+  VmObjectFetcher(@NotNull final VmService vmService, @NotNull final Consumer<Runnable> requestScheduler) {
+    myVmService = vmService;
+    myRequestScheduler = requestScheduler;
+  }
+
+  /**
+   * @param cacheable whether the isolate is paused, so that the response may be kept until it resumes
+   */
+  void getObject(@NotNull final String isolateId,
+                 @NotNull final String objectId,
+                 @Nullable final Integer offset,
+                 @Nullable final Integer count,
+                 final boolean cacheable,
+                 @NotNull final GetObjectConsumer consumer) {
+    final Key key = new Key(isolateId, objectId, offset, count);
+    final Obj cached;
+    final Request request;
+
+    synchronized (myLock) {
+      cached = cacheable ? myCache.get(key) : null;
+      if (cached != null) {
+        myCacheHitCount++;
+        request = null;
+      }
+      else {
+        final Request sameRequest = cacheable ? myCacheableRequests.get(key) : null;
+        if (sameRequest != null) {
+          sameRequest.myConsumers.add(consumer);
+          return;
+        }
+
+        final Request newRequest = new Request(key, cacheable, getGeneration(isolateId), consumer);
+        if (cacheable) {
+          myCacheableRequests.put(key, newRequest);
+        }
+
+        if (myInFlightCount < MAX_IN_FLIGHT_REQUESTS) {
+          myInFlightCount++;
+          request = newRequest;
+        }
+        else {
+          myPendingRequests.add(newRequest);
+          request = null;
+        }
+      }
+    }
+
+    if (cached != null) {
+      consumer.received(cached);
+    }
+    else if (request != null) {
+      send(request);
+    }
+  }
+
+  /**
+   * Forgets cached objects of the isolate. Must be called before the isolate is resumed and when it exits.
+   */
+  void invalidate(@NotNull final String isolateId) {
+    synchronized (myLock) {
+      myIsolateIdToGeneration.put(isolateId, getGeneration(isolateId) + 1);
+      myCache.keySet().removeIf(key -> key.myIsolateId.equals(isolateId));
+      // requests in flight will be answered, but new requests must not wait for these answers
+      myCacheableRequests.keySet().removeIf(key -> key.myIsolateId.equals(isolateId));
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("getObject requests sent: " + mySentCount + ", answered from cache: " + myCacheHitCount);
+      }
+    }
+  }
+
+  private int getGeneration(@NotNull final String isolateId) {
+    final Integer generation = myIsolateIdToGeneration.get(isolateId);
+    return generation == null ? 0 : generation;
+  }
+
+  private void send(@NotNull final Request request) {
+    synchronized (myLock) {
+      mySentCount++;
+    }
+
+    final Key key = request.myKey;
+    final GetObjectConsumer consumer = new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+        requestDone(request, response, null, null);
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        requestDone(request, null, response, null);
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        requestDone(request, null, null, error);
+      }
+    };
+    myRequestScheduler.consume(() -> myVmService.getObject(key.myIsolateId, key.myObjectId, key.myOffset, key.myCount, consumer));
+  }
+
+  private void requestDone(@NotNull final Request request,
+                           @Nullable final Obj obj,
+                           @Nullable final Sentinel sentinel,
+                           @Nullable final RPCError error) {
+    final GetObjectConsumer[] consumers;
+    final Request next;
+
+    synchronized (myLock) {
+      myInFlightCount--;
+
+      if (myCacheableRequests.get(request.myKey) == request) {
+        myCacheableRequests.remove(request.myKey);
+      }
+      if (obj != null && request.myCacheable && request.myGeneration == getGeneration(request.myKey.myIsolateId)) {
+        myCache.put(request.myKey, obj);
+      }
+      consumers = request.myConsumers.toArray(new GetObjectConsumer[0]);
+
+      next = myPendingRequests.poll();
+      if (next != null) {
+        myInFlightCount++;
+      }
+    }
+
+    if (next != null) {
+      send(next);
+    }
+
+    for (GetObjectConsumer consumer : consumers) {
+      try {
+        if (obj != null) {
+          consumer.received(obj);
+        }
+        else if (sentinel != null) {
+          consumer.received(sentinel);
+        }
+        else {
+          consumer.onError(error);
+        }
+      }
+      catch (RuntimeException e) {
+        LOG.error(e);
+      }
+    }
+  }
+}
@@ -41,8 +41,7 @@ public class VmServiceWrapper implements Disposable {
   private final IsolatesInfo myIsolatesInfo;
   private final DartVmServiceBreakpointHandler myBreakpointHandler;
   private final Alarm myRequestsScheduler;
-
-  private long myVmServiceReceiverThreadId;
+  private final VmObjectFetcher myObjectFetcher;
 
   @Nullable private StepOption myLatestStep;
 
@@ -57,6 +56,7 @@ public class VmServiceWrapper implements Disposable {
     myIsolatesInfo = isolatesInfo;
     myBreakpointHandler = breakpointHandler;
     myRequestsScheduler = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    myObjectFetcher = new VmObjectFetcher(vmService, this::addRequest);
   }
 
   @Override
@@ -74,23 +74,28 @@ public class VmServiceWrapper implements Disposable {
     return myLatestStep;
   }
 
-  private void assertSyncRequestAllowed() {
+  /**
+   * @return {@code false} if waiting for the answer would deadlock, the request must not be sent in this case
+   */
+  private boolean checkSyncRequestAllowed() {
     if (ApplicationManager.getApplication().isDispatchThread()) {
       LOG.error("EDT should not be blocked by waiting for for the answer from the Dart debugger");
     }
     if (ApplicationManager.getApplication().isReadAccessAllowed()) {
       LOG.error("Waiting for for the answer from the Dart debugger under read action may lead to EDT freeze");
     }
-    if (myVmServiceReceiverThreadId == Thread.currentThread().getId()) {
-      LOG.error("Synchronous requests must not be made in Web Socket listening thread: answer will never be received");
+    if (myVmService.isForwardingMessage()) {
+      LOG.error("Synchronous request made in a VM service consumer or listener would deadlock: " +
+                "the answer is forwarded by the same thread, which would be waiting for it");
+      return false;
     }
+    return true;
   }
 
   public void handleDebuggerConnected() {
     streamListen(VmService.DEBUG_STREAM_ID, new VmServiceConsumers.SuccessConsumerWrapper() {
       @Override
       public void received(final Success success) {
-        myVmServiceReceiverThreadId = Thread.currentThread().getId();
         streamListen(VmService.ISOLATE_STREAM_ID, new VmServiceConsumers.SuccessConsumerWrapper() {
           @Override
           public void received(final Success success) {
@@ -355,6 +360,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void resumeIsolate(@NotNull final String isolateId, @Nullable final StepOption stepOption) {
+    myObjectFetcher.invalidate(isolateId);
     addRequest(() -> {
       myLatestStep = stepOption;
       myVmService.resume(isolateId, stepOption, null, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER);
@@ -374,6 +380,7 @@ public class VmServiceWrapper implements Disposable {
    * function, so frameIndex must be at least 1.
    */
   public void dropFrame(@NotNull final String isolateId, int frameIndex) {
+    myObjectFetcher.invalidate(isolateId);
     addRequest(() -> {
       myLatestStep = StepOption.Rewind;
       myVmService.resume(isolateId, StepOption.Rewind, frameIndex, new SuccessConsumer() {
@@ -444,7 +451,7 @@ public class VmServiceWrapper implements Disposable {
 
   @Nullable
   public Script getScriptSync(@NotNull final String isolateId, @NotNull final String scriptId) {
-    assertSyncRequestAllowed();
+    if (!checkSyncRequestAllowed()) return null;
 
     final Semaphore semaphore = new Semaphore();
     semaphore.down();
@@ -474,7 +481,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
+    myObjectFetcher.getObject(isolateId, objectId, null, null, myDebugProcess.isIsolateSuspended(isolateId), consumer);
   }
 
   public void getCollectionObject(@NotNull final String isolateId,
@@ -482,7 +489,14 @@ public class VmServiceWrapper implements Disposable {
                                   final int offset,
                                   final int count,
                                   @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer));
+    myObjectFetcher.getObject(isolateId, objectId, offset, count, myDebugProcess.isIsolateSuspended(isolateId), consumer);
+  }
+
+  /**
+   * Forgets objects of the isolate cached while it was paused. Called when the isolate is resumed not by this debugger or exits.
+   */
+  public void isolateResumed(@NotNull final String isolateId) {
+    myObjectFetcher.invalidate(isolateId);
   }
 
   public void evaluateInFrame(@NotNull final String isolateId,
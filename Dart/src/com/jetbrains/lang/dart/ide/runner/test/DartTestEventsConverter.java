@@ -1,27 +1,36 @@
 package com.jetbrains.lang.dart.ide.runner.test;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.intellij.execution.testframework.TestConsoleProperties;
 import com.intellij.execution.testframework.sm.ServiceMessageBuilder;
 import com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
 import com.intellij.util.PathUtil;
 import com.jetbrains.lang.dart.ide.runner.util.DartTestLocationProvider;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
 import gnu.trove.TIntLongHashMap;
+import gnu.trove.TIntObjectHashMap;
 import jetbrains.buildServer.messages.serviceMessages.ServiceMessageVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +40,10 @@ import java.util.regex.Pattern;
  * NOTE: The test runner runs tests asynchronously. It is possible to get a 'testDone'
  * event followed some time later by an 'error' event for that same test. That should
  * convert a successful test into a failure. That case is not being handled.
+ * <p/>
+ * Test suites may produce hundreds of thousands of events, so events are decoded without building a JSON tree (except for the
+ * nested test, group and suite descriptions), finished tests and groups are forgotten except for a limited number of recent ones,
+ * and service messages are passed to the test tree in batches, one batch per {@link #FLUSH_INTERVAL_MS} at most.
  */
 public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter {
   private static final Logger LOG = Logger.getInstance(DartTestEventsConverter.class.getName());
@@ -85,45 +98,90 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private static final Gson GSON = new Gson();
 
+  // late events (like 'error' after 'testDone') may refer to finished tests, and tearDownAll tests may start in finished groups
+  private static final int MAX_RECENTLY_DONE_ITEMS = 1000;
+
+  static final int FLUSH_INTERVAL_MS = 50;
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  private static final class PendingMessage {
+    @NotNull private final String myText;
+    private final Key myOutputType;
+    private final ServiceMessageVisitor myVisitor;
+
+    private PendingMessage(@NotNull final String text, final Key outputType, final ServiceMessageVisitor visitor) {
+      myText = text;
+      myOutputType = outputType;
+      myVisitor = visitor;
+    }
+  }
+
   @NotNull private final DartUrlResolver myUrlResolver;
 
   private String myLocation;
   private Key myCurrentOutputType;
   private ServiceMessageVisitor myCurrentVisitor;
   private final TIntLongHashMap myTestIdToTimestamp;
-  private final Map<Integer, Test> myTestData;
+  private final TIntObjectHashMap<Test> myTestData;
+  // not a primitive map: groups that are not finished explicitly are finished at the end in the iteration order of this map
   private final Map<Integer, Group> myGroupData;
-  private final Map<Integer, Suite> mySuiteData;
+  private final TIntObjectHashMap<Suite> mySuiteData;
+  private final RecentItems<Test> myDoneTests;
+  private final RecentItems<Group> myDoneGroups;
   private int mySuitCount;
 
+  private final JsonParser myJsonParser = new JsonParser();
+  private final Event myEvent = new Event();
+
+  // guarded by this; the whole batch is passed to the test tree in a single EDT event, so the tree is not updated for every message
+  private final List<PendingMessage> myPendingMessages = new ArrayList<>();
+  private final Alarm myFlushAlarm;
+
   public DartTestEventsConverter(@NotNull final String testFrameworkName,
                                  @NotNull final TestConsoleProperties consoleProperties,
                                  @NotNull final DartUrlResolver urlResolver) {
     super(testFrameworkName, consoleProperties);
     myUrlResolver = urlResolver;
     myTestIdToTimestamp = new TIntLongHashMap();
-    myTestData = new HashMap<>();
+    myTestData = new TIntObjectHashMap<>();
     myGroupData = new HashMap<>();
-    mySuiteData = new HashMap<>();
+    mySuiteData = new TIntObjectHashMap<>();
+    myDoneTests = new RecentItems<>(MAX_RECENTLY_DONE_ITEMS);
+    myDoneGroups = new RecentItems<>(MAX_RECENTLY_DONE_ITEMS);
+    myFlushAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, consoleProperties.getProject());
   }
 
   @Override
-  protected boolean processServiceMessages(final String text, final Key outputType, final ServiceMessageVisitor visitor)
+  protected synchronized boolean processServiceMessages(final String text, final Key outputType, final ServiceMessageVisitor visitor)
     throws ParseException {
-    LOG.debug("<<< " + text.trim());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("<<< " + text.trim());
+    }
     myCurrentOutputType = outputType;
     myCurrentVisitor = visitor;
     // service message parser expects line like "##teamcity[ .... ]" without whitespaces in the end.
     return processEventText(text);
   }
 
+  @Override
+  public synchronized void flushBufferOnProcessTermination(final int exitCode) {
+    flushPendingMessages();
+    super.flushBufferOnProcessTermination(exitCode);
+  }
+
+  @Override
+  public synchronized void dispose() {
+    Disposer.dispose(myFlushAlarm);
+    myPendingMessages.clear();
+    super.dispose();
+  }
+
   private boolean processEventText(final String text) throws JsonSyntaxException, ParseException {
-    JsonParser jp = new JsonParser();
-    JsonElement elem;
+    final boolean isObject;
     try {
-      elem = jp.parse(text);
+      isObject = myEvent.read(text, myJsonParser);
     }
-    catch (JsonSyntaxException ex) {
+    catch (JsonParseException | IOException | IllegalStateException | NumberFormatException ex) {
       if (text.contains("\"json\" is not an allowed value for option \"reporter\"")) {
         final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted("Failed to start");
         final ServiceMessageBuilder testFailed = ServiceMessageBuilder.testFailed("Failed to start");
@@ -134,17 +192,70 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
       return doProcessServiceMessages(text);
     }
-    if (elem == null || !elem.isJsonObject()) return false;
-    return process(elem.getAsJsonObject());
+
+    if (!isObject) {
+      // the line will be printed as a regular output, so it must follow the already converted events
+      flushPendingMessages();
+      return false;
+    }
+    return process(myEvent);
   }
 
+  /**
+   * Passes the message to the test tree immediately, after all pending messages.
+   */
   private boolean doProcessServiceMessages(@NotNull final String text) throws ParseException {
-    LOG.debug(">>> " + text);
-    return super.processServiceMessages(text, myCurrentOutputType, myCurrentVisitor);
+    flushPendingMessages();
+    return passServiceMessage(text, myCurrentOutputType, myCurrentVisitor);
+  }
+
+  private boolean passServiceMessage(@NotNull final String text, final Key outputType, final ServiceMessageVisitor visitor)
+    throws ParseException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(">>> " + text);
+    }
+    return super.processServiceMessages(text, outputType, visitor);
+  }
+
+  /**
+   * Adds the message to the current batch. The batch is passed to the test tree {@link #FLUSH_INTERVAL_MS} after its first message,
+   * or earlier if it gets full, if a regular output line follows, or when the tests are done.
+   */
+  private boolean queueServiceMessage(@NotNull final String text) {
+    myPendingMessages.add(new PendingMessage(text, myCurrentOutputType, myCurrentVisitor));
+
+    if (myPendingMessages.size() >= MAX_BATCH_SIZE) {
+      flushPendingMessages();
+    }
+    else if (myPendingMessages.size() == 1) {
+      myFlushAlarm.addRequest(() -> {
+        synchronized (this) {
+          flushPendingMessages();
+        }
+      }, FLUSH_INTERVAL_MS, ModalityState.any());
+    }
+
+    return true;
   }
 
-  private boolean process(JsonObject obj) throws JsonSyntaxException, ParseException {
-    String type = obj.get(JSON_TYPE).getAsString();
+  private void flushPendingMessages() {
+    if (myPendingMessages.isEmpty()) return;
+
+    myFlushAlarm.cancelAllRequests();
+    final PendingMessage[] messages = myPendingMessages.toArray(new PendingMessage[0]);
+    myPendingMessages.clear();
+    for (PendingMessage message : messages) {
+      try {
+        passServiceMessage(message.myText, message.myOutputType, message.myVisitor);
+      }
+      catch (ParseException e) {
+        LOG.warn(e); // messages are built by ServiceMessageBuilder, can't happen
+      }
+    }
+  }
+
+  private boolean process(@NotNull final Event obj) throws ParseException {
+    String type = obj.myType;
     if (TYPE_TEST_START.equals(type)) {
       return handleTestStart(obj);
     }
@@ -177,11 +288,11 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
   }
 
-  private boolean handleTestStart(JsonObject obj) throws ParseException {
-    final JsonObject testObj = obj.getAsJsonObject(DEF_TEST);
+  private boolean handleTestStart(@NotNull final Event obj) throws ParseException {
+    final JsonObject testObj = obj.myTest;
+    if (testObj == null) throw new ParseException("No test in json object", 0);
 
-    // Not reached if testObj == null.
-    final Test test = getTest(obj);
+    final Test test = createTest(testObj);
     myTestIdToTimestamp.put(test.getId(), getTimestamp(obj));
 
     if (shouldTestBeHiddenIfPassed(test)) {
@@ -230,8 +341,13 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
            group != null && group.getDoneTestsCount() > 0 && test.getBaseName().equals(TEAR_DOWN_ALL_VIRTUAL_TEST_NAME);
   }
 
-  private boolean handleTestDone(JsonObject obj) throws ParseException {
+  private boolean handleTestDone(@NotNull final Event obj) throws ParseException {
     final Test test = getTest(obj);
+    if (test == null) return true;
+
+    final long startTime = myTestIdToTimestamp.remove(test.getId());
+    myTestData.remove(test.getId());
+    myDoneTests.add(test.getId(), test);
 
     if (!test.myTestStartReported) return true;
 
@@ -245,7 +361,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     //if (test.getMetadata().skip) return true; // skipped tests are reported as ignored in handleTestStart(). testFinished signal must follow
 
     ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished(test.getBaseName());
-    long duration = getTimestamp(obj) - myTestIdToTimestamp.get(test.getId());
+    long duration = getTimestamp(obj) - startTime;
     testFinished.addAttribute("duration", Long.toString(duration));
 
     return finishMessage(testFinished, test.getId(), test.getValidParentId()) && checkGroupDone(test.getParent());
@@ -253,13 +369,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private boolean checkGroupDone(@Nullable final Group group) throws ParseException {
     if (group != null && group.getTestCount() > 0 && group.getDoneTestsCount() == group.getTestCount()) {
+      myGroupData.remove(group.getId());
+      myDoneGroups.add(group.getId(), group);
       return processGroupDone(group) && checkGroupDone(group.getParent());
     }
     return true;
   }
 
-  private boolean handleGroup(JsonObject obj) throws ParseException {
-    Group group = getGroup(obj.getAsJsonObject(DEF_GROUP));
+  private boolean handleGroup(@NotNull final Event obj) throws ParseException {
+    if (obj.myGroup == null) throw new ParseException("No group in json object", 0);
+    Group group = createGroup(obj.myGroup);
 
     // From spec: The implicit group at the root of each test suite has null name and parentID attributes.
     if (group.getParent() == null && group.getTestCount() > 0) {
@@ -277,16 +396,19 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return finishMessage(groupMsg, group.getId(), group.getValidParentId());
   }
 
-  private boolean handleSuite(JsonObject obj) throws ParseException {
-    Suite suite = getSuite(obj.getAsJsonObject(DEF_SUITE));
+  private boolean handleSuite(@NotNull final Event obj) throws ParseException {
+    if (obj.mySuite == null) throw new ParseException("No suite in json object", 0);
+    Suite suite = createSuite(obj.mySuite);
     if (!suite.hasPath()) {
       mySuiteData.remove(suite.getId());
     }
     return true;
   }
 
-  private boolean handleError(JsonObject obj) throws ParseException {
+  private boolean handleError(@NotNull final Event obj) throws ParseException {
     final Test test = getTest(obj);
+    if (test == null) return true;
+
     final String message = getErrorMessage(obj);
     boolean result = true;
 
@@ -323,7 +445,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
 
-      if (!getBoolean(obj, JSON_IS_FAILURE)) testError.addAttribute("error", "true");
+      if (!getIsFailure(obj)) testError.addAttribute("error", "true");
       testError.addAttribute("message", appendLineBreakIfNeeded(failureMessage));
 
       result &= finishMessage(testError, test.getId(), test.getValidParentId());
@@ -344,15 +466,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return message.endsWith("\n") ? message : message + "\n";
   }
 
-  private boolean handleAllSuites(JsonObject obj) {
-    JsonElement elem = obj.get(JSON_COUNT);
-    if (elem == null || !elem.isJsonPrimitive()) return true;
-    mySuitCount = elem.getAsInt();
+  private boolean handleAllSuites(@NotNull final Event obj) {
+    if (obj.myCount == null) return true;
+    mySuitCount = obj.myCount;
     return true;
   }
 
-  private boolean handlePrint(JsonObject obj) throws ParseException {
+  private boolean handlePrint(@NotNull final Event obj) throws ParseException {
     final Test test = getTest(obj);
+    if (test == null) return true;
+
     boolean result = true;
 
     if (!test.myTestStartReported) {
@@ -371,19 +494,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return result & finishMessage(message, test.getId(), test.getValidParentId());
   }
 
-  private boolean handleStart(JsonObject obj) throws ParseException {
-    myTestIdToTimestamp.clear();
-    myTestData.clear();
-    myGroupData.clear();
-    mySuiteData.clear();
-    mySuitCount = 0;
+  private boolean handleStart(@NotNull final Event obj) throws ParseException {
+    clearItems();
 
     return doProcessServiceMessages(new ServiceMessageBuilder("enteredTheMatrix").toString());
   }
 
-  private boolean handleDone(JsonObject obj) throws ParseException {
+  private boolean handleDone(@NotNull final Event obj) throws ParseException {
     // The test runner has reached the end of the tests.
     processAllTestsDone();
+    flushPendingMessages();
     return true;
   }
 
@@ -403,10 +523,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
     }
+    clearItems();
+  }
+
+  private void clearItems() {
     myTestIdToTimestamp.clear();
     myTestData.clear();
     myGroupData.clear();
     mySuiteData.clear();
+    myDoneTests.clear();
+    myDoneGroups.clear();
     mySuitCount = 0;
   }
 
@@ -420,7 +546,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private boolean finishMessage(@NotNull ServiceMessageBuilder msg, int testId, int parentId) throws ParseException {
     msg.addAttribute("nodeId", String.valueOf(testId));
     msg.addAttribute("parentNodeId", String.valueOf(parentId));
-    return doProcessServiceMessages(msg.toString());
+    return queueServiceMessage(msg.toString());
   }
 
   private void addLocationHint(ServiceMessageBuilder messageBuilder, Item item) {
@@ -446,101 +572,257 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     messageBuilder.addAttribute("locationHint", location);
   }
 
-  private static long getTimestamp(JsonObject obj) throws ParseException {
-    return getLong(obj, JSON_MILLIS);
+  private static long getTimestamp(@NotNull final Event obj) throws ParseException {
+    if (obj.myTime == null) throw new ParseException("Value is not type long: " + JSON_MILLIS, 0);
+    return obj.myTime;
   }
 
-  private static long getLong(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type long: " + val, 0);
-    return val.getAsLong();
+  private static boolean getIsFailure(@NotNull final Event obj) throws ParseException {
+    if (obj.myIsFailure == null) throw new ParseException("Value is not type boolean: " + JSON_IS_FAILURE, 0);
+    return obj.myIsFailure;
   }
 
-  private static boolean getBoolean(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type boolean: " + val, 0);
-    return val.getAsBoolean();
+  /**
+   * @return {@code null} if the test is finished long ago or is unknown
+   */
+  @Nullable
+  private Test getTest(@NotNull final Event obj) throws ParseException {
+    if (obj.myTestId != null) {
+      final Test test = myTestData.get(obj.myTestId);
+      if (test != null) return test;
+
+      final Test doneTest = myDoneTests.get(obj.myTestId);
+      if (doneTest == null) {
+        LOG.debug("Unknown test id: " + obj.myTestId);
+      }
+      return doneTest;
+    }
+
+    if (obj.myTest != null) {
+      return createTest(obj.myTest);
+    }
+
+    throw new ParseException("No testId in json object", 0);
   }
 
   @NotNull
-  private Test getTest(JsonObject obj) throws ParseException {
-    return getItem(obj, myTestData);
+  private Test createTest(@NotNull final JsonObject testObj) throws ParseException {
+    final Test test = Test.from(testObj, this::findGroup, mySuiteData::get);
+    myTestData.put(getItemId(testObj), test);
+    return test;
   }
 
   @NotNull
-  private Group getGroup(JsonObject obj) throws ParseException {
-    return getItem(obj, myGroupData);
+  private Group createGroup(@NotNull final JsonObject groupObj) throws ParseException {
+    final Group group = Group.from(groupObj, this::findGroup, mySuiteData::get);
+    myGroupData.put(getItemId(groupObj), group);
+    return group;
   }
 
   @NotNull
-  private Suite getSuite(JsonObject obj) throws ParseException {
-    return getItem(obj, mySuiteData);
+  private Suite createSuite(@NotNull final JsonObject suiteObj) throws ParseException {
+    final Suite suite = Suite.from(suiteObj);
+    mySuiteData.put(getItemId(suiteObj), suite);
+    return suite;
   }
 
-  @NotNull
-  private <T extends Item> T getItem(JsonObject obj, Map<Integer, T> items) throws ParseException {
-    if (obj == null) throw new ParseException("Unexpected null json object", 0);
-    T item;
-    JsonElement id = obj.get(JSON_ID);
-    if (id != null) {
-      if (items == myTestData) {
-        @SuppressWarnings("unchecked") T type = (T)Test.from(obj, myGroupData, mySuiteData);
-        item = type;
-      }
-      else if (items == myGroupData) {
-        @SuppressWarnings("unchecked") T group = (T)Group.from(obj, myGroupData, mySuiteData);
-        item = group;
-      }
-      else {
-        @SuppressWarnings("unchecked") T suite = (T)Suite.from(obj);
-        item = suite;
-      }
-      items.put(id.getAsInt(), item);
-    }
-    else {
-      JsonElement testId = obj.get(JSON_TEST_ID);
-      if (testId != null) {
-        int baseId = testId.getAsInt();
-        item = items.get(baseId);
-      }
-      else {
-        JsonElement testObj = obj.get(DEF_TEST);
-        if (testObj != null) {
-          return getItem(testObj.getAsJsonObject(), items);
-        }
-        else {
-          throw new ParseException("No testId in json object", 0);
-        }
-      }
-    }
-    return item;
+  private static int getItemId(@NotNull final JsonObject obj) throws ParseException {
+    final JsonElement id = obj.get(JSON_ID);
+    if (id == null) throw new ParseException("No id in json object", 0);
+    return id.getAsInt();
+  }
+
+  @Nullable
+  private Group findGroup(final int id) {
+    final Group group = myGroupData.get(id);
+    return group != null ? group : myDoneGroups.get(id);
   }
 
   @NotNull
-  private static String getErrorMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_ERROR_MESSAGE, "<no error message>");
+  private static String getErrorMessage(@NotNull final Event obj) {
+    return nonNullJsonValue(obj.myError, "<no error message>");
   }
 
   @NotNull
-  private static String getMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_MESSAGE, "<no message>");
+  private static String getMessage(@NotNull final Event obj) {
+    return nonNullJsonValue(obj.myMessage, "<no message>");
   }
 
   @NotNull
-  private static String getStackTrace(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_STACK_TRACE, "<no stack trace>");
+  private static String getStackTrace(@NotNull final Event obj) {
+    return nonNullJsonValue(obj.myStackTrace, "<no stack trace>");
   }
 
   @NotNull
-  private static String getResult(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_RESULT, "<no result>");
+  private static String getResult(@NotNull final Event obj) {
+    return nonNullJsonValue(obj.myResult, "<no result>");
   }
 
   @NotNull
-  private static String nonNullJsonValue(JsonObject obj, @NotNull String id, @NotNull String def) {
-    JsonElement val = obj == null ? null : obj.get(id);
-    if (val == null || !val.isJsonPrimitive()) return def;
-    return val.getAsString();
+  private static String nonNullJsonValue(@Nullable final String value, @NotNull String def) {
+    return value == null ? def : value;
+  }
+
+  /**
+   * Top-level members of a single event. The instance is reused for all events, nested test, group and suite descriptions are
+   * the only parts that are parsed into a JSON tree.
+   */
+  private static class Event {
+    @Nullable private String myType;
+    @Nullable private Integer myTestId;
+    @Nullable private Long myTime;
+    @Nullable private Integer myCount;
+    @Nullable private Boolean myIsFailure;
+    @Nullable private String myResult;
+    @Nullable private String myMessage;
+    @Nullable private String myError;
+    @Nullable private String myStackTrace;
+    @Nullable private JsonObject myTest;
+    @Nullable private JsonObject myGroup;
+    @Nullable private JsonObject mySuite;
+
+    /**
+     * @return {@code false} if the text is a valid JSON value, but not an object
+     * @throws JsonParseException if the text is not a valid JSON
+     */
+    private boolean read(@NotNull final String text, @NotNull final JsonParser parser) throws IOException {
+      reset();
+      if (StringUtil.isEmptyOrSpaces(text)) return false; // JsonParser treats an empty document as JsonNull
+
+      final JsonReader reader = new JsonReader(new StringReader(text));
+      reader.setLenient(true);
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        parser.parse(text); // throws JsonSyntaxException if it's not a single JSON value
+        return false;
+      }
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (JSON_TYPE.equals(name)) {
+          myType = readString(reader);
+        }
+        else if (JSON_TEST_ID.equals(name)) {
+          myTestId = isPrimitive(reader) ? reader.nextInt() : skip(reader);
+        }
+        else if (JSON_MILLIS.equals(name)) {
+          myTime = isPrimitive(reader) ? reader.nextLong() : skip(reader);
+        }
+        else if (JSON_COUNT.equals(name)) {
+          myCount = isPrimitive(reader) ? reader.nextInt() : skip(reader);
+        }
+        else if (JSON_IS_FAILURE.equals(name)) {
+          myIsFailure = reader.peek() == JsonToken.BOOLEAN ? reader.nextBoolean()
+                                                            : isPrimitive(reader) ? Boolean.valueOf(reader.nextString()) : skip(reader);
+        }
+        else if (JSON_RESULT.equals(name)) {
+          myResult = readString(reader);
+        }
+        else if (JSON_MESSAGE.equals(name)) {
+          myMessage = readString(reader);
+        }
+        else if (JSON_ERROR_MESSAGE.equals(name)) {
+          myError = readString(reader);
+        }
+        else if (JSON_STACK_TRACE.equals(name)) {
+          myStackTrace = readString(reader);
+        }
+        else if (DEF_TEST.equals(name)) {
+          myTest = readObject(reader, parser);
+        }
+        else if (DEF_GROUP.equals(name)) {
+          myGroup = readObject(reader, parser);
+        }
+        else if (DEF_SUITE.equals(name)) {
+          mySuite = readObject(reader, parser);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+      return true;
+    }
+
+    private void reset() {
+      myType = null;
+      myTestId = null;
+      myTime = null;
+      myCount = null;
+      myIsFailure = null;
+      myResult = null;
+      myMessage = null;
+      myError = null;
+      myStackTrace = null;
+      myTest = null;
+      myGroup = null;
+      mySuite = null;
+    }
+
+    private static boolean isPrimitive(@NotNull final JsonReader reader) throws IOException {
+      final JsonToken token = reader.peek();
+      return token == JsonToken.NUMBER || token == JsonToken.STRING;
+    }
+
+    @Nullable
+    private static <T> T skip(@NotNull final JsonReader reader) throws IOException {
+      reader.skipValue();
+      return null;
+    }
+
+    @Nullable
+    private static String readString(@NotNull final JsonReader reader) throws IOException {
+      final JsonToken token = reader.peek();
+      if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+      return isPrimitive(reader) ? reader.nextString() : skip(reader);
+    }
+
+    @Nullable
+    private static JsonObject readObject(@NotNull final JsonReader reader, @NotNull final JsonParser parser) {
+      final JsonElement element = parser.parse(reader);
+      return element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+  }
+
+  /**
+   * Finished items that may still be referred to by later events. The oldest one is forgotten when a new one is added to a full set.
+   */
+  private static class RecentItems<T> {
+    @NotNull private final TIntObjectHashMap<T> myItems = new TIntObjectHashMap<>();
+    @NotNull private final int[] myIds;
+    private int myNext;
+    private int mySize;
+
+    private RecentItems(final int capacity) {
+      myIds = new int[capacity];
+    }
+
+    private void add(final int id, @NotNull final T item) {
+      if (mySize == myIds.length) {
+        myItems.remove(myIds[myNext]);
+      }
+      else {
+        mySize++;
+      }
+      myIds[myNext] = id;
+      myNext = (myNext + 1) % myIds.length;
+      myItems.put(id, item);
+    }
+
+    @Nullable
+    private T get(final int id) {
+      return myItems.get(id);
+    }
+
+    private void clear() {
+      myItems.clear();
+      myNext = 0;
+      mySize = 0;
+    }
   }
 
   private static class Item {
@@ -570,12 +852,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
       return Metadata.from(obj.get(DEF_METADATA));
     }
 
-    static Suite lookupSuite(JsonObject obj, Map<Integer, Suite> suites) {
+    static Suite lookupSuite(JsonObject obj, IntFunction<Suite> suites) {
       JsonElement suiteObj = obj.get(JSON_SUITE_ID);
       Suite suite = null;
       if (suiteObj != null && suiteObj.isJsonPrimitive()) {
         int parentId = suiteObj.getAsInt();
-        suite = suites.get(parentId);
+        suite = suites.apply(parentId);
       }
       return suite;
     }
@@ -703,11 +985,11 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private boolean myTestStartReported = false;
     private boolean myTestErrorReported = false;
 
-    static Test from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
+    static Test from(JsonObject obj, IntFunction<Group> groups, IntFunction<Suite> suites) {
       int[] groupIds = GSON.fromJson(obj.get(JSON_GROUP_IDS), (Type)int[].class);
       Group parent = null;
       if (groupIds != null && groupIds.length > 0) {
-        parent = groups.get(groupIds[groupIds.length - 1]);
+        parent = groups.apply(groupIds[groupIds.length - 1]);
       }
       Suite suite = lookupSuite(obj, suites);
       final int line = extractInt(obj, JSON_LINE);
@@ -731,12 +1013,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private int myTestCount = 0;
     private int myDoneTestsCount = 0;
 
-    static Group from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
+    static Group from(JsonObject obj, IntFunction<Group> groups, IntFunction<Suite> suites) {
       JsonElement parentObj = obj.get(JSON_PARENT_ID);
       Group parent = null;
       if (parentObj != null && parentObj.isJsonPrimitive()) {
         int parentId = parentObj.getAsInt();
-        parent = groups.get(parentId);
+        parent = groups.apply(parentId);
       }
       Suite suite = lookupSuite(obj, suites);
       final int line = extractInt(obj, JSON_LINE);
@@ -68,7 +68,11 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
   @Override
   public void navigate(boolean requestFocus) {
     final DartAnalysisServerService service = DartAnalysisServerService.getInstance(myPsiFile.getProject());
-    final int offset = service.getConvertedOffset(myPsiFile.getVirtualFile(), myOutline.getElement().getLocation().getOffset());
+    // the structure view is not updated if only offsets changed, so offsets are taken from the current outline
+    final Outline currentRoot = service.getOutline(myPsiFile.getVirtualFile());
+    final Outline currentOutline = currentRoot != null ? findOutline(currentRoot, myValue) : null;
+    final Outline outline = currentOutline != null ? currentOutline : myOutline;
+    final int offset = service.getConvertedOffset(myPsiFile.getVirtualFile(), outline.getElement().getLocation().getOffset());
     PsiNavigationSupport.getInstance().createNavigatable(myPsiFile.getProject(), myPsiFile.getVirtualFile(), offset)
                         .navigate(requestFocus);
   }
@@ -176,10 +180,37 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
     return myValue;
   }
 
+  /**
+   * @return path of element kinds and names from the root of the outline, which doesn't change when offsets or presentation of the
+   * elements change. Siblings of the same kind and name are told apart by their order.
+   */
   @NotNull
   public static String getValue(@NotNull final Outline outline) {
     final Outline parent = outline.getParent();
-    return (parent != null ? getValue(parent) + parent.getChildren().indexOf(outline) : "") + getPresentableText(outline);
+    if (parent == null) return "";
+
+    final Element element = outline.getElement();
+    int sameKeyIndex = 0;
+    for (Outline sibling : parent.getChildren()) {
+      if (sibling == outline) break;
+      if (element.getKind().equals(sibling.getElement().getKind()) && element.getName().equals(sibling.getElement().getName())) {
+        sameKeyIndex++;
+      }
+    }
+    return getValue(parent) + "/" + element.getKind() + ":" + element.getName() + (sameKeyIndex > 0 ? "#" + sameKeyIndex : "");
+  }
+
+  @Nullable
+  private static Outline findOutline(@NotNull final Outline outline, @NotNull final String value) {
+    for (Outline child : outline.getChildren()) {
+      final String childValue = getValue(child);
+      if (childValue.equals(value)) return child;
+      if (value.startsWith(childValue + "/")) {
+        final Outline result = findOutline(child, value);
+        if (result != null) return result;
+      }
+    }
+    return null;
   }
 
   @NotNull
@@ -36,9 +36,21 @@ class DartStructureViewModel extends TextEditorBasedStructureViewModel implement
 
   @NotNull private final StructureViewTreeElement myRootElement;
 
-  private final DartServerData.OutlineListener myListener = filePath -> {
-    if (filePath.equals(getPsiFile().getVirtualFile().getPath())) {
-      fireModelUpdate();
+  private final DartServerData.OutlineListener myListener = new DartServerData.OutlineListener() {
+    @Override
+    public void outlineUpdated(@NotNull final String filePath) {
+      if (filePath.equals(getPsiFile().getVirtualFile().getPath())) {
+        fireModelUpdate();
+      }
+    }
+
+    @Override
+    public void outlineUpdated(@NotNull final String filePath, @NotNull final List<Outline> changedOutlines) {
+      // elements are identified by kind and name and navigate to the offsets of the current outline, so if only offsets changed
+      // there's nothing to redraw
+      if (!changedOutlines.isEmpty()) {
+        outlineUpdated(filePath);
+      }
     }
   };
 
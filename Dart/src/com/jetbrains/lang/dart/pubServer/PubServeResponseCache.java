@@ -0,0 +1,314 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.pubServer;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.lang.dart.util.DotPackagesFileUtil;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * In-memory cache of Dart Dev Server responses, used when requests are proxied to the server instead of being redirected to it
+ * (see {@link PubServerService#isCachingProxyEnabled()}). Each served directory has its own LRU of response bodies limited by total size.
+ * <p/>
+ * Served content depends only on the files of the Dart project and of the packages it uses, so an entry stays fresh until something changes
+ * in VFS under the parent of its served directory or under a package root listed in its {@code .packages} file
+ * ({@link #invalidate(VirtualFile)}). Fresh entries are sent to the browser without contacting the server. Stale entries are revalidated
+ * with {@code If-None-Match}/{@code If-Modified-Since}, and their bodies are reused if the server answers 304.
+ * <p/>
+ * The server may compress a response according to {@code Accept-Encoding} of the request, so entries are keyed by the URI together with
+ * this header ({@link #getKey(String, HttpHeaders)}). Responses that vary by other request headers are not cached.
+ */
+public final class PubServeResponseCache {
+  static final int MAX_BYTES_PER_DIR = 64 * 1024 * 1024;
+  static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+
+  static final class Entry {
+    @NotNull final byte[] body;
+    @NotNull final HttpHeaders headers;
+    @Nullable final String eTag;
+    @Nullable final String lastModified;
+    private int generation; // guarded by PubServeResponseCache.this
+
+    private Entry(@NotNull final byte[] body, @NotNull final HttpHeaders headers, final int generation) {
+      this.body = body;
+      this.headers = headers;
+      this.eTag = headers.get(HttpHeaderNames.ETAG);
+      this.lastModified = headers.get(HttpHeaderNames.LAST_MODIFIED);
+      this.generation = generation;
+    }
+
+    /**
+     * @return {@code true} if the browser that sent these request headers already has this response
+     */
+    boolean isNotModifiedFor(@NotNull final HttpHeaders requestHeaders) {
+      final String ifNoneMatch = requestHeaders.get(HttpHeaderNames.IF_NONE_MATCH);
+      if (ifNoneMatch != null) {
+        if (eTag == null) return false;
+        for (String tag : StringUtil.split(ifNoneMatch, ",")) {
+          tag = StringUtil.trimStart(tag.trim(), "W/");
+          if (tag.equals("*") || tag.equals(StringUtil.trimStart(eTag, "W/"))) return true;
+        }
+        return false;
+      }
+
+      return lastModified != null && lastModified.equals(requestHeaders.get(HttpHeaderNames.IF_MODIFIED_SINCE));
+    }
+  }
+
+  private static final class DirCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long byteCount;
+    private int generation;
+    // package roots from .packages that are outside of the Dart project, null if not read since .packages changed
+    @Nullable private Set<String> externalPackageRoots;
+  }
+
+  public static final class Statistics {
+    private final long myHitCount;
+    private final long myRevalidatedCount;
+    private final long myMissCount;
+    private final long myNotModifiedCount;
+    private final long mySavedBytes;
+
+    private Statistics(final long hitCount,
+                       final long revalidatedCount,
+                       final long missCount,
+                       final long notModifiedCount,
+                       final long savedBytes) {
+      myHitCount = hitCount;
+      myRevalidatedCount = revalidatedCount;
+      myMissCount = missCount;
+      myNotModifiedCount = notModifiedCount;
+      mySavedBytes = savedBytes;
+    }
+
+    /**
+     * @return number of responses sent from the cache without contacting the server
+     */
+    public long getHitCount() {
+      return myHitCount;
+    }
+
+    /**
+     * @return number of responses sent from the cache after the server confirmed that the cached body is still valid
+     */
+    public long getRevalidatedCount() {
+      return myRevalidatedCount;
+    }
+
+    public long getMissCount() {
+      return myMissCount;
+    }
+
+    /**
+     * @return number of 304 responses sent to the browser instead of cached bodies
+     */
+    public long getNotModifiedCount() {
+      return myNotModifiedCount;
+    }
+
+    /**
+     * @return size of cached bodies that were not transferred from the server
+     */
+    public long getSavedBytes() {
+      return mySavedBytes;
+    }
+
+    public double getHitRate() {
+      final long total = myHitCount + myRevalidatedCount + myMissCount;
+      return total == 0 ? 0 : (double)(myHitCount + myRevalidatedCount) / total;
+    }
+
+    @Override
+    public String toString() {
+      return "hits: " + myHitCount + ", revalidated: " + myRevalidatedCount + ", misses: " + myMissCount +
+             ", 304 sent: " + myNotModifiedCount + ", saved: " + StringUtil.formatFileSize(mySavedBytes);
+    }
+  }
+
+  private final Map<VirtualFile, DirCache> myDirCaches = new THashMap<>();
+
+  private long myHitCount;
+  private long myRevalidatedCount;
+  private long myMissCount;
+  private long myNotModifiedCount;
+  private long mySavedBytes;
+
+  /**
+   * @return key of the response to the request with the given URI and headers, to be passed to {@link #get} and {@link #put}
+   */
+  @NotNull
+  static String getKey(@NotNull final String uri, @NotNull final HttpHeaders requestHeaders) {
+    final String acceptEncoding = requestHeaders.get(HttpHeaderNames.ACCEPT_ENCODING);
+    return acceptEncoding == null ? uri : uri + "\n" + acceptEncoding;
+  }
+
+  /**
+   * @return cached response, either fresh or stale, see {@link #isFresh(VirtualFile, Entry)}
+   */
+  @Nullable
+  synchronized Entry get(@NotNull final VirtualFile servedDir, @NotNull final String key) {
+    final DirCache dirCache = myDirCaches.get(servedDir);
+    return dirCache != null ? dirCache.entries.get(key) : null;
+  }
+
+  synchronized boolean isFresh(@NotNull final VirtualFile servedDir, @NotNull final Entry entry) {
+    final DirCache dirCache = myDirCaches.get(servedDir);
+    return dirCache != null && dirCache.generation == entry.generation;
+  }
+
+  /**
+   * @return current generation of the served directory entries, it must be obtained before the request is sent to the server and passed
+   * to {@link #put} or {@link #revalidated} when the response arrives, so that a response to a request sent before a change in VFS is not
+   * considered fresh
+   */
+  synchronized int getGeneration(@NotNull final VirtualFile servedDir) {
+    final DirCache dirCache = myDirCaches.computeIfAbsent(servedDir, dir -> new DirCache());
+    if (dirCache.externalPackageRoots == null) {
+      dirCache.externalPackageRoots = getExternalPackageRoots(servedDir.getParent());
+    }
+    return dirCache.generation;
+  }
+
+  @NotNull
+  private static Set<String> getExternalPackageRoots(@Nullable final VirtualFile dartProjectRoot) {
+    if (dartProjectRoot == null) return Collections.emptySet();
+
+    final VirtualFile dotPackagesFile = dartProjectRoot.findChild(DotPackagesFileUtil.DOT_PACKAGES);
+    final Map<String, String> packagesMap = dotPackagesFile == null ? null : DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
+    if (packagesMap == null) return Collections.emptySet();
+
+    final Set<String> result = new THashSet<>();
+    for (String packageRoot : packagesMap.values()) {
+      if (!FileUtil.isAncestor(dartProjectRoot.getPath(), packageRoot, false)) {
+        result.add(packageRoot);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return new entry, or {@code null} if the response can't be cached
+   */
+  @Nullable
+  synchronized Entry put(@NotNull final VirtualFile servedDir,
+                         @NotNull final String key,
+                         @NotNull final FullHttpResponse response,
+                         final int generation) {
+    myMissCount++;
+
+    final ByteBuf content = response.content();
+    if (!HttpResponseStatus.OK.equals(response.status()) ||
+        content.readableBytes() > MAX_ENTRY_BYTES ||
+        StringUtil.contains(StringUtil.notNullize(response.headers().get(HttpHeaderNames.CACHE_CONTROL)), "no-store") ||
+        variesByHeadersOtherThanAcceptEncoding(response.headers())) {
+      return null;
+    }
+
+    final byte[] body = new byte[content.readableBytes()];
+    content.getBytes(content.readerIndex(), body);
+
+    final HttpHeaders headers = response.headers().copy();
+    headers.remove(HttpHeaderNames.CONNECTION);
+    headers.remove(HttpHeaderNames.KEEP_ALIVE);
+    headers.remove(HttpHeaderNames.TRANSFER_ENCODING);
+    headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+
+    final DirCache dirCache = myDirCaches.computeIfAbsent(servedDir, dir -> new DirCache());
+    final Entry entry = new Entry(body, headers, generation);
+    final Entry old = dirCache.entries.put(key, entry);
+    if (old != null) {
+      dirCache.byteCount -= old.body.length;
+    }
+    dirCache.byteCount += body.length;
+
+    final Iterator<Entry> iterator = dirCache.entries.values().iterator();
+    while (dirCache.byteCount > MAX_BYTES_PER_DIR && iterator.hasNext()) {
+      dirCache.byteCount -= iterator.next().body.length;
+      iterator.remove();
+    }
+
+    return entry;
+  }
+
+  private static boolean variesByHeadersOtherThanAcceptEncoding(@NotNull final HttpHeaders responseHeaders) {
+    for (String vary : responseHeaders.getAll(HttpHeaderNames.VARY)) {
+      for (String headerName : StringUtil.split(vary, ",")) {
+        if (!HttpHeaderNames.ACCEPT_ENCODING.contentEqualsIgnoreCase(headerName.trim())) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Called when the server answered 304 to the revalidation request, the entry becomes fresh again.
+   */
+  @NotNull
+  synchronized Entry revalidated(@NotNull final Entry entry, final int generation) {
+    entry.generation = generation;
+    myRevalidatedCount++;
+    mySavedBytes += entry.body.length;
+    return entry;
+  }
+
+  synchronized void recordHit(@NotNull final Entry entry) {
+    myHitCount++;
+    mySavedBytes += entry.body.length;
+  }
+
+  synchronized void recordNotModified() {
+    myNotModifiedCount++;
+  }
+
+  /**
+   * Makes stale all entries of the served directories whose Dart project or one of its packages contains the given file.
+   */
+  synchronized void invalidate(@NotNull final VirtualFile file) {
+    final boolean dotPackagesChanged = DotPackagesFileUtil.DOT_PACKAGES.equals(file.getName());
+    for (Map.Entry<VirtualFile, DirCache> entry : myDirCaches.entrySet()) {
+      final VirtualFile dartProjectRoot = entry.getKey().getParent();
+      final DirCache dirCache = entry.getValue();
+      if (dartProjectRoot != null && VfsUtilCore.isAncestor(dartProjectRoot, file, false) || isInExternalPackageRoot(dirCache, file)) {
+        dirCache.generation++;
+        if (dotPackagesChanged) {
+          dirCache.externalPackageRoots = null;
+        }
+      }
+    }
+  }
+
+  private static boolean isInExternalPackageRoot(@NotNull final DirCache dirCache, @NotNull final VirtualFile file) {
+    final Set<String> roots = dirCache.externalPackageRoots;
+    if (roots == null || roots.isEmpty()) return false;
+
+    for (VirtualFile dir = file; dir != null; dir = dir.getParent()) {
+      if (roots.contains(dir.getPath())) return true;
+    }
+    return false;
+  }
+
+  synchronized void invalidateAll() {
+    for (DirCache dirCache : myDirCaches.values()) {
+      dirCache.generation++;
+      dirCache.externalPackageRoots = null;
+    }
+  }
+
+  synchronized void clear() {
+    myDirCaches.clear();
+  }
+
+  @NotNull
+  public synchronized Statistics getStatistics() {
+    return new Statistics(myHitCount, myRevalidatedCount, myMissCount, myNotModifiedCount, mySavedBytes);
+  }
+}
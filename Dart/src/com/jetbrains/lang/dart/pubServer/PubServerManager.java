@@ -31,11 +31,13 @@ public class PubServerManager implements Disposable {
 
   private String myServedSdkVersion;
 
+  private final PubServeResponseCache myResponseCache = new PubServeResponseCache();
+
   private final LoadingCache<VirtualFile, PubServerService> myServedDirToPubService =
     CacheBuilder.newBuilder().build(new CacheLoader<VirtualFile, PubServerService>() {
       @Override
       public PubServerService load(@NotNull VirtualFile key) throws Exception {
-        return new PubServerService(project, consoleManager);
+        return new PubServerService(project, consoleManager, myResponseCache);
       }
     });
 
@@ -66,9 +68,20 @@ public class PubServerManager implements Disposable {
                                   contentsChanged(event);
                                 }
 
+                                @Override
+                                public void fileCreated(@NotNull final VirtualFileEvent event) {
+                                  myResponseCache.invalidate(event.getFile());
+                                }
+
+                                @Override
+                                public void fileMoved(@NotNull final VirtualFileMoveEvent event) {
+                                  myResponseCache.invalidate(event.getFile());
+                                }
+
                                 @Override
                                 public void contentsChanged(@NotNull final VirtualFileEvent event) {
                                   final VirtualFile file = event.getFile();
+                                  myResponseCache.invalidate(file);
                                   if (PubspecYamlUtil.PUBSPEC_YAML.equals(file.getName()) &&
                                       file.getFileSystem() == LocalFileSystem.getInstance()) {
                                     pubspecYamlChanged(file);
@@ -122,6 +135,16 @@ public class PubServerManager implements Disposable {
   @Override
   public void dispose() {
     stopAllPubServerProcesses();
+    myResponseCache.clear();
+  }
+
+  /**
+   * @return statistics of the Dart Dev Server response cache, it is used only in the caching proxy mode
+   * (registry key {@code dart.pub.serve.caching.proxy})
+   */
+  @NotNull
+  public PubServeResponseCache.Statistics getResponseCacheStatistics() {
+    return myResponseCache.getStatistics();
   }
 
   public void stopAllPubServerProcesses() {
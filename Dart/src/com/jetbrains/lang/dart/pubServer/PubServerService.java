@@ -23,6 +23,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.popup.Balloon;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.util.Consumer;
@@ -37,11 +38,15 @@ import com.jetbrains.lang.dart.sdk.DartConfigurable;
 import com.jetbrains.lang.dart.sdk.DartSdk;
 import com.jetbrains.lang.dart.sdk.DartSdkUtil;
 import icons.DartIcons;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.handler.codec.http.*;
+import io.netty.util.AsciiString;
 import io.netty.util.ReferenceCounted;
 import io.netty.util.internal.PlatformDependent;
 import org.jetbrains.annotations.NotNull;
@@ -69,6 +74,7 @@ final class PubServerService extends NetService {
   private static final Logger LOG = Logger.getInstance(PubServerService.class.getName());
 
   private static final String DART_DEV_SERVER = "Dart Dev Server";
+  private static final int MAX_PROXIED_CONTENT_LENGTH = 256 * 1024 * 1024;
   private static final NotificationGroup NOTIFICATION_GROUP = NotificationGroup.toolWindowGroup(DART_DEV_SERVER, DART_DEV_SERVER, false);
 
   private volatile VirtualFile firstServedDir;
@@ -78,6 +84,9 @@ final class PubServerService extends NetService {
 
   private final ConcurrentMap<VirtualFile, ServerInfo> servedDirToSocketAddress = ContainerUtil.newConcurrentMap();
 
+  private final Bootstrap bootstrap;
+  private final PubServeResponseCache responseCache;
+
   private static class ServerInfo {
     private final InetSocketAddress address;
     private final Deque<Channel> freeServerChannels = PlatformDependent.newConcurrentDeque();
@@ -90,25 +99,52 @@ final class PubServerService extends NetService {
   private static class ClientInfo {
     private final Channel channel;
     private final HttpHeaders extraHeaders;
-
-    private ClientInfo(@NotNull Channel channel, @NotNull HttpHeaders extraHeaders) {
+    private final HttpRequest request;
+    private final VirtualFile servedDir;
+    // not null if the response may be cached
+    @Nullable private final String cacheKey;
+    // not null if the request revalidates this cached response
+    @Nullable private final PubServeResponseCache.Entry staleEntry;
+    private final int cacheGeneration;
+
+    private ClientInfo(@NotNull Channel channel,
+                       @NotNull HttpHeaders extraHeaders,
+                       @NotNull HttpRequest request,
+                       @NotNull VirtualFile servedDir,
+                       @Nullable String cacheKey,
+                       @Nullable PubServeResponseCache.Entry staleEntry,
+                       int cacheGeneration) {
       this.channel = channel;
       this.extraHeaders = extraHeaders;
+      this.request = request;
+      this.servedDir = servedDir;
+      this.cacheKey = cacheKey;
+      this.staleEntry = staleEntry;
+      this.cacheGeneration = cacheGeneration;
     }
   }
 
-  PubServerService(@NotNull Project project, @NotNull ConsoleManager consoleManager) {
+  PubServerService(@NotNull Project project, @NotNull ConsoleManager consoleManager, @NotNull PubServeResponseCache responseCache) {
     super(project, consoleManager);
+    this.responseCache = responseCache;
 
-    nioClientBootstrap().handler(new ChannelInitializer() {
+    bootstrap = nioClientBootstrap().handler(new ChannelInitializer() {
       @Override
       protected void initChannel(Channel channel) {
-        channel.pipeline().addLast(serverChannelRegistrar, new HttpClientCodec());
+        channel.pipeline().addLast(serverChannelRegistrar, new HttpClientCodec(), new HttpObjectAggregator(MAX_PROXIED_CONTENT_LENGTH));
         channel.pipeline().addLast(new PubServeChannelHandler(), ChannelExceptionHandler.getInstance());
       }
     });
   }
 
+  /**
+   * By default the browser is redirected to Dart Dev Server. In the caching proxy mode requests are forwarded to the server, and its
+   * responses are kept in {@link PubServeResponseCache}, so that reloading a page doesn't fetch unchanged assets and compiled JS again.
+   */
+  static boolean isCachingProxyEnabled() {
+    return Registry.is("dart.pub.serve.caching.proxy", false);
+  }
+
   @Override
   protected int getAvailableSocketPort() {
     int initialPort = DartConfigurable.getWebdevPort(getProject());
@@ -127,16 +163,6 @@ final class PubServerService extends NetService {
     }
   }
 
-  @Nullable
-  private ServerInfo getServerInfo(@NotNull Channel channel) {
-    for (ServerInfo serverInstanceInfo : servedDirToSocketAddress.values()) {
-      if (channel.remoteAddress().equals(serverInstanceInfo.address)) {
-        return serverInstanceInfo;
-      }
-    }
-    return null;
-  }
-
   @Override
   @NotNull
   protected String getConsoleToolWindowId() {
@@ -239,6 +265,12 @@ final class PubServerService extends NetService {
 
   @Override
   protected void closeProcessConnections() {
+    // a restarted server may produce different content, so cached responses must be revalidated
+    responseCache.invalidateAll();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Dart Dev Server response cache: " + responseCache.getStatistics());
+    }
+
     servedDirToSocketAddress.clear();
 
     ClientInfo[] list;
@@ -272,25 +304,130 @@ final class PubServerService extends NetService {
     ServerInfo serverInstanceInfo = servedDirToSocketAddress.get(servedDir);
     final InetSocketAddress address = serverInstanceInfo.address;
 
-    // We can't use 301 (MOVED_PERMANENTLY) response status because Pub Serve port will change after restart, but browser will remember outdated redirection URL
-    final HttpResponse response = Responses.response(HttpResponseStatus.FOUND, clientRequest, null);
-    //assert serverInstanceInfo != null;
-
     final Map<String, List<String>> parameters = new QueryStringDecoder(clientRequest.uri()).parameters();
     parameters.remove(BuiltInWebServerKt.TOKEN_PARAM_NAME);
 
-    final QueryStringEncoder encoder =
-      new QueryStringEncoder("http://" + address.getHostString() + ":" + address.getPort() + pathToPubServe);
+    final QueryStringEncoder encoder = new QueryStringEncoder(pathToPubServe);
     for (Map.Entry<String, List<String>> entry : parameters.entrySet()) {
       for (String value : entry.getValue()) {
         encoder.addParam(entry.getKey(), value);
       }
     }
 
-    response.headers().add(HttpHeaderNames.LOCATION, encoder.toString());
+    if (isCachingProxyEnabled()) {
+      sendToServerThroughCache(servedDir, address, clientChannel, clientRequest, extraHeaders, encoder.toString());
+      return;
+    }
+
+    // We can't use 301 (MOVED_PERMANENTLY) response status because Pub Serve port will change after restart, but browser will remember outdated redirection URL
+    final HttpResponse response = Responses.response(HttpResponseStatus.FOUND, clientRequest, null);
+    //assert serverInstanceInfo != null;
+
+    response.headers().add(HttpHeaderNames.LOCATION, "http://" + address.getHostString() + ":" + address.getPort() + encoder.toString());
+    Responses.send(response, clientChannel, clientRequest, extraHeaders);
+  }
+
+  private void sendToServerThroughCache(@NotNull final VirtualFile servedDir,
+                                        @NotNull final InetSocketAddress address,
+                                        @NotNull final Channel clientChannel,
+                                        @NotNull final FullHttpRequest clientRequest,
+                                        @NotNull final HttpHeaders extraHeaders,
+                                        @NotNull final String uri) {
+    final boolean cacheable = HttpMethod.GET.equals(clientRequest.method()) && !clientRequest.headers().contains(HttpHeaderNames.RANGE);
+    final String cacheKey = cacheable ? PubServeResponseCache.getKey(uri, clientRequest.headers()) : null;
+    final PubServeResponseCache.Entry entry = cacheKey != null ? responseCache.get(servedDir, cacheKey) : null;
+    if (entry != null && responseCache.isFresh(servedDir, entry)) {
+      responseCache.recordHit(entry);
+      try {
+        sendCachedResponse(entry, clientChannel, clientRequest, extraHeaders);
+      }
+      finally {
+        clientRequest.release();
+      }
+      return;
+    }
+
+    final FullHttpRequest serverRequest =
+      new DefaultFullHttpRequest(clientRequest.protocolVersion(), clientRequest.method(), uri, clientRequest.content());
+    serverRequest.headers().set(clientRequest.headers());
+    serverRequest.headers().set(HttpHeaderNames.HOST, address.getHostString() + ":" + address.getPort());
+
+    if (cacheable) {
+      // validators of the browser refer to its own copy of the response, the cache needs either the full response or 304 for its entry
+      serverRequest.headers().remove(HttpHeaderNames.IF_NONE_MATCH);
+      serverRequest.headers().remove(HttpHeaderNames.IF_MODIFIED_SINCE);
+      if (entry != null && entry.eTag != null) {
+        serverRequest.headers().set(HttpHeaderNames.IF_NONE_MATCH, entry.eTag);
+      }
+      if (entry != null && entry.lastModified != null) {
+        serverRequest.headers().set(HttpHeaderNames.IF_MODIFIED_SINCE, entry.lastModified);
+      }
+    }
+
+    final ClientInfo clientInfo = new ClientInfo(clientChannel, extraHeaders, clientRequest, servedDir, cacheKey, entry,
+                                                 cacheable ? responseCache.getGeneration(servedDir) : 0);
+
+    bootstrap.connect(address).addListener((ChannelFutureListener)future -> {
+      if (!future.isSuccess()) {
+        serverRequest.release();
+        sendBadGateway(clientChannel, extraHeaders);
+        return;
+      }
+
+      final Channel serverChannel = future.channel();
+      serverToClientChannel.put(serverChannel, clientInfo);
+      serverChannel.writeAndFlush(serverRequest);
+    });
+  }
+
+  private void sendCachedResponse(@NotNull final PubServeResponseCache.Entry entry,
+                                  @NotNull final Channel clientChannel,
+                                  @NotNull final HttpRequest clientRequest,
+                                  @NotNull final HttpHeaders extraHeaders) {
+    if (!clientChannel.isActive()) return;
+
+    final FullHttpResponse response;
+    if (entry.isNotModifiedFor(clientRequest.headers())) {
+      responseCache.recordNotModified();
+      response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED, Unpooled.EMPTY_BUFFER);
+      for (AsciiString name : new AsciiString[]{HttpHeaderNames.ETAG, HttpHeaderNames.LAST_MODIFIED, HttpHeaderNames.CACHE_CONTROL}) {
+        final String value = entry.headers.get(name);
+        if (value != null) {
+          response.headers().set(name, value);
+        }
+      }
+    }
+    else {
+      response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(entry.body));
+      response.headers().set(entry.headers);
+    }
+
+    HttpUtil.setContentLength(response, response.content().readableBytes());
     Responses.send(response, clientChannel, clientRequest, extraHeaders);
   }
 
+  private void sendResponseToClient(@NotNull final ClientInfo clientInfo, @NotNull final FullHttpResponse response) {
+    if (clientInfo.cacheKey != null) {
+      final PubServeResponseCache.Entry entry;
+      if (clientInfo.staleEntry != null && HttpResponseStatus.NOT_MODIFIED.equals(response.status())) {
+        entry = responseCache.revalidated(clientInfo.staleEntry, clientInfo.cacheGeneration);
+      }
+      else {
+        entry = responseCache.put(clientInfo.servedDir, clientInfo.cacheKey, response, clientInfo.cacheGeneration);
+      }
+
+      if (entry != null) {
+        response.release();
+        sendCachedResponse(entry, clientInfo.channel, clientInfo.request, clientInfo.extraHeaders);
+        return;
+      }
+    }
+
+    HttpUtil.setKeepAlive(response, true);
+    response.headers().add(clientInfo.extraHeaders);
+    clientInfo.channel.writeAndFlush(response);
+  }
+
   @NotNull
   Collection<String> getAllPubServeAuthorities() {
     final Collection<String> result = new SmartList<>();
@@ -330,22 +467,21 @@ final class PubServerService extends NetService {
         }
       }
       else {
-        if (message instanceof HttpResponse) {
-          HttpResponse response = (HttpResponse)message;
-          HttpUtil.setKeepAlive(response, true);
-          response.headers().add(clientInfo.extraHeaders);
+        serverToClientChannel.remove(serverChannel);
+        // todo sometimes dart pub server stops to respond, so, we don't reuse it for now
+        //serverInfo.freeServerChannels.add(serverChannel);
+        serverChannel.close();
+
+        if (message instanceof FullHttpResponse) {
+          // responses are aggregated by HttpObjectAggregator in the pipeline
+          sendResponseToClient(clientInfo, (FullHttpResponse)message);
         }
-        if (message instanceof LastHttpContent) {
-          serverToClientChannel.remove(serverChannel);
-          ServerInfo serverInfo = getServerInfo(serverChannel);
-          if (serverInfo != null) {
-            // todo sometimes dart pub server stops to respond, so, we don't reuse it for now
-            //serverInfo.freeServerChannels.add(serverChannel);
-            serverChannel.close();
+        else {
+          if (message instanceof ReferenceCounted) {
+            ((ReferenceCounted)message).release();
           }
+          sendBadGateway(clientInfo.channel, clientInfo.extraHeaders);
         }
-
-        clientInfo.channel.writeAndFlush(message);
       }
     }
   }
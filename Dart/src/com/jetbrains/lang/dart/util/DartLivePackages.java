@@ -0,0 +1,101 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Package name to package directory map of a Dart project together with the reverse {@link DartPackageDirTrie}.
+ * <p/>
+ * Instances built from a .packages file are shared by all {@link DartUrlResolver} instances of the project. They are rebuilt when the
+ * .packages file is modified, and dropped when the VFS structure changes, because package directories may appear or disappear.
+ */
+final class DartLivePackages {
+
+  private static final Key<CachedValue<ConcurrentMap<VirtualFile, DartLivePackages>>> DOT_PACKAGES_CACHE_KEY =
+    Key.create("DART_LIVE_PACKAGES_BY_DOT_PACKAGES_FILE");
+
+  static final DartLivePackages EMPTY = new DartLivePackages(Collections.emptyMap(), -1);
+
+  @NotNull private final Map<String, VirtualFile> myPackageNameToDirMap;
+  @NotNull private final DartPackageDirTrie myDirTrie = new DartPackageDirTrie();
+  private final long myDotPackagesModificationCount;
+
+  DartLivePackages(@NotNull final Map<String, VirtualFile> packageNameToDirMap) {
+    this(packageNameToDirMap, -1);
+  }
+
+  private DartLivePackages(@NotNull final Map<String, VirtualFile> packageNameToDirMap, final long dotPackagesModificationCount) {
+    myPackageNameToDirMap = packageNameToDirMap;
+    myDotPackagesModificationCount = dotPackagesModificationCount;
+    for (Map.Entry<String, VirtualFile> entry : packageNameToDirMap.entrySet()) {
+      myDirTrie.add(entry.getValue().getPath(), entry.getKey());
+    }
+  }
+
+  @NotNull
+  static DartLivePackages getInstance(@NotNull final Project project, @NotNull final VirtualFile dotPackagesFile) {
+    final ConcurrentMap<VirtualFile, DartLivePackages> cache = CachedValuesManager.getManager(project).getCachedValue(
+      project, DOT_PACKAGES_CACHE_KEY,
+      () -> CachedValueProvider.Result.create(new ConcurrentHashMap<>(), VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS), false);
+
+    final long modificationCount = dotPackagesFile.getModificationCount();
+    DartLivePackages livePackages = cache.get(dotPackagesFile);
+    if (livePackages == null || livePackages.myDotPackagesModificationCount != modificationCount) {
+      livePackages = loadFromDotPackagesFile(dotPackagesFile, modificationCount);
+      cache.put(dotPackagesFile, livePackages);
+    }
+    return livePackages;
+  }
+
+  @NotNull
+  private static DartLivePackages loadFromDotPackagesFile(@NotNull final VirtualFile dotPackagesFile, final long modificationCount) {
+    final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
+    if (packagesMap == null) return EMPTY;
+
+    final Map<String, VirtualFile> packageNameToDirMap = new THashMap<>(packagesMap.size());
+    for (Map.Entry<String, String> entry : packagesMap.entrySet()) {
+      final VirtualFile packageDir = dotPackagesFile.getFileSystem().findFileByPath(entry.getValue());
+      if (packageDir != null) {
+        packageNameToDirMap.put(entry.getKey(), packageDir);
+      }
+    }
+    return new DartLivePackages(packageNameToDirMap, modificationCount);
+  }
+
+  @NotNull
+  Map<String, VirtualFile> getPackageNameToDirMap() {
+    return Collections.unmodifiableMap(myPackageNameToDirMap);
+  }
+
+  @Nullable
+  VirtualFile getPackageDir(@NotNull final String packageName) {
+    return myPackageNameToDirMap.get(packageName);
+  }
+
+  /**
+   * @return {@code package:} URL of the file if it is located in one of the live packages
+   */
+  @Nullable
+  String getPackageUrl(@NotNull final VirtualFile file) {
+    final Pair<String, String> packageAndDir = myDirTrie.findPackageAndDir(file.getPath(), true);
+    final VirtualFile packageDir = packageAndDir == null ? null : myPackageNameToDirMap.get(packageAndDir.first);
+    final String relPath = packageDir == null ? null : VfsUtilCore.getRelativePath(file, packageDir, '/');
+    return relPath == null ? null : DartUrlResolver.PACKAGE_PREFIX + packageAndDir.first + "/" + relPath;
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps package directories back to package names. Directory paths are split into segments and stored in a trie, so finding the package
+ * that contains a file takes time proportional to the depth of the file path, not to the number of packages.
+ */
+final class DartPackageDirTrie {
+
+  private static final class Node {
+    @Nullable private Map<String, Node> myChildren;
+    @Nullable private String myPackageName;
+    @Nullable private String myDirPath;
+  }
+
+  private final Node myRoot = new Node();
+
+  @NotNull
+  static DartPackageDirTrie fromPackageNameToDirsMap(@NotNull final Map<String, List<String>> packageNameToDirsMap) {
+    final DartPackageDirTrie trie = new DartPackageDirTrie();
+    for (Map.Entry<String, List<String>> entry : packageNameToDirsMap.entrySet()) {
+      for (String dirPath : entry.getValue()) {
+        trie.add(dirPath, entry.getKey());
+      }
+    }
+    return trie;
+  }
+
+  /**
+   * @param dirPath system-independent path; if several packages have the same directory then the first one added wins
+   */
+  void add(@NotNull final String dirPath, @NotNull final String packageName) {
+    final String path = StringUtil.trimEnd(dirPath, "/");
+    Node node = myRoot;
+    int start = 0;
+    while (start <= path.length()) {
+      int end = path.indexOf('/', start);
+      if (end < 0) end = path.length();
+
+      if (end > start) {
+        if (node.myChildren == null) {
+          node.myChildren = new THashMap<>();
+        }
+        final String segment = path.substring(start, end);
+        Node child = node.myChildren.get(segment);
+        if (child == null) {
+          child = new Node();
+          node.myChildren.put(segment, child);
+        }
+        node = child;
+      }
+      start = end + 1;
+    }
+
+    if (node.myPackageName == null) {
+      node.myPackageName = packageName;
+      node.myDirPath = path;
+    }
+  }
+
+  /**
+   * Finds the deepest package directory that contains the given file.
+   *
+   * @param filePath      system-independent path
+   * @param includeItself whether {@code filePath} itself may be a package directory
+   * @return package name and its directory path (without trailing slash), or {@code null}
+   */
+  @Nullable
+  Pair<String, String> findPackageAndDir(@NotNull final String filePath, final boolean includeItself) {
+    Node node = myRoot;
+    Node found = null;
+    int start = 0;
+    while (start < filePath.length()) {
+      int end = filePath.indexOf('/', start);
+      if (end < 0) end = filePath.length();
+
+      if (end > start) {
+        node = node.myChildren == null ? null : node.myChildren.get(filePath.substring(start, end));
+        if (node == null) break;
+
+        if (node.myPackageName != null && (end < filePath.length() || includeItself)) {
+          found = node;
+        }
+      }
+      start = end + 1;
+    }
+
+    return found == null ? null : Pair.create(found.myPackageName, found.myDirPath);
+  }
+}
@@ -11,12 +11,17 @@ import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.roots.impl.libraries.LibraryEx;
 import com.intellij.openapi.roots.libraries.LibraryProperties;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.ex.temp.TempFileSystem;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.util.PairConsumer;
 import com.jetbrains.lang.dart.ide.index.DartLibraryIndex;
 import com.jetbrains.lang.dart.sdk.DartPackagesLibraryProperties;
@@ -31,17 +36,23 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DartUrlResolverImpl extends DartUrlResolver {
   // TODO Fold into superclass.
 
+  private static final Key<CachedValue<ConcurrentMap<LibraryEx, Pair<LibraryProperties, DartPackageDirTrie>>>> PACKAGES_LIB_DIR_TRIES_KEY =
+    Key.create("DART_PACKAGES_LIB_DIR_TRIES");
+
   @NotNull private final Project myProject;
   @Nullable private final DartSdk myDartSdk;
   @Nullable private final VirtualFile myPubspecYamlFile;
-  // myLivePackageNameToDirMap also contains packages map from .packages file if applicable
-  @NotNull private final Map<String, VirtualFile> myLivePackageNameToDirMap = new THashMap<>();
+  // myLivePackages also contains packages map from .packages file if applicable
+  @NotNull private DartLivePackages myLivePackages = DartLivePackages.EMPTY;
   // myPackagesMapFromLib is not empty only if pubspec.yaml file is null
   @NotNull private final Map<String, List<String>> myPackagesMapFromLib = new THashMap<>();
+  @Nullable private DartPackageDirTrie myPackagesDirTrieFromLib;
 
   public DartUrlResolverImpl(final @NotNull Project project, final @NotNull VirtualFile contextFile) {
     myProject = project;
@@ -63,21 +74,21 @@ public class DartUrlResolverImpl extends DartUrlResolver {
 
   @Override
   public void processLivePackages(final @NotNull PairConsumer<String, VirtualFile> packageNameAndDirConsumer) {
-    for (Map.Entry<String, VirtualFile> entry : myLivePackageNameToDirMap.entrySet()) {
+    for (Map.Entry<String, VirtualFile> entry : myLivePackages.getPackageNameToDirMap().entrySet()) {
       packageNameAndDirConsumer.consume(entry.getKey(), entry.getValue());
     }
   }
 
   @Override
   public Collection<String> getLivePackageNames() {
-    return myLivePackageNameToDirMap.keySet();
+    return myLivePackages.getPackageNameToDirMap().keySet();
   }
 
   @Override
   @Nullable
   public VirtualFile getPackageDirIfNotInOldStylePackagesFolder(@NotNull final String packageName,
                                                                 @Nullable final String pathRelToPackageDir) {
-    final VirtualFile dir = myLivePackageNameToDirMap.get(packageName);
+    final VirtualFile dir = myLivePackages.getPackageDir(packageName);
     if (dir != null) return dir;
 
     final List<String> dirPaths = myPackagesMapFromLib.get(packageName);
@@ -118,7 +129,7 @@ public class DartUrlResolverImpl extends DartUrlResolver {
       final String packageName = slashIndex > 0 ? packageRelPath.substring(0, slashIndex) : packageRelPath;
       final String pathRelToPackageDir = slashIndex > 0 ? packageRelPath.substring(slashIndex + 1) : "";
 
-      final VirtualFile packageDir = StringUtil.isEmpty(packageName) ? null : myLivePackageNameToDirMap.get(packageName);
+      final VirtualFile packageDir = StringUtil.isEmpty(packageName) ? null : myLivePackages.getPackageDir(packageName);
       if (packageDir != null) {
         return packageDir.findFileByRelativePath(pathRelToPackageDir);
       }
@@ -154,10 +165,10 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     if (myDartSdk != null) result = getUrlIfFileFromSdkLib(myProject, file, myDartSdk);
     if (result != null) return result;
 
-    result = getUrlIfFileFromLivePackage(file, myLivePackageNameToDirMap);
+    result = myLivePackages.getPackageUrl(file);
     if (result != null) return result;
 
-    result = getUrlIfFileFromDartPackagesLib(file, myPackagesMapFromLib);
+    result = getUrlIfFileFromDartPackagesLib(file, myPackagesDirTrieFromLib);
     if (result != null) return result;
 
     // see com.google.dart.tools.debug.core.server.ServerBreakpointManager#getAbsoluteUrlForResource()
@@ -180,32 +191,11 @@ public class DartUrlResolverImpl extends DartUrlResolver {
              : null;
   }
 
-  @Nullable
-  private static String getUrlIfFileFromLivePackage(final @NotNull VirtualFile file,
-                                                    final @NotNull Map<String, VirtualFile> livePackageNameToDirMap) {
-    for (Map.Entry<String, VirtualFile> entry : livePackageNameToDirMap.entrySet()) {
-      final String packageName = entry.getKey();
-      final VirtualFile packageDir = entry.getValue();
-      final String relPath = VfsUtilCore.getRelativePath(file, packageDir, '/');
-      if (relPath != null) {
-        return PACKAGE_PREFIX + packageName + "/" + relPath;
-      }
-    }
-    return null;
-  }
-
   @Nullable
   private static String getUrlIfFileFromDartPackagesLib(final @NotNull VirtualFile file,
-                                                        final @NotNull Map<String, List<String>> pubListPackageDirsMap) {
-    for (Map.Entry<String, List<String>> mapEntry : pubListPackageDirsMap.entrySet()) {
-      for (String dirPath : mapEntry.getValue()) {
-        if (file.getPath().startsWith(dirPath + "/")) {
-          final String packageName = mapEntry.getKey();
-          return PACKAGE_PREFIX + packageName + file.getPath().substring(dirPath.length());
-        }
-      }
-    }
-    return null;
+                                                        final @Nullable DartPackageDirTrie packagesDirTrie) {
+    final Pair<String, String> packageAndDir = packagesDirTrie == null ? null : packagesDirTrie.findPackageAndDir(file.getPath(), false);
+    return packageAndDir == null ? null : PACKAGE_PREFIX + packageAndDir.first + file.getPath().substring(packageAndDir.second.length());
   }
 
   private void initLivePackageNameToDirMap() {
@@ -214,28 +204,21 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     final VirtualFile dotPackagesFile = baseDir.findChild(DotPackagesFileUtil.DOT_PACKAGES);
 
     if (dotPackagesFile != null && !dotPackagesFile.isDirectory()) {
-      final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
-      if (packagesMap != null) {
-        for (Map.Entry<String, String> entry : packagesMap.entrySet()) {
-          final String packageName = entry.getKey();
-          final String packagePath = entry.getValue();
-          final VirtualFile packageDir = myPubspecYamlFile.getFileSystem().findFileByPath(packagePath);
-          if (packageDir != null) {
-            myLivePackageNameToDirMap.put(packageName, packageDir);
-          }
-        }
-      }
+      myLivePackages = DartLivePackages.getInstance(myProject, dotPackagesFile);
     }
     else {
+      final Map<String, VirtualFile> livePackageNameToDirMap = new THashMap<>();
       final String name = PubspecYamlUtil.getDartProjectName(myPubspecYamlFile);
       final VirtualFile libFolder = baseDir.findChild(PubspecYamlUtil.LIB_DIR_NAME);
 
       if (name != null && libFolder != null && libFolder.isDirectory()) {
-        myLivePackageNameToDirMap.put(name, libFolder);
+        livePackageNameToDirMap.put(name, libFolder);
       }
 
       PubspecYamlUtil
-        .processInProjectPathPackagesRecursively(myProject, myPubspecYamlFile, myLivePackageNameToDirMap::put);
+        .processInProjectPathPackagesRecursively(myProject, myPubspecYamlFile, livePackageNameToDirMap::put);
+
+      myLivePackages = new DartLivePackages(livePackageNameToDirMap);
     }
   }
 
@@ -258,9 +241,30 @@ public class DartUrlResolverImpl extends DartUrlResolver {
               myPackagesMapFromLib.put(entry.getKey(), entry.getValue());
             }
           }
+          myPackagesDirTrieFromLib = getPackagesDirTrie(myProject, library, properties, myPackagesMapFromLib);
           return;
         }
       }
     }
   }
+
+  /**
+   * The trie is shared by all resolvers until project roots change or until the library gets new properties.
+   */
+  @NotNull
+  private static DartPackageDirTrie getPackagesDirTrie(@NotNull final Project project,
+                                                       @NotNull final LibraryEx library,
+                                                       @NotNull final LibraryProperties properties,
+                                                       @NotNull final Map<String, List<String>> packagesMap) {
+    final ConcurrentMap<LibraryEx, Pair<LibraryProperties, DartPackageDirTrie>> tries =
+      CachedValuesManager.getManager(project).getCachedValue(project, PACKAGES_LIB_DIR_TRIES_KEY, () -> CachedValueProvider.Result
+        .create(new ConcurrentHashMap<>(), ProjectRootManager.getInstance(project)), false);
+
+    Pair<LibraryProperties, DartPackageDirTrie> propertiesAndTrie = tries.get(library);
+    if (propertiesAndTrie == null || propertiesAndTrie.first != properties) {
+      propertiesAndTrie = Pair.create(properties, DartPackageDirTrie.fromPackageNameToDirsMap(packagesMap));
+      tries.put(library, propertiesAndTrie);
+    }
+    return propertiesAndTrie.second;
+  }
 }
@@ -1,12 +1,14 @@
 package com.jetbrains.lang.dart.util;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -16,36 +18,140 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DotPackagesFileUtil {
 
+  private static final Logger LOG = Logger.getInstance(DotPackagesFileUtil.class.getName());
+
   public static final String DOT_PACKAGES = ".packages";
 
-  private static final Key<Pair<Long, Map<String, String>>> MOD_STAMP_TO_PACKAGES_MAP = Key.create("MOD_STAMP_TO_PACKAGES_MAP");
+  private static final Key<PackagesMapData> PACKAGES_MAP_DATA = Key.create("DART_PACKAGES_MAP_DATA");
 
-  @Nullable
-  public static Map<String, String> getPackagesMap(@NotNull final VirtualFile dotPackagesFile) {
-    Pair<Long, Map<String, String>> data = dotPackagesFile.getUserData(MOD_STAMP_TO_PACKAGES_MAP);
+  /**
+   * Decoded .packages lines shared by all .packages files. Modules of a big project usually depend on the same package versions, so their
+   * .packages files contain the same lines pointing into the pub cache; such files share the same package name and path strings.
+   * Relative URIs depend on the folder of the .packages file, so keys of such lines are prefixed with the folder path.
+   * Entries are softly reachable, the ones used by loaded packages maps are strongly reachable via {@link PackagesMapData#myLineToEntry}.
+   */
+  private static final ConcurrentMap<String, Pair<String, String>> ourSharedEntries = ContainerUtil.createConcurrentSoftValueMap();
 
-    final Long currentTimestamp = dotPackagesFile.getModificationCount();
-    final Long cachedTimestamp = Pair.getFirst(data);
+  private static final AtomicLong ourHitCount = new AtomicLong();
+  private static final AtomicLong ourMissCount = new AtomicLong();
 
-    if (cachedTimestamp == null || !cachedTimestamp.equals(currentTimestamp)) {
-      data = null;
-      dotPackagesFile.putUserData(MOD_STAMP_TO_PACKAGES_MAP, null);
-      final Map<String, String> packagesMap = loadPackagesMap(dotPackagesFile);
+  private static class PackagesMapData {
+    private final long myModificationCount;
+    @NotNull private final String myBaseDirPath;
+    // the entry for each line, to decode only changed lines when the file is rewritten
+    @NotNull private final Map<String, Pair<String, String>> myLineToEntry;
+    @NotNull private final Map<String, String> myPackagesMap;
+
+    private PackagesMapData(final long modificationCount,
+                            @NotNull final String baseDirPath,
+                            @NotNull final Map<String, Pair<String, String>> lineToEntry,
+                            @NotNull final Map<String, String> packagesMap) {
+      myModificationCount = modificationCount;
+      myBaseDirPath = baseDirPath;
+      myLineToEntry = lineToEntry;
+      myPackagesMap = packagesMap;
+    }
+  }
 
-      if (packagesMap != null) {
-        data = Pair.create(currentTimestamp, packagesMap);
-        dotPackagesFile.putUserData(MOD_STAMP_TO_PACKAGES_MAP, data);
+  /**
+   * Snapshot of the packages map cache state, for diagnostics.
+   */
+  public static class CacheStatistics {
+    // String and array headers, Pair and map entry objects; compressed oops assumed
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final long myHitCount;
+    private final long myMissCount;
+    private final int myEntryCount;
+    private final long myCharCount;
+
+    private CacheStatistics() {
+      myHitCount = ourHitCount.get();
+      myMissCount = ourMissCount.get();
+
+      int entryCount = 0;
+      long charCount = 0;
+      for (Map.Entry<String, Pair<String, String>> entry : ourSharedEntries.entrySet()) {
+        final Pair<String, String> value = entry.getValue();
+        if (value == null) continue; // collected meanwhile
+        entryCount++;
+        charCount += entry.getKey().length() + value.first.length() + value.second.length();
       }
+      myEntryCount = entryCount;
+      myCharCount = charCount;
+    }
+
+    /**
+     * @return number of {@link #getPackagesMap(VirtualFile)} calls answered without reading the file
+     */
+    public long getHitCount() {
+      return myHitCount;
+    }
+
+    /**
+     * @return number of {@link #getPackagesMap(VirtualFile)} calls that had to read the file
+     */
+    public long getMissCount() {
+      return myMissCount;
+    }
+
+    /**
+     * @return number of decoded lines shared by .packages files
+     */
+    public int getEntryCount() {
+      return myEntryCount;
+    }
+
+    /**
+     * @return approximate memory retained by the shared entries, each of them is kept once however many .packages files refer to it
+     */
+    public long getApproximateMemory() {
+      return myCharCount * 2 + (long)myEntryCount * ENTRY_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + myHitCount + ", misses=" + myMissCount +
+             ", shared entries=" + myEntryCount + " (~" + getApproximateMemory() / 1024 + " KB)";
+    }
+  }
+
+  @Nullable
+  public static Map<String, String> getPackagesMap(@NotNull final VirtualFile dotPackagesFile) {
+    final PackagesMapData data = dotPackagesFile.getUserData(PACKAGES_MAP_DATA);
+    final long currentTimestamp = dotPackagesFile.getModificationCount();
+    if (data != null && data.myModificationCount == currentTimestamp) {
+      ourHitCount.incrementAndGet();
+      return data.myPackagesMap;
+    }
+
+    ourMissCount.incrementAndGet();
+    final PackagesMapData newData = loadPackagesMap(dotPackagesFile, currentTimestamp, data);
+    dotPackagesFile.putUserData(PACKAGES_MAP_DATA, newData);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Loaded " + dotPackagesFile.getPath() + ", packages map cache: " + getCacheStatistics());
     }
 
-    return Pair.getSecond(data);
+    return newData == null ? null : newData.myPackagesMap;
+  }
+
+  /**
+   * Iterates over all shared entries, so it's not meant to be called often.
+   */
+  @NotNull
+  public static CacheStatistics getCacheStatistics() {
+    return new CacheStatistics();
   }
 
   @Nullable
-  private static Map<String, String> loadPackagesMap(@NotNull final VirtualFile dotPackagesFile) {
+  private static PackagesMapData loadPackagesMap(@NotNull final VirtualFile dotPackagesFile,
+                                                 final long modificationCount,
+                                                 @Nullable final PackagesMapData oldData) {
     try {
       final List<String> lines;
       if (ApplicationManager.getApplication().isUnitTestMode()) {
@@ -55,32 +161,80 @@ public class DotPackagesFileUtil {
         lines = FileUtil.loadLines(dotPackagesFile.getPath(), "UTF-8");
       }
 
-      final Map<String, String> result = new THashMap<>();
+      final VirtualFile baseDir = dotPackagesFile.getParent();
+      final String baseDirPath = baseDir.getPath();
+      final Map<String, Pair<String, String>> oldLineToEntry =
+        oldData != null && oldData.myBaseDirPath.equals(baseDirPath) ? oldData.myLineToEntry : null;
+
+      final Map<String, Pair<String, String>> lineToEntry = new THashMap<>(lines.size());
+      final Map<String, String> result = new THashMap<>(lines.size());
 
       for (String line : lines) {
         if (line.trim().isEmpty() || line.startsWith("#")) continue;
 
-        final int colonIndex = line.indexOf(':');
-        if (colonIndex > 0 && colonIndex < line.length() - 1) {
-          final String packageName = line.substring(0, colonIndex).trim();
-          final String encodedUri = line.substring(colonIndex + 1).trim();
-          // need to protect '+' chars because URLDecoder.decode replaces '+' with space
-          final String encodedUriWithoutPluses = StringUtil.replace(encodedUri, "+", "%2B");
-          final String uri = URLDecoder.decode(encodedUriWithoutPluses, "UTF-8");
-          final String packageUri = getAbsolutePackageRootPath(dotPackagesFile.getParent(), uri);
-          if (!packageName.isEmpty() && packageUri != null) {
-            result.put(packageName, packageUri);
+        Pair<String, String> entry = oldLineToEntry == null ? null : oldLineToEntry.get(line);
+        if (entry == null) {
+          final String sharedKey = isAbsoluteUriLine(line) ? line : baseDirPath + "\n" + line;
+          entry = ourSharedEntries.get(sharedKey);
+          if (entry == null) {
+            entry = decodeLine(baseDir, line);
+            if (entry == null) continue;
+
+            final Pair<String, String> existing = ourSharedEntries.putIfAbsent(sharedKey, entry);
+            if (existing != null) {
+              entry = existing;
+            }
           }
         }
+
+        lineToEntry.put(line, entry);
+        result.put(entry.first, entry.second);
       }
 
-      return result;
+      return new PackagesMapData(modificationCount, baseDirPath, lineToEntry, result);
     }
     catch (IOException e) {
       return null;
     }
   }
 
+  private static boolean isAbsoluteUriLine(@NotNull final String line) {
+    final int colonIndex = line.indexOf(':');
+    if (colonIndex <= 0) return false;
+
+    int uriStart = colonIndex + 1;
+    while (uriStart < line.length() && Character.isWhitespace(line.charAt(uriStart))) {
+      uriStart++;
+    }
+    return line.startsWith("file:/", uriStart);
+  }
+
+  /**
+   * @return package name and absolute package root path, or {@code null} if the line is not a valid packages map entry
+   */
+  @Nullable
+  private static Pair<String, String> decodeLine(@NotNull final VirtualFile baseDir, @NotNull final String line) throws IOException {
+    final int colonIndex = line.indexOf(':');
+    if (colonIndex > 0 && colonIndex < line.length() - 1) {
+      final String packageName = line.substring(0, colonIndex).trim();
+      final String encodedUri = line.substring(colonIndex + 1).trim();
+      final String uri;
+      if (encodedUri.indexOf('%') < 0 && encodedUri.indexOf('+') < 0) {
+        uri = encodedUri; // nothing to decode, the most common case
+      }
+      else {
+        // need to protect '+' chars because URLDecoder.decode replaces '+' with space
+        final String encodedUriWithoutPluses = StringUtil.replace(encodedUri, "+", "%2B");
+        uri = URLDecoder.decode(encodedUriWithoutPluses, "UTF-8");
+      }
+      final String packageUri = getAbsolutePackageRootPath(baseDir, uri);
+      if (!packageName.isEmpty() && packageUri != null) {
+        return Pair.create(packageName, packageUri);
+      }
+    }
+    return null;
+  }
+
   @Nullable
   private static String getAbsolutePackageRootPath(@NotNull final VirtualFile baseDir, @NotNull final String uri) {
     if (uri.startsWith("file:/")) {
@@ -6,6 +6,9 @@ import com.intellij.codeInsight.lookup.Lookup;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupEx;
 import com.intellij.codeInsight.lookup.LookupManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -175,4 +178,42 @@ public class DartServerCompletionTest extends CodeInsightFixtureTestCase {
     myFixture.completeBasic();
     assertNull(myFixture.getLookup());
   }
+
+  public void testResultsReusedWhileTypingSameIdentifier() {
+    myFixture.configureByText("foo.dart", "main() {\n  i<caret>\n}");
+    final LookupElement[] elements = myFixture.completeBasic();
+    assertNotNull(elements);
+    final LookupElement identical = ContainerUtil.find(elements, element -> "identical".equals(element.getLookupString()));
+    assertNotNull(identical);
+
+    LookupManager.getInstance(getProject()).hideActiveLookup();
+    myFixture.type("de");
+
+    // no new server request: elements built for the previous request are filtered by the longer prefix
+    final LookupElement[] filteredElements = myFixture.completeBasic();
+    assertNotNull(filteredElements);
+    assertSame(identical, ContainerUtil.find(filteredElements, element -> "identical".equals(element.getLookupString())));
+    assertNull(ContainerUtil.find(filteredElements, element -> "int".equals(element.getLookupString())));
+  }
+
+  public void testResultsNotReusedAfterOtherFileChanged() {
+    final VirtualFile barFile = myFixture.addFileToProject("bar.dart", "idOne() {}\n").getVirtualFile();
+    myFixture.configureByText("foo.dart", "import 'bar.dart';\nmain() {\n  i<caret>\n}");
+    final LookupElement[] elements = myFixture.completeBasic();
+    assertNotNull(elements);
+    assertNotNull(ContainerUtil.find(elements, element -> "idOne".equals(element.getLookupString())));
+    assertNull(ContainerUtil.find(elements, element -> "idTwo".equals(element.getLookupString())));
+
+    LookupManager.getInstance(getProject()).hideActiveLookup();
+    final Document barDocument = FileDocumentManager.getInstance().getDocument(barFile);
+    assertNotNull(barDocument);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> barDocument.insertString(barDocument.getTextLength(), "idTwo() {}\n"));
+    myFixture.type("d");
+
+    // bar.dart changed, so the server is asked again instead of filtering the elements built for the previous request
+    final LookupElement[] newElements = myFixture.completeBasic();
+    assertNotNull(newElements);
+    assertNotNull(ContainerUtil.find(newElements, element -> "idOne".equals(element.getLookupString())));
+    assertNotNull(ContainerUtil.find(newElements, element -> "idTwo".equals(element.getLookupString())));
+  }
 }
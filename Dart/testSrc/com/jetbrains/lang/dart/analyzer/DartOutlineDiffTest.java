@@ -0,0 +1,126 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.ElementKind;
+import org.dartlang.analysis.server.protocol.Outline;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DartOutlineDiffTest extends TestCase {
+
+  @NotNull
+  private static Outline node(@NotNull final String kind,
+                              @NotNull final String name,
+                              final int offset,
+                              @NotNull final Outline... children) {
+    return node(kind, name, null, offset, children);
+  }
+
+  @NotNull
+  private static Outline node(@NotNull final String kind,
+                              @NotNull final String name,
+                              final String parameters,
+                              final int offset,
+                              @NotNull final Outline... children) {
+    final Outline outline = new Outline(null, new Element(kind, name, null, 0, parameters, null, null), offset, 10);
+    final List<Outline> childList = new ArrayList<>();
+    Collections.addAll(childList, children);
+    outline.setChildren(childList);
+    return outline;
+  }
+
+  @NotNull
+  private static Outline unit(@NotNull final Outline... children) {
+    return node(ElementKind.COMPILATION_UNIT, "<unit>", 0, children);
+  }
+
+  private static void assertChildren(@NotNull final Outline outline, @NotNull final String... names) {
+    final List<String> actual = new ArrayList<>();
+    for (Outline child : outline.getChildren()) {
+      actual.add(child.getElement().getName());
+    }
+    assertEquals(Arrays.asList(names), actual);
+  }
+
+  public void testOnlyOffsetsChanged() {
+    final Outline oldOutline = unit(node(ElementKind.CLASS, "A", 0, node(ElementKind.METHOD, "foo", 5)),
+                                    node(ElementKind.FUNCTION, "main", 20));
+    final Outline newOutline = unit(node(ElementKind.CLASS, "A", 3, node(ElementKind.METHOD, "foo", 8)),
+                                    node(ElementKind.FUNCTION, "main", 23));
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(0, diff.getChangedNodeCount());
+    assertEquals(4, diff.getNodeCount());
+    assertTrue(diff.getChangedOutlines().isEmpty());
+    // the old outline may still be read by the UI, it's never modified
+    assertEquals(5, oldOutline.getChildren().get(0).getChildren().get(0).getOffset());
+  }
+
+  public void testPresentationChanged() {
+    final Outline oldOutline = unit(node(ElementKind.CLASS, "A", 0, node(ElementKind.METHOD, "foo", "()", 5)));
+    final Outline newOutline = unit(node(ElementKind.CLASS, "A", 0, node(ElementKind.METHOD, "foo", "(int x)", 5)));
+    final Outline newMethod = newOutline.getChildren().get(0).getChildren().get(0);
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(1, diff.getChangedNodeCount());
+    assertEquals(Collections.singletonList(newMethod), diff.getChangedOutlines());
+    assertEquals("()", oldOutline.getChildren().get(0).getChildren().get(0).getElement().getParameters());
+  }
+
+  public void testChildrenAddedAndRemoved() {
+    final Outline oldOutline = unit(node(ElementKind.CLASS, "A", 0,
+                                         node(ElementKind.METHOD, "foo", 5),
+                                         node(ElementKind.METHOD, "bar", 15)),
+                                    node(ElementKind.FUNCTION, "main", 30));
+    final Outline newOutline = unit(node(ElementKind.CLASS, "A", 0,
+                                         node(ElementKind.METHOD, "bar", 5),
+                                         node(ElementKind.GETTER, "baz", 15,
+                                              node(ElementKind.LOCAL_VARIABLE, "x", 17))),
+                                    node(ElementKind.FUNCTION, "main", 30));
+    final Outline oldClass = oldOutline.getChildren().get(0);
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(3, diff.getChangedNodeCount()); // foo removed, baz and x added
+    assertEquals(6, diff.getNodeCount());
+    assertEquals(Collections.singletonList(newOutline.getChildren().get(0)), diff.getChangedOutlines());
+    assertChildren(oldClass, "foo", "bar");
+  }
+
+  public void testReorderedChildren() {
+    final Outline oldOutline = unit(node(ElementKind.FUNCTION, "foo", 0), node(ElementKind.FUNCTION, "bar", 10));
+    final Outline newOutline = unit(node(ElementKind.FUNCTION, "bar", 0), node(ElementKind.FUNCTION, "foo", 10));
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(0, diff.getChangedNodeCount());
+    assertEquals(Collections.singletonList(newOutline), diff.getChangedOutlines());
+  }
+
+  public void testSameNamesMatchedInOrder() {
+    final Outline oldOutline = unit(node(ElementKind.UNIT_TEST_TEST, "test", 0),
+                                    node(ElementKind.UNIT_TEST_TEST, "test", 20, node(ElementKind.UNIT_TEST_TEST, "nested", 25)));
+    final Outline newOutline = unit(node(ElementKind.FUNCTION, "main", 0),
+                                    node(ElementKind.UNIT_TEST_TEST, "test", 10),
+                                    node(ElementKind.UNIT_TEST_TEST, "test", 30, node(ElementKind.UNIT_TEST_TEST, "nested", 35)));
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(1, diff.getChangedNodeCount()); // main added, the second test keeps its child
+    assertEquals(Collections.singletonList(newOutline), diff.getChangedOutlines());
+  }
+
+  public void testRootReplaced() {
+    final Outline oldOutline = unit(node(ElementKind.CLASS, "A", 0));
+    final Outline newOutline = node(ElementKind.LIBRARY, "lib", 0, node(ElementKind.CLASS, "A", 0));
+
+    final DartOutlineDiff diff = DartOutlineDiff.compare(oldOutline, newOutline);
+    assertEquals(Collections.singletonList(newOutline), diff.getChangedOutlines());
+    assertEquals(4, diff.getChangedNodeCount());
+
+    assertEquals(Collections.singletonList(newOutline), DartOutlineDiff.compare(null, newOutline).getChangedOutlines());
+  }
+}
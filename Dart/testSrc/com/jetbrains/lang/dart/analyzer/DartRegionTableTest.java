@@ -0,0 +1,120 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DartRegionTableTest extends TestCase {
+  private static final DartRegionTable.RegionFactory<String> FACTORY =
+    (table, index) -> table.getOffset(index) + ":" + table.getLength(index);
+
+  @NotNull
+  private static DartRegionTable createTable(final int... offsetsAndLengths) {
+    final int size = offsetsAndLengths.length / 2;
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    for (int i = 0; i < size; i++) {
+      offsets[i] = offsetsAndLengths[2 * i];
+      lengths[i] = offsetsAndLengths[2 * i + 1];
+    }
+    return new DartRegionTable(offsets, lengths, null, null);
+  }
+
+  private static void assertRegions(@NotNull final DartRegionTable table, @NotNull final String... expected) {
+    final List<String> expectedList = new ArrayList<>();
+    for (String region : expected) {
+      expectedList.add(region);
+    }
+    assertEquals(expectedList, table.getView(FACTORY));
+  }
+
+  public void testSorting() {
+    final DartRegionTable table = new DartRegionTable(new int[]{20, 5, 10}, new int[]{1, 2, 3}, new int[]{7, 8, 9}, null);
+    assertRegions(table, "5:2", "10:3", "20:1");
+    assertEquals(8, table.getKind(0));
+    assertEquals(9, table.getKind(1));
+    assertEquals(7, table.getKind(2));
+  }
+
+  public void testTypingDeletesTouched() {
+    final DartRegionTable table = createTable(0, 5, 10, 5, 20, 5);
+    assertTrue(table.deleteTouched(12, 0, 3));
+    assertEquals(2, table.getLiveCount());
+    assertEquals(3, table.size());
+    assertRegions(table, "0:5", "23:5");
+    assertEquals("deleted regions are compacted", 2, table.size());
+    assertFalse(table.deleteTouched(5, 0, 1));
+    assertRegions(table, "0:5", "24:5");
+  }
+
+  public void testTypingUpdatesTouched() {
+    final DartRegionTable table = createTable(0, 5, 10, 5, 20, 5);
+    table.updateTouched(12, 0, 3);
+    assertRegions(table, "0:5", "10:8", "23:5");
+    table.updateTouched(10, 0, 1);
+    assertRegions(table, "0:5", "11:8", "24:5");
+  }
+
+  public void testRemovalDeletesTouched() {
+    final DartRegionTable table = createTable(0, 5, 10, 5, 20, 5, 30, 5);
+    assertTrue(table.deleteTouched(8, 14, 0));
+    assertRegions(table, "0:5", "16:5");
+    assertFalse(table.deleteTouched(5, 3, 0));
+    assertRegions(table, "0:5", "13:5");
+  }
+
+  public void testRemovalUpdatesTouched() {
+    final DartRegionTable table = createTable(0, 5, 10, 5, 20, 5);
+    table.updateTouched(11, 2, 0);
+    assertRegions(table, "0:5", "10:3", "18:5");
+    table.updateTouched(10, 3, 0);
+    assertRegions(table, "0:5", "15:5");
+    table.updateTouched(3, 4, 0);
+    assertRegions(table, "11:5");
+  }
+
+  public void testShift() {
+    final DartRegionTable table = createTable(0, 0, 10, 0, 20, 0);
+    table.shift(10, 5);
+    assertRegions(table, "0:0", "15:0", "25:0");
+    table.shift(16, -1);
+    assertRegions(table, "0:0", "15:0", "24:0");
+  }
+
+  public void testRemovalShiftsTargetsInsideToItsStart() {
+    final DartRegionTable table = createTable(0, 0, 10, 0, 12, 0, 20, 0, 30, 0);
+    table.shift(8, -14);
+    assertRegions(table, "0:0", "8:0", "8:0", "8:0", "16:0");
+    table.shift(8, 2);
+    assertRegions(table, "0:0", "10:0", "10:0", "10:0", "18:0");
+    table.shift(5, -20);
+    assertRegions(table, "0:0", "5:0", "5:0", "5:0", "5:0");
+  }
+
+  public void testViewIsCached() {
+    final DartRegionTable table = createTable(0, 5, 10, 5);
+    final List<String> view = table.getView(FACTORY);
+    assertSame(view, table.getView(FACTORY));
+    table.updateTouched(7, 0, 1);
+    assertNotSame(view, table.getView(FACTORY));
+    assertEquals("view is a snapshot", Arrays.asList("0:5", "10:5"), view);
+  }
+
+  public void testUnchangedRegionsReused() {
+    final DartRegionTable table = createTable(0, 5, 10, 5, 20, 5, 30, 5);
+    final List<String> view = table.getView(FACTORY);
+
+    table.updateTouched(12, 0, 1);
+    final List<String> newView = table.getView(FACTORY);
+    assertEquals(Arrays.asList("0:5", "10:6", "21:5", "31:5"), newView);
+    assertSame(view.get(0), newView.get(0));
+
+    table.updateTouched(15, 1, 0);
+    table.updateTouched(15, 0, 1);
+    assertSame("regions shifted back and forth are reused", newView.get(3), table.getView(FACTORY).get(3));
+  }
+}
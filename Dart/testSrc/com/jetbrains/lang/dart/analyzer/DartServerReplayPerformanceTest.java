@@ -0,0 +1,149 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.HighlightRegionArraysListener;
+import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.ReplaySessionSocket;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.TeamCityLogger;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the client decodes Analysis Server notifications and applies them to {@link DartServerData}, by replaying
+ * a session through {@link ReplaySessionSocket}. A synthetic session with highlighting and navigation notifications is used
+ * by default; a session recorded with the {@code dart.server.record.session.dir} system property can be replayed instead
+ * by setting the {@code dart.server.replay.session} system property to the path of the recorded file.
+ */
+public class DartServerReplayPerformanceTest extends DartCodeInsightFixtureTestCase {
+
+  private static final String REPLAY_SESSION_PROPERTY = "dart.server.replay.session";
+
+  private static final int FILE_COUNT = 100;
+  private static final int HIGHLIGHT_REGION_COUNT = 5000;
+  private static final int NAVIGATION_REGION_COUNT = 2000;
+  private static final String[] HIGHLIGHT_TYPES = {"KEYWORD", "CLASS", "IDENTIFIER_DEFAULT", "LITERAL_STRING", "COMMENT_BLOCK"};
+
+  private static class ReplayResult {
+    private long myNotificationCount;
+    private long myAllocatedBytes;
+    private long myTimeNanos;
+  }
+
+  public void testReplaySession() throws Exception {
+    final String sessionPath = System.getProperty(REPLAY_SESSION_PROPERTY);
+    final List<String> session = sessionPath == null ? createSyntheticSession() : null;
+    final ReplayResult total = new ReplayResult();
+
+    PlatformTestUtil.startPerformanceTest("Replay of Analysis Server notifications", 15000, () -> {
+      final ReplaySessionSocket socket = sessionPath == null
+                                         ? new ReplaySessionSocket(session, false, null)
+                                         : ReplaySessionSocket.fromFile(new File(sessionPath), false, null);
+      final ReplayResult result = replay(socket);
+      total.myNotificationCount += result.myNotificationCount;
+      total.myAllocatedBytes += result.myAllocatedBytes;
+      total.myTimeNanos += result.myTimeNanos;
+    }).assertTiming();
+
+    assertTrue(total.myNotificationCount > 0);
+    final double seconds = total.myTimeNanos / (double)TimeUnit.SECONDS.toNanos(1);
+    TeamCityLogger.info("Analysis Server replay: " + (long)(total.myNotificationCount / seconds) + " notifications/sec, " +
+                        total.myAllocatedBytes / total.myNotificationCount + " bytes allocated/notification");
+  }
+
+  @NotNull
+  private ReplayResult replay(@NotNull final ReplaySessionSocket socket) throws Exception {
+    final DartServerData serverData = new DartServerData(DartAnalysisServerService.getInstance(getProject()));
+    final ReplayResult result = new ReplayResult();
+    final RemoteAnalysisServerImpl server = new RemoteAnalysisServerImpl(socket, false);
+    server.addAnalysisServerListener(new ReplayListener(serverData, result));
+
+    final long start = System.nanoTime();
+    server.start();
+    try {
+      assertTrue("Replay timed out", socket.awaitReplayProcessed(5, TimeUnit.MINUTES));
+    }
+    finally {
+      server.server_shutdown();
+    }
+    result.myTimeNanos = System.nanoTime() - start;
+    result.myAllocatedBytes = socket.getAllocatedBytes();
+    return result;
+  }
+
+  private static class ReplayListener extends AnalysisServerListenerAdapter implements HighlightRegionArraysListener {
+    @NotNull private final DartServerData myServerData;
+    @NotNull private final ReplayResult myResult;
+
+    private ReplayListener(@NotNull final DartServerData serverData, @NotNull final ReplayResult result) {
+      myServerData = serverData;
+      myResult = result;
+    }
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myResult.myNotificationCount++;
+      myServerData.computedHighlights(file, highlights);
+    }
+
+    @Override
+    public void computedHighlights(String file, int[] offsets, int[] lengths, String[] types) {
+      myResult.myNotificationCount++;
+      myServerData.computedHighlights(file, offsets, lengths, types);
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> targets) {
+      myResult.myNotificationCount++;
+      myServerData.computedNavigation(file, targets);
+    }
+  }
+
+  @NotNull
+  private static List<String> createSyntheticSession() {
+    final List<String> session = new ArrayList<>();
+    long time = 1000000;
+    for (int i = 0; i < FILE_COUNT; i++) {
+      final String filePath = "/replay/lib/file" + i + ".dart";
+      session.add(time++ + " <= " + createHighlightsNotification(filePath));
+      session.add(time++ + " <= " + createNavigationNotification(filePath, "/replay/lib/file" + (i + 1) + ".dart"));
+    }
+    return session;
+  }
+
+  @NotNull
+  private static String createHighlightsNotification(@NotNull final String filePath) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"").append(filePath).append("\",\"regions\":[");
+    for (int i = 0; i < HIGHLIGHT_REGION_COUNT; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"type\":\"").append(HIGHLIGHT_TYPES[i % HIGHLIGHT_TYPES.length]).append("\",")
+        .append("\"offset\":").append(i * 10).append(",\"length\":").append(5 + i % 4).append('}');
+    }
+    return builder.append("]}}").toString();
+  }
+
+  @NotNull
+  private static String createNavigationNotification(@NotNull final String filePath, @NotNull final String otherFilePath) {
+    final List<String> regions = new ArrayList<>();
+    final List<String> targets = new ArrayList<>();
+    for (int i = 0; i < NAVIGATION_REGION_COUNT; i++) {
+      regions.add("{\"offset\":" + i * 20 + ",\"length\":6,\"targets\":[" + i + "]}");
+      targets.add("{\"kind\":\"CLASS\",\"fileIndex\":" + i % 2 + ",\"offset\":" + i * 7 +
+                  ",\"length\":6,\"startLine\":" + (i + 1) + ",\"startColumn\":1}");
+    }
+    return "{\"event\":\"analysis.navigation\",\"params\":{\"file\":\"" + filePath + "\"," +
+           "\"regions\":[" + StringUtil.join(regions, ",") + "]," +
+           "\"targets\":[" + StringUtil.join(targets, ",") + "]," +
+           "\"files\":[\"" + filePath + "\",\"" + otherFilePath + "\"]}}";
+  }
+}
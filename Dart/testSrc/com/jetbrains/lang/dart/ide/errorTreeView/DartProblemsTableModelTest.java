@@ -0,0 +1,139 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.CodeInsightFixtureTestCase;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
+import org.dartlang.analysis.server.protocol.AnalysisErrorType;
+import org.dartlang.analysis.server.protocol.Location;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+public class DartProblemsTableModelTest extends CodeInsightFixtureTestCase {
+
+  private DartProblemsTableModel createModel() {
+    return new DartProblemsTableModel(getProject(), new DartProblemsPresentationHelper(getProject()));
+  }
+
+  @NotNull
+  private String addFile(@NotNull final String name) {
+    return myFixture.addFileToProject(name, "").getVirtualFile().getPath();
+  }
+
+  @NotNull
+  private static List<AnalysisError> createErrors(@NotNull final String filePath, @NotNull final String... severities) {
+    final List<AnalysisError> errors = new ArrayList<>();
+    for (int i = 0; i < severities.length; i++) {
+      final Location location = new Location(filePath, i * 10, 5, i + 1, 1);
+      errors.add(new AnalysisError(severities[i], AnalysisErrorType.LINT, location, "message " + i, null, "code", false));
+    }
+    return errors;
+  }
+
+  private static void assertRows(@NotNull final DartProblemsTableModel model, @NotNull final String... expectedPathsAndMessages) {
+    final List<String> actual = new ArrayList<>();
+    for (DartProblem problem : model.getItems()) {
+      actual.add(problem.getSystemIndependentPath() + ":" + problem.getErrorMessage());
+    }
+    assertOrderedEquals(actual, expectedPathsAndMessages);
+  }
+
+  public void testIncrementalUpdates() {
+    final String a = addFile("a.dart");
+    final String b = addFile("b.dart");
+    final String c = addFile("c.dart");
+    final String d = addFile("d.dart");
+    final DartProblemsTableModel model = createModel();
+
+    final Map<String, List<AnalysisError>> errors = new LinkedHashMap<>();
+    errors.put(a, createErrors(a, AnalysisErrorSeverity.ERROR));
+    errors.put(b, createErrors(b, AnalysisErrorSeverity.WARNING, AnalysisErrorSeverity.INFO));
+    errors.put(c, createErrors(c, AnalysisErrorSeverity.INFO));
+    assertNull(model.setErrorsAndReturnReplacementForSelection(errors, null));
+    assertRows(model, a + ":message 0", b + ":message 0", b + ":message 1", c + ":message 0");
+    assertEquals("1 error, 1 warning, 2 hints", model.getStatusText());
+
+    final DartProblem selected = model.getItem(2);
+    final DartProblem replacement =
+      model.setErrorsAndReturnReplacementForSelection(Collections.singletonMap(b, createErrors(b, AnalysisErrorSeverity.INFO,
+                                                                                               AnalysisErrorSeverity.INFO,
+                                                                                               AnalysisErrorSeverity.ERROR)),
+                                                      selected);
+    assertRows(model, a + ":message 0", b + ":message 0", b + ":message 1", b + ":message 2", c + ":message 0");
+    assertNotNull(replacement);
+    assertSame(model.getItem(2), replacement);
+    assertEquals("2 errors and 3 hints", model.getStatusText());
+
+    final Map<String, List<AnalysisError>> update = new LinkedHashMap<>();
+    update.put(a, Collections.emptyList());
+    update.put(d, createErrors(d, AnalysisErrorSeverity.WARNING));
+    update.put(c, createErrors(c, AnalysisErrorSeverity.ERROR, AnalysisErrorSeverity.ERROR));
+    assertNull(model.setErrorsAndReturnReplacementForSelection(update, model.getItem(0)));
+    assertRows(model, b + ":message 0", b + ":message 1", b + ":message 2", c + ":message 0", c + ":message 1", d + ":message 0");
+    assertEquals("3 errors, 1 warning, 2 hints", model.getStatusText());
+    assertTrue(model.hasErrors());
+
+    model.removeAll();
+    assertEquals(0, model.getRowCount());
+    assertEquals("", model.getStatusText());
+  }
+
+  public void testUpdateOfManyFilesAtOnce() {
+    final DartProblemsTableModel model = createModel();
+    final List<String> paths = new ArrayList<>();
+    final Map<String, List<AnalysisError>> errors = new LinkedHashMap<>();
+    for (int i = 0; i < 30; i++) {
+      final String path = addFile("file" + i + ".dart");
+      paths.add(path);
+      errors.put(path, createErrors(path, AnalysisErrorSeverity.WARNING));
+    }
+    model.setErrorsAndReturnReplacementForSelection(errors, null);
+    final DartProblem selected = model.getItem(29);
+
+    final Map<String, List<AnalysisError>> update = new LinkedHashMap<>();
+    for (int i = 0; i < 25; i++) {
+      final String path = paths.get(i);
+      update.put(path, i % 2 == 0 ? Collections.emptyList() : createErrors(path, AnalysisErrorSeverity.ERROR, AnalysisErrorSeverity.INFO));
+    }
+    // the table is refreshed as a whole, so the selection that hasn't been touched is returned to be restored
+    assertSame(selected, model.setErrorsAndReturnReplacementForSelection(update, selected));
+
+    assertEquals(12 * 2 + 5, model.getRowCount());
+    assertEquals("12 errors, 5 warnings, 12 hints", model.getStatusText());
+    assertEquals(paths.get(1), model.getItem(0).getSystemIndependentPath());
+    assertSame(selected, model.getItem(model.getRowCount() - 1));
+  }
+
+  public void testUpdatesWith100kProblems() {
+    final int fileCount = 200;
+    final int problemsPerFile = 500;
+    final String[] severities = new String[problemsPerFile];
+    for (int i = 0; i < problemsPerFile; i++) {
+      severities[i] = i % 3 == 0 ? AnalysisErrorSeverity.ERROR : i % 3 == 1 ? AnalysisErrorSeverity.WARNING : AnalysisErrorSeverity.INFO;
+    }
+
+    final List<String> paths = new ArrayList<>();
+    final Map<String, List<AnalysisError>> errors = new THashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      final String path = addFile("lib/file" + i + ".dart");
+      paths.add(path);
+      errors.put(path, createErrors(path, severities));
+    }
+
+    final DartProblemsTableModel model = createModel();
+    model.setErrorsAndReturnReplacementForSelection(errors, null);
+    assertEquals(fileCount * problemsPerFile, model.getRowCount());
+
+    PlatformTestUtil.startPerformanceTest("Updating problems of single files among 100k problems", 3000, () -> {
+      for (int i = 0; i < 500; i++) {
+        final String path = paths.get(i * 7 % fileCount);
+        model.setErrorsAndReturnReplacementForSelection(Collections.singletonMap(path, errors.get(path)), null);
+      }
+    }).assertTiming();
+
+    assertEquals(fileCount * problemsPerFile, model.getRowCount());
+  }
+}
@@ -0,0 +1,203 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.TeamCityLogger;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartLanguage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that indexing a Dart file via {@link com.intellij.lang.LighterAST} gives the same data as indexing its PSI,
+ * and measures indexing throughput of both over a synthetic pub cache.
+ */
+public class DartIndexingPerformanceTest extends DartCodeInsightFixtureTestCase {
+
+  private static final int PACKAGE_COUNT = 30;
+  private static final int FILES_PER_PACKAGE = 40;
+
+  private static final String SAMPLE =
+    "@deprecated\n" +
+    "library foo.bar . baz;\n" +
+    "import 'dart:async' show Future, Stream hide Timer;\n" +
+    "import \"package:a/a.dart\" deferred as a;\n" +
+    "import r'''package:b/b.dart''' as b show B1 show B2 hide B3;\n" +
+    "import 'package:c/c.dart' if (dart.library.io) 'package:c/c_io.dart' as c;\n" +
+    "export 'src/d.dart' hide D;\n" +
+    "part 'src/part1.dart';\n" +
+    "part \"src/part2.dart\";\n" +
+    "const int x = 1, y = 2;\n" +
+    "var z;\n" +
+    "final w = new Foo();\n" +
+    "typedef int Callback(String s);\n" +
+    "typedef Mapper<T> = T Function(T);\n" +
+    "int get topGetter => 1;\n" +
+    "set topSetter(int value) {}\n" +
+    "external void nativeFunction();\n" +
+    "Future<int> main(List<String> args) async { var local = 1; void inner() {} return local; }\n" +
+    "abstract class Foo<T extends Object> extends Base with M1, M2 implements I {\n" +
+    "  static const int CONST = 1;\n" +
+    "  final String a, b;\n" +
+    "  Foo(this.a, this.b);\n" +
+    "  Foo.named() : a = '', b = '';\n" +
+    "  factory Foo.create() => null;\n" +
+    "  factory Bar() = Baz;\n" +
+    "  int get length => 0;\n" +
+    "  set length(int value) {}\n" +
+    "  T method<S>(S s) { return null; }\n" +
+    "  bool operator ==(other) => false;\n" +
+    "  operator [](int i) => null;\n" +
+    "  void operator []=(int i, value) {}\n" +
+    "}\n" +
+    "class MixinApp = Object with M1;\n" +
+    "mixin M1 on Object implements I { int mixinField; void mixinMethod() {} }\n" +
+    "enum Color { red, green, blue, }\n" +
+    "class Incomplete {\n" +
+    "  int\n" +
+    "}\n" +
+    "b.B1 prefixedTopLevel;\n" +
+    "class a {}\n";
+
+  private static final String PART_SAMPLE =
+    "part of foo.bar;\n" +
+    "class InPart { void partMethod() {} }\n";
+
+  public void testLighterASTIndexMatchesPsiIndex() {
+    assertSameIndexData("sample.dart", SAMPLE);
+    assertSameIndexData("part.dart", PART_SAMPLE);
+    assertSameIndexData("empty.dart", "");
+    assertSameIndexData("broken.dart", "import 'x.dart' show ;\nclass {\nvoid f(\n");
+
+    final List<String> files = createSyntheticPubCache();
+    for (int i = 0; i < files.size(); i += 97) {
+      assertSameIndexData("file" + i + ".dart", files.get(i));
+    }
+  }
+
+  public void testPartOfUriNeedsPsi() {
+    assertNull(DartIndexUtil.indexFileText("part of 'lib.dart';\nclass A {}", "part.dart"));
+  }
+
+  public void testIndexingThroughput() {
+    final List<String> files = createSyntheticPubCache();
+    long size = 0;
+    for (String file : files) {
+      size += file.length();
+    }
+
+    final long[] lightNanos = new long[1];
+    PlatformTestUtil.startPerformanceTest("Dart indexing via LighterAST", 10000, () -> {
+      final long start = System.nanoTime();
+      for (int i = 0; i < files.size(); i++) {
+        assertNotNull(DartIndexUtil.indexFileText(files.get(i), "file" + i + ".dart"));
+      }
+      lightNanos[0] = System.nanoTime() - start;
+    }).assertTiming();
+
+    final long start = System.nanoTime();
+    for (int i = 0; i < files.size(); i++) {
+      DartIndexUtil.indexFileRoots(createPsiFile("file" + i + ".dart", files.get(i)));
+    }
+    final long psiNanos = System.nanoTime() - start;
+
+    TeamCityLogger.info("Dart indexing of " + files.size() + " files, " + size / 1024 + " KB: " +
+                        "LighterAST " + getFilesPerSecond(files.size(), lightNanos[0]) + " files/sec, " +
+                        "PSI " + getFilesPerSecond(files.size(), psiNanos) + " files/sec");
+  }
+
+  private static long getFilesPerSecond(final int fileCount, final long nanos) {
+    return fileCount * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+  }
+
+  private void assertSameIndexData(@NotNull final String fileName, @NotNull final String text) {
+    final DartFileIndexData expected = DartIndexUtil.indexFileRoots(createPsiFile(fileName, text));
+    final DartFileIndexData actual = DartIndexUtil.indexFileText(text, fileName);
+    assertNotNull(fileName, actual);
+
+    assertEquals(fileName, expected.getLibraryName(), actual.getLibraryName());
+    assertEquals(fileName, expected.isPart(), actual.isPart());
+    assertSameElements(fileName, actual.getClassNames(), expected.getClassNames());
+    assertSameElements(fileName, actual.getSymbols(), expected.getSymbols());
+    assertEquals(fileName, new TreeMap<>(expected.getComponentInfoMap()), new TreeMap<>(actual.getComponentInfoMap()));
+    assertOrderedEquals(fileName, actual.getImportAndExportInfos(), expected.getImportAndExportInfos());
+    assertOrderedEquals(fileName, actual.getPartUris(), expected.getPartUris());
+  }
+
+  @NotNull
+  private PsiFile createPsiFile(@NotNull final String fileName, @NotNull final String text) {
+    return PsiFileFactory.getInstance(getProject()).createFileFromText(fileName, DartLanguage.INSTANCE, text);
+  }
+
+  @NotNull
+  private static List<String> createSyntheticPubCache() {
+    final List<String> files = new ArrayList<>();
+    for (int p = 0; p < PACKAGE_COUNT; p++) {
+      for (int f = 0; f < FILES_PER_PACKAGE; f++) {
+        files.add(f % 10 == 9 ? createPartFile(p, f) : createLibraryFile(p, f));
+      }
+    }
+    return files;
+  }
+
+  @NotNull
+  private static String createLibraryFile(final int p, final int f) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("/// Library ").append(f).append(" of package ").append(p).append("\n");
+    builder.append("library pkg").append(p).append(".lib").append(f).append(";\n\n");
+    builder.append("import 'dart:async';\n");
+    builder.append("import 'dart:collection' show HashMap, LinkedHashMap;\n");
+    builder.append("import 'package:pkg").append(p).append("/src/util.dart' as util hide Hidden;\n");
+    builder.append("export 'src/exported").append(f).append(".dart';\n");
+    builder.append("part 'src/part").append(f).append(".dart';\n\n");
+    builder.append("const int version").append(f).append(" = ").append(f).append(", revision").append(f).append(" = 0;\n");
+    builder.append("typedef void Listener").append(f).append("(Object event);\n\n");
+    for (int c = 0; c < 5; c++) {
+      final String className = "Class" + f + "_" + c;
+      builder.append("/**\n * Documentation of ").append(className).append(".\n */\n");
+      builder.append("class ").append(className).append("<T> extends Object implements Comparable<").append(className).append("> {\n");
+      builder.append("  static const String NAME = '").append(className).append("';\n");
+      builder.append("  final Map<String, T> _values = new HashMap();\n");
+      builder.append("  int _count, _limit;\n\n");
+      builder.append("  ").append(className).append("(this._count);\n");
+      builder.append("  ").append(className).append(".empty() : this(0);\n");
+      builder.append("  factory ").append(className).append(".from(List<T> list) => new ").append(className).append("(list.length);\n\n");
+      builder.append("  int get count => _count;\n");
+      builder.append("  set limit(int value) { _limit = value; }\n\n");
+      for (int m = 0; m < 8; m++) {
+        builder.append("  Future<T> method").append(m).append("(String key, {int retries: 3}) async {\n");
+        builder.append("    for (var i = 0; i < retries; i++) {\n");
+        builder.append("      final value = _values[key];\n");
+        builder.append("      if (value != null && i < _limit) {\n");
+        builder.append("        return value;\n");
+        builder.append("      }\n");
+        builder.append("      await new Future.delayed(const Duration(milliseconds: 10), () => print('$key: ${i * 2}'));\n");
+        builder.append("    }\n");
+        builder.append("    throw new StateError(\"No value for $key\");\n");
+        builder.append("  }\n\n");
+      }
+      builder.append("  int compareTo(").append(className).append(" other) => _count - other._count;\n");
+      builder.append("}\n\n");
+    }
+    builder.append("enum State").append(f).append(" { idle, running, done }\n\n");
+    builder.append("void main").append(f).append("(List<String> args) {\n");
+    builder.append("  args.where((a) => a.isNotEmpty).map((a) => a.length).forEach(print);\n");
+    builder.append("}\n");
+    return builder.toString();
+  }
+
+  @NotNull
+  private static String createPartFile(final int p, final int f) {
+    return "part of pkg" + p + ".lib" + (f - 1) + ";\n\n" +
+           "class PartClass" + f + " {\n" +
+           "  String describe() => 'part $f';\n" +
+           "}\n\n" +
+           "int get partGetter" + f + " => " + f + ";\n";
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TokenPosTableTest extends TestCase {
+
+  private static void assertPosition(final TokenPosTable table, final int tokenPos, final int line, final int column) {
+    final long lineAndColumn = table.getLineAndColumn(tokenPos);
+    assertTrue("no token " + tokenPos, lineAndColumn != -1);
+    assertEquals(line, TokenPosTable.getLine(lineAndColumn));
+    assertEquals(column, TokenPosTable.getColumn(lineAndColumn));
+  }
+
+  public void testSortedTable() {
+    final List<List<Integer>> tokenPosTable = Arrays.asList(Arrays.asList(1, 10, 1, 15, 7),
+                                                            Arrays.asList(3, 20, 3),
+                                                            Collections.singletonList(4),
+                                                            Arrays.asList(5, 30, 1, 42, 120));
+    final TokenPosTable table = TokenPosTable.create(tokenPosTable);
+    assertEquals(5, table.size());
+    assertPosition(table, 10, 0, 0);
+    assertPosition(table, 15, 0, 6);
+    assertPosition(table, 20, 2, 2);
+    assertPosition(table, 30, 4, 0);
+    assertPosition(table, 42, 4, 119);
+    assertEquals(-1, table.getLineAndColumn(0));
+    assertEquals(-1, table.getLineAndColumn(16));
+    assertEquals(-1, table.getLineAndColumn(100));
+  }
+
+  public void testUnsortedTableWithDuplicates() {
+    final List<List<Integer>> tokenPosTable = Arrays.asList(Arrays.asList(2, 50, 4, 5, 1),
+                                                            Arrays.asList(1, 40, 2, 50, 9));
+    final TokenPosTable table = TokenPosTable.create(tokenPosTable);
+    assertEquals(3, table.size());
+    assertPosition(table, 5, 1, 0);
+    assertPosition(table, 40, 0, 1);
+    assertPosition(table, 50, 0, 8); // the last entry wins, as it did with a hash map
+  }
+}
@@ -0,0 +1,160 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class VmObjectFetcherTest extends TestCase {
+  private static final String ISOLATE_ID = "isolates/1";
+
+  /**
+   * {@code getObject} request passed to the VM service, it waits in {@link #mySentRequests} until the test answers it.
+   */
+  private static class SentRequest {
+    @NotNull private final String myObjectId;
+    @NotNull private final GetObjectConsumer myConsumer;
+
+    private SentRequest(@NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
+      myObjectId = objectId;
+      myConsumer = consumer;
+    }
+
+    private void answer() {
+      final JsonObject json = new JsonObject();
+      json.addProperty("type", "Instance");
+      json.addProperty("id", myObjectId);
+      myConsumer.received(new Obj(json));
+    }
+
+    private void answerWithError() {
+      final JsonObject json = new JsonObject();
+      json.addProperty("code", -32000);
+      json.addProperty("message", "Server error");
+      myConsumer.onError(new RPCError(json));
+    }
+  }
+
+  private static class ResultConsumer implements GetObjectConsumer {
+    private final List<String> myResults = new ArrayList<>();
+
+    @Override
+    public void received(Obj response) {
+      myResults.add(response.getId());
+    }
+
+    @Override
+    public void received(Sentinel response) {
+      myResults.add("sentinel");
+    }
+
+    @Override
+    public void onError(RPCError error) {
+      myResults.add("error");
+    }
+  }
+
+  private final List<SentRequest> mySentRequests = new ArrayList<>();
+  private VmObjectFetcher myFetcher;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    final VmService vmService = new VmService() {
+      @Override
+      public void getObject(String isolateId, String objectId, Integer offset, Integer count, GetObjectConsumer consumer) {
+        mySentRequests.add(new SentRequest(objectId, consumer));
+      }
+    };
+    myFetcher = new VmObjectFetcher(vmService, Runnable::run);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    mySentRequests.clear();
+    myFetcher = null;
+    super.tearDown();
+  }
+
+  @NotNull
+  private ResultConsumer getObject(@NotNull final String objectId, final boolean cacheable) {
+    final ResultConsumer consumer = new ResultConsumer();
+    myFetcher.getObject(ISOLATE_ID, objectId, null, null, cacheable, consumer);
+    return consumer;
+  }
+
+  public void testDuplicateRequestsCoalesced() {
+    final ResultConsumer consumer1 = getObject("objects/1", true);
+    final ResultConsumer consumer2 = getObject("objects/1", true);
+    assertEquals(1, mySentRequests.size());
+    assertTrue(consumer1.myResults.isEmpty());
+
+    mySentRequests.get(0).answer();
+    assertEquals(1, consumer1.myResults.size());
+    assertEquals(consumer1.myResults, consumer2.myResults);
+
+    final ResultConsumer consumer3 = getObject("objects/1", true);
+    assertEquals("answered from cache", 1, mySentRequests.size());
+    assertEquals(consumer1.myResults, consumer3.myResults);
+
+    getObject("objects/1", false);
+    getObject("objects/1", false);
+    assertEquals("requests in a running isolate are neither cached nor coalesced", 3, mySentRequests.size());
+  }
+
+  public void testResponseOfPreviousGenerationNotCached() {
+    final ResultConsumer consumer1 = getObject("objects/1", true);
+    myFetcher.invalidate(ISOLATE_ID);
+    mySentRequests.get(0).answer();
+    assertEquals(1, consumer1.myResults.size());
+
+    final ResultConsumer consumer2 = getObject("objects/1", true);
+    assertEquals("response of the previous generation is not cached", 2, mySentRequests.size());
+
+    myFetcher.invalidate(ISOLATE_ID);
+    final ResultConsumer consumer3 = getObject("objects/1", true);
+    assertEquals("request after resume doesn't wait for the response to the old one", 3, mySentRequests.size());
+
+    mySentRequests.get(1).answer();
+    assertEquals(1, consumer2.myResults.size());
+    assertTrue(consumer3.myResults.isEmpty());
+
+    mySentRequests.get(2).answer();
+    assertEquals(1, consumer3.myResults.size());
+
+    getObject("objects/1", true);
+    assertEquals("response of the current generation is cached", 3, mySentRequests.size());
+  }
+
+  public void testWindowDrainedOnErrors() {
+    final int requestCount = VmObjectFetcher.MAX_IN_FLIGHT_REQUESTS + 10;
+    final List<ResultConsumer> consumers = new ArrayList<>();
+    for (int i = 0; i < requestCount; i++) {
+      consumers.add(getObject("objects/" + i, true));
+    }
+    assertEquals(VmObjectFetcher.MAX_IN_FLIGHT_REQUESTS, mySentRequests.size());
+
+    for (int i = 0; i < requestCount; i++) {
+      mySentRequests.get(i).answerWithError();
+    }
+    assertEquals("pending requests are sent as failed ones are answered", requestCount, mySentRequests.size());
+    for (ResultConsumer consumer : consumers) {
+      assertEquals(1, consumer.myResults.size());
+      assertEquals("error", consumer.myResults.get(0));
+    }
+
+    // errors are not cached and the whole window is free again
+    for (int i = 0; i < VmObjectFetcher.MAX_IN_FLIGHT_REQUESTS; i++) {
+      getObject("objects/" + i, true);
+    }
+    assertEquals(requestCount + VmObjectFetcher.MAX_IN_FLIGHT_REQUESTS, mySentRequests.size());
+  }
+}
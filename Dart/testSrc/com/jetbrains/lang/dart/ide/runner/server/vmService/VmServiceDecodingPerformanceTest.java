@@ -0,0 +1,187 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import com.intellij.testFramework.TeamCityLogger;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.VmServiceListener;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Event;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.dartlang.vm.service.internal.RequestSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how fast {@link VmService} decodes and forwards VM messages, and how long stream events wait while big {@code getObject}
+ * responses are being decoded. The VM is replaced with {@link EchoTransport} that answers each request with a canned response and passes
+ * everything to {@link VmService#messageReceived(String)} from its own thread, the way the WebSocket transport does.
+ */
+public class VmServiceDecodingPerformanceTest extends TestCase {
+
+  private static final int REQUEST_COUNT = 200;
+  private static final int LIST_LENGTH = 5000;
+  private static final int EVENTS_PER_REQUEST = 5;
+
+  /**
+   * The VM thread answers requests one by one with a pause between them, putting the response and a few events into the socket queue.
+   * The socket thread passes them to the VM service. Event latency includes the time an event waits in the socket queue.
+   */
+  private static class EchoTransport implements RequestSink {
+    private static final String STOP = "";
+    private static final long VM_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @NotNull private final String myBigResult;
+    private final BlockingQueue<String> myRequestIds = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> mySocketMessages = new LinkedBlockingQueue<>();
+    private final long[] myEventArrivalNanos = new long[REQUEST_COUNT * EVENTS_PER_REQUEST];
+
+    private EchoTransport(@NotNull final String bigResult) {
+      myBigResult = bigResult;
+    }
+
+    private void start(@NotNull final VmService vmService) {
+      startThread("VM", () -> {
+        int eventCount = 0;
+        String id;
+        while ((id = myRequestIds.take()) != STOP) {
+          mySocketMessages.add("{\"jsonrpc\":\"2.0\",\"result\":" + myBigResult + ",\"id\":\"" + id + "\"}");
+          for (int i = 0; i < EVENTS_PER_REQUEST; i++) {
+            myEventArrivalNanos[eventCount++] = System.nanoTime();
+            mySocketMessages.add(createEvent());
+          }
+          LockSupport.parkNanos(VM_PAUSE_NANOS);
+        }
+        mySocketMessages.add(STOP);
+      });
+
+      startThread("socket", () -> {
+        String message;
+        while ((message = mySocketMessages.take()) != STOP) {
+          vmService.messageReceived(message);
+        }
+      });
+    }
+
+    private static void startThread(@NotNull final String name, @NotNull final ThrowableRunnable<InterruptedException> runnable) {
+      final Thread thread = new Thread(() -> {
+        try {
+          runnable.run();
+        }
+        catch (InterruptedException ignored) {
+        }
+      }, "Echo transport " + name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @NotNull
+    private static String createEvent() {
+      return "{\"jsonrpc\":\"2.0\",\"method\":\"streamNotify\",\"params\":{\"streamId\":\"Debug\",\"event\":" +
+             "{\"type\":\"Event\",\"kind\":\"BreakpointResolved\",\"isolate\":{\"type\":\"@Isolate\",\"id\":\"isolates/1\"," +
+             "\"name\":\"main\",\"number\":\"1\"},\"timestamp\":" + System.currentTimeMillis() + "}}}";
+    }
+
+    @Override
+    public void add(JsonObject request) {
+      myRequestIds.add(request.get("id").getAsString());
+    }
+
+    @Override
+    public void close() {
+      myRequestIds.add(STOP);
+    }
+  }
+
+  public void testDecodingThroughputAndEventLatency() throws Exception {
+    final String bigResult = createListInstance();
+    final EchoTransport transport = new EchoTransport(bigResult);
+    final VmService vmService = VmService.create(transport);
+
+    final long[] eventReceivedNanos = new long[REQUEST_COUNT * EVENTS_PER_REQUEST];
+    final CountDownLatch eventsLatch = new CountDownLatch(eventReceivedNanos.length);
+    vmService.addVmServiceListener(new VmServiceListener() {
+      private int myCount;
+
+      @Override
+      public void connectionOpened() {
+      }
+
+      @Override
+      public void received(String streamId, Event event) {
+        eventReceivedNanos[myCount++] = System.nanoTime();
+        eventsLatch.countDown();
+      }
+
+      @Override
+      public void connectionClosed() {
+      }
+    });
+
+    final CountDownLatch responsesLatch = new CountDownLatch(REQUEST_COUNT);
+    final GetObjectConsumer consumer = new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+        responsesLatch.countDown();
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        fail("Unexpected sentinel");
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        fail(error.getMessage());
+      }
+    };
+
+    final long start = System.nanoTime();
+    transport.start(vmService);
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      vmService.getObject("isolates/1", "objects/" + i, consumer);
+    }
+
+    assertTrue("Responses timed out", responsesLatch.await(5, TimeUnit.MINUTES));
+    final long responsesNanos = System.nanoTime() - start;
+    assertTrue("Events timed out", eventsLatch.await(1, TimeUnit.MINUTES));
+    vmService.disconnect();
+
+    long totalLatency = 0;
+    long maxLatency = 0;
+    for (int i = 0; i < eventReceivedNanos.length; i++) {
+      final long latency = eventReceivedNanos[i] - transport.myEventArrivalNanos[i];
+      totalLatency += latency;
+      maxLatency = Math.max(maxLatency, latency);
+    }
+
+    final double seconds = responsesNanos / (double)TimeUnit.SECONDS.toNanos(1);
+    TeamCityLogger.info("VM service decoding: " + (long)(REQUEST_COUNT / seconds) + " responses/sec, " +
+                        (long)(REQUEST_COUNT * (long)bigResult.length() / seconds / 1024 / 1024) + " MB/sec; " +
+                        "event latency avg=" + TimeUnit.NANOSECONDS.toMicros(totalLatency / eventReceivedNanos.length) + " us, " +
+                        "max=" + TimeUnit.NANOSECONDS.toMicros(maxLatency) + " us");
+  }
+
+  @NotNull
+  private static String createListInstance() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\"type\":\"Instance\",\"kind\":\"List\",\"id\":\"objects/list\",\"length\":").append(LIST_LENGTH)
+      .append(",\"class\":{\"type\":\"@Class\",\"id\":\"classes/1\",\"name\":\"_GrowableList\"},\"elements\":[");
+    for (int i = 0; i < LIST_LENGTH; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"type\":\"@Instance\",\"kind\":\"String\",\"id\":\"objects/").append(i)
+        .append("\",\"class\":{\"type\":\"@Class\",\"id\":\"classes/2\",\"name\":\"_OneByteString\"},\"valueAsString\":\"element ")
+        .append(i).append("\"}");
+    }
+    return builder.append("]}").toString();
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import org.dartlang.vm.service.VmService;
+import org.dartlang.vm.service.VmServiceListener;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Event;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.dartlang.vm.service.internal.RequestSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Messages from the VM are decoded in background, possibly concurrently, but responses and events must reach consumers and listeners one
+ * by one and in the order the VM sent them: e.g. {@code BreakpointResolved} is handled only after the {@code addBreakpoint} response that
+ * registers the breakpoint id.
+ */
+public class VmServiceMessageOrderTest extends TestCase {
+  private static final int REQUEST_COUNT = 50;
+  private static final int LIST_LENGTH = 2000;
+
+  public void testResponsesAndEventsForwardedInArrivalOrder() throws Exception {
+    final List<String> requestIds = Collections.synchronizedList(new ArrayList<>());
+    final VmService vmService = VmService.create(new RequestSink() {
+      @Override
+      public void add(JsonObject request) {
+        requestIds.add(request.get("id").getAsString());
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+
+    final List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger forwardingThreads = new AtomicInteger();
+    final AtomicInteger maxForwardingThreads = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(REQUEST_COUNT * 2);
+
+    vmService.addVmServiceListener(new VmServiceListener() {
+      @Override
+      public void connectionOpened() {
+      }
+
+      @Override
+      public void received(String streamId, Event event) {
+        forward("event " + event.getTimestamp());
+      }
+
+      @Override
+      public void connectionClosed() {
+      }
+
+      private void forward(@NotNull final String message) {
+        maxForwardingThreads.accumulateAndGet(forwardingThreads.incrementAndGet(), Math::max);
+        forwarded.add(message);
+        forwardingThreads.decrementAndGet();
+        latch.countDown();
+      }
+    });
+
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      final int index = i;
+      vmService.getObject("isolates/1", "objects/" + i, new GetObjectConsumer() {
+        @Override
+        public void received(Obj response) {
+          maxForwardingThreads.accumulateAndGet(forwardingThreads.incrementAndGet(), Math::max);
+          forwarded.add("response " + index);
+          forwardingThreads.decrementAndGet();
+          latch.countDown();
+        }
+
+        @Override
+        public void received(Sentinel response) {
+          fail("Unexpected sentinel");
+        }
+
+        @Override
+        public void onError(RPCError error) {
+          fail(error.getMessage());
+        }
+      });
+    }
+
+    // a big response takes much longer to decode than the small event that follows it
+    final String bigResult = createListInstance();
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      vmService.messageReceived("{\"jsonrpc\":\"2.0\",\"result\":" + bigResult + ",\"id\":\"" + requestIds.get(i) + "\"}");
+      vmService.messageReceived(createEvent(i));
+      expected.add("response " + i);
+      expected.add("event " + i);
+    }
+
+    assertTrue("Messages timed out", latch.await(1, TimeUnit.MINUTES));
+    vmService.disconnect();
+
+    assertEquals(expected, forwarded);
+    assertEquals(1, maxForwardingThreads.get());
+  }
+
+  @NotNull
+  private static String createEvent(final int timestamp) {
+    return "{\"jsonrpc\":\"2.0\",\"method\":\"streamNotify\",\"params\":{\"streamId\":\"Debug\",\"event\":" +
+           "{\"type\":\"Event\",\"kind\":\"BreakpointResolved\",\"isolate\":{\"type\":\"@Isolate\",\"id\":\"isolates/1\"," +
+           "\"name\":\"main\",\"number\":\"1\"},\"timestamp\":" + timestamp + "}}}";
+  }
+
+  @NotNull
+  private static String createListInstance() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\"type\":\"Instance\",\"kind\":\"List\",\"id\":\"objects/list\",\"length\":").append(LIST_LENGTH)
+      .append(",\"class\":{\"type\":\"@Class\",\"id\":\"classes/1\",\"name\":\"_GrowableList\"},\"elements\":[");
+    for (int i = 0; i < LIST_LENGTH; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"type\":\"@Instance\",\"kind\":\"String\",\"id\":\"objects/").append(i)
+        .append("\",\"class\":{\"type\":\"@Class\",\"id\":\"classes/2\",\"name\":\"_OneByteString\"},\"valueAsString\":\"element ")
+        .append(i).append("\"}");
+    }
+    return builder.append("]}").toString();
+  }
+}
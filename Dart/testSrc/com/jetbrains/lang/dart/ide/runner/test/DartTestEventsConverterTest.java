@@ -338,6 +338,33 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testEventsPassedInBatches() throws Exception {
+    final Key key = new Key("stdout");
+    myEventsConverter.process("{'protocolVersion':'0.1.0','runnerVersion':'0.12.10','type':'start','time':0}\n", key);
+    myEventsConverter.process("{'test':{'id':1,'name':'slow test','groupIDs':[],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':0}\n", key);
+    myEventsConverter.process("{'testID':1,'message':'still running','type':'print','time':10}\n", key);
+    // the test runs in EDT, so the batch is not passed to the test tree until the events are dispatched
+    assertEmpty(myEventsProcessor.signals);
+
+    waitForSignals(2);
+    assertOrderedEquals(myEventsProcessor.signals, "start slow test", "print slow test still running\n");
+
+    myEventsConverter.process("{'testID':1,'result':'success','hidden':false,'type':'testDone','time':20}\n", key);
+    assertOrderedEquals(myEventsProcessor.signals, "start slow test", "print slow test still running\n");
+
+    // regular output must follow the converted events, so the batch is passed immediately
+    myEventsConverter.process("some output\n", key);
+    assertOrderedEquals(myEventsProcessor.signals, "start slow test", "print slow test still running\n", "finish slow test");
+  }
+
+  private void waitForSignals(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (myEventsProcessor.signals.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(DartTestEventsConverter.FLUSH_INTERVAL_MS);
+      PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+    }
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
@@ -349,6 +376,7 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
         // ignored
       }
     }
+    parser.flushBufferOnProcessTermination(0);
 
     assertOrderedEquals(myEventsProcessor.signals, signals);
 
@@ -387,6 +415,7 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
   @Override
   protected void tearDown() throws Exception {
     try {
+      myEventsConverter.dispose();
       Disposer.dispose(myEventsProcessor);
       Disposer.dispose(myConsole);
     }
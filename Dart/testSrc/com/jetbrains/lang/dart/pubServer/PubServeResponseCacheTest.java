@@ -0,0 +1,171 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.pubServer;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+
+public class PubServeResponseCacheTest extends DartCodeInsightFixtureTestCase {
+  private PubServeResponseCache myCache;
+  private VirtualFile myWebDir;
+  private VirtualFile myLibFile;
+  private VirtualFile myOtherProjectFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new PubServeResponseCache();
+    myFixture.addFileToProject("app/pubspec.yaml", "name: app");
+    myWebDir = myFixture.addFileToProject("app/web/index.html", "").getVirtualFile().getParent();
+    myLibFile = myFixture.addFileToProject("app/lib/app.dart", "").getVirtualFile();
+    myOtherProjectFile = myFixture.addFileToProject("other/lib/other.dart", "").getVirtualFile();
+  }
+
+  @NotNull
+  private static FullHttpResponse response(@NotNull final HttpResponseStatus status,
+                                           @NotNull final String body,
+                                           @Nullable final String eTag) {
+    final FullHttpResponse response =
+      new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/javascript");
+    response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+    if (eTag != null) {
+      response.headers().set(HttpHeaderNames.ETAG, eTag);
+    }
+    return response;
+  }
+
+  @NotNull
+  private PubServeResponseCache.Entry put(@NotNull final String uri, @NotNull final String body, @Nullable final String eTag) {
+    final FullHttpResponse response = response(HttpResponseStatus.OK, body, eTag);
+    try {
+      final PubServeResponseCache.Entry entry = myCache.put(myWebDir, uri, response, myCache.getGeneration(myWebDir));
+      assertNotNull(entry);
+      return entry;
+    }
+    finally {
+      response.release();
+    }
+  }
+
+  public void testFreshUntilProjectFileChanges() {
+    final PubServeResponseCache.Entry entry = put("/main.dart.js", "main()", "\"1\"");
+    assertSame(entry, myCache.get(myWebDir, "/main.dart.js"));
+    assertEquals("main()", new String(entry.body, StandardCharsets.UTF_8));
+    assertEquals("application/javascript", entry.headers.get(HttpHeaderNames.CONTENT_TYPE));
+    assertFalse(entry.headers.contains(HttpHeaderNames.CONNECTION));
+    assertTrue(myCache.isFresh(myWebDir, entry));
+
+    myCache.invalidate(myOtherProjectFile);
+    assertTrue(myCache.isFresh(myWebDir, entry));
+
+    myCache.invalidate(myLibFile);
+    assertFalse(myCache.isFresh(myWebDir, entry));
+    assertSame(entry, myCache.get(myWebDir, "/main.dart.js"));
+  }
+
+  public void testStaleWhenPathDependencyChanges() {
+    final VirtualFile dotPackages = myFixture.addFileToProject("app/.packages", "app:lib/\nother:../other/lib/\n").getVirtualFile();
+    PubServeResponseCache.Entry entry = put("/main.dart.js", "main()", "\"1\"");
+    myCache.invalidate(myOtherProjectFile);
+    assertFalse(myCache.isFresh(myWebDir, entry));
+
+    myFixture.saveText(dotPackages, "app:lib/\n");
+    myCache.invalidate(dotPackages);
+    entry = put("/main.dart.js", "main()", "\"1\"");
+    myCache.invalidate(myOtherProjectFile);
+    assertTrue("package is not used any more", myCache.isFresh(myWebDir, entry));
+  }
+
+  public void testResponseToRequestSentBeforeChangeIsStale() {
+    final int generation = myCache.getGeneration(myWebDir);
+    myCache.invalidate(myLibFile);
+
+    final FullHttpResponse response = response(HttpResponseStatus.OK, "main()", null);
+    final PubServeResponseCache.Entry entry = myCache.put(myWebDir, "/main.dart.js", response, generation);
+    response.release();
+
+    assertNotNull(entry);
+    assertFalse(myCache.isFresh(myWebDir, entry));
+  }
+
+  public void testRevalidation() {
+    final PubServeResponseCache.Entry entry = put("/main.dart.js", "main()", "\"1\"");
+    myCache.recordHit(entry);
+    myCache.invalidate(myLibFile);
+
+    assertSame(entry, myCache.revalidated(entry, myCache.getGeneration(myWebDir)));
+    assertTrue(myCache.isFresh(myWebDir, entry));
+
+    final PubServeResponseCache.Statistics statistics = myCache.getStatistics();
+    assertEquals(1, statistics.getHitCount());
+    assertEquals(1, statistics.getRevalidatedCount());
+    assertEquals(1, statistics.getMissCount());
+    assertEquals(2 * "main()".length(), statistics.getSavedBytes());
+  }
+
+  public void testNotCacheableResponses() {
+    final FullHttpResponse notFound = response(HttpResponseStatus.NOT_FOUND, "", null);
+    assertNull(myCache.put(myWebDir, "/missing.js", notFound, myCache.getGeneration(myWebDir)));
+    notFound.release();
+
+    final FullHttpResponse noStore = response(HttpResponseStatus.OK, "main()", null);
+    noStore.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_STORE);
+    assertNull(myCache.put(myWebDir, "/main.dart.js", noStore, myCache.getGeneration(myWebDir)));
+    noStore.release();
+
+    final FullHttpResponse varyByCookie = response(HttpResponseStatus.OK, "main()", null);
+    varyByCookie.headers().set(HttpHeaderNames.VARY, "Accept-Encoding, Cookie");
+    assertNull(myCache.put(myWebDir, "/main.dart.js", varyByCookie, myCache.getGeneration(myWebDir)));
+    varyByCookie.release();
+
+    assertNull(myCache.get(myWebDir, "/missing.js"));
+    assertNull(myCache.get(myWebDir, "/main.dart.js"));
+  }
+
+  public void testKeyedByAcceptEncoding() {
+    final HttpHeaders gzipRequestHeaders = new DefaultHttpHeaders();
+    gzipRequestHeaders.set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP);
+    final String gzipKey = PubServeResponseCache.getKey("/main.dart.js", gzipRequestHeaders);
+    final String identityKey = PubServeResponseCache.getKey("/main.dart.js", new DefaultHttpHeaders());
+    assertFalse(gzipKey.equals(identityKey));
+
+    final FullHttpResponse gzipResponse = response(HttpResponseStatus.OK, "gzipped main()", null);
+    gzipResponse.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+    gzipResponse.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+    final PubServeResponseCache.Entry entry = myCache.put(myWebDir, gzipKey, gzipResponse, myCache.getGeneration(myWebDir));
+    gzipResponse.release();
+
+    assertNotNull("response that varies by Accept-Encoding only is cached", entry);
+    assertSame(entry, myCache.get(myWebDir, gzipKey));
+    assertNull(myCache.get(myWebDir, identityKey));
+  }
+
+  public void testBrowserValidators() {
+    final PubServeResponseCache.Entry entry = put("/main.dart.js", "main()", "W/\"1\"");
+
+    final HttpHeaders requestHeaders = new DefaultHttpHeaders();
+    assertFalse(entry.isNotModifiedFor(requestHeaders));
+
+    requestHeaders.set(HttpHeaderNames.IF_NONE_MATCH, "\"0\", \"1\"");
+    assertTrue(entry.isNotModifiedFor(requestHeaders));
+
+    requestHeaders.set(HttpHeaderNames.IF_NONE_MATCH, "\"2\"");
+    assertFalse(entry.isNotModifiedFor(requestHeaders));
+
+    final FullHttpResponse response = response(HttpResponseStatus.OK, "main()", null);
+    response.headers().set(HttpHeaderNames.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT");
+    final PubServeResponseCache.Entry lastModifiedEntry = myCache.put(myWebDir, "/index.html", response, myCache.getGeneration(myWebDir));
+    response.release();
+    assertNotNull(lastModifiedEntry);
+
+    final HttpHeaders conditionalHeaders = new DefaultHttpHeaders();
+    conditionalHeaders.set(HttpHeaderNames.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT");
+    assertTrue(lastModifiedEntry.isNotModifiedFor(conditionalHeaders));
+  }
+}
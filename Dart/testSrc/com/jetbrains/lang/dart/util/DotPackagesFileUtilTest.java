@@ -0,0 +1,85 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+public class DotPackagesFileUtilTest extends DartCodeInsightFixtureTestCase {
+
+  @NotNull
+  private static Map<String, String> getPackagesMap(@NotNull final VirtualFile dotPackagesFile) {
+    final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
+    assertNotNull(dotPackagesFile.getPath(), packagesMap);
+    return packagesMap;
+  }
+
+  public void testReloadAfterEdit() {
+    final VirtualFile dotPackages = myFixture.addFileToProject("app/.packages", "").getVirtualFile();
+    final String baseDirPath = dotPackages.getParent().getPath();
+    myFixture.saveText(dotPackages, "# comment\n" +
+                                    "foo:file:///pub/cache/foo-1.0.0/lib/\n" +
+                                    "bar: file:///pub/cache/bar-2.0.0/lib/\n" +
+                                    "app:lib/\n");
+
+    final Map<String, String> packagesMap = getPackagesMap(dotPackages);
+    assertEquals(3, packagesMap.size());
+    assertEquals("/pub/cache/foo-1.0.0/lib", packagesMap.get("foo"));
+    assertEquals("/pub/cache/bar-2.0.0/lib", packagesMap.get("bar"));
+    assertEquals(baseDirPath + "/lib", packagesMap.get("app"));
+    assertSame(packagesMap, getPackagesMap(dotPackages));
+
+    myFixture.saveText(dotPackages, "foo:file:///pub/cache/foo-1.1.0/lib/\n" +
+                                    "bar: file:///pub/cache/bar-2.0.0/lib/\n" +
+                                    "app:src/\n");
+
+    final Map<String, String> newPackagesMap = getPackagesMap(dotPackages);
+    assertNotSame(packagesMap, newPackagesMap);
+    assertEquals(3, newPackagesMap.size());
+    assertEquals("/pub/cache/foo-1.1.0/lib", newPackagesMap.get("foo"));
+    assertSame("unchanged line is not decoded again", packagesMap.get("bar"), newPackagesMap.get("bar"));
+    assertEquals(baseDirPath + "/src", newPackagesMap.get("app"));
+  }
+
+  public void testEntriesSharedBetweenDirectories() {
+    final String text = "foo:file:///pub/cache/foo-1.0.0/lib/\n" +
+                        "bar: file:///pub/cache/bar-2.0.0/lib/\n" +
+                        "app:lib/\n";
+    final VirtualFile dotPackages1 = myFixture.addFileToProject("app1/.packages", text).getVirtualFile();
+    final VirtualFile dotPackages2 = myFixture.addFileToProject("app2/.packages", text).getVirtualFile();
+
+    final Map<String, String> packagesMap1 = getPackagesMap(dotPackages1);
+    final Map<String, String> packagesMap2 = getPackagesMap(dotPackages2);
+
+    assertSame(packagesMap1.get("foo"), packagesMap2.get("foo"));
+    assertSame(packagesMap1.get("bar"), packagesMap2.get("bar"));
+    assertEquals("/pub/cache/bar-2.0.0/lib", packagesMap2.get("bar"));
+
+    // relative URIs are resolved against the folder of each .packages file
+    assertEquals(dotPackages1.getParent().getPath() + "/lib", packagesMap1.get("app"));
+    assertEquals(dotPackages2.getParent().getPath() + "/lib", packagesMap2.get("app"));
+  }
+
+  public void testCacheStatistics() {
+    final VirtualFile dotPackages = myFixture.addFileToProject("stats/.packages", "stats_foo:file:///pub/cache/stats_foo-1.0.0/lib/\n" +
+                                                                                  "stats_bar:file:///pub/cache/stats_bar-1.0.0/lib/\n")
+      .getVirtualFile();
+
+    // the cache is shared by all tests, so only the changes are checked
+    final DotPackagesFileUtil.CacheStatistics before = DotPackagesFileUtil.getCacheStatistics();
+    getPackagesMap(dotPackages);
+    final DotPackagesFileUtil.CacheStatistics loaded = DotPackagesFileUtil.getCacheStatistics();
+    assertEquals(before.getMissCount() + 1, loaded.getMissCount());
+    assertEquals(before.getHitCount(), loaded.getHitCount());
+    // shared entries are softly reachable, entries of other tests might be collected meanwhile
+    assertTrue(loaded.getEntryCount() >= 2);
+    assertTrue(loaded.getApproximateMemory() > 2 * "file:///pub/cache/stats_foo-1.0.0/lib/".length());
+
+    getPackagesMap(dotPackages);
+    final DotPackagesFileUtil.CacheStatistics reused = DotPackagesFileUtil.getCacheStatistics();
+    assertEquals(loaded.getMissCount(), reused.getMissCount());
+    assertEquals(loaded.getHitCount() + 1, reused.getHitCount());
+  }
+}
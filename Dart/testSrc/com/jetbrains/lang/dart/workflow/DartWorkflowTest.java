@@ -150,4 +150,23 @@ public class DartWorkflowTest extends DartCodeInsightFixtureTestCase {
     assertEquals(rootPath + "/pub/global/cache/SomePackage/lib/somepack.dart", file.getPath());
     assertEquals("package:SomePackage/somepack.dart", resolver.getDartUrlForFile(file));
   }
+
+  public void testDartUrlResolverSeesDotPackagesChange() {
+    final VirtualFile pubspec = myFixture.addFileToProject("pubspec.yaml", "name: RootProject").getVirtualFile();
+    final VirtualFile file1 = myFixture.addFileToProject("packages1/foo/lib/src/foo.dart", "").getVirtualFile();
+    final VirtualFile file2 = myFixture.addFileToProject("packages2/foo/lib/src/foo.dart", "").getVirtualFile();
+    final VirtualFile dotPackages = myFixture.addFileToProject(".packages", "foo:packages1/foo/lib/\n").getVirtualFile();
+
+    DartUrlResolver resolver = DartUrlResolver.getInstance(getProject(), pubspec);
+    assertEquals("package:foo/src/foo.dart", resolver.getDartUrlForFile(file1));
+    assertEquals(file1, resolver.findFileByDartUrl("package:foo/src/foo.dart"));
+    assertFalse(resolver.getDartUrlForFile(file2).startsWith("package:"));
+
+    myFixture.saveText(dotPackages, "foo:packages2/foo/lib/\n");
+
+    resolver = DartUrlResolver.getInstance(getProject(), pubspec);
+    assertFalse(resolver.getDartUrlForFile(file1).startsWith("package:"));
+    assertEquals("package:foo/src/foo.dart", resolver.getDartUrlForFile(file2));
+    assertEquals(file2, resolver.findFileByDartUrl("package:foo/src/foo.dart"));
+  }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server;
+
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+
+/**
+ * Optional interface for an {@link AnalysisServerListener} that wants to receive highlight regions
+ * decoded straight into primitive arrays instead of a list of {@link HighlightRegion} objects.
+ * <p>
+ * If a listener implements this interface then highlights decoded by the streaming decoder are
+ * passed only to {@link #computedHighlights(String, int[], int[], String[])}, and not to
+ * {@link AnalysisServerListener#computedHighlights(String, java.util.List)}.
+ * 
+ * @coverage dart.server
+ */
+public interface HighlightRegionArraysListener {
+  /**
+   * Reports the highlight regions associated with the given file. All arrays have the same length,
+   * the i-th region is described by {@code offsets[i]}, {@code lengths[i]} and {@code types[i]}.
+   * The arrays are not shared, so listeners may keep them.
+   *
+   * @param file the file containing the highlight regions
+   * @param offsets the offsets of the regions
+   * @param lengths the lengths of the regions
+   * @param types the interned {@link org.dartlang.analysis.server.protocol.HighlightRegionType}s
+   */
+  public void computedHighlights(String file, int[] offsets, int[] lengths, String[] types);
+}
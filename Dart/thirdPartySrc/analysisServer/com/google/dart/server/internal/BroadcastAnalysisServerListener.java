@@ -16,8 +16,10 @@ package com.google.dart.server.internal;
 
 import com.google.common.collect.Lists;
 import com.google.dart.server.AnalysisServerListener;
+import com.google.dart.server.HighlightRegionArraysListener;
 import org.dartlang.analysis.server.protocol.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -78,6 +80,29 @@ public class BroadcastAnalysisServerListener implements AnalysisServerListener {
     }
   }
 
+  /**
+   * Reports highlights decoded into primitive arrays. Listeners that do not implement
+   * {@link HighlightRegionArraysListener} receive a list of {@link HighlightRegion}s that is
+   * created only once for all of them.
+   */
+  public void computedHighlights(String file, int[] offsets, int[] lengths, String[] types) {
+    List<HighlightRegion> regions = null;
+    for (AnalysisServerListener listener : getListeners()) {
+      if (listener instanceof HighlightRegionArraysListener) {
+        ((HighlightRegionArraysListener)listener).computedHighlights(file, offsets, lengths, types);
+      }
+      else {
+        if (regions == null) {
+          regions = new ArrayList<HighlightRegion>(offsets.length);
+          for (int i = 0; i < offsets.length; i++) {
+            regions.add(new HighlightRegion(types[i], offsets[i], lengths[i]));
+          }
+        }
+        listener.computedHighlights(file, regions);
+      }
+    }
+  }
+
   @Override
   public void computedImplemented(String file, List<ImplementedClass> implementedClasses,
       List<ImplementedMember> implementedMembers) {
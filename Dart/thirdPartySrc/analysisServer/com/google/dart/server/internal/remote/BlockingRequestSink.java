@@ -56,6 +56,15 @@ public class BlockingRequestSink implements RequestSink {
     base.close();
   }
 
+  /**
+   * Returns the number of requests waiting for the sink to be converted.
+   */
+  public int getQueueSize() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
   /**
    * Responds with an error to all the currently queued requests and return a {@link RequestSink} to
    * do the same for all the future requests.
@@ -14,6 +14,7 @@
 package com.google.dart.server.internal.remote;
 
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.gson.JsonObject;
 
 import java.io.OutputStream;
@@ -43,6 +44,10 @@ public class ByteRequestSink implements RequestSink {
    * The queue of lines.
    */
   private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  /**
+   * The {@link ProtocolMetrics} to record sizes of requests to, may be {@code null}.
+   */
+  private volatile ProtocolMetrics metrics;
 
   /**
    * Initializes a newly created request sink.
@@ -64,9 +69,24 @@ public class ByteRequestSink implements RequestSink {
         debugStream.println(System.currentTimeMillis() + " => " + text);
       }
     }
+    ProtocolMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.requestWritten(RequestUtilities.getRequestMethod(request), text.length());
+    }
     lineQueue.add(text);
   }
 
+  public void setMetrics(ProtocolMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Returns the number of requests that are not written to the stream yet.
+   */
+  public int getQueueSize() {
+    return lineQueue.size();
+  }
+
   @Override
   public void close() {
     writer.close();
@@ -46,7 +46,7 @@ public class ByteResponseStream implements ResponseStream {
         }
         // check for EOF
         if (line == null) {
-          lineQueue.add(EOF_LINE);
+          putLine(EOF_LINE);
 
           if (onStreamEndRunnable != null) {
             onStreamEndRunnable.run();
@@ -62,14 +62,29 @@ public class ByteResponseStream implements ResponseStream {
         if (!line.startsWith("{")) {
           continue;
         }
-        // add a JSON line
-        lineQueue.add(line);
+        // add a JSON line, wait if the reader of this stream can't keep up with the server
+        putLine(line);
+      }
+    }
+
+    private void putLine(String line) {
+      try {
+        lineQueue.put(line);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
     }
   }
 
   public static final String EOF_LINE = "EOF line";
 
+  /**
+   * The maximum number of lines read from the server but not yet taken from this stream. When the
+   * queue is full the server output is not read, so a burst of messages from the server results in
+   * backpressure instead of an unbounded growth of the queue.
+   */
+  private static final int MAX_QUEUED_LINES = 64;
+
   /**
    * The {@link BufferedReader} to read JSON strings from.
    */
@@ -84,7 +99,7 @@ public class ByteResponseStream implements ResponseStream {
   /**
    * The queue of lines.
    */
-  private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>(MAX_QUEUED_LINES);
 
   /**
    * Initializes a newly created response stream.
@@ -105,11 +120,31 @@ public class ByteResponseStream implements ResponseStream {
 
   @Override
   public JsonObject take() throws Exception {
+    String line = takeLine();
+    return line == null ? null : parse(line);
+  }
+
+  /**
+   * Takes the next JSON line from the stream, or returns {@code null} at the end of the stream.
+   * Blocks if no line is available.
+   */
+  public String takeLine() throws InterruptedException {
     String line = lineQueue.take();
     if (line == EOF_LINE) {
-      lineQueue.add(line);
+      lineQueue.offer(line);
       return null;
     }
+    return line;
+  }
+
+  /**
+   * Returns the number of lines read from the server but not yet taken from this stream.
+   */
+  public int getQueueSize() {
+    return lineQueue.size();
+  }
+
+  public static JsonObject parse(String line) {
     try {
       return (JsonObject) new JsonParser().parse(line);
     } catch (JsonSyntaxException e) {
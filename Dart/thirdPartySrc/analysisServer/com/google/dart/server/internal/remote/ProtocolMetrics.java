@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol-level statistics of an analysis server connection. For each request method it records
+ * the request-to-response latency histogram, and for each request method and notification type it
+ * records payload bytes, JSON decoding time and the time spent in consumers and listeners.
+ * <p>
+ * All methods are thread-safe and cheap enough to be always enabled.
+ *
+ * @coverage dart.server.remote
+ */
+public class ProtocolMetrics {
+  /**
+   * Latency buckets: bucket {@code i} counts latencies in {@code [2^(i-1), 2^i)} milliseconds,
+   * bucket 0 counts latencies below 1 ms, the last bucket counts everything above.
+   */
+  private static final int BUCKET_COUNT = 16;
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Statistics of a single request method or notification type.
+   */
+  public static class Stats {
+    private final String name;
+    private final boolean notification;
+    private long count;
+    private long bytesIn;
+    private long bytesOut;
+    private long decodeNanos;
+    private long processNanos;
+    private long latencyCount;
+    private long latencyNanos;
+    private long maxLatencyNanos;
+    private final long[] latencyBuckets = new long[BUCKET_COUNT];
+
+    private Stats(String name, boolean notification) {
+      this.name = name;
+      this.notification = notification;
+    }
+
+    private synchronized void addSent(int bytes) {
+      bytesOut += bytes;
+    }
+
+    private synchronized void addReceived(int bytes, long decode, long process) {
+      count++;
+      bytesIn += bytes;
+      decodeNanos += decode;
+      processNanos += process;
+    }
+
+    private synchronized void addLatency(long nanos) {
+      latencyCount++;
+      latencyNanos += nanos;
+      maxLatencyNanos = Math.max(maxLatencyNanos, nanos);
+      latencyBuckets[getBucket(nanos / NANOS_PER_MILLI)]++;
+    }
+
+    private synchronized long getTotalNanos() {
+      return decodeNanos + processNanos + (notification ? 0 : latencyNanos);
+    }
+
+    /**
+     * Returns the upper bound of the bucket where the given fraction of latencies is reached.
+     */
+    private long getPercentileMillis(double fraction) {
+      long threshold = (long)Math.ceil(latencyCount * fraction);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += latencyBuckets[i];
+        if (seen >= threshold) {
+          return i == BUCKET_COUNT - 1 ? maxLatencyNanos / NANOS_PER_MILLI : 1L << i;
+        }
+      }
+      return maxLatencyNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized String toString() {
+      StringBuilder builder = new StringBuilder();
+      builder.append(notification ? "notification " : "request ").append(name);
+      builder.append(": count=").append(count);
+      if (latencyCount > 0) {
+        builder.append(", latency ms avg=").append(latencyNanos / latencyCount / NANOS_PER_MILLI);
+        builder.append(" p50<=").append(getPercentileMillis(0.5));
+        builder.append(" p90<=").append(getPercentileMillis(0.9));
+        builder.append(" p99<=").append(getPercentileMillis(0.99));
+        builder.append(" max=").append(maxLatencyNanos / NANOS_PER_MILLI);
+      }
+      if (bytesOut > 0) {
+        builder.append(", bytes out=").append(bytesOut);
+      }
+      builder.append(", bytes in=").append(bytesIn);
+      builder.append(", decode ms=").append(decodeNanos / NANOS_PER_MILLI);
+      builder.append(", processing ms=").append(processNanos / NANOS_PER_MILLI);
+      return builder.toString();
+    }
+  }
+
+  private static class PendingRequest {
+    private final String method;
+    private final long sentNanos;
+
+    private PendingRequest(String method, long sentNanos) {
+      this.method = method;
+      this.sentNanos = sentNanos;
+    }
+  }
+
+  private final Map<String, Stats> requestStats = new ConcurrentHashMap<String, Stats>();
+  private final Map<String, Stats> notificationStats = new ConcurrentHashMap<String, Stats>();
+  private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+
+  private static int getBucket(long millis) {
+    if (millis <= 0) {
+      return 0;
+    }
+    int bucket = 64 - Long.numberOfLeadingZeros(millis);
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  private static Stats getStats(Map<String, Stats> map, String name, boolean notification) {
+    Stats stats = map.get(name);
+    if (stats == null) {
+      Stats newStats = new Stats(name, notification);
+      stats = map.putIfAbsent(name, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Records that the request with the given id has been handed over to the request sink.
+   */
+  public void requestSent(String id, String method) {
+    if (id != null && method != null) {
+      pendingRequests.put(id, new PendingRequest(method, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Records the size of the serialized request.
+   */
+  public void requestWritten(String method, int bytes) {
+    if (method != null) {
+      getStats(requestStats, method, false).addSent(bytes);
+    }
+  }
+
+  /**
+   * Records a response to the request with the given id.
+   *
+   * @param receivedNanos the {@link System#nanoTime()} when the response was taken from the stream
+   */
+  public void responseReceived(String id, long receivedNanos, int bytes, long decodeNanos, long processNanos) {
+    PendingRequest request = id == null ? null : pendingRequests.remove(id);
+    if (request == null) {
+      return;
+    }
+    Stats stats = getStats(requestStats, request.method, false);
+    stats.addLatency(receivedNanos - request.sentNanos);
+    stats.addReceived(bytes, decodeNanos, processNanos);
+  }
+
+  public void notificationReceived(String event, int bytes, long decodeNanos, long processNanos) {
+    if (event != null) {
+      getStats(notificationStats, event, true).addReceived(bytes, decodeNanos, processNanos);
+    }
+  }
+
+  /**
+   * Forgets requests that will never get a response, for example because the server is restarted.
+   */
+  public void clearPendingRequests() {
+    pendingRequests.clear();
+  }
+
+  public int getPendingRequestCount() {
+    return pendingRequests.size();
+  }
+
+  /**
+   * Returns the statistics of request methods and notification types, the most expensive ones
+   * (in terms of total latency, decoding and processing time) go first.
+   *
+   * @param maxEntries the maximum number of entries to return, {@code -1} for all
+   */
+  public List<Stats> getStats(int maxEntries) {
+    List<Stats> result = new ArrayList<Stats>(requestStats.values());
+    result.addAll(notificationStats.values());
+    // take a snapshot, the stats may be updated while sorting
+    final Map<Stats, Long> totals = new IdentityHashMap<Stats, Long>();
+    for (Stats stats : result) {
+      totals.put(stats, stats.getTotalNanos());
+    }
+    Collections.sort(result, (o1, o2) -> Long.compare(totals.get(o2), totals.get(o1)));
+    if (maxEntries != -1 && result.size() > maxEntries) {
+      return new ArrayList<Stats>(result.subList(0, maxEntries));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.utilities.logging.Logging;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link DebugPrintStream} that writes all lines to a session file, in addition to printing them
+ * to another (optional) stream. The lines printed by {@link ByteRequestSink} and
+ * {@link ByteResponseStream} carry the complete traffic between the client and the server, so the
+ * recorded file can be replayed later with {@link ReplaySessionSocket}.
+ *
+ * @coverage dart.server.remote
+ */
+public class RecordingDebugPrintStream implements DebugPrintStream {
+  private final File file;
+  private final DebugPrintStream delegate;
+  private Writer writer;
+
+  /**
+   * @param file the file to write the session to, overwritten if exists
+   * @param delegate the stream to print all lines to, may be {@code null}
+   */
+  public RecordingDebugPrintStream(File file, DebugPrintStream delegate) throws IOException {
+    this.file = file;
+    this.delegate = delegate;
+    this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public void println(String s) {
+    synchronized (this) {
+      if (writer != null) {
+        try {
+          writer.write(s);
+          writer.write('\n');
+        } catch (IOException e) {
+          Logging.getLogger().logError("Unable to record analysis server session to " + file, e);
+          closeWriter();
+        }
+      }
+    }
+    if (delegate != null) {
+      delegate.println(s);
+    }
+  }
+
+  /**
+   * Flushes and closes the session file. Lines printed after this are only passed to the delegate.
+   */
+  public synchronized void close() {
+    closeWriter();
+  }
+
+  private void closeWriter() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      Logging.getLogger().logError("Unable to close analysis server session file " + file, e);
+    }
+    writer = null;
+  }
+}
@@ -34,6 +34,7 @@ import org.osgi.framework.Version;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -110,6 +111,11 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final Object consumerMapLock = new Object();
 
+  /**
+   * Protocol-level statistics of this connection.
+   */
+  private final ProtocolMetrics metrics = new ProtocolMetrics();
+
   /**
    * The unique ID for the next request.
    */
@@ -425,6 +431,39 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     sendRequestToServer(id, RequestUtilities.generateExecutionSetSubscriptions(id, subscriptions));
   }
 
+  /**
+   * Returns the protocol-level statistics of this connection.
+   */
+  public ProtocolMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the current numbers of requests waiting for responses, requests waiting to be written
+   * to the server and messages from the server waiting to be processed.
+   */
+  public Map<String, Integer> getQueueDepths() {
+    Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+    synchronized (consumerMapLock) {
+      result.put("awaiting response", consumerMap.size());
+    }
+    RequestSink sink;
+    synchronized (requestSinkLock) {
+      sink = requestSink;
+    }
+    if (sink instanceof BlockingRequestSink) {
+      result.put("blocked requests", ((BlockingRequestSink)sink).getQueueSize());
+    }
+    if (sink instanceof ByteRequestSink) {
+      result.put("unwritten requests", ((ByteRequestSink)sink).getQueueSize());
+    }
+    ResponseStream stream = responseStream;
+    if (stream instanceof ByteResponseStream) {
+      result.put("unprocessed messages", ((ByteResponseStream)stream).getQueueSize());
+    }
+    return result;
+  }
+
   @Override
   public boolean isSocketOpen() {
     return socket.isOpen();
@@ -764,6 +803,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  private boolean hasResponseListeners() {
+    synchronized (responseListenerList) {
+      return !responseListenerList.isEmpty();
+    }
+  }
+
   private void notifyResponseListeners(JsonObject response) {
     synchronized (responseListenerList) {
       List<ResponseListener> listeners = ImmutableList.copyOf(responseListenerList);
@@ -798,6 +843,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       consumerMap.put(id, consumer);
     }
     lastRequestTime.set(System.currentTimeMillis());
+    metrics.requestSent(id, RequestUtilities.getRequestMethod(request));
     synchronized (requestSinkLock) {
       requestSink.add(request);
     }
@@ -806,8 +852,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private void startServer() throws Exception {
     socket.start();
     consumerMap.clear();
+    metrics.clearPendingRequests();
     requestSink = socket.getRequestSink();
     responseStream = socket.getResponseStream();
+    if (requestSink instanceof ByteRequestSink) {
+      ((ByteRequestSink)requestSink).setMetrics(metrics);
+    }
     errorStream = socket.getErrorStream();
     new ServerResponseReaderThread(responseStream).start();
     if (errorStream != null) {
@@ -1020,6 +1070,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
     @Override
     public void run() {
+      if (stream instanceof ByteResponseStream) {
+        readLines((ByteResponseStream)stream);
+        return;
+      }
       while (true) {
         try {
           JsonObject response = stream.take();
@@ -1027,10 +1081,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
             return;
           }
           lastResponseTime.set(System.currentTimeMillis());
+          long startNanos = System.nanoTime();
           try {
             processResponse(response);
           }
           finally {
+            recordMetrics(response, startNanos, 0, 0, System.nanoTime() - startNanos);
             stream.lastRequestProcessed();
           }
         }
@@ -1050,5 +1106,69 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
         }
       }
     }
+
+    /**
+     * Same as the loop in {@link #run()}, but the bulkiest notifications are decoded by
+     * {@link StreamingNotificationDecoder} without building a {@link JsonObject} tree. This is not
+     * possible if there are {@link ResponseListener}s, because they expect the {@link JsonObject}.
+     */
+    private void readLines(ByteResponseStream lineStream) {
+      StreamingNotificationDecoder decoder = new StreamingNotificationDecoder(listener, metrics);
+      while (true) {
+        try {
+          String line = lineStream.takeLine();
+          if (line == null) {
+            return;
+          }
+          lastResponseTime.set(System.currentTimeMillis());
+          try {
+            if (!hasResponseListeners() && decodeStreaming(decoder, line)) {
+              continue;
+            }
+            long startNanos = System.nanoTime();
+            JsonObject response = ByteResponseStream.parse(line);
+            long decodedNanos = System.nanoTime();
+            try {
+              processResponse(response);
+            }
+            finally {
+              recordMetrics(response, startNanos, line.length(), decodedNanos - startNanos, System.nanoTime() - decodedNanos);
+            }
+          }
+          finally {
+            stream.lastRequestProcessed();
+          }
+        }
+        catch (Throwable e) {
+          // Ignore exceptions during shutdown
+          if (shutdownRequested) {
+            return;
+          }
+          Logging.getLogger().logError(e.getMessage(), e);
+        }
+      }
+    }
+
+    private void recordMetrics(JsonObject response, long receivedNanos, int bytes, long decodeNanos, long processNanos) {
+      JsonElement event = response.get("event");
+      if (event instanceof JsonPrimitive) {
+        metrics.notificationReceived(event.getAsString(), bytes, decodeNanos, processNanos);
+        return;
+      }
+      JsonElement id = response.get("id");
+      if (id instanceof JsonPrimitive) {
+        metrics.responseReceived(id.getAsString(), receivedNanos, bytes, decodeNanos, processNanos);
+      }
+    }
+
+    private boolean decodeStreaming(StreamingNotificationDecoder decoder, String line) {
+      try {
+        return decoder.decode(line);
+      }
+      catch (IOException e) {
+        // malformed message, let the regular processing report it
+        return false;
+      }
+    }
   }
 }
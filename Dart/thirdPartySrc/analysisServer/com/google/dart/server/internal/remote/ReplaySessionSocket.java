@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.AnalysisServerSocket;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AnalysisServerSocket} that does not start a server process, but replays the server
+ * output of a session recorded by {@link RecordingDebugPrintStream}. It is used to reproduce and
+ * measure the client-side processing of real sessions without the SDK.
+ * <p>
+ * Requests sent by the client are counted and discarded. Responses in the session have the ids of
+ * the recorded requests, so they are matched only if the client sends the same requests in the same
+ * order; the analysis server must be created without the version check.
+ *
+ * @coverage dart.server.remote
+ */
+public class ReplaySessionSocket implements AnalysisServerSocket {
+  /**
+   * The separator between the timestamp and the line received from the server, as printed by
+   * {@link ByteResponseStream}.
+   */
+  private static final String SERVER_LINE_SEPARATOR = " <= ";
+
+  private class ReplayInputStream extends InputStream {
+    private final long startMillis = System.currentTimeMillis();
+    private int line;
+    private int position;
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (position == (line == 0 ? 0 : lineEnds[line - 1])) {
+        if (line == lineEnds.length || !waitForLine()) {
+          replayFinished(lineReaderAllocatedBytes);
+          return -1;
+        }
+      }
+      int count = Math.min(len, lineEnds[line] - position);
+      System.arraycopy(data, position, b, off, count);
+      position += count;
+      if (position == lineEnds[line]) {
+        line++;
+      }
+      return count;
+    }
+
+    /**
+     * Waits until the next line should be sent if the session is replayed at the recorded speed.
+     *
+     * @return {@code false} if the socket has been stopped
+     */
+    private boolean waitForLine() {
+      if (stopSignal.getCount() == 0) {
+        return false;
+      }
+      if (!recordedSpeed) {
+        return true;
+      }
+      long delay = startMillis + (timestamps[line] - timestamps[0]) - System.currentTimeMillis();
+      try {
+        return delay <= 0 || !stopSignal.await(delay, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  private class ReplayResponseStream extends ByteResponseStream {
+    public ReplayResponseStream(InputStream stream, DebugPrintStream debugStream) {
+      super(stream, debugStream, null);
+    }
+
+    @Override
+    public String takeLine() throws InterruptedException {
+      String line = super.takeLine();
+      if (line == null) {
+        replayFinished(processorAllocatedBytes);
+        processedSignal.countDown();
+      }
+      return line;
+    }
+  }
+
+  private class DiscardingRequestSink implements RequestSink {
+    @Override
+    public void add(JsonObject request) {
+      requestCount.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * The concatenated server lines, each terminated with {@code '\n'}, in UTF-8.
+   */
+  private final byte[] data;
+
+  /**
+   * The end offset (exclusive) in {@link #data} of each line.
+   */
+  private final int[] lineEnds;
+
+  /**
+   * The time in milliseconds when each line was received in the recorded session.
+   */
+  private final long[] timestamps;
+
+  private final boolean recordedSpeed;
+  private final DebugPrintStream debugStream;
+
+  private final CountDownLatch stopSignal = new CountDownLatch(1);
+  private final CountDownLatch processedSignal = new CountDownLatch(1);
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicLong lineReaderAllocatedBytes = new AtomicLong(-1);
+  private final AtomicLong processorAllocatedBytes = new AtomicLong(-1);
+
+  private RequestSink requestSink;
+  private ResponseStream responseStream;
+
+  /**
+   * @param sessionLines the lines of a recorded session, only the lines received from the server
+   *          are replayed
+   * @param recordedSpeed {@code true} to send the lines with the recorded delays between them,
+   *          {@code false} to send them as fast as the client can process them
+   * @param debugStream the stream to print replayed lines to, may be {@code null}
+   */
+  public ReplaySessionSocket(Iterable<String> sessionLines, boolean recordedSpeed, DebugPrintStream debugStream) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    List<Integer> ends = new ArrayList<Integer>();
+    List<Long> times = new ArrayList<Long>();
+    for (String sessionLine : sessionLines) {
+      int separator = sessionLine.indexOf(SERVER_LINE_SEPARATOR);
+      if (separator <= 0) {
+        continue;
+      }
+      long time;
+      try {
+        time = Long.parseLong(sessionLine.substring(0, separator));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      byte[] line = sessionLine.substring(separator + SERVER_LINE_SEPARATOR.length()).getBytes(StandardCharsets.UTF_8);
+      bytes.write(line, 0, line.length);
+      bytes.write('\n');
+      ends.add(bytes.size());
+      times.add(time);
+    }
+    this.data = bytes.toByteArray();
+    this.lineEnds = new int[ends.size()];
+    this.timestamps = new long[times.size()];
+    for (int i = 0; i < lineEnds.length; i++) {
+      lineEnds[i] = ends.get(i);
+      timestamps[i] = times.get(i);
+    }
+    this.recordedSpeed = recordedSpeed;
+    this.debugStream = debugStream;
+  }
+
+  /**
+   * Reads a session recorded by {@link RecordingDebugPrintStream}.
+   */
+  public static ReplaySessionSocket fromFile(File file, boolean recordedSpeed, DebugPrintStream debugStream)
+      throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return new ReplaySessionSocket(lines, recordedSpeed, debugStream);
+  }
+
+  /**
+   * Waits until all the replayed lines have been taken from the response stream, i.e. processed by
+   * the client.
+   *
+   * @return {@code true} if the replay has finished, {@code false} if the timeout elapsed
+   */
+  public boolean awaitReplayProcessed(long timeout, TimeUnit unit) throws InterruptedException {
+    return processedSignal.await(timeout, unit);
+  }
+
+  /**
+   * Returns the number of bytes allocated by the client threads that read and processed the replayed
+   * lines, or {@code -1} if the replay has not finished yet. Returns {@code 0} if the JVM does not
+   * support allocation measurement.
+   */
+  public long getAllocatedBytes() {
+    long lineReader = lineReaderAllocatedBytes.get();
+    long processor = processorAllocatedBytes.get();
+    return lineReader < 0 || processor < 0 ? -1 : lineReader + processor;
+  }
+
+  /**
+   * Returns the number of lines received from the server in the recorded session.
+   */
+  public int getLineCount() {
+    return lineEnds.length;
+  }
+
+  /**
+   * Returns the number of bytes received from the server in the recorded session.
+   */
+  public int getByteCount() {
+    return data.length;
+  }
+
+  /**
+   * Returns the number of requests sent by the client to this socket.
+   */
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  @Override
+  public ByteLineReaderStream getErrorStream() {
+    return null;
+  }
+
+  @Override
+  public RequestSink getRequestSink() {
+    return requestSink;
+  }
+
+  @Override
+  public ResponseStream getResponseStream() {
+    return responseStream;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return responseStream != null && stopSignal.getCount() != 0;
+  }
+
+  @Override
+  public void start() throws Exception {
+    if (responseStream != null) {
+      throw new IllegalStateException("A session can be replayed only once");
+    }
+    requestSink = new DiscardingRequestSink();
+    responseStream = new ReplayResponseStream(new ReplayInputStream(), debugStream);
+  }
+
+  @Override
+  public void stop() {
+    stopSignal.countDown();
+  }
+
+  /**
+   * Records the number of bytes allocated by the current thread during its life, if it has not been
+   * recorded yet.
+   */
+  private static void replayFinished(AtomicLong allocatedBytes) {
+    if (allocatedBytes.get() != -1) {
+      return;
+    }
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    long bytes = 0;
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      bytes = ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    bytes = Math.max(bytes, 0);
+    allocatedBytes.compareAndSet(-1, bytes);
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.internal.BroadcastAnalysisServerListener;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes the bulkiest notifications, "analysis.highlights" and "analysis.navigation", with a
+ * {@link JsonReader} while reading the message, without building a {@link com.google.gson.JsonObject}
+ * tree. Highlight regions are decoded straight into primitive arrays.
+ * <p>
+ * Other messages are left to the tree-based processing in {@link RemoteAnalysisServerImpl}.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingNotificationDecoder {
+  private static final String ANALYSIS_NOTIFICATION_HIGHTLIGHTS = "analysis.highlights";
+  private static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
+
+  private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+  private final BroadcastAnalysisServerListener listener;
+  private final ProtocolMetrics metrics;
+
+  // reused between messages, decoding happens on the single response reader thread
+  private int[] offsetBuffer = new int[1024];
+  private int[] lengthBuffer = new int[1024];
+  private String[] typeBuffer = new String[1024];
+
+  // set by decode(), the time when decoding of the current message started
+  private long startNanos;
+  private int lineLength;
+
+  public StreamingNotificationDecoder(BroadcastAnalysisServerListener listener) {
+    this(listener, null);
+  }
+
+  /**
+   * @param metrics the {@link ProtocolMetrics} to record decoding and processing time to, may be
+   *          {@code null}
+   */
+  public StreamingNotificationDecoder(BroadcastAnalysisServerListener listener, ProtocolMetrics metrics) {
+    this.listener = listener;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Returns {@code true} if the given message is a supported notification and the listener has been
+   * notified, {@code false} if the message must be processed in the regular way. Supported
+   * notifications are recognized by the leading "event" member, which is always the first one in
+   * the messages sent by the server.
+   */
+  public boolean decode(String line) throws IOException {
+    startNanos = System.nanoTime();
+    lineLength = line.length();
+    JsonReader reader = new JsonReader(new StringReader(line));
+    try {
+      reader.beginObject();
+      if (!reader.hasNext() || !"event".equals(reader.nextName()) || reader.peek() != JsonToken.STRING) {
+        return false;
+      }
+      String event = reader.nextString();
+      if (ANALYSIS_NOTIFICATION_HIGHTLIGHTS.equals(event)) {
+        if (!moveToParams(reader)) {
+          return false;
+        }
+        decodeHighlights(reader, event);
+        return true;
+      }
+      if (ANALYSIS_NOTIFICATION_NAVIGATION.equals(event)) {
+        if (!moveToParams(reader)) {
+          return false;
+        }
+        decodeNavigation(reader, event);
+        return true;
+      }
+      return false;
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private static boolean moveToParams(JsonReader reader) throws IOException {
+    while (reader.hasNext()) {
+      if ("params".equals(reader.nextName())) {
+        reader.beginObject();
+        return true;
+      }
+      reader.skipValue();
+    }
+    return false;
+  }
+
+  private void decodeHighlights(JsonReader reader, String event) throws IOException {
+    String file = null;
+    int count = 0;
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("file".equals(name)) {
+        file = reader.nextString();
+      }
+      else if ("regions".equals(name)) {
+        count = readHighlightRegions(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    int[] offsets = Arrays.copyOf(offsetBuffer, count);
+    int[] lengths = Arrays.copyOf(lengthBuffer, count);
+    String[] types = Arrays.copyOf(typeBuffer, count);
+    long decodedNanos = System.nanoTime();
+    listener.computedHighlights(file, offsets, lengths, types);
+    recordMetrics(event, decodedNanos);
+  }
+
+  private void recordMetrics(String event, long decodedNanos) {
+    if (metrics != null) {
+      metrics.notificationReceived(event, lineLength, decodedNanos - startNanos, System.nanoTime() - decodedNanos);
+    }
+  }
+
+  private int readHighlightRegions(JsonReader reader) throws IOException {
+    int count = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (count == offsetBuffer.length) {
+        int newLength = count * 2;
+        offsetBuffer = Arrays.copyOf(offsetBuffer, newLength);
+        lengthBuffer = Arrays.copyOf(lengthBuffer, newLength);
+        typeBuffer = Arrays.copyOf(typeBuffer, newLength);
+      }
+      int offset = 0;
+      int length = 0;
+      String type = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else if ("type".equals(name)) {
+          type = reader.nextString().intern();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      offsetBuffer[count] = offset;
+      lengthBuffer[count] = length;
+      typeBuffer[count] = type;
+      count++;
+    }
+    reader.endArray();
+    return count;
+  }
+
+  private void decodeNavigation(JsonReader reader, String event) throws IOException {
+    String file = null;
+    List<String> files = Collections.emptyList();
+    List<NavigationTarget> targets = Collections.emptyList();
+    List<NavigationRegion> regions = Collections.emptyList();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("file".equals(name)) {
+        file = reader.nextString();
+      }
+      else if ("files".equals(name)) {
+        files = readStrings(reader);
+      }
+      else if ("targets".equals(name)) {
+        targets = readNavigationTargets(reader);
+      }
+      else if ("regions".equals(name)) {
+        regions = readNavigationRegions(reader);
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    String[] targetFiles = files.toArray(new String[files.size()]);
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    long decodedNanos = System.nanoTime();
+    listener.computedNavigation(file, regions);
+    recordMetrics(event, decodedNanos);
+  }
+
+  private static List<String> readStrings(JsonReader reader) throws IOException {
+    List<String> result = new ArrayList<String>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      result.add(reader.nextString());
+    }
+    reader.endArray();
+    return result;
+  }
+
+  private static List<NavigationTarget> readNavigationTargets(JsonReader reader) throws IOException {
+    List<NavigationTarget> result = new ArrayList<NavigationTarget>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String kind = null;
+      int fileIndex = 0;
+      int offset = 0;
+      int length = 0;
+      int startLine = 0;
+      int startColumn = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("kind".equals(name)) {
+          kind = reader.nextString();
+        }
+        else if ("fileIndex".equals(name)) {
+          fileIndex = reader.nextInt();
+        }
+        else if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else if ("startLine".equals(name)) {
+          startLine = reader.nextInt();
+        }
+        else if ("startColumn".equals(name)) {
+          startColumn = reader.nextInt();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      result.add(new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn));
+    }
+    reader.endArray();
+    return result;
+  }
+
+  private static List<NavigationRegion> readNavigationRegions(JsonReader reader) throws IOException {
+    List<NavigationRegion> result = new ArrayList<NavigationRegion>();
+    int[] targetBuffer = new int[8];
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int offset = 0;
+      int length = 0;
+      int[] targets = EMPTY_INT_ARRAY;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("offset".equals(name)) {
+          offset = reader.nextInt();
+        }
+        else if ("length".equals(name)) {
+          length = reader.nextInt();
+        }
+        else if ("targets".equals(name)) {
+          int count = 0;
+          reader.beginArray();
+          while (reader.hasNext()) {
+            if (count == targetBuffer.length) {
+              targetBuffer = Arrays.copyOf(targetBuffer, count * 2);
+            }
+            targetBuffer[count++] = reader.nextInt();
+          }
+          reader.endArray();
+          targets = Arrays.copyOf(targetBuffer, count);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      result.add(new NavigationRegion(offset, length, targets));
+    }
+    reader.endArray();
+    return result;
+  }
+}
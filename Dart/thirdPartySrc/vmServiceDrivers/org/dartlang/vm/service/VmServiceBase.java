@@ -17,6 +17,8 @@ import com.google.common.collect.Maps;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import de.roderick.weberknecht.WebSocket;
 import de.roderick.weberknecht.WebSocketEventHandler;
@@ -37,13 +39,13 @@ import org.dartlang.vm.service.internal.WebSocketRequestSink;
 import org.dartlang.vm.service.logging.Logging;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -86,18 +88,13 @@ abstract class VmServiceBase implements VmServiceConst {
       public void onClose() {
         Logging.getLogger().logInformation("VM connection closed: " + url);
 
-        vmService.connectionClosed();
+        vmService.transportClosed();
       }
 
       @Override
       public void onMessage(WebSocketMessage message) {
         Logging.getLogger().logInformation("VM message: " + message.getText());
-        try {
-          vmService.processMessage(message.getText());
-        }
-        catch (Exception e) {
-          Logging.getLogger().logError(e.getMessage(), e);
-        }
+        vmService.messageReceived(message.getText());
       }
 
       @Override
@@ -174,6 +171,17 @@ abstract class VmServiceBase implements VmServiceConst {
     return vmService;
   }
 
+  /**
+   * Create a VM service that sends requests to the given sink. The transport behind the sink is
+   * expected to pass messages received from the VM to {@link #messageReceived(String)} and to call
+   * {@link #transportClosed()} when the connection is closed.
+   */
+  public static VmService create(RequestSink requestSink) {
+    final VmService vmService = new VmService();
+    vmService.requestSink = requestSink;
+    return vmService;
+  }
+
   /**
    * Connect to the VM observatory service on the given local port.
    *
@@ -183,16 +191,33 @@ abstract class VmServiceBase implements VmServiceConst {
     return connect("ws://localhost:" + port + "/ws");
   }
 
+  /**
+   * The number of threads that decode messages.
+   */
+  private static final int DECODER_THREAD_COUNT = 2;
+
   /**
    * A mapping between {@link String} ids' and the associated {@link Consumer} that was passed when
-   * the request was made. Synchronize against {@link #consumerMapLock} before accessing this field.
+   * the request was made. Requests are sent from any thread, so this map is concurrent.
    */
-  private final Map<String, Consumer> consumerMap = Maps.newHashMap();
+  private final Map<String, Consumer> consumerMap = new ConcurrentHashMap<String, Consumer>();
 
   /**
-   * The object used to synchronize access to {@link #consumerMap}.
+   * Decodes messages from the VM, so that neither the transport thread nor the dispatcher waits
+   * while a big response (e.g. to getStack or getObject) is decoded.
    */
-  private final Object consumerMapLock = new Object();
+  private final ExecutorService decoderExecutor = createExecutor("VM service message decoder", DECODER_THREAD_COUNT);
+
+  /**
+   * Forwards decoded responses, events and requests to consumers and listeners one by one, in the
+   * order the messages arrived, as the transport thread did before.
+   */
+  private final ExecutorService dispatcher = createExecutor("VM service message dispatcher", 1);
+
+  /**
+   * Whether the current thread is forwarding a message to a consumer or listener.
+   */
+  private final ThreadLocal<Boolean> forwardingMessage = new ThreadLocal<Boolean>();
 
   /**
    * The unique ID for the next request.
@@ -341,9 +366,7 @@ abstract class VmServiceBase implements VmServiceConst {
     request.add(PARAMS, params);
 
     // Cache the consumer to receive the response
-    synchronized (consumerMapLock) {
-      consumerMap.put(id, consumer);
-    }
+    consumerMap.put(id, consumer);
 
     // Send the request
     requestSink.add(request);
@@ -392,6 +415,189 @@ abstract class VmServiceBase implements VmServiceConst {
     Logging.getLogger().logError(msg.toString());
   }
 
+  private static ExecutorService createExecutor(final String threadName, int threadCount) {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                                                               new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Returns {@code true} if the current thread is forwarding a response or an event to a consumer or
+   * listener. Waiting for another response in such a thread deadlocks, because messages are forwarded
+   * by this thread only, including the awaited response.
+   */
+  public boolean isForwardingMessage() {
+    return Boolean.TRUE.equals(forwardingMessage.get());
+  }
+
+  /**
+   * Called by the transport for each message received from the VM. The message is decoded in
+   * background, so the transport may continue receiving at once, and messages may be decoded
+   * concurrently. Decoded messages are forwarded by a single dispatcher thread strictly in the order
+   * they arrived, so a response is always forwarded before the events that the VM sent after it.
+   */
+  public void messageReceived(final String jsonText) {
+    if (jsonText == null || jsonText.isEmpty()) {
+      return;
+    }
+
+    try {
+      final Future<Runnable> decoded = decoderExecutor.submit(new Callable<Runnable>() {
+        @Override
+        public Runnable call() {
+          return decodeMessage(jsonText);
+        }
+      });
+      dispatcher.execute(new Runnable() {
+        @Override
+        public void run() {
+          forwardingMessage.set(Boolean.TRUE);
+          try {
+            final Runnable forwarding = decoded.get();
+            if (forwarding != null) {
+              forwarding.run();
+            }
+          } catch (ExecutionException e) {
+            Logging.getLogger().logError(e.getCause().getMessage(), e.getCause());
+          } catch (Exception e) {
+            Logging.getLogger().logError(e.getMessage(), e);
+          } finally {
+            forwardingMessage.remove();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      Logging.getLogger().logInformation("Dropped message received after the connection was closed");
+    }
+  }
+
+  /**
+   * Called by the transport when the connection is closed. Listeners are notified after the
+   * messages received earlier are forwarded.
+   */
+  public void transportClosed() {
+    try {
+      dispatcher.execute(new Runnable() {
+        @Override
+        public void run() {
+          connectionClosed();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return;
+    }
+    dispatcher.shutdown();
+    decoderExecutor.shutdown();
+  }
+
+  /**
+   * Decodes the message and returns the action that forwards it, or {@code null} if the message is
+   * malformed (in this case the problem is already logged).
+   */
+  private Runnable decodeMessage(final String jsonText) {
+    if (isResponse(jsonText)) {
+      return decodeResponse(jsonText);
+    }
+
+    final JsonObject json;
+    try {
+      json = (JsonObject) new JsonParser().parse(jsonText);
+    } catch (Exception e) {
+      Logging.getLogger().logError("Parse message failed: " + jsonText, e);
+      return null;
+    }
+    return new Runnable() {
+      @Override
+      public void run() {
+        processMessage(json);
+      }
+    };
+  }
+
+  /**
+   * Checks whether the message is a response by looking at the top-level keys that precede the
+   * first non-trivial value, without decoding the message. The VM writes {@code method} or
+   * {@code result} and {@code error} right after {@code jsonrpc} (and sometimes {@code id}).
+   */
+  static boolean isResponse(String jsonText) {
+    try {
+      final JsonReader reader = new JsonReader(new StringReader(jsonText));
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (RESULT.equals(name) || ERROR.equals(name)) {
+          return true;
+        }
+        if (METHOD.equals(name) || PARAMS.equals(name)) {
+          return false;
+        }
+        final JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+          return false;
+        }
+        reader.skipValue();
+      }
+    } catch (Exception e) {
+      // malformed messages are reported by processMessage()
+    }
+    return false;
+  }
+
+  /**
+   * Decode the response with a streaming reader, building JSON trees only for the {@code result}
+   * or {@code error} object, and return the action that forwards it to the consumer associated with
+   * the response id.
+   */
+  Runnable decodeResponse(String jsonText) {
+    String id = null;
+    JsonElement result = null;
+    JsonElement error = null;
+    try {
+      final JsonReader reader = new JsonReader(new StringReader(jsonText));
+      final JsonParser parser = new JsonParser();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (ID.equals(name) && reader.peek() != JsonToken.NULL) {
+          id = reader.nextString();
+        } else if (RESULT.equals(name)) {
+          result = parser.parse(reader);
+        } else if (ERROR.equals(name)) {
+          error = parser.parse(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (Exception e) {
+      Logging.getLogger().logError("Parse message failed: " + jsonText, e);
+      return null;
+    }
+
+    if (id == null) {
+      Logging.getLogger().logError("Response missing " + ID);
+      return null;
+    }
+
+    final String responseId = id;
+    final JsonElement resultElem = result;
+    final JsonElement errorElem = error;
+    return new Runnable() {
+      @Override
+      public void run() {
+        processResponse(responseId, resultElem, errorElem);
+      }
+    };
+  }
+
   /**
    * Process the response from the VM service and forward that response to the consumer associated
    * with the response id.
@@ -409,7 +615,10 @@ abstract class VmServiceBase implements VmServiceConst {
       Logging.getLogger().logError("Parse message failed: " + jsonText, e);
       return;
     }
+    processMessage(json);
+  }
 
+  private void processMessage(JsonObject json) {
     if (json.has("method")) {
       if (!json.has(PARAMS)) {
         final String message = "Missing " + PARAMS;
@@ -599,6 +808,10 @@ abstract class VmServiceBase implements VmServiceConst {
       Logging.getLogger().logError("Response missing " + ID, e);
       return;
     }
+    processResponse(id, json.get(RESULT), json.get(ERROR));
+  }
+
+  private void processResponse(String id, JsonElement resultElem, JsonElement errorElem) {
     Consumer consumer = consumerMap.remove(id);
     if (consumer == null) {
       Logging.getLogger().logError("No consumer associated with " + ID + ": " + id);
@@ -606,7 +819,6 @@ abstract class VmServiceBase implements VmServiceConst {
     }
 
     // Forward the response if the request was successfully executed
-    JsonElement resultElem = json.get(RESULT);
     if (resultElem != null) {
       JsonObject result;
       try {
@@ -627,11 +839,10 @@ abstract class VmServiceBase implements VmServiceConst {
     }
 
     // Forward an error if the request failed
-    resultElem = json.get(ERROR);
-    if (resultElem != null) {
+    if (errorElem != null) {
       JsonObject error;
       try {
-        error = resultElem.getAsJsonObject();
+        error = errorElem.getAsJsonObject();
       } catch (Exception e) {
         Logging.getLogger().logError("Response has invalid " + RESULT, e);
         return;
@@ -19,11 +19,14 @@ import com.intellij.flex.imports.FlexOptimizeImportsTest;
 import com.intellij.flex.intentions.*;
 import com.intellij.flex.parser.ActionScriptParsingTest;
 import com.intellij.flex.parser.FlexImporterTest;
+import com.intellij.flex.parser.SwfStubCacheTest;
 import com.intellij.flex.projectView.FlexProjectViewTest;
 import com.intellij.flex.refactoring.*;
 import com.intellij.flex.resolver.ActionScriptResolveTest;
 import com.intellij.flex.resolver.FlexCssNavigationTest;
 import com.intellij.flex.uml.FlashUmlTest;
+import com.intellij.lang.javascript.flex.debug.FlexDebuggerEvaluationTest;
+import com.intellij.lang.javascript.flex.debug.KnownFilesInfoTest;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -106,6 +109,7 @@ public class FlexTestSuite {
     //com.intellij.flex.parser.*
     testSuite.addTestSuite(ActionScriptParsingTest.class);
     testSuite.addTestSuite(FlexImporterTest.class);
+    testSuite.addTestSuite(SwfStubCacheTest.class);
 
     //com.intellij.flex.projectView.*
     testSuite.addTestSuite(FlexProjectViewTest.class);
@@ -133,6 +137,10 @@ public class FlexTestSuite {
     //com.intellij.flex.uml.*
     testSuite.addTestSuite(FlashUmlTest.class);
 
+    //com.intellij.lang.javascript.flex.debug.*
+    testSuite.addTestSuite(FlexDebuggerEvaluationTest.class);
+    testSuite.addTestSuite(KnownFilesInfoTest.class);
+
     return testSuite;
   }
 }
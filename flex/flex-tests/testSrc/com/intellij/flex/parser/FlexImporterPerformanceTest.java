@@ -0,0 +1,58 @@
+package com.intellij.flex.parser;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlexImporterPerformanceTest extends TestCase {
+  private List<byte[]> myContents;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    final List<File> swcFiles = new ArrayList<>();
+    collectSwcFiles(new File(FlexTestUtils.getPathToCompleteFlexSdk("4.5"), "frameworks"), swcFiles);
+    assertFalse(swcFiles.isEmpty());
+
+    myContents = new ArrayList<>();
+    for (File swcFile : swcFiles) {
+      myContents.add(FlexImporterTest.loadContents(swcFile));
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myContents = null;
+    super.tearDown();
+  }
+
+  public void testSequentialAbcDecodingOfFlexSdk() {
+    PlatformTestUtil.startPerformanceTest("Sequential ABC decoding of Flex SDK", 20_000,
+                                          () -> FlexImporterTest.buildInterfaces(myContents, 1))
+      .assertTiming();
+  }
+
+  public void testParallelAbcDecodingOfFlexSdk() {
+    PlatformTestUtil.startPerformanceTest("Parallel ABC decoding of Flex SDK", 8_000,
+                                          () -> FlexImporterTest.buildInterfaces(myContents, 4))
+      .usesAllCPUCores().assertTiming();
+  }
+
+  static void collectSwcFiles(@NotNull final File dir, @NotNull final List<File> result) {
+    final File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        collectSwcFiles(file, result);
+      }
+      else if (file.getName().endsWith(".swc")) {
+        result.add(file);
+      }
+    }
+  }
+}
@@ -11,6 +11,8 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -69,21 +71,70 @@ public class FlexImporterTest extends TestCase {
     doTestFor("hotbook.swf");
   }
 
-  private void doTestFor(final String fileName) throws IOException {
-    final File file = new File(getTestDataPath() + fileName);
-    final byte[] contents;
+  /**
+   * Checks that parallel decoding of ABC blocks gives the same interfaces as sequential one.
+   */
+  public final void testParallelAbcDecoding() throws Exception {
+    final List<File> files = new ArrayList<File>();
+    for (File file : new File(getTestDataPath()).listFiles()) {
+      if (file.getName().endsWith(".swc") || file.getName().endsWith(".swf")) files.add(file);
+    }
+
+    final List<byte[]> contents = new ArrayList<byte[]>();
+    for (File file : files) {
+      contents.add(loadContents(file));
+    }
+
+    final List<String> expected = buildInterfaces(contents, 1);
+    final List<String> result = buildInterfaces(contents, 4);
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals(files.get(i).getPath(), expected.get(i), result.get(i));
+    }
+  }
 
+  static List<String> buildInterfaces(final List<byte[]> contents, final int threads) {
+    final String oldValue = System.getProperty(FlexImporter.ABC_DECODING_THREADS_PROPERTY);
+    try {
+      System.setProperty(FlexImporter.ABC_DECODING_THREADS_PROPERTY, String.valueOf(threads));
+      final List<String> result = new ArrayList<String>(contents.size());
+      for (byte[] bytes : contents) {
+        result.add(FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(bytes)));
+      }
+      return result;
+    }
+    finally {
+      if (oldValue != null) {
+        System.setProperty(FlexImporter.ABC_DECODING_THREADS_PROPERTY, oldValue);
+      }
+      else {
+        System.clearProperty(FlexImporter.ABC_DECODING_THREADS_PROPERTY);
+      }
+    }
+  }
+
+  static byte[] loadContents(final File file) throws IOException {
     if (file.getName().endsWith(".swc")) {
       final ZipFile zipFile = new ZipFile(file);
-      final ZipEntry zipEntry = zipFile.getEntry("library.swf");
-      final InputStream inputStream = zipFile.getInputStream(zipEntry);
-      contents = FileUtil.loadBytes(inputStream, (int)zipEntry.getSize());
-      inputStream.close();
-      zipFile.close();
-    }
-    else {
-      contents = FileUtil.loadFileBytes(file);
+      try {
+        final ZipEntry zipEntry = zipFile.getEntry("library.swf");
+        final InputStream inputStream = zipFile.getInputStream(zipEntry);
+        try {
+          return FileUtil.loadBytes(inputStream, (int)zipEntry.getSize());
+        }
+        finally {
+          inputStream.close();
+        }
+      }
+      finally {
+        zipFile.close();
+      }
     }
+    return FileUtil.loadFileBytes(file);
+  }
+
+  private void doTestFor(final String fileName) throws IOException {
+    final File file = new File(getTestDataPath() + fileName);
+    final byte[] contents = loadContents(file);
 
     String result = FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(contents));
     String resultFileName = getTestDataPath() + fileName + ".txt";
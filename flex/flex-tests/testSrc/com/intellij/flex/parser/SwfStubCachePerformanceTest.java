@@ -0,0 +1,78 @@
+package com.intellij.flex.parser;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.javascript.flex.compiled.SwfFileStubBuilder;
+import com.intellij.javascript.flex.compiled.SwfStubCache;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SwfStubCachePerformanceTest extends LightCodeInsightFixtureTestCase {
+  private File myCacheRoot;
+  private SwfStubCache myCache;
+  private final List<VirtualFile> myLibrarySwfs = new ArrayList<>();
+  private final List<byte[]> myContents = new ArrayList<>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheRoot = FileUtil.createTempDirectory("swfStubs", null);
+
+    final List<File> swcFiles = new ArrayList<>();
+    FlexImporterPerformanceTest.collectSwcFiles(new File(FlexTestUtils.getPathToCompleteFlexSdk("4.5"), "frameworks"), swcFiles);
+    assertFalse(swcFiles.isEmpty());
+    for (File swcFile : swcFiles) {
+      final VirtualFile librarySwf = SwfStubCacheTest.getLibrarySwf(FileUtil.toSystemIndependentName(swcFile.getPath()));
+      myLibrarySwfs.add(librarySwf);
+      myContents.add(librarySwf.contentsToByteArray());
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myCache = null;
+      myLibrarySwfs.clear();
+      myContents.clear();
+      FileUtil.delete(myCacheRoot);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  /**
+   * Indexes all SWCs of the Flex SDK with the empty cache.
+   */
+  public void testColdIndexingOfFlexSdk() {
+    PlatformTestUtil.startPerformanceTest("Cold indexing of Flex SDK", 30_000, () -> indexAll(myCache))
+      .setup(() -> {
+        FileUtil.delete(myCacheRoot);
+        myCache = new SwfStubCache(myCacheRoot, 1);
+      })
+      .assertTiming();
+  }
+
+  /**
+   * Indexes all SWCs of the Flex SDK with the cache filled by a previous pass.
+   */
+  public void testWarmIndexingOfFlexSdk() {
+    myCache = new SwfStubCache(myCacheRoot, 1);
+    indexAll(myCache);
+
+    PlatformTestUtil.startPerformanceTest("Warm indexing of Flex SDK", 10_000, () -> indexAll(myCache))
+      .assertTiming();
+  }
+
+  private void indexAll(@NotNull final SwfStubCache cache) {
+    for (int i = 0; i < myLibrarySwfs.size(); i++) {
+      assertNotNull(SwfFileStubBuilder.buildFileStub(myLibrarySwfs.get(i), myContents.get(i), cache));
+    }
+  }
+}
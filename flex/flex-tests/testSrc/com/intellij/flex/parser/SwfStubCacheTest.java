@@ -0,0 +1,77 @@
+package com.intellij.flex.parser;
+
+import com.intellij.javascript.flex.compiled.SwfFileStubBuilder;
+import com.intellij.javascript.flex.compiled.SwfStubCache;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SwfStubCacheTest extends LightCodeInsightFixtureTestCase {
+  private File myCacheRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheRoot = FileUtil.createTempDirectory("swfStubs", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myCacheRoot);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @NotNull
+  static VirtualFile getLibrarySwf(@NotNull final String swcPath) {
+    final VirtualFile swc = LocalFileSystem.getInstance().refreshAndFindFileByPath(swcPath);
+    assertNotNull(swcPath, swc);
+    final VirtualFile jarRoot = JarFileSystem.getInstance().getJarRootForLocalFile(swc);
+    assertNotNull(swcPath, jarRoot);
+    final VirtualFile librarySwf = jarRoot.findChild("library.swf");
+    assertNotNull(swcPath, librarySwf);
+    return librarySwf;
+  }
+
+  public void testCachedStubsEqualToBuiltOnes() throws IOException {
+    final VirtualFile librarySwf = getLibrarySwf(FlexImporterTest.getTestDataPath() + "PlayerGlobal10.swc");
+    final byte[] content = librarySwf.contentsToByteArray();
+    final String expected = DebugUtil.stubTreeToString(SwfFileStubBuilder.buildFileStub(librarySwf, content, null));
+
+    final SwfStubCache cache = new SwfStubCache(myCacheRoot, 1);
+    final String key = cache.getKey(content);
+    assertNotNull(key);
+    assertNull(cache.get(key));
+
+    assertEquals(expected, DebugUtil.stubTreeToString(SwfFileStubBuilder.buildFileStub(librarySwf, content, cache)));
+    final PsiFileStub cachedStub = cache.get(key);
+    assertNotNull(cachedStub);
+    assertEquals(expected, DebugUtil.stubTreeToString(cachedStub));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+
+    final SwfStubCache newVersionCache = new SwfStubCache(myCacheRoot, 2);
+    assertNull(newVersionCache.get(key));
+    SwfFileStubBuilder.buildFileStub(librarySwf, content, newVersionCache);
+    assertFalse(new File(myCacheRoot, "v1").exists());
+    assertNotNull(newVersionCache.get(key));
+  }
+
+  public void testSmallLibrariesNotCached() throws IOException {
+    final VirtualFile librarySwf = getLibrarySwf(FlexImporterTest.getTestDataPath() + "HelloWorld.swc");
+    final byte[] content = librarySwf.contentsToByteArray();
+    assertTrue(content.length < SwfStubCache.MIN_CONTENT_SIZE);
+    assertNull(new SwfStubCache(myCacheRoot, 1).getKey(content));
+  }
+}
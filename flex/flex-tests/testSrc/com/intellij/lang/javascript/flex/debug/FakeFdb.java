@@ -0,0 +1,150 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.execution.filters.TextConsoleBuilderFactory;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.xdebugger.XDebugSession;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Stand-in for fdb that answers commands from a map, so that the debugger protocol can be tested without Flex SDK and Flash Player. Like
+ * fdb, it reads commands line by line and terminates each reply with the {@code (fdb) } prompt. A reply that contains the prompt itself
+ * emulates output that fdb prints on its own before the reply, e.g. trace of a running worker. {@code frame} commands are answered with the
+ * location of the top frame, and unknown expressions can't be evaluated. Latency emulates the round trip from fdb to the player and is
+ * spent on each command.
+ */
+class FakeFdb {
+  static final String PROMPT = "(fdb) ";
+
+  private final Map<String, String> myReplies;
+  private final long myLatency;
+  private volatile int myReceivedLineCount;
+
+  FakeFdb(@NotNull final Map<String, String> replies, final long latency) {
+    myReplies = replies;
+    myLatency = latency;
+  }
+
+  int getReceivedLineCount() {
+    return myReceivedLineCount;
+  }
+
+  /**
+   * Starts this fdb and connects a debug process to it. The greeting is already read, and commands are processed in the calling thread.
+   */
+  @NotNull
+  FlexDebugProcess startDebugProcess(@NotNull final Project project, @NotNull final Disposable parentDisposable) throws IOException {
+    final Process process = start();
+    Disposer.register(parentDisposable, process::destroy);
+
+    final ConsoleView console = TextConsoleBuilderFactory.getInstance().createBuilder(project).getConsole();
+    Disposer.register(parentDisposable, console);
+
+    final XDebugSession session = (XDebugSession)Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[]{XDebugSession.class},
+      (proxy, method, args) -> method.getName().equals("getProject") ? project : method.getReturnType() == boolean.class ? false : null);
+
+    final FlexDebugProcess debugProcess = new FlexDebugProcess(session, process, console);
+    debugProcess.sendAndProcessOneCommand(debugProcess.new ReadGreetingCommand(), null);
+    return debugProcess;
+  }
+
+  /**
+   * @return process that talks to this fdb running in a thread of the current JVM
+   */
+  @NotNull
+  Process start() throws IOException {
+    final PipedOutputStream processInput = new PipedOutputStream();
+    final PipedInputStream fdbInput = new PipedInputStream(processInput, 64 * 1024);
+    final PipedInputStream processOutput = new PipedInputStream(64 * 1024);
+    final PipedOutputStream fdbOutput = new PipedOutputStream(processOutput);
+
+    final Thread thread = new Thread(() -> {
+      try (PrintStream out = new PrintStream(fdbOutput, false, "UTF-8")) {
+        run(fdbInput, out);
+      }
+      catch (IOException | InterruptedException ignored) {
+      }
+    }, "Fake fdb");
+    thread.setDaemon(true);
+    thread.start();
+
+    return new Process() {
+      @Override
+      public OutputStream getOutputStream() {
+        return processInput;
+      }
+
+      @Override
+      public InputStream getInputStream() {
+        return processOutput;
+      }
+
+      @Override
+      public InputStream getErrorStream() {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+
+      @Override
+      public int waitFor() throws InterruptedException {
+        thread.join();
+        return 0;
+      }
+
+      @Override
+      public int exitValue() {
+        if (thread.isAlive()) throw new IllegalThreadStateException();
+        return 0;
+      }
+
+      @Override
+      public void destroy() {
+        thread.interrupt();
+        try {
+          processInput.close();
+        }
+        catch (IOException ignored) {
+        }
+      }
+    };
+  }
+
+  private void run(final InputStream in, final PrintStream out) throws IOException, InterruptedException {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    out.print("Adobe fdb (Flash Player Debugger) [build 0]\n" + PROMPT);
+    out.flush();
+
+    String command;
+    while ((command = reader.readLine()) != null) {
+      command = command.trim();
+      myReceivedLineCount++;
+      if (command.equals("quit")) break;
+
+      if (myLatency > 0) Thread.sleep(myLatency);
+      out.print(getReply(command) + "\n" + PROMPT);
+      // replies to commands sent in one write are flushed together
+      if (!reader.ready()) out.flush();
+    }
+    out.flush();
+  }
+
+  private String getReply(final String command) {
+    final String reply = myReplies.get(command);
+    if (reply != null) return reply;
+
+    if (command.startsWith("frame")) {
+      return "#0   this = [Object 1, class='Main'].main() at Main.as:1";
+    }
+    if (command.startsWith("print ")) {
+      return "Expression " + command.substring("print ".length()) + " could not be evaluated.";
+    }
+    return "Unknown command '" + command + "', ignoring it.";
+  }
+}
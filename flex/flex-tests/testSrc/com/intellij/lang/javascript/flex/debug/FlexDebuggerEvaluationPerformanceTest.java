@@ -0,0 +1,39 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.xdebugger.XSourcePosition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FlexDebuggerEvaluationPerformanceTest extends LightPlatformTestCase {
+  private static final int LOCALS_COUNT = 200;
+  private static final int LATENCY_MS = 1;
+
+  /**
+   * Evaluates locals of a frame against {@link FakeFdb} that spends {@link #LATENCY_MS} on each command, as the Variables view does after
+   * each step.
+   */
+  public void testEvaluationOfFrameLocals() throws Exception {
+    final Map<String, String> replies = new HashMap<>();
+    final List<String> expressions = new ArrayList<>();
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < LOCALS_COUNT; i++) {
+      replies.put("print local" + i, "$" + (i + 1) + " = " + i);
+      expressions.add("local" + i);
+      expected.add(String.valueOf(i));
+    }
+
+    final FakeFdb fdb = new FakeFdb(replies, LATENCY_MS);
+    final FlexDebugProcess debugProcess = fdb.startDebugProcess(getProject(), getTestRootDisposable());
+    final FlexStackFrame frame = new FlexStackFrame(debugProcess, (XSourcePosition)null);
+
+    PlatformTestUtil.startPerformanceTest("Evaluation of frame locals", 1000,
+                                          () -> assertEquals(expected, FlexDebuggerEvaluationTest.evaluate(debugProcess, frame, expressions)))
+      .setup(() -> debugProcess.getEvaluationCache().commandSent("step"))
+      .assertTiming();
+  }
+}
@@ -0,0 +1,117 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.xdebugger.XSourcePosition;
+import com.intellij.xdebugger.evaluation.XDebuggerEvaluator;
+import com.intellij.xdebugger.frame.XValue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FlexDebuggerEvaluationTest extends LightPlatformTestCase {
+  private static final int LOCALS_COUNT = 10;
+
+  public void testEvaluationCacheClearedWhenExecutionResumes() {
+    final EvaluationCache cache = new EvaluationCache();
+    cache.put("frame \nprint a", "$1 = 1");
+
+    cache.commandSent("frame 1\nprint b");
+    cache.commandSent("info locals");
+    cache.commandSent("bt");
+    assertEquals("$1 = 1", cache.get("frame \nprint a"));
+
+    cache.commandSent("frame \nset a = 2\nprint a");
+    assertNull(cache.get("frame \nprint a"));
+
+    for (String command : new String[]{"continue", "next", "step", "finish", "suspend"}) {
+      cache.put("frame \nprint a", "$1 = 1");
+      cache.commandSent(command);
+      assertNull(command, cache.get("frame \nprint a"));
+    }
+  }
+
+  /**
+   * Evaluation commands queued one after another are sent to fdb in one write. A trace printed by fdb amid the replies and an empty reply
+   * must not shift the replies of the following commands.
+   */
+  public void testBatchedEvaluation() throws Exception {
+    final Map<String, String> replies = new HashMap<>();
+    for (int i = 0; i < LOCALS_COUNT; i++) {
+      replies.put("print local" + i, "$" + (i + 1) + " = " + i);
+    }
+    replies.put("print local3", "[trace] tick\n" + FakeFdb.PROMPT + "$4 = 3");
+    replies.put("print empty", "");
+
+    final FakeFdb fdb = new FakeFdb(replies, 0);
+    final FlexDebugProcess debugProcess = fdb.startDebugProcess(getProject(), getTestRootDisposable());
+    final FlexStackFrame frame = new FlexStackFrame(debugProcess, (XSourcePosition)null);
+
+    final List<String> expressions = new ArrayList<>();
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < LOCALS_COUNT; i++) {
+      expressions.add("local" + i);
+      expected.add(String.valueOf(i));
+      if (i == 5) {
+        expressions.add("unknown");
+        expected.add("Expression unknown could not be evaluated.");
+        expressions.add("empty");
+        expected.add("");
+      }
+    }
+
+    assertEquals(expected, evaluate(debugProcess, frame, expressions));
+    assertEquals(2 * expressions.size(), fdb.getReceivedLineCount()); // 'frame' and 'print' for each expression
+
+    final int receivedLineCount = fdb.getReceivedLineCount();
+    assertEquals("0", frame.eval("local0", debugProcess));
+    assertEquals("3", frame.eval("local3", debugProcess));
+    assertEquals("cached values are not evaluated again", receivedLineCount, fdb.getReceivedLineCount());
+
+    assertEquals("Expression unknown could not be evaluated.", frame.eval("unknown", debugProcess));
+    assertEquals("failed evaluation is not cached", receivedLineCount + 2, fdb.getReceivedLineCount());
+  }
+
+  /**
+   * Queues evaluation of the expressions and processes them as the debugger thread does, so that commands are batched
+   * by {@code FlexDebugProcess.postCommand()}. The expressions must not be cached, otherwise their commands are not batched.
+   *
+   * @return evaluation results in the order of expressions
+   */
+  @NotNull
+  static List<String> evaluate(@NotNull final FlexDebugProcess debugProcess,
+                               @NotNull final FlexStackFrame frame,
+                               @NotNull final List<String> expressions) throws InterruptedException {
+    final String[] results = new String[expressions.size()];
+    final CountDownLatch latch = new CountDownLatch(expressions.size());
+    final List<FlexStackFrame.EvaluateCommand> commands = new ArrayList<>();
+    for (int i = 0; i < expressions.size(); i++) {
+      final int index = i;
+      commands.add(frame.new EvaluateCommand(expressions.get(i), new XDebuggerEvaluator.XEvaluationCallback() {
+        @Override
+        public void evaluated(@NotNull final XValue result) {
+          results[index] = ((FlexValue)result).getResult();
+          latch.countDown();
+        }
+
+        @Override
+        public void errorOccurred(@NotNull final String errorMessage) {
+          results[index] = errorMessage;
+          latch.countDown();
+        }
+      }));
+    }
+
+    for (int i = 0; i < commands.size(); i += BatchedEvaluateCommand.MAX_SIZE) {
+      final int end = Math.min(i + BatchedEvaluateCommand.MAX_SIZE, commands.size());
+      for (int j = i + 1; j < end; j++) {
+        debugProcess.sendCommand(commands.get(j));
+      }
+      debugProcess.sendAndProcessOneCommand(commands.get(i), null);
+    }
+
+    assertTrue("Evaluation timed out", latch.await(1, TimeUnit.MINUTES));
+    return Arrays.asList(results);
+  }
+}
@@ -0,0 +1,34 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+
+public class KnownFilesInfoPerformanceTest extends TestCase {
+  private static final int FILES_COUNT = 5000;
+
+  /**
+   * Processes the same {@code show files} output again, as after each load of ActionScript code in a big project.
+   */
+  public void testRefresh() {
+    final StringBuilder output = new StringBuilder();
+    for (int i = 1; i <= FILES_COUNT; i++) {
+      output.append(i).append(" C:\\work\\project\\src\\pack").append(i % 100).append("\\File").append(i).append(".as, File").append(i)
+        .append(".as (Main Thread)\n");
+    }
+    final String showFilesResult = output.toString();
+
+    final KnownFilesInfo info = new KnownFilesInfo(null);
+    info.processShowFilesResult(showFilesResult);
+
+    PlatformTestUtil.startPerformanceTest("Refresh of " + FILES_COUNT + " known files", 100, () -> {
+      for (int i = 0; i < 10; i++) {
+        info.processShowFilesResult(showFilesResult);
+      }
+    }).assertTiming();
+
+    info.setUpToDate(true);
+    assertEquals(FILES_COUNT, info.getFileIdIndex(0).size());
+    assertEquals("C:/work/project/src/pack42/File42.as", info.getFilePathById(0, "42"));
+    assertEquals("42", info.getIdByFilePath(0, "C:/work/project/src/pack42/File42.as"));
+  }
+}
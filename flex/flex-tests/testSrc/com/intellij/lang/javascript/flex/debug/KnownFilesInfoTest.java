@@ -0,0 +1,57 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+public class KnownFilesInfoTest extends TestCase {
+  public void testWorkers() {
+    final KnownFilesInfo info = new KnownFilesInfo(null);
+    info.processShowFilesResult("2 C:\\work\\MP3Worker\\src\\Workers.as, Workers.as (Main Thread)\n" +
+                                "3 C:\\work\\MP3Worker\\src\\Shared.as, Shared.as (Main Thread)\n" +
+                                "1 C:\\work\\MP3Worker\\src\\BackWorker.as, BackWorker.as (Worker 1)\n" +
+                                "2 C:\\work\\MP3Worker\\src\\Shared.as, Shared.as (Worker 1)\n");
+    info.setUpToDate(true);
+
+    assertEquals("C:/work/MP3Worker/src/Workers.as", info.getFilePathById(0, "2"));
+    assertEquals("C:/work/MP3Worker/src/Shared.as", info.getFilePathById(1, "2"));
+    assertEquals("C:/work/MP3Worker/src/BackWorker.as", info.getFilePathById(1, "1"));
+    assertNull(info.getFilePathById(0, "1"));
+
+    assertEquals("3", info.getIdByFilePath(0, "C:/work/MP3Worker/src/Shared.as"));
+    assertEquals("2", info.getIdByFilePath(1, "C:/work/MP3Worker/src/Shared.as"));
+    assertNull(info.getIdByFilePath(1, "C:/work/MP3Worker/src/Workers.as")); // main thread file, id 2 is Shared.as in the worker
+    assertNull(info.getIdByFilePath(0, "C:/work/MP3Worker/src/BackWorker.as"));
+
+    assertEquals(Collections.singletonList("C:/work/MP3Worker/src/BackWorker.as"), info.getPathsByName(1, "BackWorker.as"));
+  }
+
+  public void testOutputWithoutWorkers() {
+    final KnownFilesInfo info = new KnownFilesInfo(null);
+    info.processShowFilesResult("2 /work/src/Main.as, Main.as\n");
+    info.setUpToDate(true);
+
+    assertEquals("/work/src/Main.as", info.getFilePathById(0, "2"));
+    assertEquals(Collections.singletonList("/work/src/Main.as"), info.getPathsByName(0, "Main.as"));
+  }
+
+  public void testNewFilesAppended() {
+    final KnownFilesInfo info = new KnownFilesInfo(null);
+    info.processShowFilesResult("1 /work/src/Main.as, Main.as (Main Thread)\n");
+    info.processShowFilesResult("1 /work/src/Main.as, Main.as (Main Thread)\n" +
+                                "2 /work/src/module/Module.as, Module.as (Main Thread)\n");
+    info.setUpToDate(true);
+
+    assertEquals(2, info.getFileIdIndex(0).size());
+    assertEquals("/work/src/module/Module.as", info.getFilePathById(0, "2"));
+
+    // id reused for another file after the module was unloaded
+    info.processShowFilesResult("1 /work/src/Main.as, Main.as (Main Thread)\n" +
+                                "2 /work/src/module/Other.as, Other.as (Main Thread)\n");
+    assertEquals("/work/src/module/Other.as", info.getFilePathById(0, "2"));
+    assertEquals("2", info.getIdByFilePath(0, "/work/src/module/Other.as"));
+    assertNull(info.getIdByFilePath(0, "/work/src/module/Module.as"));
+    assertNull(info.getPathsByName(0, "Module.as"));
+    assertEquals(Collections.singletonList("/work/src/module/Other.as"), info.getPathsByName(0, "Other.as"));
+  }
+}
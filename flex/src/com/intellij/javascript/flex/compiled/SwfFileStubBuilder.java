@@ -15,8 +15,7 @@ import com.intellij.psi.stubs.PsiFileStubImpl;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.util.indexing.FileContent;
 import org.jetbrains.annotations.NotNull;
-
-import java.io.ByteArrayInputStream;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author Maxim.Mossienko
@@ -36,14 +35,24 @@ public class SwfFileStubBuilder implements BinaryFileStubBuilder {
   }
 
   static PsiFileStub buildFileStub(VirtualFile file, byte[] content) {
+    return buildFileStub(file, content, SwfStubCache.getInstance());
+  }
+
+  public static PsiFileStub buildFileStub(@NotNull VirtualFile file, @NotNull byte[] content, @Nullable SwfStubCache cache) {
+    final String cacheKey = cache != null ? cache.getKey(content) : null;
+    if (cacheKey != null) {
+      final PsiFileStub cachedStub = cache.get(cacheKey);
+      if (cachedStub != null) return cachedStub;
+    }
+
     PsiFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
     try {
 
-      FlexImporter.buildStubsInterfaceFromStream(
-        new ByteArrayInputStream(content),
-        stub
-      );
+      FlexImporter.buildStubsInterface(content, stub);
 
+      if (cacheKey != null) {
+        cache.put(cacheKey, stub);
+      }
     } catch (Exception ex) {
       Logger.getInstance(SwfFileStubBuilder.class.getName()).warn(file.getPath(), ex);
     }
@@ -0,0 +1,179 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.Stub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of serialized stub trees built from {@code library.swf} files of SWC libraries. Flex SDK and third-party SWCs are the
+ * same in all projects, so stubs are keyed by the SHA-1 of the {@code library.swf} content and reused whenever the library is indexed
+ * again.
+ * <p/>
+ * Stubs are serialized with {@link SerializationManagerEx}, whose serializer ids are stored in the index directory, that's why the cache
+ * lives there too and is dropped together with the indices. Entries of other stub versions and entries not used for a month are deleted.
+ */
+public final class SwfStubCache {
+  private static final Logger LOG = Logger.getInstance(SwfStubCache.class.getName());
+
+  private static final String DIR_NAME = "flex.swf.stubs";
+  private static final String VERSION_DIR_PREFIX = "v";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final long MAX_UNUSED_TIME = TimeUnit.DAYS.toMillis(30);
+  private static final long TOUCH_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  /**
+   * Smaller libraries are decompiled fast enough, and such SWCs are usually built by the project itself and change all the time.
+   */
+  public static final int MIN_CONTENT_SIZE = 32 * 1024;
+
+  private static class Holder {
+    private static final SwfStubCache INSTANCE =
+      new SwfStubCache(new File(PathManager.getIndexRoot(), DIR_NAME), new SwfFileStubBuilder().getStubVersion());
+  }
+
+  private final File myRoot;
+  private final File myDir;
+  private final AtomicBoolean myCleanedUp = new AtomicBoolean();
+  private final AtomicInteger myHitCount = new AtomicInteger();
+  private final AtomicInteger myMissCount = new AtomicInteger();
+
+  public SwfStubCache(@NotNull final File root, final int stubVersion) {
+    myRoot = root;
+    myDir = new File(root, VERSION_DIR_PREFIX + stubVersion);
+  }
+
+  @Nullable
+  static SwfStubCache getInstance() {
+    return Registry.is("flex.swf.stub.cache", true) ? Holder.INSTANCE : null;
+  }
+
+  /**
+   * @return key of the library content, or {@code null} if stubs of this library are not worth caching
+   */
+  @Nullable
+  public String getKey(@NotNull final byte[] content) {
+    if (content.length < MIN_CONTENT_SIZE) return null;
+
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+      final StringBuilder builder = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return builder.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      LOG.error(e);
+      return null;
+    }
+  }
+
+  @Nullable
+  public PsiFileStub get(@NotNull final String key) {
+    final File file = new File(myDir, key);
+    if (file.isFile()) {
+      try {
+        final Stub stub = SerializationManagerEx.getInstanceEx().deserialize(new ByteArrayInputStream(FileUtil.loadFileBytes(file)));
+        if (stub instanceof PsiFileStub) {
+          myHitCount.incrementAndGet();
+          final long now = System.currentTimeMillis();
+          if (now - file.lastModified() > TOUCH_INTERVAL) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(now);
+          }
+          return (PsiFileStub)stub;
+        }
+      }
+      catch (Exception e) {
+        LOG.info("Failed to read cached SWF stubs from " + file, e);
+      }
+      FileUtil.delete(file);
+    }
+
+    myMissCount.incrementAndGet();
+    return null;
+  }
+
+  public void put(@NotNull final String key, @NotNull final PsiFileStub stub) {
+    if (myCleanedUp.compareAndSet(false, true)) {
+      cleanUp();
+    }
+
+    final BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    SerializationManagerEx.getInstanceEx().serialize(stub, bytes);
+
+    final File file = new File(myDir, key);
+    final File tempFile = new File(myDir, key + "." + Thread.currentThread().getId() + TEMP_FILE_SUFFIX);
+    try {
+      FileUtil.createParentDirs(tempFile);
+      try (OutputStream out = new FileOutputStream(tempFile)) {
+        out.write(bytes.getInternalBuffer(), 0, bytes.size());
+      }
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to cache SWF stubs in " + file, e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * @return number of {@link #get} calls that found stubs in the cache
+   */
+  public int getHitCount() {
+    return myHitCount.get();
+  }
+
+  public int getMissCount() {
+    return myMissCount.get();
+  }
+
+  private void cleanUp() {
+    final File[] versionDirs = myRoot.listFiles();
+    if (versionDirs != null) {
+      for (File dir : versionDirs) {
+        if (!FileUtil.filesEqual(dir, myDir)) {
+          FileUtil.delete(dir);
+        }
+      }
+    }
+
+    final File[] files = myDir.listFiles();
+    if (files != null) {
+      final long now = System.currentTimeMillis();
+      for (File file : files) {
+        // temp files older than a day are left by a crashed process
+        final long maxAge = file.getName().endsWith(TEMP_FILE_SUFFIX) ? TOUCH_INTERVAL : MAX_UNUSED_TIME;
+        if (now - file.lastModified() > maxAge) {
+          FileUtil.delete(file);
+        }
+      }
+    }
+  }
+}
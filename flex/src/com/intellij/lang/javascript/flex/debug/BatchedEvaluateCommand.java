@@ -0,0 +1,67 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sends several {@link DebuggerCommand#isBatchable() batchable} commands to fdb in one write. fdb answers each line of input with a reply
+ * terminated by its prompt, and may also print prompt-terminated output of its own, e.g. trace of a running worker. Replies are collected
+ * until all lines are answered and then passed to the commands in order, each command getting replies until it is done, as if the commands
+ * were sent one by one. Commands get their replies only when the whole batch is read, that's why they are free to send and process other
+ * commands in {@link #onTextAvailable(String)}.
+ */
+class BatchedEvaluateCommand extends DebuggerCommand {
+  static final int MAX_SIZE = 32;
+
+  private final FlexDebugProcess myDebugProcess;
+  private final List<DebuggerCommand> myCommands;
+  private final int myLineCount;
+  private int myAnswerCount;
+  private final List<String> myReplies = new ArrayList<>();
+
+  BatchedEvaluateCommand(@NotNull final FlexDebugProcess debugProcess, @NotNull final List<DebuggerCommand> commands) {
+    super(StringUtil.join(commands, DebuggerCommand::getText, "\n"), CommandOutputProcessingType.SPECIAL_PROCESSING);
+    myDebugProcess = debugProcess;
+    myCommands = commands;
+    myLineCount = StringUtil.countNewLines(getText()) + 1;
+  }
+
+  @Override
+  CommandOutputProcessingMode onTextAvailable(@NonNls final String s) {
+    myReplies.add(s);
+    if (isAnswer(s)) myAnswerCount++;
+    if (myAnswerCount < myLineCount) return CommandOutputProcessingMode.PROCEEDING;
+
+    final Iterator<String> replies = myReplies.iterator();
+    for (DebuggerCommand command : myCommands) {
+      boolean done = false;
+      while (!done && replies.hasNext()) {
+        done = command.onTextAvailable(replies.next()) == CommandOutputProcessingMode.DONE;
+      }
+      if (!done) FlexDebugProcess.log("No reply left for " + command + " in " + this);
+    }
+    while (replies.hasNext()) {
+      final String reply = replies.next();
+      if (!myDebugProcess.filterStdResponse(reply)) FlexDebugProcess.log("Unexpected reply in " + this + ": " + reply);
+    }
+    return CommandOutputProcessingMode.DONE;
+  }
+
+  /**
+   * @return {@code false} if the text was printed by fdb on its own rather than in reply to a line of the batch; empty text is the reply
+   * to a command that prints nothing
+   */
+  private boolean isAnswer(@NotNull final String s) {
+    return s.isEmpty() || !myDebugProcess.isStdResponse(s);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName() + " of " + myCommands.size();
+  }
+}
@@ -50,6 +50,20 @@ class CompositeDebuggerCommand extends DebuggerCommand {
     myBecomeObsolete = true;
   }
 
+  @NotNull
+  @Override
+  String getText() {
+    return myCommands[myCurrentIndex].getText();
+  }
+
+  @Override
+  boolean isBatchable() {
+    return myCommands.length == 1 &&
+           !myBecomeObsolete &&
+           (myObsolescent == null || !myObsolescent.isObsolete()) &&
+           myCommands[myCurrentIndex].isBatchable();
+  }
+
   @Override
   public CommandOutputProcessingType getOutputProcessingMode() {
     return myCommands[myCurrentIndex].getOutputProcessingMode();
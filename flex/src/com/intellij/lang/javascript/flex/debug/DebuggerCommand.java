@@ -37,6 +37,13 @@ class DebuggerCommand {
     return myStartVMState;
   }
 
+  /**
+   * @return {@code true} if the command may be sent in one write with other such commands, see {@link BatchedEvaluateCommand}
+   */
+  boolean isBatchable() {
+    return false;
+  }
+
   CommandOutputProcessingMode onTextAvailable(@NonNls String s) {
     assert myOutputProcessingType != CommandOutputProcessingType.NO_PROCESSING;
     return CommandOutputProcessingMode.DONE;
@@ -0,0 +1,60 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Replies to fdb {@code print} commands received while the player is suspended. Frames, watches and value trees evaluate the same
+ * expressions again and again, but the values can't change until execution resumes. Any command that is not known to be read-only
+ * ({@code continue}, {@code step}, {@code set}, a command typed by user, etc.) clears the cache.
+ */
+class EvaluationCache {
+  @NonNls private static final String[] READ_ONLY_COMMANDS = {"print", "frame", "info", "bt", "show"};
+  private static final int MAX_SIZE = 10000;
+
+  private final Map<String, String> myReplies = new THashMap<>();
+
+  /**
+   * @param commandText text of the command including the preceding {@code frame} command
+   */
+  @Nullable
+  synchronized String get(@NotNull final String commandText) {
+    return myReplies.get(commandText);
+  }
+
+  synchronized void put(@NotNull final String commandText, @NotNull final String reply) {
+    if (myReplies.size() >= MAX_SIZE) myReplies.clear();
+    myReplies.put(commandText, reply);
+  }
+
+  synchronized void commandSent(@NotNull final String commandText) {
+    if (!myReplies.isEmpty() && !isReadOnly(commandText)) {
+      myReplies.clear();
+    }
+  }
+
+  static boolean isReadOnly(@NotNull final String commandText) {
+    final StringTokenizer lines = new StringTokenizer(commandText, "\r\n");
+    if (!lines.hasMoreTokens()) return false;
+
+    while (lines.hasMoreTokens()) {
+      final String line = lines.nextToken().trim();
+      final int spaceIndex = line.indexOf(' ');
+      final String command = spaceIndex == -1 ? line : line.substring(0, spaceIndex);
+      boolean readOnly = false;
+      for (String readOnlyCommand : READ_ONLY_COMMANDS) {
+        if (readOnlyCommand.equals(command)) {
+          readOnly = true;
+          break;
+        }
+      }
+      if (!readOnly) return false;
+    }
+    return true;
+  }
+}
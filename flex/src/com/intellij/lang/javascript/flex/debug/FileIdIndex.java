@@ -0,0 +1,74 @@
+package com.intellij.lang.javascript.flex.debug;
+
+import gnu.trove.THashMap;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Source files of one worker as reported by fdb {@code show files}: file id, full path and short name. fdb lists all files again after
+ * each load of ActionScript code, so files are only appended and the ones already known by id are skipped without parsing their paths.
+ */
+class FileIdIndex {
+  private final TIntObjectHashMap<String> myIdToPath = new TIntObjectHashMap<>();
+  private final Map<String, String> myPathToId = new THashMap<>();
+  private final Map<String, Collection<String>> myFileNameToPaths = new THashMap<>();
+
+  /**
+   * @return {@code true} if the file with this id is known and has the same short name, i.e. fdb has not reused the id for another file
+   */
+  boolean contains(final int id, @NotNull final String shortName) {
+    final String path = myIdToPath.get(id);
+    return path != null && path.endsWith(shortName) &&
+           (path.length() == shortName.length() || path.charAt(path.length() - shortName.length() - 1) == '/');
+  }
+
+  void add(final int id, @NotNull final String path, @NotNull final String shortName) {
+    final String oldPath = myIdToPath.put(id, path);
+    if (oldPath != null && !oldPath.equals(path) && String.valueOf(id).equals(myPathToId.get(oldPath))) {
+      myPathToId.remove(oldPath);
+      removeFromFileNames(oldPath);
+    }
+    myPathToId.put(path, String.valueOf(id));
+
+    Collection<String> paths = myFileNameToPaths.get(shortName);
+    if (paths == null) {
+      paths = new ArrayList<>(1);
+      myFileNameToPaths.put(shortName, paths);
+    }
+    if (!paths.contains(path)) {
+      paths.add(path);
+    }
+  }
+
+  private void removeFromFileNames(@NotNull final String path) {
+    final String shortName = path.substring(path.lastIndexOf('/') + 1);
+    final Collection<String> paths = myFileNameToPaths.get(shortName);
+    if (paths != null && paths.remove(path) && paths.isEmpty()) {
+      myFileNameToPaths.remove(shortName);
+    }
+  }
+
+  @Nullable
+  String getPath(final int id) {
+    return myIdToPath.get(id);
+  }
+
+  @Nullable
+  String getId(@NotNull final String path) {
+    return myPathToId.get(path);
+  }
+
+  @Nullable
+  Collection<String> getPathsByName(@NotNull final String fileName) {
+    return myFileNameToPaths.get(fileName);
+  }
+
+  int size() {
+    return myIdToPath.size();
+  }
+}
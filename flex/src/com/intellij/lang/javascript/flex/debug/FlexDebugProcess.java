@@ -50,6 +50,7 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -74,6 +75,7 @@ import gnu.trove.THashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.io.LocalFileFinder;
 
 import javax.swing.event.HyperlinkEvent;
@@ -133,6 +135,7 @@ public class FlexDebugProcess extends XDebugProcess {
 
   private int myCurrentWorker = 0;
   private final KnownFilesInfo myKnownFilesInfo = new KnownFilesInfo(this);
+  private final EvaluationCache myEvaluationCache = new EvaluationCache();
 
   private String myFdbLaunchCommand;
 
@@ -282,6 +285,26 @@ public class FlexDebugProcess extends XDebugProcess {
     startCommandProcessingThread();
   }
 
+  /**
+   * Talks to the given fdb process without a run configuration. Commands are processed only by {@link #sendAndProcessOneCommand} in the
+   * calling thread.
+   */
+  @TestOnly
+  FlexDebugProcess(@NotNull final XDebugSession session, @NotNull final Process fdbProcess, @NotNull final ConsoleView consoleView) {
+    super(session);
+    myModule = null;
+    myBC = null;
+    myRunnerParameters = null;
+    myAppSdkHome = null;
+    myDebuggerSdkHome = null;
+    myDebuggerVersion = "";
+    myBreakpointsHandler = null;
+    myConsoleView = consoleView;
+    this.fdbProcess = fdbProcess;
+    reader = new MyFdbOutputReader(fdbProcess.getInputStream());
+    myDebuggerManagerThread = Thread.currentThread();
+  }
+
   @Nullable
   public Module getModule() {
     return myModule.isDisposed() ? null : myModule;
@@ -702,19 +725,24 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   private boolean handleStdResponse(String line, ResponseLineIterator iterator) {
+    return handleStdResponse(line, iterator, true);
+  }
+
+  private boolean handleStdResponse(String line, ResponseLineIterator iterator, boolean print) {
     if (line.startsWith(TRACE_MARKER)) {
-      myConsoleView.print(line + "\n", ConsoleViewContentType.NORMAL_OUTPUT);
+      if (print) myConsoleView.print(line + "\n", ConsoleViewContentType.NORMAL_OUTPUT);
       return true;
     }
     else if (line.startsWith(FAULT_MARKER)) {
-      myConsoleView.print(line + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+      if (print) myConsoleView.print(line + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
       while (iterator.hasNext() && iterator.getNext().startsWith("at ")) {
-        myConsoleView.print(iterator.next() + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+        final String at = iterator.next();
+        if (print) myConsoleView.print(at + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
       }
       return true;
     }
     else if (line.startsWith("[SWF]") || line.startsWith("[UnloadSWF]")) {
-      if (!FilterSwfLoadUnloadMessagesAction.isFilterEnabled(getSession().getProject())) {
+      if (print && !FilterSwfLoadUnloadMessagesAction.isFilterEnabled(getSession().getProject())) {
         myConsoleView.print(line + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
       }
       return true;
@@ -724,7 +752,7 @@ public class FlexDebugProcess extends XDebugProcess {
 
   protected String resolveFileReference(VirtualFile file) {
     String marker;
-    String id = myKnownFilesInfo.getIdByFilePathNoUpdate(file.getPath());
+    String id = myKnownFilesInfo.getIdByFilePathNoUpdate(myCurrentWorker, file.getPath());
 
     if (id != null) {
       marker = "#" + id;
@@ -737,8 +765,12 @@ public class FlexDebugProcess extends XDebugProcess {
     return marker;
   }
 
+  EvaluationCache getEvaluationCache() {
+    return myEvaluationCache;
+  }
+
   protected String getFileId(final String filePath) {
-    return myKnownFilesInfo.getIdByFilePath(filePath);
+    return myKnownFilesInfo.getIdByFilePath(myCurrentWorker, filePath);
   }
 
   /**
@@ -955,6 +987,10 @@ public class FlexDebugProcess extends XDebugProcess {
     DebuggerCommand command = commandsToWrite.removeFirst();
     final boolean currentlyExecuting = !suspended && startupDone;
 
+    if (!currentlyExecuting && command.isBatchable() && Registry.is("flex.debugger.batch.evaluation", true)) {
+      command = batchWithFollowingCommands(command);
+    }
+
     if (command.getStartVMState() == VMState.RUNNING) {
       if (!currentlyExecuting) {
         if (command instanceof SuspendDebuggerCommand) ((SuspendDebuggerCommand)command).doCommandAfterSuspend();
@@ -983,6 +1019,23 @@ public class FlexDebugProcess extends XDebugProcess {
     return command;
   }
 
+  private DebuggerCommand batchWithFollowingCommands(final DebuggerCommand command) {
+    List<DebuggerCommand> batch = null;
+    synchronized (commandsToWrite) {
+      DebuggerCommand nextCommand;
+      while ((batch == null || batch.size() < BatchedEvaluateCommand.MAX_SIZE) &&
+             (nextCommand = commandsToWrite.peek()) != null &&
+             nextCommand.isBatchable()) {
+        if (batch == null) {
+          batch = new ArrayList<>();
+          batch.add(command);
+        }
+        batch.add(commandsToWrite.removeFirst());
+      }
+    }
+    return batch != null ? new BatchedEvaluateCommand(this, batch) : command;
+  }
+
   boolean isDebuggerFromSdk3() {
     return myDebuggerVersion != null && myDebuggerVersion.startsWith("3.");
   }
@@ -997,6 +1050,7 @@ public class FlexDebugProcess extends XDebugProcess {
 
     setSuspended(
       command.getOutputProcessingMode() == CommandOutputProcessingType.NO_PROCESSING && command.getEndVMState() == VMState.SUSPENDED);
+    myEvaluationCache.commandSent(text);
     log("Sent:" + text);
     fdbProcess.getOutputStream().write((text + "\n").getBytes());
     try {
@@ -1189,6 +1243,17 @@ public class FlexDebugProcess extends XDebugProcess {
   }
 
   boolean filterStdResponse(String line) {
+    return filterStdResponse(line, true);
+  }
+
+  /**
+   * Same as {@link #filterStdResponse(String)} but doesn't print anything or send commands.
+   */
+  boolean isStdResponse(String line) {
+    return filterStdResponse(line, false);
+  }
+
+  private boolean filterStdResponse(String line, boolean handle) {
     ResponseLineIterator iterator = new ResponseLineIterator(line);
     boolean stdcontent = true;
     while (iterator.hasNext()) {
@@ -1198,9 +1263,9 @@ public class FlexDebugProcess extends XDebugProcess {
         break;
       }
       if (s.length() > 0 && Character.isDigit(s.charAt(0))) {
-        sendCommand(new DumpSourceLocationCommand(this));
+        if (handle) sendCommand(new DumpSourceLocationCommand(this));
       }
-      else if (!handleStdResponse(line, iterator)) {
+      else if (!handleStdResponse(line, iterator, handle)) {
         stdcontent = false;
       }
     }
@@ -267,6 +267,7 @@ public class FlexStackFrame extends XStackFrame {
     private final String expression;
     private int responseCount;
     private boolean myFinished;
+    private String myCachedResponse;
 
     EvaluateCommand(String _expression, final XDebuggerEvaluator.XEvaluationCallback _callback) {
       super(buildCommandForExpression(_expression), CommandOutputProcessingType.SPECIAL_PROCESSING);
@@ -274,9 +275,34 @@ public class FlexStackFrame extends XStackFrame {
       callback = _callback;
     }
 
+    private boolean isPrintOnly() { // 'frame' and 'print' commands, no implicit 'set'
+      return getText().indexOf('\n') == getText().lastIndexOf('\n');
+    }
+
+    @Override
+    boolean isBatchable() {
+      return isPrintOnly() && myDebugProcess.getEvaluationCache().get(getText()) == null;
+    }
+
+    @Override
+    public void post(FlexDebugProcess flexDebugProcess) throws IOException {
+      myCachedResponse = isPrintOnly() ? flexDebugProcess.getEvaluationCache().get(getText()) : null;
+      if (myCachedResponse != null) {
+        responseCount = 1; // response to 'frame' is not cached
+        return;
+      }
+      super.post(flexDebugProcess);
+    }
+
+    @Override
+    public String read(FlexDebugProcess flexDebugProcess) throws IOException {
+      return myCachedResponse != null ? myCachedResponse : super.read(flexDebugProcess);
+    }
+
     @Override
     CommandOutputProcessingMode onTextAvailable(@NonNls String line) {
-      if (myDebugProcess.filterStdResponse(line)) return CommandOutputProcessingMode.PROCEEDING;
+      // empty text is not std output but the reply to a command that prints nothing, see doOnTextAvailable()
+      if (line.length() > 0 && myDebugProcess.filterStdResponse(line)) return CommandOutputProcessingMode.PROCEEDING;
       return proceedWithEvaluationResponse(line);
     }
 
@@ -285,6 +311,10 @@ public class FlexStackFrame extends XStackFrame {
       if (responseCount == 1) { // skip frame
         return CommandOutputProcessingMode.PROCEEDING;
       }
+      // empty response is not cached: doOnTextAvailable() waits for the next one, and a cached command would get the same one forever
+      if (myCachedResponse == null && isPrintOnly() && line.length() > 0 && !cannotEvaluateResponse(line)) {
+        myDebugProcess.getEvaluationCache().put(getText(), line);
+      }
       return doOnTextAvailable(line);
     }
 
@@ -295,7 +325,7 @@ public class FlexStackFrame extends XStackFrame {
         return CommandOutputProcessingMode.DONE;
       }
 
-      if (getText().contains("\n") && s.length() == 0) { // implicit set command was issued with empty result
+      if (!isPrintOnly() && s.length() == 0) { // implicit set command was issued with empty result
         return CommandOutputProcessingMode.PROCEEDING;
       }
       dispatchResult(s);
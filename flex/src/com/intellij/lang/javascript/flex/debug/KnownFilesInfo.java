@@ -1,25 +1,21 @@
 package com.intellij.lang.javascript.flex.debug;
 
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.util.containers.BidirectionalMap;
-import gnu.trove.THashMap;
 import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.*;
+import java.util.Collection;
+import java.util.StringTokenizer;
 
 public class KnownFilesInfo {
+  static final int MAIN_WORKER = 0;
 
   private final FlexDebugProcess myFlexDebugProcess;
 
   private boolean myUpToDate = false;
 
-  private final TIntObjectHashMap<BidirectionalMap<String, String>> myWorkerToFilePathToIdMap =
-    new TIntObjectHashMap<>();
-
-  private final TIntObjectHashMap<Map<String, Collection<String>>> myWorkerToFileNameToPathsMap =
-    new TIntObjectHashMap<>();
+  private final TIntObjectHashMap<FileIdIndex> myWorkerToFileIdIndex = new TIntObjectHashMap<>();
 
   public KnownFilesInfo(final FlexDebugProcess flexDebugProcess) {
     myFlexDebugProcess = flexDebugProcess;
@@ -33,36 +29,43 @@ public class KnownFilesInfo {
   public String getFilePathById(final int worker, final String id) {
     ensureUpToDate();
 
-    final BidirectionalMap<String, String> filePathToId = myWorkerToFilePathToIdMap.get(worker);
-    final List<String> paths = filePathToId == null ? null : filePathToId.getKeysByValue(id);
+    final FileIdIndex index = myWorkerToFileIdIndex.get(worker);
+    if (index == null) return null;
 
-    return paths != null && paths.size() > 0 ? paths.get(0) : null;
+    try {
+      return index.getPath(Integer.parseInt(id));
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
   }
 
   @Nullable
-  public String getIdByFilePath(final String filePath) {
+  public String getIdByFilePath(final int worker, final String filePath) {
     ensureUpToDate();
-
-    final int worker = 0; // todo calculate correct worker
-
-    final BidirectionalMap<String, String> filePathToId = myWorkerToFilePathToIdMap.get(worker);
-    return filePathToId == null ? null : filePathToId.get(filePath);
+    return getIdByFilePathNoUpdate(worker, filePath);
   }
 
+  /**
+   * File ids are specific to the worker, an id of the same file in the main thread means another file in the worker.
+   */
   @Nullable
-  public String getIdByFilePathNoUpdate(final String filePath) {
-    final int worker = 0; // todo calculate correct worker
-
-    final BidirectionalMap<String, String> filePathToId = myWorkerToFilePathToIdMap.get(worker);
-    return filePathToId == null ? null : filePathToId.get(filePath);
+  public String getIdByFilePathNoUpdate(final int worker, final String filePath) {
+    final FileIdIndex index = myWorkerToFileIdIndex.get(worker);
+    return index == null ? null : index.getId(filePath);
   }
 
   @Nullable
   public Collection<String> getPathsByName(final int worker, final String fileName) {
     ensureUpToDate();
 
-    final Map<String, Collection<String>> fileNameToPaths = myWorkerToFileNameToPathsMap.get(worker);
-    return fileNameToPaths == null ? null : fileNameToPaths.get(fileName);
+    final FileIdIndex index = myWorkerToFileIdIndex.get(worker);
+    return index == null ? null : index.getPathsByName(fileName);
+  }
+
+  @Nullable
+  FileIdIndex getFileIdIndex(final int worker) {
+    return myWorkerToFileIdIndex.get(worker);
   }
 
   private void ensureUpToDate() {
@@ -71,18 +74,19 @@ public class KnownFilesInfo {
       new DebuggerCommand("show files", CommandOutputProcessingType.SPECIAL_PROCESSING, VMState.SUSPENDED, VMState.SUSPENDED) {
         @Override
         CommandOutputProcessingMode onTextAvailable(@NonNls String s) {
-          processShowFilesResult(new StringTokenizer(s, "\r\n"));
+          processShowFilesResult(s);
           return CommandOutputProcessingMode.DONE;
         }
       }, null);
     myUpToDate = true;
   }
 
-  private void processShowFilesResult(StringTokenizer tokenizer) {
+  void processShowFilesResult(final String showFilesResult) {
     //2 C:\work\flex_projects\MP3Worker\src\Workers.as, Workers.as
     //2 C:\work\flex_projects\MP3Worker\src\Workers.as, Workers.as (Main Thread)
     //1 C:\work\flex_projects\MP3Worker\src\BackWorker.as, BackWorker.as (Worker 1)
 
+    final StringTokenizer tokenizer = new StringTokenizer(showFilesResult, "\r\n");
     while (tokenizer.hasMoreTokens()) {
       final String line = tokenizer.nextToken().trim();
       final int spaceIndex = line.indexOf(' ');
@@ -93,22 +97,23 @@ public class KnownFilesInfo {
         continue;
       }
 
-      final String id = line.substring(0, spaceIndex);
-      String fullPath = FileUtil.toSystemIndependentName(line.substring(spaceIndex + 1, commaIndex));
-
-      int markerIndex = fullPath.indexOf("/frameworks/projects/");
-      if (markerIndex != -1 && fullPath.indexOf("/src/", markerIndex) > 0) {
-        fullPath = myFlexDebugProcess.getAppSdkHome() + fullPath.substring(markerIndex);
+      final int id;
+      try {
+        id = Integer.parseInt(line.substring(0, spaceIndex));
+      }
+      catch (NumberFormatException e) {
+        FlexDebugProcess.log("Unexpected string format:" + line);
+        continue;
       }
 
       final int nextSpaceIndex = line.indexOf(' ', commaIndex + 2);
-      final String shortName = nextSpaceIndex > 0 ? line.substring(commaIndex + 2, nextSpaceIndex) : line.substring(commaIndex);
+      final String shortName = nextSpaceIndex > 0 ? line.substring(commaIndex + 2, nextSpaceIndex) : line.substring(commaIndex + 2);
 
-      int worker = 0;
+      int worker = MAIN_WORKER;
 
       if (nextSpaceIndex > 0) {
         if ("(Main Thread)".equals(line.substring(nextSpaceIndex + 1))) {
-          worker = 0;
+          worker = MAIN_WORKER;
         }
         else if (line.substring(nextSpaceIndex + 1).startsWith("(Worker ") && line.endsWith(")")) {
           try {
@@ -123,31 +128,23 @@ public class KnownFilesInfo {
         }
       }
 
-      BidirectionalMap<String, String> filePathToIdMap = myWorkerToFilePathToIdMap.get(worker);
-      if (filePathToIdMap == null) {
-        filePathToIdMap = new BidirectionalMap<>();
-        myWorkerToFilePathToIdMap.put(worker, filePathToIdMap);
+      FileIdIndex index = myWorkerToFileIdIndex.get(worker);
+      if (index == null) {
+        index = new FileIdIndex();
+        myWorkerToFileIdIndex.put(worker, index);
       }
-      filePathToIdMap.put(fullPath, id);
-
-      Map<String, Collection<String>> fileNameToPaths = myWorkerToFileNameToPathsMap.get(worker);
-      if (fileNameToPaths == null) {
-        fileNameToPaths = new THashMap<>();
-        myWorkerToFileNameToPathsMap.put(worker, fileNameToPaths);
+      else if (index.contains(id, shortName)) {
+        continue;
       }
-      addToMap(fileNameToPaths, shortName, fullPath);
-    }
-  }
 
-  private static <K, T> void addToMap(final Map<K, Collection<T>> map, final K key, final T valueCollectionElement) {
-    Collection<T> valueCollection = map.get(key);
-    if (valueCollection == null) {
-      valueCollection = new ArrayList<>(1);
-      map.put(key, valueCollection);
-    }
+      String fullPath = FileUtil.toSystemIndependentName(line.substring(spaceIndex + 1, commaIndex));
+
+      int markerIndex = fullPath.indexOf("/frameworks/projects/");
+      if (markerIndex != -1 && fullPath.indexOf("/src/", markerIndex) > 0) {
+        fullPath = myFlexDebugProcess.getAppSdkHome() + fullPath.substring(markerIndex);
+      }
 
-    if (!valueCollection.contains(valueCollectionElement)) {
-      valueCollection.add(valueCollectionElement);
+      index.add(id, fullPath, shortName);
     }
   }
 }
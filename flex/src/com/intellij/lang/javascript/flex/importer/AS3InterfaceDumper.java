@@ -52,6 +52,11 @@ class AS3InterfaceDumper extends AbstractDumpProcessor {
     return true;
   }
 
+  @Override
+  public boolean doDumpMethodBodies() {
+    return false;
+  }
+
   public static synchronized IElementType identifierType(String name) {
     ourLexer.start(name);
 
@@ -284,17 +284,27 @@ class Abc {
   static final Multiname OpaqueAssetsType = new Multiname(null, "Class");
 
   private final FlexByteCodeInformationProcessor processor;
+  private List<Runnable> deferredOutput; // stats and errors of decoding on a pool thread, see flushDeferredOutput()
   int totalSize;
   final int opSizes[] = new int[256];
 
   Abc(final @NotNull ByteBuffer _data, @NotNull FlexByteCodeInformationProcessor _processor) {
+    this(_data, _processor, false);
+  }
+
+  /**
+   * @param deferOutput if {@code true}, stats and errors are not passed to the processor until {@link #flushDeferredOutput()} is called,
+   *                    so that the block can be decoded on another thread while the processor is busy with the previous blocks
+   */
+  Abc(final @NotNull ByteBuffer _data, @NotNull FlexByteCodeInformationProcessor _processor, boolean deferOutput) {
     data = _data;
     processor = _processor;
+    if (deferOutput) deferredOutput = new ArrayList<>();
 
     data.setPosition(0);
     magic = data.readInt();
 
-    _processor.dumpStat("magic " + Integer.toString(magic, 16) + "\n");
+    dumpStat("magic " + Integer.toString(magic, 16) + "\n");
 
     if (magic != (46 << 16 | 14) && magic != (46 << 16 | 15) && magic != (46 << 16 | 16)) {
       throw new Error("not an abc file.  magic=" + Integer.toString(magic, 16));
@@ -323,7 +333,7 @@ class Abc {
     parseInstanceInfos();
     parseClassInfos();
     parseScriptInfos();
-    parseMethodBodies();
+    if (processor.doDumpMethodBodies()) parseMethodBodies();
   }
 
   private static Object[] buildSparseArray(int index, @NonNls String s1) {
@@ -332,6 +342,34 @@ class Abc {
     return result;
   }
 
+  void flushDeferredOutput() {
+    if (deferredOutput != null) {
+      final List<Runnable> output = deferredOutput;
+      deferredOutput = null;
+      for (Runnable runnable : output) {
+        runnable.run();
+      }
+    }
+  }
+
+  private void dumpStat(@NonNls String stat) {
+    if (deferredOutput != null) {
+      deferredOutput.add(() -> processor.dumpStat(stat));
+    }
+    else {
+      processor.dumpStat(stat);
+    }
+  }
+
+  private void hasError(String error) {
+    if (deferredOutput != null) {
+      deferredOutput.add(() -> processor.hasError(error));
+    }
+    else {
+      processor.hasError(error);
+    }
+  }
+
   public void dump(String indent) {
     for (Traits t : scripts) {
       processor.dumpTopLevelTraits(this, t, indent);
@@ -365,7 +403,9 @@ class Abc {
   Integer[] ints;
   Integer[] uints;
   Double[] doubles;
-  @NonNls String[] strings;
+  @NonNls private String[] strings; // decoded on first access, see getString()
+  private int[] stringPositions;
+  private int[] stringLengths;
   @NonNls String[] namespaces;
   @NonNls String[][] nssets;
   Multiname[] names;
@@ -384,6 +424,19 @@ class Abc {
     return data.readU32();
   }
 
+  @NonNls
+  String getString(int index) {
+    String s = strings[index];
+    if (s == null) {
+      s = strings[index] = data.getUTFBytes(stringPositions[index], stringLengths[index]);
+    }
+    return s;
+  }
+
+  private Object getDefaultValue(int kind, int index) {
+    return kind == CONSTANT_Utf8 ? getString(index) : defaults[kind][index];
+  }
+
   void parseCpool() {
     int i, j;
     int n;
@@ -413,18 +466,22 @@ class Abc {
       doubles[i] = data.readDouble();
     }
 
-    reportAboutPercentage("Cpool numbers size ", data, start, processor);
+    reportAboutPercentage("Cpool numbers size ", start);
     start = data.getPosition();
 
     // strings
     n = readU32();
     strings = new String[n];
+    stringPositions = new int[n];
+    stringLengths = new int[n];
     strings[0] = "";
     for (i = 1; i < n; i++) {
-      strings[i] = data.readUTFBytes(readU32());
+      stringLengths[i] = readU32();
+      stringPositions[i] = data.getPosition();
+      data.incPosition(stringLengths[i]);
     }
 
-    reportAboutPercentage("Cpool strings count " + n + " size ", data, start, processor);
+    reportAboutPercentage("Cpool strings count " + n + " size ", start);
     start = data.getPosition();
 
     // namespaces
@@ -439,7 +496,7 @@ class Abc {
         case CONSTANT_ProtectedNs:
         case CONSTANT_StaticProtectedNs:
         case CONSTANT_StaticProtectedNs2: {
-          namespaces[i] = strings[readU32()];
+          namespaces[i] = getString(readU32());
           // todo mark kind of namespace.
           break;
         }
@@ -450,7 +507,7 @@ class Abc {
       }
     }
 
-    reportAboutPercentage("Cpool namespaces count " + n + " size ", data, start, processor);
+    reportAboutPercentage("Cpool namespaces count " + n + " size ", start);
     start = data.getPosition();
 
     // namespace sets
@@ -464,7 +521,7 @@ class Abc {
       }
     }
 
-    reportAboutPercentage("Cpool nssets count " + n + " size ", data, start, processor);
+    reportAboutPercentage("Cpool nssets count " + n + " size ", start);
     start = data.getPosition();
 
     // multinames
@@ -485,12 +542,12 @@ class Abc {
       switch (data.readByte()) {
         case CONSTANT_Qname:
         case CONSTANT_QnameA:
-          names[i] = new Multiname(new String[]{namespaces[readU32()]}, strings[readU32()]);
+          names[i] = new Multiname(new String[]{namespaces[readU32()]}, getString(readU32()));
           break;
 
         case CONSTANT_RTQname:
         case CONSTANT_RTQnameA:
-          names[i] = new Multiname(new String[]{strings[readU32()]}, null);
+          names[i] = new Multiname(new String[]{getString(readU32())}, null);
           break;
 
         case CONSTANT_RTQnameL:
@@ -505,7 +562,7 @@ class Abc {
 
         case CONSTANT_Multiname:
         case CONSTANT_MultinameA:
-          String name = strings[readU32()];
+          String name = getString(readU32());
           names[i] = new Multiname(nssets[readU32()], name);
           break;
 
@@ -585,7 +642,7 @@ class Abc {
       }
     } while (hasSomething && doneSomething);
 
-    reportAboutPercentage("Cpool names count " + n + " size ", data, start, processor);
+    reportAboutPercentage("Cpool names count " + n + " size ", start);
     start = data.getPosition();
 
     namespaces[0] = PUBLIC_NS;
@@ -609,7 +666,7 @@ class Abc {
         m.paramTypes[j] = names[readU32()];
         if (m.paramTypes[j] == null) m.paramTypes[j] = OpaqueAssetsType;
       }
-      m.debugName = strings[readU32()];
+      readU32(); // debug name
       m.flags = data.readByte();
 
       if ((m.flags & HAS_OPTIONAL) != 0) {
@@ -641,10 +698,10 @@ class Abc {
           }
           else {
             if (defaults[kind] == null) {
-              processor.hasError("ERROR kind=" + kind + " method_id " + i + "\n");
+              hasError("ERROR kind=" + kind + " method_id " + i + "\n");
             }
             else {
-              m.optionalValues[k] = new Multiname(null, defaults[kind][index].toString());
+              m.optionalValues[k] = new Multiname(null, getDefaultValue(kind, index).toString());
             }
           }
         }
@@ -655,7 +712,7 @@ class Abc {
           Set<String> usedNames = new THashSet<>(m.paramNames.length);
           for (int k = 0; k < param_count; ++k) {
             final int index = readU32();
-            final String name = strings[index];
+            final String name = getString(index);
             m.paramNames[k] = StringUtil.isJavaIdentifier(name) && usedNames.add(name) ? name : "_" + k;
           }
         } else {
@@ -680,7 +737,7 @@ class Abc {
       }
     }
 
-    reportAboutPercentage("MethodInfo count " + method_count + " size ", data, start, processor);
+    reportAboutPercentage("MethodInfo count " + method_count + " size ", start);
   }
 
   void parseMetadataInfos() {
@@ -689,15 +746,15 @@ class Abc {
     for (int i = 0; i < count; i++) {
       // MetadataInfo
       MetaData m = metadata[i] = new MetaData();
-      m.name = strings[readU32()];
+      m.name = getString(readU32());
       int values_count = readU32();
       String names[] = new String[values_count];
 
       for (int q = 0; q < values_count; ++q) {
-        names[q] = strings[readU32()]; // name
+        names[q] = getString(readU32()); // name
       }
       for (int q = 0; q < values_count; ++q) {
-        m.put(names[q], strings[readU32()]); // value
+        m.put(names[q], getString(readU32())); // value
       }
     }
   }
@@ -727,7 +784,7 @@ class Abc {
       parseTraits(t);
     }
 
-    reportAboutPercentage("InstanceInfo size ", data, start, processor);
+    reportAboutPercentage("InstanceInfo size ", start);
   }
 
   static final TraitType[] traitTypes = TraitType.values();
@@ -741,7 +798,7 @@ class Abc {
       TraitType kind;
 
       if (traitTypeTag >= traitTypes.length) {
-        processor.hasError("error trait kind " + traitTypeTag + "\n");
+        hasError("error trait kind " + traitTypeTag + "\n");
         kind = null;
       }
       else {
@@ -765,7 +822,7 @@ class Abc {
               slot.type = OpaqueAssetsType;
             }
             int index = readU32();
-            if (index > 0) slot.value = defaults[data.readByte()][index];
+            if (index > 0) slot.value = getDefaultValue(data.readByte(), index);
           }
           else // (kind == Class)
           {
@@ -828,7 +885,7 @@ class Abc {
       t.init.kind = TraitType.Method;
       parseTraits(t);
     }
-    reportAboutPercentage("ClassInfo size ", data, start, processor);
+    reportAboutPercentage("ClassInfo size ", start);
   }
 
   void parseScriptInfos() {
@@ -848,7 +905,7 @@ class Abc {
       parseTraits(t);
     }
 
-    reportAboutPercentage("ScriptInfo size ", data, start, processor);
+    reportAboutPercentage("ScriptInfo size ", start);
   }
 
   void parseMethodBodies() {
@@ -863,11 +920,9 @@ class Abc {
       int maxScopeDepth = readU32();
       m.max_scope = maxScopeDepth - initScopeDepth;
       int code_length = readU32();
-      m.code = new ByteBuffer();
+      m.code = data.readSlice(code_length);
       m.code.setLittleEndian();
 
-      if (code_length > 0) data.readBytes(m.code, code_length);
-
       int ex_count = readU32();
       for (int j = 0; j < ex_count; j++) {
         int from = readU32();
@@ -881,11 +936,11 @@ class Abc {
       parseTraits(m.activation = new Traits());
     }
 
-    reportAboutPercentage("MethodBodies size ", data, start, processor);
+    reportAboutPercentage("MethodBodies size ", start);
   }
 
-  private static void reportAboutPercentage(String s, ByteBuffer data, int start, @NotNull FlexByteCodeInformationProcessor processor) {
-    processor.dumpStat(s + (data.getPosition() - start) + " " + (int)100f * (data.getPosition() - start) / data.bytesSize() + " %\n");
+  private void reportAboutPercentage(String s, int start) {
+    dumpStat(s + (data.getPosition() - start) + " " + (int)100f * (data.getPosition() - start) / data.bytesSize() + " %\n");
   }
 
 }
@@ -52,6 +52,11 @@ class AbcDumper extends AbstractDumpProcessor {
     return true;
   }
 
+  @Override
+  public boolean doDumpMethodBodies() {
+    return true; // method body statistics are dumped even if code isn't
+  }
+
   @Override
   public void appendMethodSeparator() {
     append("\n");
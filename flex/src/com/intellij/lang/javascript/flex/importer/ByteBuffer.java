@@ -2,23 +2,62 @@ package com.intellij.lang.javascript.flex.importer;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.InflaterInputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
+ * Reads a region of a byte array. Slices share the array of the buffer they were taken from, so DoABC tags and method bodies are
+ * decoded in place. Reads are checked against the end of the region rather than the end of the array, so a malformed length fails
+ * instead of reading bytes of the neighbouring tags.
+ *
  * @author Maxim.Mossienko
 */
 class ByteBuffer {
   private byte[] bytes;
+  private int offset;
+  private int length;
   private int position;
   private boolean littleEndian;
 
+  ByteBuffer() {
+  }
+
+  ByteBuffer(@NotNull byte[] bytes) {
+    this(bytes, 0, bytes.length);
+  }
+
+  private ByteBuffer(@NotNull byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+  }
+
   void read(@NotNull InputStream inputStream) throws IOException {
     try {
-      bytes = readStream(inputStream);
+      byte[] result = new byte[Math.max(inputStream.available(), 8192)];
+      int total = 0;
+
+      while (true) {
+        if (total == result.length) {
+          int b = inputStream.read();
+          if (b == -1) break;
+          result = Arrays.copyOf(result, result.length * 2);
+          result[total++] = (byte)b;
+        }
+        int read = inputStream.read(result, total, result.length - total);
+        if (read == -1) break;
+        total += read;
+      }
+
+      bytes = result;
+      offset = 0;
+      length = total;
     }
     finally {
       inputStream.close();
@@ -29,13 +68,24 @@ class ByteBuffer {
     littleEndian = true;
   }
 
+  /**
+   * @return index in the array of the next {@code count} bytes
+   */
+  private int checkAvailable(int count) {
+    if (position < 0 || count > length - position) {
+      throw new ArrayIndexOutOfBoundsException("[" + position + ", " + ((long)position + count) + ") of " + length);
+    }
+    return offset + position;
+  }
+
   int readInt() {
+    final int p = checkAvailable(4);
     int result;
     if (littleEndian) {
-      result = (((bytes[position + 3] & 0xFF) << 8 | (bytes[position + 2] & 0xFF)) << 16) + ((bytes[position + 1] & 0xFF) << 8) | (bytes[position] & 0xFF);
+      result = (((bytes[p + 3] & 0xFF) << 8 | (bytes[p + 2] & 0xFF)) << 16) + ((bytes[p + 1] & 0xFF) << 8) | (bytes[p] & 0xFF);
     }
     else {
-      result = (((bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF)) << 16) + ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+      result = (((bytes[p] & 0xFF) << 8 | (bytes[p + 1] & 0xFF)) << 16) + ((bytes[p + 2] & 0xFF) << 8) | (bytes[p + 3] & 0xFF);
     }
     position += 4;
     return result;
@@ -50,77 +100,104 @@ class ByteBuffer {
   }
 
   public int bytesSize() {
-    return bytes.length;
-  }
-
-  public void uncompress() throws IOException {
-    final InflaterInputStream zipInputStream = new InflaterInputStream(new ByteArrayInputStream(bytes));
-
-    bytes = readStream(zipInputStream);
-
-    zipInputStream.close();
-  }
-
-  private static byte[] readStream(final InputStream zipInputStream) throws IOException {
-    final byte[] buf = new byte[8192];
-    byte[] result = new byte[8192];
+    return length;
+  }
+
+  /**
+   * Inflates the rest of the buffer starting at the current position.
+   *
+   * @param expectedSize size of the uncompressed data if known in advance (e.g. from the SWF header), otherwise a guess
+   */
+  @NotNull
+  ByteBuffer inflate(int expectedSize) throws IOException {
+    final int compressedSize = length - position;
+    byte[] result = new byte[Math.max(expectedSize, 1024)];
     int total = 0;
 
-    while (true) {
-      int read = zipInputStream.read(buf);
-      if (read == -1) break;
-      if (total + read >= result.length) {
-        byte[] newresult = new byte[result.length * 2];
-        System.arraycopy(result, 0, newresult, 0, total);
-        result = newresult;
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes, offset + position, compressedSize);
+      while (!inflater.finished()) {
+        if (total == result.length) {
+          result = Arrays.copyOf(result, result.length * 2);
+        }
+        final int inflated = inflater.inflate(result, total, result.length - total);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        total += inflated;
       }
-
-      System.arraycopy(buf, 0, result, total, read);
-      total += read;
+    }
+    catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    }
+    finally {
+      inflater.end();
     }
 
-    final byte[] realResult = new byte[total];
-    System.arraycopy(result, 0, realResult, 0, total);
-    return realResult;
+    position = length;
+    final ByteBuffer buffer = new ByteBuffer(result, 0, total);
+    buffer.littleEndian = littleEndian;
+    return buffer;
   }
 
   public int readUnsignedByte() {
-    return bytes[position++] & 0xFF;
+    final int p = checkAvailable(1);
+    position++;
+    return bytes[p] & 0xFF;
   }
 
   public int readByte() {
-    return bytes[position++];
+    final int p = checkAvailable(1);
+    position++;
+    return bytes[p];
   }
 
   public int readUnsignedShort() {
+    final int p = checkAvailable(2);
     int result;
     if (littleEndian) {
-      result = (bytes[position + 1] & 0xFF) << 8 | (bytes[position] & 0xFF);
+      result = (bytes[p + 1] & 0xFF) << 8 | (bytes[p] & 0xFF);
     }
     else {
-      result = (bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF);
+      result = (bytes[p] & 0xFF) << 8 | (bytes[p + 1] & 0xFF);
     }
     position += 2;
     return result;
   }
 
-  public void readBytes(ByteBuffer data2, int length) {
-    data2.bytes = new byte[length];
-    System.arraycopy(bytes, position, data2.bytes, 0, length);
+  /**
+   * @return buffer over the next {@code length} bytes, sharing the array of this buffer
+   */
+  @NotNull
+  ByteBuffer readSlice(int length) {
+    if (length < 0) {
+      throw new ArrayIndexOutOfBoundsException("slice of negative length " + length);
+    }
+    final ByteBuffer slice = new ByteBuffer(bytes, checkAvailable(length), length);
+    slice.littleEndian = littleEndian;
     position += length;
+    return slice;
   }
 
   public boolean eof() {
-    return position >= bytes.length;
+    return position >= length;
   }
 
   public String readUTFBytes(int i) {
-    final byte[] buf = new byte[i];
-    while (i > 0) {
-      buf[buf.length - i] = (byte)readByte();
-      --i;
+    final String result = getUTFBytes(position, i);
+    position += i;
+    return result;
+  }
+
+  /**
+   * Decodes a string at the given position without moving the current position.
+   */
+  String getUTFBytes(int position, int length) {
+    if (position < 0 || length < 0 || length > this.length - position) {
+      throw new ArrayIndexOutOfBoundsException("string [" + position + ", " + ((long)position + length) + ") of " + this.length);
     }
-    return new String(buf, StandardCharsets.UTF_8);
+    return new String(bytes, offset + position, length, StandardCharsets.UTF_8);
   }
 
   public double readDouble() {
@@ -142,7 +219,10 @@ class ByteBuffer {
   }
 
   public byte getByte(int i) {
-    return bytes[i];
+    if (i < 0 || i >= length) {
+      throw new ArrayIndexOutOfBoundsException(i + " of " + length);
+    }
+    return bytes[offset + i];
   }
 
   public int getPosition() {
@@ -19,6 +19,11 @@ interface FlexByteCodeInformationProcessor {
   void dumpTopLevelTraits(final @NotNull Abc abc, final @NotNull Traits t, final String indent);
 
   boolean doDumpMember(final @NotNull MemberInfo memberInfo);
+
+  /**
+   * @return {@code false} if method bodies are not needed, they are not decoded then
+   */
+  boolean doDumpMethodBodies();
   void appendMethodSeparator();
   void appendFieldSeparator();
   String getAbcInSwfIndent();
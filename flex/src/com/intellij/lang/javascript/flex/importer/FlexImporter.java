@@ -2,10 +2,13 @@ package com.intellij.lang.javascript.flex.importer;
 
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.stubs.StubElement;
+import com.intellij.util.SystemProperties;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Produced from abcdump.as
@@ -17,6 +20,13 @@ public class FlexImporter {
   private static final int SWF_MAGIC = 67 | 87 << 8 | 83 << 16;
   private static final int SWF_MAGIC2 = 70 | 87 << 8 | 83 << 16;
 
+  /**
+   * Max number of threads decoding ABC blocks of SWF files in parallel, shared by all SWFs being imported. 1 means sequential decoding.
+   */
+  @NonNls public static final String ABC_DECODING_THREADS_PROPERTY = "flex.importer.abc.decoding.threads";
+  private static final int DEFAULT_ABC_DECODING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+  private static ForkJoinPool ourAbcDecodingPool;
+
   public static void main(String[] args) throws IOException {
     if (args.length < 1) {
       System.out.print("FlexImporter\nusage:\nFlexImporter <filename>");
@@ -70,9 +80,20 @@ public class FlexImporter {
     processFlexByteCode(in, new AS3InterfaceStubDumper(parent));
   }
 
+  /**
+   * Same as {@link #buildStubsInterfaceFromStream(InputStream, StubElement)}, but decodes the given array in place instead of copying it.
+   */
+  public static void buildStubsInterface(@NotNull final byte[] content, final StubElement parent) throws Exception {
+    processFlexByteCode(new ByteBuffer(content), new AS3InterfaceStubDumper(parent));
+  }
+
   private static void processFlexByteCode(@NotNull final InputStream in, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
     ByteBuffer data = new ByteBuffer();
     data.read(in);
+    processFlexByteCode(data, processor);
+  }
+
+  private static void processFlexByteCode(@NotNull ByteBuffer data, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
     data.setLittleEndian();
     if (data.bytesSize() == 0) return;
     int version = data.readUnsignedInt();
@@ -83,22 +104,32 @@ public class FlexImporter {
     }
     else if ((version & SWF_MAGIC) == SWF_MAGIC) {
       final int delta = 8;
-      data.setPosition(delta);
-      ByteBuffer udata = new ByteBuffer();
-      udata.setLittleEndian();
-      data.readBytes(udata, data.bytesSize() - delta);
-      int csize = udata.bytesSize();
-      udata.uncompress();
+      final int fileLength = data.readUnsignedInt(); // including uncompressed header, don't trust it too much
+      int csize = data.bytesSize() - delta;
+      final int maxExpectedSize = (int)Math.min(Integer.MAX_VALUE - 8, csize * 64L);
+      ByteBuffer udata = data.inflate(fileLength > delta ? Math.min(fileLength - delta, maxExpectedSize) : csize * 2);
       processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
       udata.setPosition(0);
-      new Swf(udata, processor);
+      new Swf(udata, processor, getAbcDecodingPool());
     }
     else if ((version & SWF_MAGIC2) == SWF_MAGIC2) {
       data.setPosition(8); // skip header and length
-      new Swf(data, processor);
+      new Swf(data, processor, getAbcDecodingPool());
     }
     else {
       processor.hasError("unknown format " + version + ", swf version: " + (version >> 24) + "\n");
     }
   }
+
+  @Nullable
+  private static synchronized ForkJoinPool getAbcDecodingPool() {
+    final int threads = SystemProperties.getIntProperty(ABC_DECODING_THREADS_PROPERTY, DEFAULT_ABC_DECODING_THREADS);
+    if (threads <= 1) return null;
+
+    // a pool that is replaced after the property change is not shut down as it may be used by other threads, its idle workers just exit
+    if (ourAbcDecodingPool == null || ourAbcDecodingPool.getParallelism() != threads) {
+      ourAbcDecodingPool = new ForkJoinPool(threads);
+    }
+    return ourAbcDecodingPool;
+  }
 }
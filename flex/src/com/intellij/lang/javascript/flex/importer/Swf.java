@@ -1,6 +1,12 @@
 package com.intellij.lang.javascript.flex.importer;
 
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * @author Maxim.Mossienko
@@ -17,6 +23,7 @@ class Swf {
   }
 
   private final FlexByteCodeInformationProcessor processor;
+  @Nullable private final ForkJoinPool pool;
   private int bitPos;
   private int bitBuf;
 
@@ -25,6 +32,9 @@ class Swf {
   private static final int stagDoABC = 72;   // embedded .abc (AVM+) bytecode
   private static final int stagDoABC2 = 82;   // revised ABC version with a name
 
+  // decoded ABC blocks waiting to be dumped are kept in memory, so only a few blocks per decoding thread are submitted ahead
+  private static final int MAX_ABC_IN_FLIGHT_PER_THREAD = 2;
+
   private static final @NonNls String[] tagNames = {
     "End",                  // 00
     "ShowFrame",            // 01
@@ -147,8 +157,17 @@ class Swf {
 
 
   Swf(final ByteBuffer _data, final FlexByteCodeInformationProcessor _processor) {
+    this(_data, _processor, null);
+  }
+
+  /**
+   * @param _pool if not {@code null}, ABC blocks are decoded on this pool in parallel; they are still dumped one by one in the tag order,
+   *              because processors collect state across blocks
+   */
+  Swf(final ByteBuffer _data, final FlexByteCodeInformationProcessor _processor, @Nullable ForkJoinPool _pool) {
     data = _data;
     processor = _processor;
+    pool = _pool;
 
     final Rect rect = decodeRect();
     final int rate = data.readUnsignedByte() << 8 | data.readUnsignedByte();
@@ -163,36 +182,100 @@ class Swf {
 
   private void decodeTags() {
     int type, h, length;
+    // in parallel mode output is deferred until the ABC blocks before it are dumped, so that it goes in the tag order
+    final ArrayDeque<Object> deferredOutput = pool != null ? new ArrayDeque<>() : null;
+    final int maxAbcInFlight = pool != null ? pool.getParallelism() * MAX_ABC_IN_FLIGHT_PER_THREAD : 0;
+    int abcInFlight = 0;
+
+    try {
+      tags:
+      while (data.getPosition() < data.bytesSize()) {
+        type = (h = data.readUnsignedShort()) >> 6;
+
+        if (((length = h & 0x3F) == 0x3F)) length = data.readInt();
+
+        dumpStat(deferredOutput,
+          (type < tagNames.length ? tagNames[type] : "undefined") + " " + length + "b " + ((int)100f * length / data.bytesSize()) + "%\n");
+
+        switch (type) {
+          case 0:
+            break tags;
+          case stagDoABC2:
+            int pos1 = data.getPosition();
+            data.readInt();
+            final String abcName = readString();
+            dumpStat(deferredOutput, "\nabc name " + abcName + "\n");
+            length -= (data.getPosition() - pos1);
+            // fall through
+          case stagDoABC:
+            final ByteBuffer data2 = data.readSlice(length);
+            data2.setLittleEndian();
+            if (deferredOutput == null) {
+              dumpAbc(new Abc(data2, processor));
+            }
+            else {
+              if (abcInFlight == maxAbcInFlight) {
+                dumpOldestAbc(deferredOutput);
+                abcInFlight--;
+              }
+              deferredOutput.add(pool.submit(() -> new Abc(data2, processor, true)));
+              abcInFlight++;
+            }
+            break;
+          default:
+            data.incPosition(length);
+        }
+      }
 
-    while (data.getPosition() < data.bytesSize()) {
-      type = (h = data.readUnsignedShort()) >> 6;
-
-      if (((length = h & 0x3F) == 0x3F)) length = data.readInt();
-
-      processor.dumpStat(
-        (type < tagNames.length ? tagNames[type] : "undefined") + " " + length + "b " + ((int)100f * length / data.bytesSize()) + "%\n");
-
-      switch (type) {
-        case 0:
-          return;
-        case stagDoABC2:
-          int pos1 = data.getPosition();
-          data.readInt();
-          final String abcName = readString();
-          processor.dumpStat("\nabc name " + abcName + "\n");
-          length -= (data.getPosition() - pos1);
-          // fall through
-        case stagDoABC:
-          ByteBuffer data2 = new ByteBuffer();
-          data2.setLittleEndian();
-          data.readBytes(data2, length);
-          new Abc(data2, processor).dump(processor.getAbcInSwfIndent());
-          processor.append("\n");
-          break;
-        default:
-          data.incPosition(length);
+      if (deferredOutput != null) {
+        while (!deferredOutput.isEmpty()) {
+          dumpOldestAbc(deferredOutput);
+        }
       }
     }
+    finally {
+      if (deferredOutput != null) {
+        for (Object item : deferredOutput) {
+          if (item instanceof ForkJoinTask) {
+            ((ForkJoinTask<?>)item).cancel(false);
+          }
+        }
+      }
+    }
+  }
+
+  private void dumpStat(@Nullable ArrayDeque<Object> deferredOutput, @NonNls String stat) {
+    if (deferredOutput != null) {
+      deferredOutput.add(stat);
+    }
+    else {
+      processor.dumpStat(stat);
+    }
+  }
+
+  /**
+   * Dumps deferred output up to and including the oldest ABC block, waiting for the block to be decoded. Dumped items are removed, so that
+   * decoded blocks are not kept in memory.
+   */
+  private void dumpOldestAbc(@NotNull ArrayDeque<Object> deferredOutput) {
+    Object item;
+    while ((item = deferredOutput.poll()) != null) {
+      if (item instanceof String) {
+        processor.dumpStat((String)item);
+      }
+      else {
+        //noinspection unchecked
+        final Abc abc = ((ForkJoinTask<Abc>)item).join();
+        abc.flushDeferredOutput();
+        dumpAbc(abc);
+        return;
+      }
+    }
+  }
+
+  private void dumpAbc(Abc abc) {
+    abc.dump(processor.getAbcInSwfIndent());
+    processor.append("\n");
   }
 
   private String readString() {